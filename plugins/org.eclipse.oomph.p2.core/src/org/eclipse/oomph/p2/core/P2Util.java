@@ -14,11 +14,14 @@ import org.eclipse.oomph.p2.internal.core.AgentImpl;
 import org.eclipse.oomph.p2.internal.core.AgentManagerImpl;
 import org.eclipse.oomph.p2.internal.core.CachingRepositoryManager;
 import org.eclipse.oomph.p2.internal.core.CachingTransport;
+import org.eclipse.oomph.p2.internal.core.StreamingMetadataLoader;
 import org.eclipse.oomph.util.StringUtil;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.equinox.p2.core.IAgentLocation;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.IInstallableUnitFragment;
@@ -35,6 +38,7 @@ import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
 import org.eclipse.equinox.p2.metadata.expression.IExpression;
 import org.eclipse.equinox.p2.metadata.expression.IFilterExpression;
 import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
@@ -117,6 +121,19 @@ public final class P2Util
     return null;
   }
 
+  /**
+   * Queries the metadata repository at the given location while its metadata is being parsed, without loading the repository,
+   * such that only the matching units are kept in memory.
+   * The returned units are shallow, i.e., they have no touchpoint data, artifacts, or licenses.
+   *
+   * @see StreamingMetadataLoader
+   */
+  public static IQueryResult<IInstallableUnit> streamQuery(IProvisioningAgent agent, URI location, IQuery<IInstallableUnit> query, IProgressMonitor monitor)
+      throws ProvisionException
+  {
+    return new StreamingMetadataLoader(agent).query(location, query, monitor);
+  }
+
   @SuppressWarnings("all")
   public static <T> Iterable<T> asIterable(final IQueryResult<T> queryResult)
   {
@@ -19,6 +19,7 @@ import org.eclipse.oomph.p2.core.Profile;
 import org.eclipse.oomph.util.IORuntimeException;
 import org.eclipse.oomph.util.IOUtil;
 import org.eclipse.oomph.util.SubMonitor;
+import org.eclipse.oomph.util.TaskScheduler;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -59,7 +60,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -626,49 +629,97 @@ public final class AgentAnalyzer
     {
       AnalyzedArtifact[] artifacts = getArtifacts();
       int total = artifacts.length;
-      int i = 0;
 
-      for (AnalyzedArtifact artifact : artifacts)
-      {
-        P2CorePlugin.checkCancelation(monitor);
+      final BundlePoolVerifier verifier = new BundlePoolVerifier(location, getP2BundlePool(monitor));
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(total);
 
-        int percent = ++i * 100 / total;
-        if (percent != damagedArtifactsPercent)
-        {
-          damagedArtifactsPercent = percent;
-          analyzer.bundlePoolChanged(this, false, false);
-        }
-
-        synchronized (artifact)
+      for (final AnalyzedArtifact artifact : artifacts)
+      {
+        futures.add(verifier.submit(new Callable<Boolean>()
         {
-          IArtifactKey key = artifact.getKey();
-          if (getArtifact(key) == null)
+          public Boolean call() throws Exception
           {
-            // Continue with next artifact if this artifact was deleted meanwhile
-            continue;
+            synchronized (artifact)
+            {
+              IArtifactKey key = artifact.getKey();
+              if (getArtifact(key) == null)
+              {
+                // Skip this artifact if it was deleted meanwhile
+                return null;
+              }
+            }
+
+            return isDamaged(verifier, artifact);
           }
-        }
+        }));
+      }
 
-        monitor.subTask(NLS.bind(Messages.AgentAnalyzer_Validating_task, artifact));
-        if (isDamaged(artifact))
+      try
+      {
+        for (int i = 0; i < total; i++)
         {
-          synchronized (this)
+          AnalyzedArtifact artifact = artifacts[i];
+
+          int percent = (i + 1) * 100 / total;
+          if (percent != damagedArtifactsPercent)
           {
-            damagedArtifacts.add(artifact);
-            damagedArtifactsArray = null;
+            damagedArtifactsPercent = percent;
+            analyzer.bundlePoolChanged(this, false, false);
           }
 
-          analyzer.bundlePoolChanged(this, false, false);
+          monitor.subTask(NLS.bind(Messages.AgentAnalyzer_Validating_task, artifact));
+          if (Boolean.TRUE.equals(TaskScheduler.get(futures.get(i), monitor)))
+          {
+            synchronized (this)
+            {
+              damagedArtifacts.add(artifact);
+              damagedArtifactsArray = null;
+            }
+
+            analyzer.bundlePoolChanged(this, false, false);
 
-          artifact.setDamaged();
-          analyzer.artifactChanged(artifact);
+            artifact.setDamaged();
+            analyzer.artifactChanged(artifact);
+          }
+        }
+      }
+      finally
+      {
+        for (Future<Boolean> future : futures)
+        {
+          future.cancel(false);
         }
+
+        verifier.save();
       }
 
       analyzer.bundlePoolChanged(this, false, false);
       analyzingDamage = false;
     }
 
+    private static boolean isDamaged(BundlePoolVerifier verifier, AnalyzedArtifact artifact)
+    {
+      File file = artifact.getFile();
+      if (file == null || !file.exists())
+      {
+        return true;
+      }
+
+      Boolean verified = verifier.verify(artifact.getKey(), file);
+      if (verified != null)
+      {
+        return !verified;
+      }
+
+      boolean damaged = isDamaged(artifact);
+      if (!damaged)
+      {
+        verifier.setVerified(file);
+      }
+
+      return damaged;
+    }
+
     @SuppressWarnings("restriction")
     private static boolean isDamaged(AnalyzedArtifact artifact)
     {
@@ -738,6 +789,16 @@ public final class AgentAnalyzer
       try
       {
         String type = artifact.getType();
+        if (AnalyzedArtifact.TYPE_PLUGIN.equals(type))
+        {
+          // Checking the manifest is much cheaper than publishing the bundle, so only bundles without a manifest are published.
+          Boolean matches = BundlePoolVerifier.matchesManifest(file, artifact.getKey());
+          if (matches != null)
+          {
+            return !matches;
+          }
+        }
+
         org.eclipse.equinox.p2.publisher.AbstractPublisherAction action;
         String namespace;
         if (AnalyzedArtifact.TYPE_FEATURE.equals(type))
@@ -998,7 +998,7 @@ public class AgentImpl extends AgentManagerElementImpl implements Agent
             File localLauncherLibraryFile = new File(new File(installFolder, "plugins"), absoluteLauncherLibraryLocation.lastSegment()); //$NON-NLS-1$
             if (!localLauncherLibraryFile.equals(absoluteLauncherLibraryFile))
             {
-              IOUtil.copyFile(absoluteLauncherLibraryFile, localLauncherLibraryFile);
+              IOUtil.materializeFile(absoluteLauncherLibraryFile, localLauncherLibraryFile);
 
               // Remember the line feed convention used for this section.
               nl = key.substring(trimmedKey.length());
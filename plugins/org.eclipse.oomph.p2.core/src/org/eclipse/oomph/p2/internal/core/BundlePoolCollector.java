@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.p2.core.Agent;
+import org.eclipse.oomph.p2.core.AgentManager;
+import org.eclipse.oomph.p2.core.BundlePool;
+import org.eclipse.oomph.p2.core.P2Util;
+import org.eclipse.oomph.p2.core.Profile;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.PropertiesUtil;
+import org.eclipse.oomph.util.SubMonitor;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IFileArtifactRepository;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the artifacts of the shared bundle pools that aren't used by any profile, headlessly.
+ * <p>
+ * In the mark phase, the artifacts of all installable units of all valid profiles of all agents of an {@link AgentManager agent manager} are marked as reachable,
+ * per bundle pool.
+ * In the sweep phase, the artifacts of each bundle pool that aren't reachable are removed in batches,
+ * so that the <code>artifacts.xml</code> of the bundle pool is written once per batch rather than once per artifact.
+ * A bundle pool for which a profile can't be examined isn't swept at all,
+ * and artifacts that have been added to a bundle pool after the mark phase started are never removed.
+ * <p>
+ * A dry run reports the artifacts that would be removed and the bytes that would be reclaimed, without removing anything.
+ * The batch size is specified by the <code>oomph.p2.bundle.pool.gc.batch.size</code> system property, which defaults to 500.
+ * <p>
+ * As an application, the collector accepts the following arguments:
+ * <ul>
+ * <li><code>-dryRun</code> or <code>-n</code>, to report what would be removed without removing it.
+ * <li><code>-verbose</code> or <code>-v</code>, to report each unreachable artifact.
+ * </ul>
+ * Any other argument is rejected with the {@link #EXIT_INVALID_ARGUMENTS} exit code, before anything is collected.
+ *
+ * @author Eike Stepper
+ */
+@SuppressWarnings("nls")
+public final class BundlePoolCollector implements IApplication
+{
+  public static final String PROP_BATCH_SIZE = "oomph.p2.bundle.pool.gc.batch.size";
+
+  /**
+   * The exit code of the application if it's started with an unknown argument.
+   */
+  public static final Integer EXIT_INVALID_ARGUMENTS = 2;
+
+  private static final int BATCH_SIZE = Math.max(1, PropertiesUtil.getProperty(PROP_BATCH_SIZE, 500));
+
+  private final AgentManager agentManager;
+
+  public BundlePoolCollector()
+  {
+    this(null);
+  }
+
+  /**
+   * Creates a collector for the bundle pools of the given agent manager, or of the {@link P2Util#getAgentManager() default} agent manager if it's <code>null</code>.
+   */
+  public BundlePoolCollector(AgentManager agentManager)
+  {
+    this.agentManager = agentManager;
+  }
+
+  public Object start(IApplicationContext context) throws Exception
+  {
+    String[] args = (String[])context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+    LinkedList<String> arguments = new LinkedList<String>(Arrays.asList(args));
+
+    boolean dryRun = false;
+    boolean verbose = false;
+
+    while (!arguments.isEmpty())
+    {
+      String arg = arguments.removeFirst();
+      if ("-dryRun".equalsIgnoreCase(arg) || "-n".equals(arg))
+      {
+        dryRun = true;
+      }
+      else if ("-verbose".equalsIgnoreCase(arg) || "-v".equals(arg))
+      {
+        verbose = true;
+      }
+      else
+      {
+        System.err.println("Unknown argument: " + arg);
+        System.err.println("Usage: [-dryRun | -n] [-verbose | -v]");
+        return EXIT_INVALID_ARGUMENTS;
+      }
+    }
+
+    Report report = collect(dryRun, new NullProgressMonitor());
+    report.print(System.out, verbose);
+    return EXIT_OK;
+  }
+
+  public void stop()
+  {
+  }
+
+  /**
+   * Marks the reachable artifacts and removes all others from the shared bundle pools, unless this is a dry run.
+   */
+  public Report collect(boolean dryRun, IProgressMonitor monitor)
+  {
+    AgentManager agentManager = this.agentManager == null ? P2Util.getAgentManager() : this.agentManager;
+    Collection<BundlePool> bundlePools = getBundlePools(agentManager);
+
+    SubMonitor progress = SubMonitor.convert(monitor, 1 + bundlePools.size()).detectCancelation();
+    long markTime = System.currentTimeMillis();
+
+    Map<File, Set<IArtifactKey>> reachableArtifacts = new HashMap<File, Set<IArtifactKey>>();
+    Set<File> unsafeLocations = new HashSet<File>();
+    mark(agentManager, reachableArtifacts, unsafeLocations, progress.newChild());
+
+    Report report = new Report(dryRun);
+    for (BundlePool bundlePool : bundlePools)
+    {
+      File location = bundlePool.getLocation();
+      if (unsafeLocations.contains(location))
+      {
+        report.skippedLocations.add(location);
+        progress.worked(1);
+        continue;
+      }
+
+      Set<IArtifactKey> reachable = reachableArtifacts.get(location);
+      if (reachable == null)
+      {
+        reachable = Collections.emptySet();
+      }
+
+      report.bundlePools.add(sweep(bundlePool, reachable, markTime, dryRun, progress.newChild()));
+    }
+
+    progress.done();
+    return report;
+  }
+
+  private void mark(AgentManager agentManager, Map<File, Set<IArtifactKey>> reachableArtifacts, Set<File> unsafeLocations, IProgressMonitor monitor)
+  {
+    List<Profile> profiles = new ArrayList<Profile>();
+    for (Agent agent : agentManager.getAgents())
+    {
+      profiles.addAll(agent.getAllProfiles());
+    }
+
+    SubMonitor progress = SubMonitor.convert(monitor, profiles.size()).detectCancelation();
+
+    for (Profile profile : profiles)
+    {
+      BundlePool bundlePool = profile.getBundlePool();
+      if (bundlePool != null && profile.isValid())
+      {
+        File location = bundlePool.getLocation();
+        progress.subTask(profile.getProfileId());
+
+        Set<IArtifactKey> reachable = reachableArtifacts.get(location);
+        if (reachable == null)
+        {
+          reachable = new HashSet<IArtifactKey>();
+          reachableArtifacts.put(location, reachable);
+        }
+
+        try
+        {
+          for (IInstallableUnit iu : P2Util.asIterable(profile.query(QueryUtil.createIUAnyQuery(), progress.newChild())))
+          {
+            reachable.addAll(iu.getArtifacts());
+          }
+        }
+        catch (RuntimeException ex)
+        {
+          // If the artifacts of a profile can't be determined, none of the artifacts of its bundle pool can be considered unreachable.
+          P2CorePlugin.INSTANCE.log(ex);
+          unsafeLocations.add(location);
+        }
+      }
+      else
+      {
+        progress.worked(1);
+      }
+    }
+
+    progress.done();
+  }
+
+  private BundlePoolReport sweep(BundlePool bundlePool, Set<IArtifactKey> reachable, long markTime, boolean dryRun, IProgressMonitor monitor)
+  {
+    IFileArtifactRepository repository = bundlePool.getFileArtifactRepository();
+    BundlePoolReport report = new BundlePoolReport(bundlePool.getLocation());
+
+    List<IArtifactKey> unreachable = new ArrayList<IArtifactKey>();
+    for (IArtifactKey key : P2Util.asIterable(repository.query(ArtifactKeyQuery.ALL_KEYS, null)))
+    {
+      ++report.artifacts;
+      if (!reachable.contains(key))
+      {
+        unreachable.add(key);
+      }
+    }
+
+    SubMonitor progress = SubMonitor.convert(monitor, unreachable.size()).detectCancelation();
+    progress.subTask(report.location.toString());
+
+    for (int start = 0; start < unreachable.size(); start += BATCH_SIZE)
+    {
+      List<IArtifactKey> batch = unreachable.subList(start, Math.min(start + BATCH_SIZE, unreachable.size()));
+      List<IArtifactDescriptor> descriptors = new ArrayList<IArtifactDescriptor>();
+      Map<IArtifactKey, Long> sizes = new LinkedHashMap<IArtifactKey, Long>();
+
+      for (IArtifactKey key : batch)
+      {
+        File file = repository.getArtifactFile(key);
+        if (file != null && file.lastModified() >= markTime)
+        {
+          // The artifact has been added after the mark phase started, so it might be used by a profile that's being installed.
+          continue;
+        }
+
+        sizes.put(key, file == null ? 0L : getSize(file));
+        descriptors.addAll(Arrays.asList(repository.getArtifactDescriptors(key)));
+      }
+
+      if (!dryRun && !descriptors.isEmpty())
+      {
+        repository.removeDescriptors(descriptors.toArray(new IArtifactDescriptor[descriptors.size()]), progress.newChild(0));
+      }
+
+      for (Map.Entry<IArtifactKey, Long> entry : sizes.entrySet())
+      {
+        report.unreachableArtifacts.add(entry.getKey());
+        report.reclaimedBytes += entry.getValue();
+      }
+
+      progress.worked(batch.size());
+    }
+
+    progress.done();
+    return report;
+  }
+
+  private static Collection<BundlePool> getBundlePools(AgentManager agentManager)
+  {
+    Map<File, BundlePool> bundlePools = new LinkedHashMap<File, BundlePool>();
+    for (BundlePool bundlePool : agentManager.getBundlePools())
+    {
+      if (!bundlePools.containsKey(bundlePool.getLocation()))
+      {
+        bundlePools.put(bundlePool.getLocation(), bundlePool);
+      }
+    }
+
+    return bundlePools.values();
+  }
+
+  private static long getSize(File file)
+  {
+    if (file.isDirectory())
+    {
+      long size = 0;
+      for (File child : IOUtil.listDepthFirst(file))
+      {
+        if (child.isFile())
+        {
+          size += child.length();
+        }
+      }
+
+      return size;
+    }
+
+    return file.length();
+  }
+
+  private static String formatBytes(long bytes)
+  {
+    if (bytes < 1024)
+    {
+      return bytes + " B";
+    }
+
+    if (bytes < 1024L * 1024L)
+    {
+      return String.format(Locale.ENGLISH, "%.1f KB", bytes / 1024d);
+    }
+
+    if (bytes < 1024L * 1024L * 1024L)
+    {
+      return String.format(Locale.ENGLISH, "%.1f MB", bytes / (1024d * 1024d));
+    }
+
+    return String.format(Locale.ENGLISH, "%.1f GB", bytes / (1024d * 1024d * 1024d));
+  }
+
+  /**
+   * The result of a {@link BundlePoolCollector#collect(boolean, IProgressMonitor) collection}.
+   *
+   * @author Eike Stepper
+   */
+  public static final class Report
+  {
+    private final boolean dryRun;
+
+    private final List<BundlePoolReport> bundlePools = new ArrayList<BundlePoolReport>();
+
+    private final List<File> skippedLocations = new ArrayList<File>();
+
+    private Report(boolean dryRun)
+    {
+      this.dryRun = dryRun;
+    }
+
+    public boolean isDryRun()
+    {
+      return dryRun;
+    }
+
+    public List<BundlePoolReport> getBundlePools()
+    {
+      return Collections.unmodifiableList(bundlePools);
+    }
+
+    /**
+     * Returns the locations of the bundle pools that haven't been swept because the artifacts of one of their profiles couldn't be determined.
+     */
+    public List<File> getSkippedLocations()
+    {
+      return Collections.unmodifiableList(skippedLocations);
+    }
+
+    public int getUnreachableArtifactsCount()
+    {
+      int count = 0;
+      for (BundlePoolReport bundlePool : bundlePools)
+      {
+        count += bundlePool.getUnreachableArtifacts().size();
+      }
+
+      return count;
+    }
+
+    public long getReclaimedBytes()
+    {
+      long bytes = 0;
+      for (BundlePoolReport bundlePool : bundlePools)
+      {
+        bytes += bundlePool.getReclaimedBytes();
+      }
+
+      return bytes;
+    }
+
+    public void print(PrintStream out, boolean verbose)
+    {
+      for (BundlePoolReport bundlePool : bundlePools)
+      {
+        out.println(bundlePool);
+        if (verbose)
+        {
+          for (IArtifactKey key : bundlePool.getUnreachableArtifacts())
+          {
+            out.println("   " + key);
+          }
+        }
+      }
+
+      for (File location : skippedLocations)
+      {
+        out.println(location + ": skipped because not all of its profiles could be examined");
+      }
+
+      out.println((dryRun ? "Would reclaim " : "Reclaimed ") + formatBytes(getReclaimedBytes()) + " from " + getUnreachableArtifactsCount()
+          + " unreachable artifacts");
+    }
+  }
+
+  /**
+   * The result of sweeping a single bundle pool.
+   *
+   * @author Eike Stepper
+   */
+  public static final class BundlePoolReport
+  {
+    private final File location;
+
+    private final List<IArtifactKey> unreachableArtifacts = new ArrayList<IArtifactKey>();
+
+    private int artifacts;
+
+    private long reclaimedBytes;
+
+    private BundlePoolReport(File location)
+    {
+      this.location = location;
+    }
+
+    public File getLocation()
+    {
+      return location;
+    }
+
+    public int getArtifactsCount()
+    {
+      return artifacts;
+    }
+
+    public List<IArtifactKey> getUnreachableArtifacts()
+    {
+      return Collections.unmodifiableList(unreachableArtifacts);
+    }
+
+    public long getReclaimedBytes()
+    {
+      return reclaimedBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+      return location + ": " + unreachableArtifacts.size() + " of " + artifacts + " artifacts unreachable, " + formatBytes(reclaimedBytes);
+    }
+  }
+}
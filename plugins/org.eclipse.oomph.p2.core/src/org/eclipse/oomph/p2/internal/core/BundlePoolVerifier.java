@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.HexUtil;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.StreamDigester;
+import org.eclipse.oomph.util.TaskScheduler;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IFileArtifactRepository;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Verifies the artifacts of a bundle pool concurrently, as cheaply as possible.
+ * <p>
+ * An artifact file whose size and modification time are the same as when it was last verified successfully isn't verified again.
+ * Those verifications are recorded in a cache file in the bundle pool, if the bundle pool can be written.
+ * Otherwise, an artifact file is verified against the checksum recorded in its artifact descriptor, if there is one.
+ * Only if there is no recorded checksum, the caller must verify the artifact by examining its content.
+ * <p>
+ * The verifications are {@link #submit(Callable) submitted} to the I/O lane of the {@link TaskScheduler}.
+ *
+ * @author Eike Stepper
+ */
+final class BundlePoolVerifier
+{
+  private static final String CACHE_FILE_NAME = ".oomph.verified"; //$NON-NLS-1$
+
+  private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+  /**
+   * The checksum properties of an artifact descriptor, in the order of preference, and the corresponding digest algorithms.
+   */
+  private static final String[][] CHECKSUM_PROPERTIES = { //
+      { "artifact.checksum.sha-256", "SHA-256" }, //$NON-NLS-1$ //$NON-NLS-2$
+      { ContentAddressedCache.PROPERTY_DOWNLOAD_CHECKSUM_SHA_256, "SHA-256" }, //$NON-NLS-1$
+      { "artifact.checksum.md5", "MD5" }, //$NON-NLS-1$ //$NON-NLS-2$
+      { "download.checksum.md5", "MD5" }, //$NON-NLS-1$ //$NON-NLS-2$
+      { "artifact.md5", "MD5" }, //$NON-NLS-1$ //$NON-NLS-2$
+      { "download.md5", "MD5" } }; //$NON-NLS-1$ //$NON-NLS-2$
+
+  private final File location;
+
+  private final IFileArtifactRepository repository;
+
+  private final File cacheFile;
+
+  /**
+   * A map from the path of an artifact file, relative to the bundle pool, to its size and modification time when it was last verified successfully.
+   */
+  private final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+
+  /**
+   * The entries of the {@link #cache} that have been confirmed during this verification.
+   */
+  private final Map<String, String> verified = new ConcurrentHashMap<String, String>();
+
+  public BundlePoolVerifier(File location, IFileArtifactRepository repository)
+  {
+    this.location = location;
+    this.repository = repository;
+    cacheFile = IOUtil.canWriteFolder(location) ? new File(location, CACHE_FILE_NAME) : null;
+    loadCache();
+  }
+
+  public <T> Future<T> submit(Callable<T> callable)
+  {
+    return TaskScheduler.submit(TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_DEFAULT, null, callable);
+  }
+
+  /**
+   * Returns whether the given artifact file is intact, i.e., whether it was verified before or matches its recorded checksum,
+   * or <code>null</code> if that can't be determined without examining its content.
+   */
+  public Boolean verify(IArtifactKey key, File file)
+  {
+    String path = getPath(file);
+    String stamp = getStamp(file);
+    if (stamp.equals(cache.get(path)))
+    {
+      verified.put(path, stamp);
+      return Boolean.TRUE;
+    }
+
+    if (file.isFile())
+    {
+      for (IArtifactDescriptor descriptor : repository.getArtifactDescriptors(key))
+      {
+        // Only the canonical form of an artifact is stored in a bundle pool.
+        if (descriptor.getProperty(IArtifactDescriptor.FORMAT) == null)
+        {
+          for (String[] checksumProperty : CHECKSUM_PROPERTIES)
+          {
+            String checksum = descriptor.getProperty(checksumProperty[0]);
+            if (checksum != null)
+            {
+              String digest = digest(file, checksumProperty[1]);
+              if (digest == null)
+              {
+                // The file can't be read.
+                return Boolean.FALSE;
+              }
+
+              if (digest.equalsIgnoreCase(checksum))
+              {
+                setVerified(file);
+                return Boolean.TRUE;
+              }
+
+              return Boolean.FALSE;
+            }
+          }
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Records that the given artifact file has been verified successfully by the caller.
+   */
+  public void setVerified(File file)
+  {
+    verified.put(getPath(file), getStamp(file));
+  }
+
+  /**
+   * Writes the successful verifications to the cache file.
+   * Artifact files that haven't been verified successfully during this verification are removed from the cache file.
+   */
+  public void save()
+  {
+    if (cacheFile != null && !verified.equals(cache))
+    {
+      List<String> lines = new ArrayList<String>();
+      for (Map.Entry<String, String> entry : verified.entrySet())
+      {
+        lines.add(entry.getKey() + "|" + entry.getValue()); //$NON-NLS-1$
+      }
+
+      File tempFile = new File(location, CACHE_FILE_NAME + ".temp"); //$NON-NLS-1$
+
+      try
+      {
+        IOUtil.writeLines(tempFile, UTF_8, lines);
+        cacheFile.delete();
+        tempFile.renameTo(cacheFile);
+      }
+      catch (RuntimeException ex)
+      {
+        tempFile.delete();
+        P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+      }
+    }
+  }
+
+  private void loadCache()
+  {
+    if (cacheFile != null && cacheFile.isFile())
+    {
+      try
+      {
+        for (String line : IOUtil.readLines(cacheFile, UTF_8))
+        {
+          int pos = line.indexOf('|');
+          if (pos != -1)
+          {
+            cache.put(line.substring(0, pos), line.substring(pos + 1));
+          }
+        }
+      }
+      catch (RuntimeException ex)
+      {
+        P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+      }
+    }
+  }
+
+  private String getPath(File file)
+  {
+    String path = file.getAbsolutePath();
+    String prefix = location.getAbsolutePath() + File.separator;
+    if (path.startsWith(prefix))
+    {
+      path = path.substring(prefix.length());
+    }
+
+    return path.replace(File.separatorChar, '/');
+  }
+
+  private static String getStamp(File file)
+  {
+    return file.length() + "|" + file.lastModified(); //$NON-NLS-1$
+  }
+
+  private static String digest(File file, String algorithm)
+  {
+    // A file that was downloaded or copied through a digester has its digests recorded in its sidecar, as long as it's unchanged.
+    Map<String, String> hexDigests = StreamDigester.readSidecar(file);
+    if (hexDigests != null)
+    {
+      String hexDigest = hexDigests.get(algorithm);
+      if (hexDigest != null)
+      {
+        return hexDigest.toLowerCase(Locale.ENGLISH);
+      }
+    }
+
+    InputStream in = null;
+
+    try
+    {
+      MessageDigest messageDigest = MessageDigest.getInstance(algorithm);
+      in = new FileInputStream(file);
+
+      byte[] buffer = new byte[65536];
+      int n;
+      while ((n = in.read(buffer)) != -1)
+      {
+        messageDigest.update(buffer, 0, n);
+      }
+
+      return HexUtil.bytesToHex(messageDigest.digest()).toLowerCase(Locale.ENGLISH);
+    }
+    catch (NoSuchAlgorithmException ex)
+    {
+      throw new IllegalStateException(ex);
+    }
+    catch (Exception ex)
+    {
+      return null;
+    }
+    finally
+    {
+      IOUtil.closeSilent(in);
+    }
+  }
+
+  /**
+   * Returns whether the OSGi manifest of the given bundle, which is either a jar file or a folder,
+   * declares the symbolic name and version of the given key,
+   * or <code>null</code> if the bundle has no manifest with a symbolic name.
+   */
+  public static Boolean matchesManifest(File file, IArtifactKey key)
+  {
+    Manifest manifest = null;
+
+    try
+    {
+      if (file.isDirectory())
+      {
+        File manifestFile = new File(file, JarFile.MANIFEST_NAME);
+        if (manifestFile.isFile())
+        {
+          InputStream in = new FileInputStream(manifestFile);
+
+          try
+          {
+            manifest = new Manifest(in);
+          }
+          finally
+          {
+            IOUtil.closeSilent(in);
+          }
+        }
+      }
+      else
+      {
+        ZipFile zipFile = new ZipFile(file);
+
+        try
+        {
+          ZipEntry entry = zipFile.getEntry(JarFile.MANIFEST_NAME);
+          if (entry != null)
+          {
+            InputStream in = zipFile.getInputStream(entry);
+
+            try
+            {
+              manifest = new Manifest(in);
+            }
+            finally
+            {
+              IOUtil.closeSilent(in);
+            }
+          }
+        }
+        finally
+        {
+          zipFile.close();
+        }
+      }
+    }
+    catch (Exception ex)
+    {
+      return Boolean.FALSE;
+    }
+
+    if (manifest == null)
+    {
+      return null;
+    }
+
+    Attributes attributes = manifest.getMainAttributes();
+    String symbolicName = attributes.getValue("Bundle-SymbolicName"); //$NON-NLS-1$
+    if (symbolicName == null)
+    {
+      return null;
+    }
+
+    int pos = symbolicName.indexOf(';');
+    if (pos != -1)
+    {
+      symbolicName = symbolicName.substring(0, pos);
+    }
+
+    try
+    {
+      String bundleVersion = attributes.getValue("Bundle-Version"); //$NON-NLS-1$
+      Version version = bundleVersion == null ? Version.emptyVersion : Version.parseVersion(bundleVersion.trim());
+      return key.getId().equals(symbolicName.trim()) && key.getVersion().equals(version);
+    }
+    catch (IllegalArgumentException ex)
+    {
+      return Boolean.FALSE;
+    }
+  }
+}
@@ -225,6 +225,13 @@ public class CachingRepositoryManager<T>
                 throw new OperationCanceledException();
               }
 
+              // Load the children of a composite concurrently while the composite loads them one after the other.
+              CompositeChildLoader childLoader = null;
+              if (transport != null && CompositeChildLoader.isEnabled() && CompositeChildLoader.isComposite(suffixes[i]))
+              {
+                childLoader = CompositeChildLoader.start(delegate, transport, location, suffixes[i], sub);
+              }
+
               try
               {
                 result = loadRepository(location, suffixes[i], type, flags, sub.newChild(100));
@@ -237,6 +244,13 @@ public class CachingRepositoryManager<T>
                   break;
                 }
               }
+              finally
+              {
+                if (childLoader != null)
+                {
+                  childLoader.cancel();
+                }
+              }
 
               if (result != null)
               {
@@ -584,6 +598,15 @@ public class CachingRepositoryManager<T>
       // the repository is simple
       // and the repository not modifiable, i.e., if it's not a local file-based repository.
       IRepository<IArtifactKey> result = loader.loadRepository(location, monitor, type, flags);
+
+      // Make the checksums of the artifacts in remote simple repositories available to the content-addressed cache.
+      CachingTransport transport = loader.getTransport();
+      ContentAddressedCache contentAddressedCache = transport == null ? null : transport.getContentAddressedCache();
+      if (contentAddressedCache != null && result instanceof SimpleArtifactRepository && !result.isModifiable())
+      {
+        contentAddressedCache.addRepository((SimpleArtifactRepository)result);
+      }
+
       if (isBetterMirrorSelection() && result instanceof SimpleArtifactRepository && !result.isModifiable())
       {
         // There should always be an event bus.
@@ -591,7 +614,7 @@ public class CachingRepositoryManager<T>
         if (eventBus != null)
         {
           // Create our improved mirror selector and reflectively set it to be the one used by this repository.
-          final BetterMirrorSelector mirrorSelector = new BetterMirrorSelector(result, loader.getTransport(), eventBus);
+          final BetterMirrorSelector mirrorSelector = new BetterMirrorSelector(result, loader.getTransport(), eventBus, MirrorStatistics.get(getAgent()));
           ReflectUtil.setValue("mirrors", result, mirrorSelector); //$NON-NLS-1$
 
           // Because of the poor implementation in org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository.getMaximumThreads()
@@ -673,11 +696,21 @@ public class CachingRepositoryManager<T>
        */
       private final URI repositoryURI;
 
+      /**
+       * The transport used to download the artifacts.
+       */
+      private final Transport transport;
+
       /**
        * The event bus to which this selector listens.
        */
       private final IProvisioningEventBus eventBus;
 
+      /**
+       * The persistent history of the mirrors, or <code>null</code> if there is no history.
+       */
+      private final MirrorStatistics mirrorStatistics;
+
       /**
        * A map from mirror URI to the artifact activity for that mirror.
        */
@@ -695,10 +728,12 @@ public class CachingRepositoryManager<T>
        */
       private MirrorActivity[] mirrorActivities;
 
-      public BetterMirrorSelector(IRepository<?> repository, Transport transport, IProvisioningEventBus eventBus)
+      public BetterMirrorSelector(IRepository<?> repository, Transport transport, IProvisioningEventBus eventBus, MirrorStatistics mirrorStatistics)
       {
         super(repository, transport);
+        this.transport = transport;
         this.eventBus = eventBus;
+        this.mirrorStatistics = mirrorStatistics;
         repositoryURI = getBaseURI();
       }
 
@@ -767,6 +802,9 @@ public class CachingRepositoryManager<T>
               eventBus.removeListener(this);
             }
 
+            // Remember the measurements for subsequent processes.
+            saveMirrorStatistics();
+
             // And reset our state to the intial state for subsequent reuse.
             mirrorActivities = null;
             artifactActivities.clear();
@@ -824,6 +862,13 @@ public class CachingRepositoryManager<T>
             monitor.subTask(NLS.bind(Messages.CachingRepositoryManager_RepeatedDownload_task, artifactURI));
           }
 
+          // Let the content-addressed cache know that this location in the mirror serves the same artifact as the original URI.
+          ContentAddressedCache contentAddressedCache = transport instanceof CachingTransport ? ((CachingTransport)transport).getContentAddressedCache() : null;
+          if (contentAddressedCache != null)
+          {
+            contentAddressedCache.addAlias(artifactURI, inputLocation);
+          }
+
           // Use this location in the mirror instead of the original URI.
           return artifactURI;
         }
@@ -960,9 +1005,53 @@ public class CachingRepositoryManager<T>
           message += " " + NLS.bind(Messages.CachingRepositoryManager_Failure_message, failures); //$NON-NLS-1$
         }
 
+        // Include the history of previous processes, if there is one.
+        MirrorStatistics.Record record = mirrorStatistics == null ? null : mirrorStatistics.getRecord(mirrorActivity.getLocation());
+        if (record != null)
+        {
+          message += " " + NLS.bind(Messages.CachingRepositoryManager_History_message, //$NON-NLS-1$
+              new Object[] { numberFormat.format(record.getSpeed() / 1000), numberFormat.format(Math.round(record.getSuccesses())),
+                  numberFormat.format(Math.round(record.getFailures())) });
+        }
+
         return message;
       }
 
+      private void saveMirrorStatistics()
+      {
+        if (mirrorStatistics == null)
+        {
+          return;
+        }
+
+        // The mirror activities may have been replaced by summaries, so correlate the artifact activities by location.
+        for (MirrorActivity mirrorActivity : mirrorActivities)
+        {
+          String location = mirrorActivity.getLocation();
+          int successes = 0;
+          long totalSize = 0;
+          long totalDuration = 0;
+          synchronized (artifactActivities)
+          {
+            for (ArtifactActivity artifactActivity : artifactActivities.values())
+            {
+              long size = artifactActivity.getSize();
+              if (size > 0 && location.equals(artifactActivity.getMirrorActivity().getLocation()))
+              {
+                ++successes;
+                totalSize += size;
+                totalDuration += artifactActivity.getDuration();
+              }
+            }
+          }
+
+          long speed = totalDuration > 0 ? 1000 * totalSize / totalDuration : 0;
+          mirrorStatistics.update(location, speed, successes, mirrorActivity.getFailures());
+        }
+
+        mirrorStatistics.save();
+      }
+
       private void sort()
       {
         // Compute a sorted map from the speed to the mirror activity with that speed.
@@ -1053,6 +1142,23 @@ public class CachingRepositoryManager<T>
 
           mirrorActivities = mirrorActivitiesList.toArray(new MirrorActivity[mirrorActivitiesList.size()]);
 
+          // Start with what previous processes have measured, so that mirrors with a reliable history need not be probed again.
+          if (mirrorStatistics != null)
+          {
+            for (MirrorActivity mirrorActivity : mirrorActivities)
+            {
+              MirrorStatistics.Record record = mirrorStatistics.getRecord(mirrorActivity.getLocation());
+              if (record != null && record.isReliable())
+              {
+                mirrorActivity.setProbed();
+                if (!record.isFailing())
+                {
+                  mirrorActivity.setSpeed(record.getSpeed());
+                }
+              }
+            }
+          }
+
           // Add ourselves as a listener.
           if (eventBus != null)
           {
@@ -10,16 +10,20 @@
  */
 package org.eclipse.oomph.p2.internal.core;
 
+import org.eclipse.oomph.util.CacheEvictor;
 import org.eclipse.oomph.util.IOExceptionWithCause;
 import org.eclipse.oomph.util.IORuntimeException;
 import org.eclipse.oomph.util.IOUtil;
 import org.eclipse.oomph.util.OfflineMode;
 import org.eclipse.oomph.util.PropertiesUtil;
 import org.eclipse.oomph.util.ReflectUtil;
+import org.eclipse.oomph.util.SingleFlight;
+import org.eclipse.oomph.util.StreamDigester;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.repository.AuthenticationFailedException;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
@@ -41,9 +45,7 @@ import java.lang.reflect.Method;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
 import java.util.LinkedList;
-import java.util.Map;
 
 /**
  * @author Eike Stepper
@@ -62,7 +64,17 @@ public class CachingTransport extends Transport
     }
   };
 
-  private static final Map<URI, Object> URI_LOCKS = new HashMap<URI, Object>();
+  private static final String PROP_CACHE = "oomph.p2.cache"; //$NON-NLS-1$
+
+  private static final String PROP_CACHE_WAIT_TIMEOUT = "oomph.p2.cache.wait.timeout"; //$NON-NLS-1$
+
+  /**
+   * The number of milliseconds that a request waits for a concurrent download of the same URI before downloading it itself, or <code>0</code> to wait indefinitely.
+   * The default is one minute.
+   */
+  private static final long WAIT_TIMEOUT = PropertiesUtil.getProperty(PROP_CACHE_WAIT_TIMEOUT, SingleFlight.DEFAULT_TIMEOUT);
+
+  private static final SingleFlight<URI, CacheDownload> METADATA_DOWNLOADS = new SingleFlight<URI, CacheDownload>();
 
   private static boolean DEBUG = false;
 
@@ -72,6 +84,10 @@ public class CachingTransport extends Transport
 
   private final File cacheFolder;
 
+  private final ContentAddressedCache contentAddressedCache;
+
+  private final CacheEvictor cacheEvictor;
+
   private Transport delegate;
 
   public CachingTransport(Transport delegate, IProvisioningAgent agent)
@@ -83,6 +99,14 @@ public class CachingTransport extends Transport
     File folder = P2CorePlugin.getUserStateFolder(new File(PropertiesUtil.getUserHome()));
     cacheFolder = new File(folder, "cache"); //$NON-NLS-1$
     cacheFolder.mkdirs();
+
+    contentAddressedCache = ContentAddressedCache.isEnabled() ? new ContentAddressedCache(cacheFolder) : null;
+
+    cacheEvictor = new CacheEvictor(cacheFolder, PROP_CACHE, StreamDigester.SIDECAR_EXTENSION);
+    if (cacheEvictor.isBounded())
+    {
+      cacheEvictor.scheduleEviction();
+    }
   }
 
   public final Transport getDelegate()
@@ -105,6 +129,19 @@ public class CachingTransport extends Transport
     return new File(cacheFolder, IOUtil.encodeFileName(uri.toString()));
   }
 
+  public CacheEvictor getCacheEvictor()
+  {
+    return cacheEvictor;
+  }
+
+  /**
+   * Returns the cache of artifacts keyed by their checksums, or <code>null</code> if that cache is not enabled.
+   */
+  public ContentAddressedCache getContentAddressedCache()
+  {
+    return contentAddressedCache;
+  }
+
   @Override
   public IStatus download(URI uri, OutputStream target, long startPos, IProgressMonitor monitor)
   {
@@ -124,6 +161,31 @@ public class CachingTransport extends Transport
         return P2CorePlugin.INSTANCE.getStatus(ex);
       }
 
+      // If the artifact's checksum is known and the content with that checksum is already cached, there is no need to download anything.
+      String digest = contentAddressedCache != null && startPos <= 0 ? contentAddressedCache.getDigest(uri) : null;
+      if (digest != null)
+      {
+        File file = contentAddressedCache.getFile(digest);
+        if (file.length() > 0)
+        {
+          if (contentAddressedCache.isIntact(file))
+          {
+            IStatus status = copyCacheFile(file, target);
+            if (status != null)
+            {
+              cacheEvictor.hit(file);
+              return status;
+            }
+          }
+          else
+          {
+            // The cache file has been modified or damaged since it was committed, so download the content again.
+            IOUtil.deleteBestEffort(file, false);
+            IOUtil.deleteBestEffort(StreamDigester.getSidecar(file), false);
+          }
+        }
+      }
+
       IStatus status = Status.CANCEL_STATUS;
 
       try
@@ -133,7 +195,15 @@ public class CachingTransport extends Transport
           eventBus.publishEvent(new DownloadArtifactEvent(uri));
         }
 
-        status = delegate.download(uri, target, startPos, monitor);
+        if (digest != null)
+        {
+          status = downloadContentAddressed(uri, digest, target, startPos, monitor);
+        }
+        else
+        {
+          status = delegate.download(uri, target, startPos, monitor);
+        }
+
         return status;
       }
       finally
@@ -145,111 +215,321 @@ public class CachingTransport extends Transport
       }
     }
 
-    synchronized (getLock(uri))
+    File cacheFile = getCacheFile(uri);
+    if (isCacheUsable(uri, cacheFile))
     {
-      File cacheFile = getCacheFile(uri);
-      if (cacheFile.length() > 0)
-      {
-        String path = uri.getSchemeSpecificPart();
-        if (OfflineMode.isEnabled() || !path.endsWith("/site.xml") && !path.endsWith("/digest.zip")) //$NON-NLS-1$ //$NON-NLS-2$
-        {
-          FileInputStream cacheInputStream = null;
+      FileInputStream cacheInputStream = null;
 
-          try
-          {
-            cacheInputStream = new FileInputStream(cacheFile);
-            IOUtil.copy(cacheInputStream, target);
-            removeLock(uri);
-            return Status.OK_STATUS;
-          }
-          catch (Exception ex)
-          {
-            //$FALL-THROUGH$
-          }
-          finally
-          {
-            IOUtil.closeSilent(cacheInputStream);
-          }
-        }
+      try
+      {
+        cacheInputStream = new FileInputStream(cacheFile);
+        IOUtil.copy(cacheInputStream, target);
+        cacheEvictor.hit(cacheFile);
+        return Status.OK_STATUS;
       }
+      catch (Exception ex)
+      {
+        //$FALL-THROUGH$
+      }
+      finally
+      {
+        IOUtil.closeSilent(cacheInputStream);
+      }
+    }
 
-      // If the offline mode is not enabled we must make p2 and (for later) ourselves happy.
-      StatefulFileOutputStream statefulTarget = null;
+    // Concurrent requests for the same URI share a single download into the cache file.
+    // No monitor is held while downloading, so waiting requests remain cancelable.
+    CacheDownload cacheDownload;
+
+    try
+    {
+      cacheDownload = METADATA_DOWNLOADS.execute(uri, new CacheDownloadRequest(uri, cacheFile, startPos, monitor), monitor, WAIT_TIMEOUT);
+    }
+    catch (OperationCanceledException ex)
+    {
+      return Status.CANCEL_STATUS;
+    }
+    catch (RuntimeException ex)
+    {
+      throw ex;
+    }
+    catch (Exception ex)
+    {
+      throw new IORuntimeException(ex);
+    }
+
+    File file = cacheDownload.getFile();
+    if (file == null)
+    {
+      // Can't use the cache location, so download directly to the target.
+      return delegate.download(uri, target, startPos, monitor);
+    }
+
+    IStatus status = cacheDownload.getStatus();
+    if (status.isOK())
+    {
       FileInputStream cacheInputStream = null;
 
       try
       {
-        cacheFile.getParentFile().mkdirs();
-        File tempCacheFile = new File(cacheFile.getPath() + ".downloading"); //$NON-NLS-1$
-        try
+        // Files can be many megabytes large, so download them directly to a file.
+        cacheInputStream = new FileInputStream(file);
+        IOUtil.copy(cacheInputStream, target);
+      }
+      catch (FileNotFoundException ex)
+      {
+        // The cache file has been deleted in the meantime, so download directly to the target.
+        return delegate.download(uri, target, startPos, monitor);
+      }
+      catch (IOException ex)
+      {
+        throw new IORuntimeException(ex);
+      }
+      finally
+      {
+        IOUtil.closeSilent(cacheInputStream);
+      }
+    }
+
+    IStatus streamStatus = cacheDownload.getStreamStatus();
+    if (target instanceof IStateful && streamStatus != null)
+    {
+      ((IStateful)target).setStatus(streamStatus);
+    }
+
+    return status;
+  }
+
+  private boolean isCacheUsable(URI uri, File cacheFile)
+  {
+    if (cacheFile.length() > 0)
+    {
+      String path = uri.getSchemeSpecificPart();
+      return OfflineMode.isEnabled() || !path.endsWith("/site.xml") && !path.endsWith("/digest.zip"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    return false;
+  }
+
+  /**
+   * Downloads the given URI into the given cache file.
+   * This is executed only by the first of any concurrent requests for the same URI; the others share the result.
+   */
+  private CacheDownload downloadToCache(URI uri, File cacheFile, long startPos, IProgressMonitor monitor)
+  {
+    // Another request might have finished downloading this URI just before this one started.
+    if (isCacheUsable(uri, cacheFile))
+    {
+      return new CacheDownload(Status.OK_STATUS, null, cacheFile);
+    }
+
+    // If the offline mode is not enabled we must make p2 and (for later) ourselves happy.
+    StatefulFileOutputStream statefulTarget = null;
+
+    cacheFile.getParentFile().mkdirs();
+    File tempCacheFile = null;
+
+    try
+    {
+      // Each download has its own temporary file, so that a request that retries after waiting too long doesn't interfere with the one it waited for.
+      tempCacheFile = File.createTempFile("download", ".downloading", cacheFile.getParentFile()); //$NON-NLS-1$ //$NON-NLS-2$
+      statefulTarget = new StatefulFileOutputStream(tempCacheFile, new StreamDigester());
+    }
+    catch (IOException ex)
+    {
+      // Can't open an output stream on the cache location.
+      if (tempCacheFile != null)
+      {
+        tempCacheFile.delete();
+      }
+
+      return new CacheDownload(null, null, null);
+    }
+
+    try
+    {
+      IStatus status = delegate.download(uri, statefulTarget, startPos, monitor);
+      IOUtil.closeSilent(statefulTarget);
+
+      if (status.getSeverity() == IStatus.CANCEL)
+      {
+        // Let the requests that are waiting for this one try again, unless they're canceled too.
+        throw new OperationCanceledException();
+      }
+
+      if (status.isOK())
+      {
+        if (!tempCacheFile.renameTo(cacheFile))
         {
-          statefulTarget = new StatefulFileOutputStream(tempCacheFile);
+          // On Windows an existing file can't be replaced by a rename.
+          cacheFile.delete();
+          tempCacheFile.renameTo(cacheFile);
         }
-        catch (IOException ex)
+
+        cacheEvictor.miss(cacheFile);
+
+        DownloadStatus downloadStatus = (DownloadStatus)status;
+        long lastModified = downloadStatus.getLastModified();
+        if (lastModified >= 0)
         {
-          // Can't open an output stream on the cache location.
+          cacheFile.setLastModified(lastModified);
         }
 
-        IStatus status = delegate.download(uri, statefulTarget != null ? statefulTarget : target, startPos, monitor);
+        // The digests of a complete download are kept next to the cache file so that it never needs to be read again to compute them.
+        if (startPos <= 0)
+        {
+          statefulTarget.getDigester().writeSidecar(cacheFile);
+        }
 
-        // If we have a cached stateful target, we need to transfer the bytes into the original target.
-        if (statefulTarget != null)
+        // Remove the other form that might be cached.
+        String path = cacheFile.getPath();
+        if (path.endsWith(".xml")) //$NON-NLS-1$
         {
-          IOUtil.closeSilent(statefulTarget);
-          if (status.isOK())
-          {
-            cacheFile.delete();
-            tempCacheFile.renameTo(cacheFile);
+          new File(path.substring(0, path.length() - 4) + ".jar").delete(); //$NON-NLS-1$
+        }
+        else if (path.endsWith(".jar")) //$NON-NLS-1$
+        {
+          new File(path.substring(0, path.length() - 4) + ".xml").delete(); //$NON-NLS-1$
+        }
+      }
 
-            // Files can be many megabytes large, so download them directly to a file.
-            cacheInputStream = new FileInputStream(cacheFile);
-            IOUtil.copy(cacheInputStream, target);
+      return new CacheDownload(status, statefulTarget.getStatus(), cacheFile);
+    }
+    finally
+    {
+      IOUtil.closeSilent(statefulTarget);
+      if (tempCacheFile.exists())
+      {
+        IOUtil.deleteBestEffort(tempCacheFile);
+      }
+    }
+  }
 
-            DownloadStatus downloadStatus = (DownloadStatus)status;
-            long lastModified = downloadStatus.getLastModified();
-            if (lastModified >= 0)
-            {
-              cacheFile.setLastModified(lastModified);
-            }
+  private IStatus downloadContentAddressed(URI uri, String digest, OutputStream target, long startPos, IProgressMonitor monitor)
+  {
+    // Large artifacts are downloaded in parallel ranges, resuming any previously interrupted download.
+    long size = contentAddressedCache.getSize(uri);
+    if (startPos <= 0 && RangedDownload.isApplicable(size))
+    {
+      RangedDownload rangedDownload = new RangedDownload(delegate, uri, contentAddressedCache, digest, size);
+      IStatus status = rangedDownload.download(monitor);
+      if (status != null)
+      {
+        if (status.isOK())
+        {
+          File file = rangedDownload.getResult();
+          cacheEvictor.miss(file);
 
-            // Remove the other form that might be cached.
-            String path = cacheFile.getPath();
-            if (path.endsWith(".xml")) //$NON-NLS-1$
-            {
-              new File(path.substring(0, path.length() - 4) + ".jar").delete(); //$NON-NLS-1$
-            }
-            else if (path.endsWith(".jar")) //$NON-NLS-1$
-            {
-              new File(path.substring(0, path.length() - 4) + ".xml").delete(); //$NON-NLS-1$
-            }
+          FileInputStream cacheInputStream = null;
+
+          try
+          {
+            cacheInputStream = new FileInputStream(file);
+            IOUtil.copy(cacheInputStream, target);
           }
-          else
+          catch (IOException ex)
           {
-            IOUtil.deleteBestEffort(tempCacheFile);
+            throw new IORuntimeException(ex);
+          }
+          finally
+          {
+            IOUtil.closeSilent(cacheInputStream);
           }
         }
 
         return status;
       }
-      catch (IOException ex)
+
+      // Another thread or process is busy downloading the ranges of this artifact, so download it as a whole.
+    }
+
+    StatefulFileOutputStream statefulTarget = null;
+    File tempFile = null;
+
+    try
+    {
+      tempFile = contentAddressedCache.createTempFile(digest);
+      statefulTarget = new StatefulFileOutputStream(tempFile, new StreamDigester(ContentAddressedCache.ALGORITHM));
+    }
+    catch (IOException ex)
+    {
+      // Can't open an output stream on the cache location, so download directly to the target.
+      if (tempFile != null)
       {
-        throw new IORuntimeException(ex);
+        IOUtil.deleteBestEffort(tempFile, false);
       }
-      finally
+
+      return delegate.download(uri, target, startPos, monitor);
+    }
+
+    FileInputStream cacheInputStream = null;
+
+    try
+    {
+      IStatus status = delegate.download(uri, statefulTarget, startPos, monitor);
+      IOUtil.closeSilent(statefulTarget);
+
+      if (status.isOK())
       {
-        if (target instanceof IStateful && statefulTarget != null)
+        // Only content that matches the checksum recorded in the repository is committed to the cache.
+        // Otherwise the downloaded bytes are passed along as is and p2's own checksum verification will report the problem.
+        File file = contentAddressedCache.commit(tempFile, digest, statefulTarget.getDigester());
+        if (file != null)
         {
-          ((IStateful)target).setStatus(statefulTarget.getStatus());
+          cacheEvictor.miss(file);
         }
 
-        IOUtil.closeSilent(cacheInputStream);
-        IOUtil.closeSilent(statefulTarget);
+        cacheInputStream = new FileInputStream(file != null ? file : tempFile);
+        IOUtil.copy(cacheInputStream, target);
+      }
 
-        removeLock(uri);
+      return status;
+    }
+    catch (IOException ex)
+    {
+      throw new IORuntimeException(ex);
+    }
+    finally
+    {
+      if (target instanceof IStateful)
+      {
+        ((IStateful)target).setStatus(statefulTarget.getStatus());
+      }
+
+      IOUtil.closeSilent(cacheInputStream);
+      IOUtil.closeSilent(statefulTarget);
+
+      if (tempFile.exists())
+      {
+        IOUtil.deleteBestEffort(tempFile, false);
       }
     }
   }
 
+  private IStatus copyCacheFile(File file, OutputStream target)
+  {
+    FileInputStream cacheInputStream = null;
+
+    try
+    {
+      cacheInputStream = new FileInputStream(file);
+      long size = IOUtil.copy(cacheInputStream, target);
+
+      DownloadStatus status = new DownloadStatus(IStatus.OK, P2CorePlugin.INSTANCE.getSymbolicName(), Status.OK_STATUS.getMessage());
+      status.setFileSize(size);
+      status.setLastModified(file.lastModified());
+      return status;
+    }
+    catch (Exception ex)
+    {
+      return null;
+    }
+    finally
+    {
+      IOUtil.closeSilent(cacheInputStream);
+    }
+  }
+
   @Override
   public IStatus download(URI uri, OutputStream target, IProgressMonitor monitor)
   {
@@ -398,11 +678,7 @@ public class CachingTransport extends Transport
     }
     catch (FileNotFoundException ex)
     {
-      synchronized (getLock(uri))
-      {
-        cacheFile.delete();
-      }
-
+      cacheFile.delete();
       throw ex;
     }
 
@@ -413,10 +689,7 @@ public class CachingTransport extends Transport
 
     if (cacheFile.lastModified() != lastModified || lastModified == 0)
     {
-      synchronized (getLock(uri))
-      {
-        cacheFile.delete();
-      }
+      cacheFile.delete();
       return lastModified - 1;
     }
 
@@ -434,23 +707,6 @@ public class CachingTransport extends Transport
     return false;
   }
 
-  private synchronized Object getLock(URI uri)
-  {
-    Object result = URI_LOCKS.get(uri);
-    if (result == null)
-    {
-      result = new Object();
-      URI_LOCKS.put(uri, result);
-    }
-
-    return result;
-  }
-
-  private synchronized void removeLock(URI uri)
-  {
-    URI_LOCKS.remove(uri);
-  }
-
   private static boolean isLoadingRepository(URI uri)
   {
     LocationStack stack = REPOSITORY_LOCATIONS.get();
@@ -537,16 +793,110 @@ public class CachingTransport extends Transport
     }
   }
 
+  /**
+   * The result of downloading a URI into the cache, shared by all concurrent requests for that URI.
+   *
+   * @author Eike Stepper
+   */
+  private static final class CacheDownload
+  {
+    private final IStatus status;
+
+    private final IStatus streamStatus;
+
+    private final File file;
+
+    public CacheDownload(IStatus status, IStatus streamStatus, File file)
+    {
+      this.status = status;
+      this.streamStatus = streamStatus;
+      this.file = file;
+    }
+
+    public IStatus getStatus()
+    {
+      return status;
+    }
+
+    public IStatus getStreamStatus()
+    {
+      return streamStatus;
+    }
+
+    /**
+     * Returns the cache file, or <code>null</code> if the cache location can't be used.
+     */
+    public File getFile()
+    {
+      return file;
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private final class CacheDownloadRequest implements SingleFlight.Request<CacheDownload>
+  {
+    private final URI uri;
+
+    private final File cacheFile;
+
+    private final long startPos;
+
+    private final IProgressMonitor monitor;
+
+    public CacheDownloadRequest(URI uri, File cacheFile, long startPos, IProgressMonitor monitor)
+    {
+      this.uri = uri;
+      this.cacheFile = cacheFile;
+      this.startPos = startPos;
+      this.monitor = monitor;
+    }
+
+    public CacheDownload execute() throws Exception
+    {
+      return downloadToCache(uri, cacheFile, startPos, monitor);
+    }
+  }
+
   /**
    * @author Eike Stepper
    */
   private static final class StatefulFileOutputStream extends FileOutputStream implements IStateful
   {
+    private final StreamDigester digester;
+
     private IStatus status;
 
-    public StatefulFileOutputStream(File file) throws FileNotFoundException
+    public StatefulFileOutputStream(File file, StreamDigester digester) throws FileNotFoundException
     {
       super(file);
+      this.digester = digester;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      super.write(b);
+      digester.update(b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException
+    {
+      write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      super.write(b, off, len);
+      digester.update(b, off, len);
+    }
+
+    public StreamDigester getDigester()
+    {
+      return digester;
     }
 
     public IStatus getStatus()
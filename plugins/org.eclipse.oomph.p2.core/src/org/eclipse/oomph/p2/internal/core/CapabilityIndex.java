@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.IOUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A single-file index of all capabilities that can be memory-mapped, such that looking up the repositories that provide a capability
+ * costs a binary search over the mapped file, without deserializing it.
+ * <p>
+ * The file is laid out as follows, with all integers in big-endian order and all offsets relative to the start of the file:
+ * <pre>
+ * int     magic
+ * int     version
+ * long    time stamp, the same as in the repositories file
+ * int     capability count
+ * int     version string count
+ * (int key offset, int postings offset)[capability count], sorted by the UTF-8 bytes of the keys
+ * int     version string offset[version string count]
+ * (unsigned short length, UTF-8 bytes)[capability count + version string count]
+ * postings[capability count]
+ * </pre>
+ * The key of a capability is its segment-encoded namespace and name, separated by a slash, i.e., the same as the path of its capability file.
+ * Each postings list consists of the number of repositories, followed for each repository by its ID, the number of versions,
+ * and the index of each version in the interned version string table.
+ *
+ * @author Eike Stepper
+ */
+public final class CapabilityIndex
+{
+  public static final String FILE_NAME = "capabilities.idx"; //$NON-NLS-1$
+
+  private static final int MAGIC = 0x4F434958;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 24;
+
+  private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+  private static final Comparator<byte[]> BYTES_COMPARATOR = new Comparator<byte[]>()
+  {
+    public int compare(byte[] bytes1, byte[] bytes2)
+    {
+      int length = Math.min(bytes1.length, bytes2.length);
+      for (int i = 0; i < length; i++)
+      {
+        int result = (bytes1[i] & 0xFF) - (bytes2[i] & 0xFF);
+        if (result != 0)
+        {
+          return result;
+        }
+      }
+
+      return bytes1.length - bytes2.length;
+    }
+  };
+
+  private final ByteBuffer buffer;
+
+  private final long timeStamp;
+
+  private final int keyCount;
+
+  private final int versionCount;
+
+  private CapabilityIndex(ByteBuffer buffer) throws IOException
+  {
+    this.buffer = buffer;
+
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+    {
+      throw new IOException("Invalid capability index"); //$NON-NLS-1$
+    }
+
+    timeStamp = buffer.getLong(8);
+    keyCount = buffer.getInt(16);
+    versionCount = buffer.getInt(20);
+  }
+
+  public long getTimeStamp()
+  {
+    return timeStamp;
+  }
+
+  public int getCapabilityCount()
+  {
+    return keyCount;
+  }
+
+  /**
+   * Returns the map from repository ID to the versions of the capability with the given key provided by that repository,
+   * or an empty map if there is no such capability.
+   * This method is thread-safe because it only uses absolute reads of the buffer.
+   */
+  public Map<Integer, List<String>> lookup(String key)
+  {
+    int postingsOffset = findPostings(encode(key));
+    if (postingsOffset == -1)
+    {
+      return Collections.emptyMap();
+    }
+
+    Map<Integer, List<String>> result = new LinkedHashMap<Integer, List<String>>();
+
+    int offset = postingsOffset;
+    int repositoryCount = buffer.getInt(offset);
+    offset += 4;
+
+    for (int i = 0; i < repositoryCount; i++)
+    {
+      int repositoryID = buffer.getInt(offset);
+      int count = buffer.getInt(offset + 4);
+      offset += 8;
+
+      List<String> versions = new ArrayList<String>(count);
+      for (int j = 0; j < count; j++)
+      {
+        int versionIndex = buffer.getInt(offset);
+        offset += 4;
+
+        versions.add(readString(buffer.getInt(HEADER_SIZE + 8 * keyCount + 4 * versionIndex)));
+      }
+
+      result.put(repositoryID, versions);
+    }
+
+    return result;
+  }
+
+  private int findPostings(byte[] key)
+  {
+    int low = 0;
+    int high = keyCount - 1;
+    while (low <= high)
+    {
+      int middle = (low + high) >>> 1;
+      int entryOffset = HEADER_SIZE + 8 * middle;
+
+      int result = compare(buffer.getInt(entryOffset), key);
+      if (result < 0)
+      {
+        low = middle + 1;
+      }
+      else if (result > 0)
+      {
+        high = middle - 1;
+      }
+      else
+      {
+        return buffer.getInt(entryOffset + 4);
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Compares the string stored at the given offset with the given bytes, without copying the stored string.
+   */
+  private int compare(int offset, byte[] bytes)
+  {
+    int length = buffer.getShort(offset) & 0xFFFF;
+    int commonLength = Math.min(length, bytes.length);
+    for (int i = 0; i < commonLength; i++)
+    {
+      int result = (buffer.get(offset + 2 + i) & 0xFF) - (bytes[i] & 0xFF);
+      if (result != 0)
+      {
+        return result;
+      }
+    }
+
+    return length - bytes.length;
+  }
+
+  private String readString(int offset)
+  {
+    int length = buffer.getShort(offset) & 0xFFFF;
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++)
+    {
+      bytes[i] = buffer.get(offset + 2 + i);
+    }
+
+    try
+    {
+      return new String(bytes, UTF_8);
+    }
+    catch (UnsupportedEncodingException ex)
+    {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "CapabilityIndex[" + keyCount + " capabilities, " + versionCount + " versions]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+  }
+
+  /**
+   * Maps the given file into memory.
+   * The mapping remains valid until the returned index is garbage collected.
+   */
+  public static CapabilityIndex open(File file) throws IOException
+  {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+
+    try
+    {
+      FileChannel channel = randomAccessFile.getChannel();
+      return new CapabilityIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+    finally
+    {
+      IOUtil.close(randomAccessFile);
+    }
+  }
+
+  /**
+   * Writes an index of the given capabilities, i.e., a map from capability key to a map from repository ID to versions, to the given file.
+   * The file is written to a temporary file first and then renamed, so that readers never map a partially written file.
+   */
+  public static void write(File file, long timeStamp, Map<String, ? extends Map<Integer, ? extends Collection<String>>> capabilities) throws IOException
+  {
+    int keyCount = capabilities.size();
+    byte[][] keys = new byte[keyCount][];
+    Map<byte[], Map<Integer, ? extends Collection<String>>> postings = new HashMap<byte[], Map<Integer, ? extends Collection<String>>>();
+    TreeSet<String> versionSet = new TreeSet<String>();
+
+    int i = 0;
+    for (Map.Entry<String, ? extends Map<Integer, ? extends Collection<String>>> entry : capabilities.entrySet())
+    {
+      byte[] key = encode(entry.getKey());
+      keys[i++] = key;
+      postings.put(key, entry.getValue());
+
+      for (Collection<String> versions : entry.getValue().values())
+      {
+        versionSet.addAll(versions);
+      }
+    }
+
+    Arrays.sort(keys, BYTES_COMPARATOR);
+
+    int versionCount = versionSet.size();
+    byte[][] versions = new byte[versionCount][];
+    Map<String, Integer> versionIndices = new HashMap<String, Integer>();
+    i = 0;
+    for (String version : versionSet)
+    {
+      versionIndices.put(version, i);
+      versions[i++] = encode(version);
+    }
+
+    // Compute all offsets up front so that the file can be written sequentially.
+    long offset = HEADER_SIZE + 8L * keyCount + 4L * versionCount;
+    int[] keyOffsets = new int[keyCount];
+    for (i = 0; i < keyCount; i++)
+    {
+      keyOffsets[i] = checkOffset(offset);
+      offset += 2 + keys[i].length;
+    }
+
+    int[] versionOffsets = new int[versionCount];
+    for (i = 0; i < versionCount; i++)
+    {
+      versionOffsets[i] = checkOffset(offset);
+      offset += 2 + versions[i].length;
+    }
+
+    int[] postingsOffsets = new int[keyCount];
+    for (i = 0; i < keyCount; i++)
+    {
+      postingsOffsets[i] = checkOffset(offset);
+      offset += 4;
+
+      for (Collection<String> repositoryVersions : postings.get(keys[i]).values())
+      {
+        offset += 8 + 4 * repositoryVersions.size();
+      }
+    }
+
+    checkOffset(offset);
+
+    File tempFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+    DataOutputStream out = null;
+
+    try
+    {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(timeStamp);
+      out.writeInt(keyCount);
+      out.writeInt(versionCount);
+
+      for (i = 0; i < keyCount; i++)
+      {
+        out.writeInt(keyOffsets[i]);
+        out.writeInt(postingsOffsets[i]);
+      }
+
+      for (i = 0; i < versionCount; i++)
+      {
+        out.writeInt(versionOffsets[i]);
+      }
+
+      for (byte[] key : keys)
+      {
+        out.writeShort(key.length);
+        out.write(key);
+      }
+
+      for (byte[] version : versions)
+      {
+        out.writeShort(version.length);
+        out.write(version);
+      }
+
+      for (byte[] key : keys)
+      {
+        Map<Integer, ? extends Collection<String>> repositoryVersions = postings.get(key);
+        out.writeInt(repositoryVersions.size());
+
+        for (Map.Entry<Integer, ? extends Collection<String>> entry : repositoryVersions.entrySet())
+        {
+          out.writeInt(entry.getKey());
+          out.writeInt(entry.getValue().size());
+
+          for (String version : entry.getValue())
+          {
+            out.writeInt(versionIndices.get(version));
+          }
+        }
+      }
+
+      out.close();
+      out = null;
+    }
+    finally
+    {
+      IOUtil.close(out);
+    }
+
+    file.delete();
+    if (!tempFile.renameTo(file))
+    {
+      throw new IOException("Can't rename " + tempFile + " to " + file); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+  }
+
+  private static int checkOffset(long offset) throws IOException
+  {
+    if (offset > Integer.MAX_VALUE)
+    {
+      throw new IOException("Capability index too large"); //$NON-NLS-1$
+    }
+
+    return (int)offset;
+  }
+
+  private static byte[] encode(String string)
+  {
+    try
+    {
+      byte[] bytes = string.getBytes(UTF_8);
+      if (bytes.length > 0xFFFF)
+      {
+        throw new IllegalArgumentException("String too long: " + string); //$NON-NLS-1$
+      }
+
+      return bytes;
+    }
+    catch (UnsupportedEncodingException ex)
+    {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.PropertiesUtil;
+import org.eclipse.oomph.util.TaskScheduler;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Loads the children of a composite repository concurrently, while the composite itself is being loaded.
+ * <p>
+ * p2's composite repositories load their children one after the other, in the order in which they're declared.
+ * That sequential loading isn't changed, so the children are still added to the composite in a deterministic order.
+ * Instead, before the composite is loaded, its child locations are read from the composite index
+ * and each child is loaded through the repository manager on the I/O lane of the {@link TaskScheduler}.
+ * Each such load goes through the manager's usual <code>enterLoad</code>/<code>exitLoad</code> bookkeeping,
+ * so when the composite gets to a child that is being loaded concurrently, it waits for that load to finish and then reuses the loaded repository.
+ * The children of a composite that is itself such a child are loaded one after the other,
+ * because a thread of the I/O lane must not wait for the loads of other tasks of that lane.
+ * <p>
+ * The number of children of a composite that are loaded concurrently is specified by the <code>oomph.p2.repository.parallel.loads</code> system property, which defaults to 0, i.e., disabled.
+ *
+ * @author Eike Stepper
+ */
+@SuppressWarnings("restriction")
+final class CompositeChildLoader
+{
+  public static final String PROP_PARALLEL_LOADS = "oomph.p2.repository.parallel.loads"; //$NON-NLS-1$
+
+  /**
+   * Whether the current thread loads a child for a loader.
+   */
+  private static final ThreadLocal<Boolean> LOADING_CHILD = new ThreadLocal<Boolean>();
+
+  private final IRepositoryManager<?> manager;
+
+  private final List<URI> children;
+
+  private final int parallelLoads;
+
+  /**
+   * The monitor of the composite's load, whose cancelation cancels the loads of the children as well.
+   */
+  private final IProgressMonitor monitor;
+
+  /**
+   * Set when the composite has been loaded, so that children that haven't started loading yet aren't loaded by this loader anymore.
+   */
+  private volatile boolean canceled;
+
+  /**
+   * The futures of the loads that have been started, which also guards the {@link #nextChild}.
+   */
+  private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+  private int nextChild;
+
+  private CompositeChildLoader(IRepositoryManager<?> manager, List<URI> children, int parallelLoads, IProgressMonitor monitor)
+  {
+    this.manager = manager;
+    this.children = children;
+    this.parallelLoads = parallelLoads;
+    this.monitor = monitor;
+  }
+
+  /**
+   * Stops loading the children that haven't started loading yet.
+   * The loads that have already started are completed, so that the repository manager still caches their repositories.
+   */
+  public void cancel()
+  {
+    synchronized (futures)
+    {
+      canceled = true;
+      for (Future<?> future : futures)
+      {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private void start()
+  {
+    for (int i = 0; i < parallelLoads; ++i)
+    {
+      startNext();
+    }
+  }
+
+  private void startNext()
+  {
+    synchronized (futures)
+    {
+      if (canceled || monitor.isCanceled() || nextChild >= children.size())
+      {
+        return;
+      }
+
+      final URI child = children.get(nextChild++);
+      futures.add(TaskScheduler.submit(TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_DEFAULT, child.getHost(), new Runnable()
+      {
+        public void run()
+        {
+          LOADING_CHILD.set(Boolean.TRUE);
+
+          try
+          {
+            load(child);
+          }
+          finally
+          {
+            LOADING_CHILD.remove();
+            startNext();
+          }
+        }
+      }));
+    }
+  }
+
+  private void load(URI child)
+  {
+    try
+    {
+      if (canceled || monitor.isCanceled())
+      {
+        return;
+      }
+
+      // Each load has its own monitor, so that canceling this loader doesn't abort the loads that have already started.
+      IProgressMonitor loadMonitor = new NullProgressMonitor()
+      {
+        @Override
+        public boolean isCanceled()
+        {
+          return super.isCanceled() || monitor.isCanceled();
+        }
+      };
+
+      if (manager instanceof IMetadataRepositoryManager)
+      {
+        ((IMetadataRepositoryManager)manager).loadRepository(child, loadMonitor);
+      }
+      else if (manager instanceof IArtifactRepositoryManager)
+      {
+        ((IArtifactRepositoryManager)manager).loadRepository(child, loadMonitor);
+      }
+    }
+    catch (ProvisionException ex)
+    {
+      // The composite's own load of this child will report the problem.
+    }
+    catch (RuntimeException ex)
+    {
+      // The composite's own load of this child will report the problem.
+    }
+  }
+
+  public static boolean isEnabled()
+  {
+    return getParallelLoads() > 0;
+  }
+
+  private static int getParallelLoads()
+  {
+    return PropertiesUtil.getProperty(PROP_PARALLEL_LOADS, 0);
+  }
+
+  public static boolean isComposite(String suffix)
+  {
+    return suffix.startsWith("composite") && (suffix.endsWith(".xml") || suffix.endsWith(".jar")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+  }
+
+  /**
+   * Starts loading the children of the composite repository with the given location and index file suffix,
+   * returning the loader that must be {@link #cancel() canceled} once the composite has been loaded,
+   * or <code>null</code> if there is nothing to load concurrently.
+   * This must be called on the thread that loads the composite, so that the transport caches the composite index for that load.
+   */
+  public static CompositeChildLoader start(IRepositoryManager<?> manager, Transport transport, URI location, String suffix, IProgressMonitor monitor)
+  {
+    if (LOADING_CHILD.get() != null)
+    {
+      // This composite is itself the child of a composite whose children are loaded concurrently.
+      // Its children are loaded on this thread of the I/O lane, rather than by other tasks of that lane that this thread would have to wait for,
+      // so that deeply nested composites can't occupy all threads of the lane with waiting for tasks that are queued behind them.
+      return null;
+    }
+
+    List<URI> children = getChildren(transport, location, suffix, monitor);
+    if (children.size() < 2)
+    {
+      return null;
+    }
+
+    CompositeChildLoader loader = new CompositeChildLoader(manager, children, getParallelLoads(), monitor);
+    loader.start();
+    return loader;
+  }
+
+  private static List<URI> getChildren(Transport transport, URI location, String suffix, IProgressMonitor monitor)
+  {
+    List<URI> result = new ArrayList<URI>();
+
+    try
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      if (!transport.download(URIUtil.append(location, suffix), out, monitor).isOK())
+      {
+        return result;
+      }
+
+      InputStream in = new ByteArrayInputStream(out.toByteArray());
+      if (suffix.endsWith(".jar")) //$NON-NLS-1$
+      {
+        ZipInputStream zipInputStream = new ZipInputStream(in);
+        for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry())
+        {
+          if (entry.getName().endsWith(".xml")) //$NON-NLS-1$
+          {
+            break;
+          }
+        }
+
+        in = zipInputStream;
+      }
+
+      final List<String> childLocations = new ArrayList<String>();
+      SAXParser parser = SAXParserFactory.newInstance().newSAXParser();
+      parser.parse(in, new DefaultHandler()
+      {
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+        {
+          if ("child".equals(qName)) //$NON-NLS-1$
+          {
+            String childLocation = attributes.getValue("location"); //$NON-NLS-1$
+            if (childLocation != null)
+            {
+              childLocations.add(childLocation);
+            }
+          }
+        }
+      });
+
+      IOUtil.closeSilent(in);
+
+      // Resolve the children the same way as p2's composite repositories do, so that the locations are recognized as the same.
+      for (String childLocation : childLocations)
+      {
+        try
+        {
+          result.add(URIUtil.makeAbsolute(new URI(childLocation), location));
+        }
+        catch (URISyntaxException ex)
+        {
+          // The composite's own load will report the problem.
+        }
+      }
+    }
+    catch (Exception ex)
+    {
+      // If the composite index can't be read here, the children are simply loaded sequentially.
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.HexUtil;
+import org.eclipse.oomph.util.IORuntimeException;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.PropertiesUtil;
+import org.eclipse.oomph.util.StreamDigester;
+
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of downloaded artifacts that is keyed by the SHA-256 checksum recorded in the artifact repository,
+ * rather than by the URI from which the artifact is downloaded.
+ * The same artifact served by different mirrors or by different children of a composite repository is therefore stored only once,
+ * and moving a repository or switching to another mirror hits the cache instead of downloading the artifact again.
+ * <p>
+ * The cache is enabled with the <code>oomph.p2.cache.content.addressed</code> system property.
+ *
+ * @author Eike Stepper
+ */
+@SuppressWarnings("restriction")
+public final class ContentAddressedCache
+{
+  public static final String PROP_CONTENT_ADDRESSED_CACHE = "oomph.p2.cache.content.addressed"; //$NON-NLS-1$
+
+  public static final String PROPERTY_DOWNLOAD_CHECKSUM_SHA_256 = "download.checksum.sha-256"; //$NON-NLS-1$
+
+  public static final String PROPERTY_DOWNLOAD_SIZE = "download.size"; //$NON-NLS-1$
+
+  public static final String ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+  private static final String FOLDER_NAME = "sha-256"; //$NON-NLS-1$
+
+  private static final String TEMP_SUFFIX = ".downloading"; //$NON-NLS-1$
+
+  private final File folder;
+
+  /**
+   * A map from artifact URI to the hex-encoded SHA-256 checksum of the artifact at that URI.
+   */
+  private final Map<URI, String> digests = new ConcurrentHashMap<URI, String>();
+
+  /**
+   * A map from artifact URI to the download size of the artifact at that URI, if the repository records it.
+   */
+  private final Map<URI, Long> sizes = new ConcurrentHashMap<URI, Long>();
+
+  /**
+   * A map from a mirror's artifact URI to the URI of that same artifact in the original repository.
+   */
+  private final Map<URI, URI> aliases = new ConcurrentHashMap<URI, URI>();
+
+  /**
+   * The repositories that have been registered but whose descriptors have not yet been indexed.
+   */
+  private final List<SimpleArtifactRepository> pendingRepositories = new ArrayList<SimpleArtifactRepository>();
+
+  public ContentAddressedCache(File cacheFolder)
+  {
+    folder = new File(cacheFolder, FOLDER_NAME);
+  }
+
+  public File getFolder()
+  {
+    return folder;
+  }
+
+  /**
+   * Registers a repository whose artifact descriptors should be used to determine the checksum of the artifacts downloaded from it.
+   * The descriptors are indexed lazily when the first artifact download can't be resolved against what's already indexed.
+   */
+  public void addRepository(SimpleArtifactRepository repository)
+  {
+    synchronized (pendingRepositories)
+    {
+      if (!pendingRepositories.contains(repository))
+      {
+        pendingRepositories.add(repository);
+      }
+    }
+  }
+
+  /**
+   * Records that the given mirror URI serves the same artifact as the given URI in the original repository.
+   */
+  public void addAlias(URI mirrorURI, URI artifactURI)
+  {
+    if (!mirrorURI.equals(artifactURI))
+    {
+      aliases.put(mirrorURI, artifactURI);
+    }
+  }
+
+  /**
+   * Returns the hex-encoded SHA-256 checksum of the artifact at the given URI, or <code>null</code> if it's not known.
+   */
+  public String getDigest(URI uri)
+  {
+    URI artifactURI = resolve(uri);
+    String digest = digests.get(artifactURI);
+    if (digest == null && indexPendingRepositories())
+    {
+      digest = digests.get(artifactURI);
+    }
+
+    return digest;
+  }
+
+  /**
+   * Records the hex-encoded SHA-256 checksum and the download size, or <code>-1</code> if it's not known, of the artifact at the given URI.
+   */
+  public void addDigest(URI uri, String digest, long size)
+  {
+    digests.put(uri, digest.toLowerCase(Locale.ENGLISH));
+    if (size >= 0)
+    {
+      sizes.put(uri, size);
+    }
+  }
+
+  /**
+   * Returns the download size of the artifact at the given URI, or <code>-1</code> if it's not known.
+   * The size is only known for artifacts whose {@link #getDigest(URI) checksum} is known.
+   */
+  public long getSize(URI uri)
+  {
+    Long size = sizes.get(resolve(uri));
+    return size == null ? -1 : size;
+  }
+
+  private URI resolve(URI uri)
+  {
+    URI artifactURI = aliases.get(uri);
+    return artifactURI == null ? uri : artifactURI;
+  }
+
+  /**
+   * Returns the cache file for the given hex-encoded checksum, whether or not that file exists.
+   */
+  public File getFile(String digest)
+  {
+    return new File(new File(folder, digest.substring(0, 2)), digest);
+  }
+
+  /**
+   * Returns whether the content of the given cache file still has the checksum that is its name.
+   * The checksum is taken from the sidecar of the file, as long as the file hasn't changed since the sidecar was written,
+   * so that the file is only read again if it has changed or has no sidecar.
+   */
+  public boolean isIntact(File file)
+  {
+    try
+    {
+      return file.getName().equalsIgnoreCase(StreamDigester.getDigest(file, ALGORITHM));
+    }
+    catch (IORuntimeException ex)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Returns a new temporary file in the same folder as the cache file for the given hex-encoded checksum,
+   * such that it can later be {@link #commit(File, String, StreamDigester) committed} with a simple rename.
+   */
+  public File createTempFile(String digest) throws IOException
+  {
+    File file = getFile(digest);
+    File parentFolder = file.getParentFile();
+    IOUtil.mkdirs(parentFolder);
+    return File.createTempFile(digest.substring(0, 8), TEMP_SUFFIX, parentFolder);
+  }
+
+  /**
+   * Moves the given temporary file into the cache if the SHA-256 checksum computed by the given digester matches the expected checksum.
+   * All digests computed by the digester are stored in the sidecar of the cache file.
+   * Returns the cache file if the commit succeeded, or <code>null</code> otherwise.
+   * If the commit didn't succeed, the temporary file is left in place and the caller is responsible for deleting it.
+   */
+  public File commit(File tempFile, String expectedDigest, StreamDigester digester)
+  {
+    File result = null;
+    byte[] actualDigest = digester.getDigest(ALGORITHM);
+    if (actualDigest != null && expectedDigest.equals(HexUtil.bytesToHex(actualDigest)))
+    {
+      // Either another thread or process has already moved the same content into place or we do that now.
+      File file = getFile(expectedDigest);
+      if (file.isFile())
+      {
+        IOUtil.deleteBestEffort(tempFile, false);
+        result = file;
+      }
+      else if (tempFile.renameTo(file))
+      {
+        digester.writeSidecar(file);
+        result = file;
+      }
+    }
+
+    return result;
+  }
+
+  private boolean indexPendingRepositories()
+  {
+    // Index while holding the lock so that concurrent downloads wait for the index rather than missing the cache.
+    synchronized (pendingRepositories)
+    {
+      if (pendingRepositories.isEmpty())
+      {
+        return false;
+      }
+
+      for (SimpleArtifactRepository repository : pendingRepositories)
+      {
+        for (IArtifactDescriptor descriptor : repository.getDescriptors())
+        {
+          String checksum = descriptor.getProperty(PROPERTY_DOWNLOAD_CHECKSUM_SHA_256);
+          if (checksum != null && checksum.length() == 64)
+          {
+            URI location = repository.getLocation(descriptor);
+            if (location != null)
+            {
+              digests.put(location, checksum.toLowerCase(Locale.ENGLISH));
+
+              String size = descriptor.getProperty(PROPERTY_DOWNLOAD_SIZE);
+              if (size != null)
+              {
+                try
+                {
+                  sizes.put(location, Long.parseLong(size));
+                }
+                catch (NumberFormatException ex)
+                {
+                  // Ignore a bogus size.
+                }
+              }
+            }
+          }
+        }
+      }
+
+      pendingRepositories.clear();
+      return true;
+    }
+  }
+
+  public static boolean isEnabled()
+  {
+    return PropertiesUtil.isProperty(PROP_CONTENT_ADDRESSED_CACHE);
+  }
+}
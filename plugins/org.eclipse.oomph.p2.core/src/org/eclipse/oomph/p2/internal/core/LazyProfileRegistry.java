@@ -12,6 +12,7 @@ package org.eclipse.oomph.p2.internal.core;
 
 import org.eclipse.oomph.util.IORuntimeException;
 import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.MonitorUtil;
 import org.eclipse.oomph.util.ReflectUtil;
 import org.eclipse.oomph.util.ReflectUtil.ReflectionException;
 
@@ -20,6 +21,7 @@ import org.eclipse.emf.common.CommonPlugin;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.equinox.internal.p2.engine.EngineActivator;
 import org.eclipse.equinox.internal.p2.engine.Profile;
 import org.eclipse.equinox.internal.p2.engine.ProfileLock;
@@ -51,7 +53,7 @@ import java.util.Map;
 @SuppressWarnings("restriction")
 public class LazyProfileRegistry extends SimpleProfileRegistry
 {
-  private static final String PROFILE_EXT = ".profile"; //$NON-NLS-1$
+  static final String PROFILE_EXT = ".profile"; //$NON-NLS-1$
 
   private static final String PROFILE_GZ_EXT = ".profile.gz"; //$NON-NLS-1$
 
@@ -75,11 +77,11 @@ public class LazyProfileRegistry extends SimpleProfileRegistry
 
   private final boolean canWrite;
 
-  private boolean updateSelfProfile;
+  private volatile boolean updateSelfProfile;
 
   private final Map<String, ProfileLock> profileLocks;
 
-  private Map<String, org.eclipse.equinox.internal.p2.engine.Profile> profileMap;
+  private volatile Map<String, org.eclipse.equinox.internal.p2.engine.Profile> profileMap;
 
   @SuppressWarnings("unchecked")
   public LazyProfileRegistry(IProvisioningAgent provisioningAgent, File store, boolean updateSelfProfile) throws Exception
@@ -221,77 +223,105 @@ public class LazyProfileRegistry extends SimpleProfileRegistry
     return super.containsProfile(id);
   }
 
+  /**
+   * Returns the internal map of all profiles, which the super class modifies while it holds the registry's monitor.
+   */
   @Override
-  protected synchronized final Map<String, org.eclipse.equinox.internal.p2.engine.Profile> getProfileMap()
+  protected final Map<String, org.eclipse.equinox.internal.p2.engine.Profile> getProfileMap()
   {
-    return getProfileMap(new NullProgressMonitor());
+    return getInternalProfileMap(new NullProgressMonitor());
   }
 
-  public synchronized final Map<String, org.eclipse.equinox.internal.p2.engine.Profile> getProfileMap(IProgressMonitor monitor)
+  /**
+   * Returns a snapshot of the map of all profiles of this registry, scanning the profile directories if the map hasn't been created yet.
+   * The scan is served from the {@link ProfileRegistryIndex index} of the registry folder, as far as that's valid,
+   * and lists the remaining profile directories concurrently.
+   *
+   * @throws OperationCanceledException if the given monitor is canceled during the scan.
+   */
+  public final Map<String, org.eclipse.equinox.internal.p2.engine.Profile> getProfileMap(IProgressMonitor monitor)
   {
-    if (profileMap == null)
+    Map<String, org.eclipse.equinox.internal.p2.engine.Profile> profileMap = getInternalProfileMap(monitor);
+    synchronized (this)
     {
-      if (store == null || !store.isDirectory())
-      {
-        throw new IllegalStateException(NLS.bind(Messages.LazyProfileRegistry_RegistryDirectoryNotAvailable_exception, store));
-      }
+      return new HashMap<String, org.eclipse.equinox.internal.p2.engine.Profile>(profileMap);
+    }
+  }
 
-      profileMap = new HashMap<String, org.eclipse.equinox.internal.p2.engine.Profile>();
+  /**
+   * Returns the internal map of all profiles, scanning the profile directories if the map hasn't been created yet.
+   * Once the map has been created, this method doesn't block on the registry's monitor.
+   */
+  private Map<String, org.eclipse.equinox.internal.p2.engine.Profile> getInternalProfileMap(IProgressMonitor monitor)
+  {
+    Map<String, org.eclipse.equinox.internal.p2.engine.Profile> result = profileMap;
+    if (result != null && !updateSelfProfile)
+    {
+      return result;
+    }
 
-      File[] profileDirectories = store.listFiles(new FileFilter()
+    synchronized (this)
+    {
+      if (profileMap == null)
       {
-        public boolean accept(File pathname)
+        if (store == null || !store.isDirectory())
         {
-          return pathname.getName().endsWith(PROFILE_EXT) && pathname.isDirectory();
+          throw new IllegalStateException(NLS.bind(Messages.LazyProfileRegistry_RegistryDirectoryNotAvailable_exception, store));
         }
-      });
 
-      if (profileDirectories == null)
-      {
-        profileDirectories = new File[0];
-      }
-
-      monitor.beginTask("", profileDirectories.length); //$NON-NLS-1$
+        Map<String, org.eclipse.equinox.internal.p2.engine.Profile> profileMap = new HashMap<String, org.eclipse.equinox.internal.p2.engine.Profile>();
+        monitor.beginTask("", 2); //$NON-NLS-1$
 
-      try
-      {
-        for (File profileDirectory : profileDirectories)
+        try
         {
-          P2CorePlugin.checkCancelation(monitor);
+          Map<File, File> latestProfileFiles = ProfileRegistryIndex.findLatestProfileFiles(store, canWrite, MonitorUtil.create(monitor, 1));
 
-          File profileFile = findLatestProfileFile(profileDirectory);
-          if (profileFile == null)
-          {
-            monitor.subTask(NLS.bind(Messages.LazyProfileRegistry_Deleting_task, profileDirectory));
-            IOUtil.deleteBestEffort(profileFile);
-          }
-          else
+          IProgressMonitor registerMonitor = MonitorUtil.create(monitor, 1);
+          registerMonitor.beginTask("", latestProfileFiles.size()); //$NON-NLS-1$
+
+          for (Map.Entry<File, File> entry : latestProfileFiles.entrySet())
           {
-            String directoryName = profileDirectory.getName();
-            String profileId = unescape(directoryName.substring(0, directoryName.lastIndexOf(PROFILE_EXT)));
+            P2CorePlugin.checkCancelation(monitor);
 
-            monitor.subTask(NLS.bind(Messages.LazyProfileRegistry_Registering_task, profileId));
+            File profileDirectory = entry.getKey();
+            File profileFile = entry.getValue();
+            if (profileFile == null)
+            {
+              registerMonitor.subTask(NLS.bind(Messages.LazyProfileRegistry_Deleting_task, profileDirectory));
+              IOUtil.deleteBestEffort(profileFile);
+            }
+            else
+            {
+              String directoryName = profileDirectory.getName();
+              String profileId = unescape(directoryName.substring(0, directoryName.lastIndexOf(PROFILE_EXT)));
 
-            LazyProfile profile = new LazyProfile(this, profileId, profileDirectory);
-            profileMap.put(profileId, profile);
+              registerMonitor.subTask(NLS.bind(Messages.LazyProfileRegistry_Registering_task, profileId));
+
+              LazyProfile profile = new LazyProfile(this, profileId, profileDirectory);
+              profileMap.put(profileId, profile);
+            }
+
+            registerMonitor.worked(1);
           }
 
-          monitor.worked(1);
+          registerMonitor.done();
         }
+        finally
+        {
+          monitor.done();
+        }
+
+        this.profileMap = profileMap;
       }
-      finally
+
+      if (updateSelfProfile)
       {
-        monitor.done();
+        ReflectUtil.invokeMethod(updateSelfProfileMethod, this, profileMap);
+        updateSelfProfile = false;
       }
-    }
 
-    if (updateSelfProfile)
-    {
-      ReflectUtil.invokeMethod(updateSelfProfileMethod, this, profileMap);
-      updateSelfProfile = false;
+      return profileMap;
     }
-
-    return profileMap;
   }
 
   public org.eclipse.equinox.internal.p2.engine.Profile loadProfile(String profileId, File profileDirectory)
@@ -63,6 +63,8 @@ public class Messages extends NLS
 
   public static String CachingRepositoryManager_Failure_message;
 
+  public static String CachingRepositoryManager_History_message;
+
   public static String CachingRepositoryManager_LoadingFailed_message;
 
   public static String CachingRepositoryManager_NonRelative_message;
@@ -101,8 +103,6 @@ public class Messages extends NLS
 
   public static String PersistentMap_LockInterrupted_exception;
 
-  public static String PersistentMap_LockTimeout_exception;
-
   public static String ProfileImpl_ProfileNotExists_exception;
 
   public static String ProfileReferencerImpl_NotDirectory_exception;
@@ -121,6 +121,12 @@ public class Messages extends NLS
 
   public static String ProfileTransactionImpl_RepositoryLoader_thread;
 
+  public static String RangedDownload_ChecksumMismatch_exception;
+
+  public static String RangedDownload_Failed_exception;
+
+  public static String RangedDownload_Incomplete_exception;
+
   public static String RepositoryFinder_Found_message;
 
   static
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.PropertiesUtil;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.p2.core.IAgentLocation;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The download speed, success and failure history of the mirrors used by the {@link CachingRepositoryManager.Artifact.BetterMirrorSelector better mirror selector},
+ * persisted in the data area of the agent location so that subsequent processes don't need to probe every mirror again.
+ * <p>
+ * Older measurements lose weight over time, with a half-life in days specified by the <code>oomph.p2.mirror.statistics.half.life</code> system property,
+ * so that a mirror that was once slow or failing is eventually probed again.
+ *
+ * @author Eike Stepper
+ */
+public final class MirrorStatistics
+{
+  public static final String PROP_HALF_LIFE = "oomph.p2.mirror.statistics.half.life"; //$NON-NLS-1$
+
+  private static final String FILE_NAME = "mirrors.properties"; //$NON-NLS-1$
+
+  private static final long DAY = 24L * 60L * 60L * 1000L;
+
+  private static final long HALF_LIFE = PropertiesUtil.getProperty(PROP_HALF_LIFE, 7) * DAY;
+
+  /**
+   * A record whose weight has decayed below this value is considered stale and is forgotten.
+   */
+  private static final double MIN_WEIGHT = 0.01;
+
+  private static final Map<File, MirrorStatistics> INSTANCES = new HashMap<File, MirrorStatistics>();
+
+  private final File file;
+
+  private final Map<String, Record> records = new HashMap<String, Record>();
+
+  private boolean loaded;
+
+  private MirrorStatistics(File file)
+  {
+    this.file = file;
+  }
+
+  public File getFile()
+  {
+    return file;
+  }
+
+  /**
+   * Returns the decayed record for the given mirror location, or <code>null</code> if there is no such record.
+   */
+  public synchronized Record getRecord(String location)
+  {
+    load();
+
+    Record record = records.get(location);
+    return record == null ? null : record.decay(System.currentTimeMillis());
+  }
+
+  /**
+   * Merges the measurements of a completed operation into the record of the given mirror location.
+   */
+  public synchronized void update(String location, long speed, int successes, int failures)
+  {
+    if (successes == 0 && failures == 0)
+    {
+      return;
+    }
+
+    load();
+
+    long now = System.currentTimeMillis();
+    Record record = records.get(location);
+    if (record == null)
+    {
+      record = new Record(speed, successes, failures, now);
+    }
+    else
+    {
+      record = record.decay(now).merge(speed, successes, failures, now);
+    }
+
+    records.put(location, record);
+  }
+
+  /**
+   * Saves the records, merging them with those that other processes have saved in the meantime.
+   */
+  public synchronized void save()
+  {
+    if (!loaded)
+    {
+      return;
+    }
+
+    try
+    {
+      long now = System.currentTimeMillis();
+      Map<String, Record> otherRecords = read();
+      for (Map.Entry<String, Record> entry : otherRecords.entrySet())
+      {
+        String location = entry.getKey();
+        Record otherRecord = entry.getValue();
+        Record record = records.get(location);
+        if (record == null || record.getTimeStamp() < otherRecord.getTimeStamp())
+        {
+          records.put(location, otherRecord);
+        }
+      }
+
+      Map<String, String> properties = new LinkedHashMap<String, String>();
+      for (Map.Entry<String, Record> entry : records.entrySet())
+      {
+        Record record = entry.getValue();
+        if (record.getWeight(now) >= MIN_WEIGHT)
+        {
+          properties.put(entry.getKey(), record.toString());
+        }
+      }
+
+      // Write to a temporary file first so that concurrent readers never see a partially written file.
+      File tempFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+      PropertiesUtil.saveProperties(tempFile, properties, true);
+      if (!tempFile.renameTo(file))
+      {
+        file.delete();
+        if (!tempFile.renameTo(file))
+        {
+          IOUtil.deleteBestEffort(tempFile, false);
+        }
+      }
+    }
+    catch (Exception ex)
+    {
+      // The statistics are only a hint, so never fail because of them.
+      P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+    }
+  }
+
+  private void load()
+  {
+    if (!loaded)
+    {
+      loaded = true;
+      records.putAll(read());
+    }
+  }
+
+  private Map<String, Record> read()
+  {
+    Map<String, Record> result = new HashMap<String, Record>();
+
+    try
+    {
+      for (Map.Entry<String, String> entry : PropertiesUtil.getProperties(file).entrySet())
+      {
+        Record record = Record.parse(entry.getValue());
+        if (record != null)
+        {
+          result.put(entry.getKey(), record);
+        }
+      }
+    }
+    catch (Exception ex)
+    {
+      // Ignore a corrupt or concurrently written file.
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the statistics for the given agent, or <code>null</code> if the agent has no location.
+   */
+  public static MirrorStatistics get(IProvisioningAgent agent)
+  {
+    IAgentLocation agentLocation = (IAgentLocation)agent.getService(IAgentLocation.SERVICE_NAME);
+    if (agentLocation == null)
+    {
+      return null;
+    }
+
+    URI dataArea = agentLocation.getDataArea(P2CorePlugin.INSTANCE.getSymbolicName());
+    File folder = dataArea == null ? null : URIUtil.toFile(dataArea);
+    if (folder == null)
+    {
+      return null;
+    }
+
+    File file = new File(folder, FILE_NAME);
+    synchronized (INSTANCES)
+    {
+      MirrorStatistics mirrorStatistics = INSTANCES.get(file);
+      if (mirrorStatistics == null)
+      {
+        mirrorStatistics = new MirrorStatistics(file);
+        INSTANCES.put(file, mirrorStatistics);
+      }
+
+      return mirrorStatistics;
+    }
+  }
+
+  /**
+   * An immutable record of the speed in bytes per second, and of the weighted number of successes and failures of a mirror.
+   *
+   * @author Eike Stepper
+   */
+  public static final class Record
+  {
+    private final long speed;
+
+    private final double successes;
+
+    private final double failures;
+
+    private final long timeStamp;
+
+    private Record(long speed, double successes, double failures, long timeStamp)
+    {
+      this.speed = speed;
+      this.successes = successes;
+      this.failures = failures;
+      this.timeStamp = timeStamp;
+    }
+
+    public long getSpeed()
+    {
+      return speed;
+    }
+
+    public double getSuccesses()
+    {
+      return successes;
+    }
+
+    public double getFailures()
+    {
+      return failures;
+    }
+
+    public long getTimeStamp()
+    {
+      return timeStamp;
+    }
+
+    /**
+     * Returns whether more than half of the weighted downloads from this mirror failed.
+     */
+    public boolean isFailing()
+    {
+      return failures > successes;
+    }
+
+    /**
+     * Returns whether the record carries enough weight for the mirror not to need probing again.
+     */
+    public boolean isReliable()
+    {
+      return successes + failures >= 1;
+    }
+
+    private double getWeight(long now)
+    {
+      long age = Math.max(0, now - timeStamp);
+      return HALF_LIFE <= 0 ? 0 : Math.pow(0.5, (double)age / HALF_LIFE);
+    }
+
+    private Record decay(long now)
+    {
+      double weight = getWeight(now);
+      return new Record(speed, successes * weight, failures * weight, now);
+    }
+
+    private Record merge(long speed, int successes, int failures, long now)
+    {
+      // The speed is averaged, weighted by the number of successful downloads on which each measurement is based.
+      long mergedSpeed = this.speed;
+      if (successes > 0)
+      {
+        double totalSuccesses = this.successes + successes;
+        mergedSpeed = (long)((this.speed * this.successes + (double)speed * successes) / totalSuccesses);
+      }
+
+      return new Record(mergedSpeed, this.successes + successes, this.failures + failures, now);
+    }
+
+    @Override
+    public String toString()
+    {
+      return speed + "," + successes + "," + failures + "," + timeStamp; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    private static Record parse(String value)
+    {
+      String[] segments = value.split(","); //$NON-NLS-1$
+      if (segments.length == 4)
+      {
+        try
+        {
+          return new Record(Long.parseLong(segments[0]), Double.parseDouble(segments[1]), Double.parseDouble(segments[2]), Long.parseLong(segments[3]));
+        }
+        catch (NumberFormatException ex)
+        {
+          //$FALL-THROUGH$
+        }
+      }
+
+      return null;
+    }
+  }
+}
@@ -66,7 +66,7 @@ public final class P2CorePlugin extends OomphPlugin
         File oldFolder = new File(folder.getAbsolutePath() + ".core"); //$NON-NLS-1$
         if (oldFolder.isDirectory())
         {
-          IOUtil.copyTree(oldFolder, folder);
+          IOUtil.materializeTree(oldFolder, folder, false);
 
           String message = NLS.bind(Messages.P2CorePlugin_OldFolder_message, folder.getName());
           IOUtil.writeFile(new File(oldFolder, "readme.txt"), message.getBytes()); //$NON-NLS-1$
@@ -65,6 +65,12 @@ public class P2IndexImpl implements P2Index
 
   private File capabilitiesCacheFile;
 
+  private File capabilityIndexCacheFile;
+
+  private CapabilityIndex capabilityIndex;
+
+  private boolean capabilityIndexUnavailable;
+
   private int capabilitiesRefreshHours = -1;
 
   private int repositoriesRefreshHours = -1;
@@ -250,6 +256,58 @@ public class P2IndexImpl implements P2Index
     return true;
   }
 
+  /**
+   * Returns the memory-mapped capability index, downloading it if necessary,
+   * or <code>null</code> if the index server doesn't provide it, in which case the individual capability files are used.
+   */
+  private synchronized CapabilityIndex getCapabilityIndex()
+  {
+    if (!capabilityIndexUnavailable
+        && (capabilityIndex == null || capabilityIndexCacheFile.lastModified() + repositoriesRefreshHours * 60 * 60 * 1000L < System.currentTimeMillis()))
+    {
+      if (capabilityIndexCacheFile == null)
+      {
+        IPath stateLocation = P2CorePlugin.INSTANCE.isOSGiRunning() ? P2CorePlugin.INSTANCE.getStateLocation() : new Path("."); //$NON-NLS-1$
+        capabilityIndexCacheFile = new File(stateLocation.toOSString(), CapabilityIndex.FILE_NAME);
+      }
+
+      try
+      {
+        // Release the current mapping before the file is replaced.
+        capabilityIndex = null;
+        downloadIfModifiedSince(new URL(INDEX_BASE + CapabilityIndex.FILE_NAME), capabilityIndexCacheFile);
+      }
+      catch (FileNotFoundException ex)
+      {
+        capabilityIndexUnavailable = true;
+        return null;
+      }
+      catch (IOException ex)
+      {
+        P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+      }
+
+      try
+      {
+        if (capabilityIndexCacheFile.isFile())
+        {
+          capabilityIndex = CapabilityIndex.open(capabilityIndexCacheFile);
+        }
+        else
+        {
+          capabilityIndexUnavailable = true;
+        }
+      }
+      catch (IOException ex)
+      {
+        P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+        capabilityIndexUnavailable = true;
+      }
+    }
+
+    return capabilityIndex;
+  }
+
   public Repository[] getRepositories()
   {
     initRepositories(false);
@@ -270,6 +328,37 @@ public class P2IndexImpl implements P2Index
       namespace = URI.encodeSegment(namespace, false);
       name = URI.encodeSegment(name, false);
 
+      CapabilityIndex capabilityIndex = getCapabilityIndex();
+      if (capabilityIndex != null)
+      {
+        try
+        {
+          initRepositories(capabilityIndex.getTimeStamp() != timeStamp);
+
+          for (Map.Entry<Integer, List<String>> entry : capabilityIndex.lookup(namespace + "/" + name).entrySet()) //$NON-NLS-1$
+          {
+            Repository repository = repositories.get(entry.getKey());
+            if (repository != null)
+            {
+              Set<Version> versions = new HashSet<Version>();
+              for (String version : entry.getValue())
+              {
+                versions.add(Version.parseVersion(version));
+              }
+
+              capabilities.put(repository, versions);
+            }
+          }
+
+          return capabilities;
+        }
+        catch (Exception ex)
+        {
+          P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+          capabilities.clear();
+        }
+      }
+
       BufferedReader reader = null;
 
       try
@@ -375,10 +464,20 @@ public class P2IndexImpl implements P2Index
         return;
       }
 
-      outputStream = new FileOutputStream(file);
+      // Download to a temporary file first so that a failed download doesn't destroy the cached file.
+      File tempFile = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+      outputStream = new FileOutputStream(tempFile);
       IOUtil.copy(inputStream, outputStream);
       outputStream.close();
-      file.setLastModified(connection.getLastModified());
+      outputStream = null;
+
+      tempFile.setLastModified(connection.getLastModified());
+      file.delete();
+      if (!tempFile.renameTo(file))
+      {
+        tempFile.delete();
+        throw new IOException("Can't replace " + file); //$NON-NLS-1$
+      }
     }
     finally
     {
@@ -11,14 +11,18 @@
 package org.eclipse.oomph.p2.internal.core;
 
 import org.eclipse.oomph.util.CollectionUtil;
+import org.eclipse.oomph.util.HexUtil;
 import org.eclipse.oomph.util.IOUtil;
 import org.eclipse.oomph.util.Pair;
 import org.eclipse.oomph.util.PropertiesUtil;
 import org.eclipse.oomph.util.StringUtil;
-import org.eclipse.oomph.util.ThreadPool;
+import org.eclipse.oomph.util.TaskScheduler;
+import org.eclipse.oomph.util.TaskScheduler.Lane;
+import org.eclipse.oomph.util.TaskScheduler.TaskGroup;
 
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectInputStream;
 import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectOutputStream;
 import org.eclipse.emf.ecore.resource.impl.URIMappingRegistryImpl;
 
@@ -48,6 +52,7 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -55,14 +60,18 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -90,9 +99,45 @@ public final class P2Indexer implements IApplication
 
   private final Queue<SAXParser> parserPool = new ConcurrentLinkedQueue<SAXParser>();
 
-  private final ThreadPool threadPool = new ThreadPool();
+  /**
+   * The tasks that scan the folders and write the capability files.
+   */
+  private final TaskGroup ioTasks = new TaskGroup(Lane.IO);
+
+  /**
+   * The tasks that parse the repository metadata.
+   */
+  private final TaskGroup cpuTasks = new TaskGroup(Lane.CPU);
+
+  /**
+   * The map from capability name to the hash of the content of the capability file, as written by this run.
+   */
+  private final Map<String, String> capabilityHashes = new ConcurrentHashMap<String, String>();
+
+  /**
+   * The map from capability name to the versions of that capability, by repository ID, from which the {@link CapabilityIndex capability index} is written.
+   */
+  private final Map<String, Map<Integer, Set<String>>> capabilityVersions = new ConcurrentHashMap<String, Map<Integer, Set<String>>>();
+
+  private final AtomicInteger restoredRepositories = new AtomicInteger();
+
+  private final AtomicInteger unchangedCapabilities = new AtomicInteger();
+
+  /**
+   * The time stamp that identifies the assignment of IDs to repositories.
+   * It's reused from the previous run if that assignment hasn't changed.
+   */
+  private long timeStamp = System.currentTimeMillis();
 
-  private final long timeStamp = System.currentTimeMillis();
+  /**
+   * The file in which the result of this run is recorded for the next run, or <code>null</code> if the indexing is not incremental.
+   */
+  private File manifestFile;
+
+  /**
+   * The result of the previous run, or <code>null</code> if the indexing is not incremental or if there is no previous result.
+   */
+  private Manifest previousManifest;
 
   private int refreshHours = 24;
 
@@ -108,8 +153,17 @@ public final class P2Indexer implements IApplication
 
   public Object start(IApplicationContext context) throws Exception
   {
-    long start = System.currentTimeMillis();
     String[] args = (String[])context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+    run(args);
+    return null;
+  }
+
+  /**
+   * Runs the indexer with the given application arguments, which is useful for running it outside of an application, e.g., in benchmarks.
+   */
+  public void run(String... args) throws Exception
+  {
+    long start = System.currentTimeMillis();
     LinkedList<String> arguments = new LinkedList<String>(Arrays.asList(args));
 
     try
@@ -139,6 +193,19 @@ public final class P2Indexer implements IApplication
           File reportFolder = new File(arguments.removeFirst());
           reporter = new Reporter(baseURI.toString(), reportFolder);
         }
+        else if ("-incremental".equalsIgnoreCase(arg) || "-i".equals(arg))
+        {
+          manifestFile = new File(arguments.removeFirst()).getCanonicalFile();
+        }
+      }
+
+      if (manifestFile != null)
+      {
+        previousManifest = Manifest.read(manifestFile);
+        if (previousManifest != null)
+        {
+          System.out.println("Incremental analysis based on " + manifestFile);
+        }
       }
 
       if (baseURI.hasTrailingPathSeparator())
@@ -149,10 +216,10 @@ public final class P2Indexer implements IApplication
       System.out.println();
       System.out.println("Starting analysis: " + new Date(start));
       scanFolder(scanFolder, baseURI);
-      threadPool.awaitFinished();
+      ioTasks.awaitFinished();
 
       generateRepositoryMetadata();
-      threadPool.awaitFinished();
+      cpuTasks.awaitFinished();
 
       long end = System.currentTimeMillis();
 
@@ -174,17 +241,21 @@ public final class P2Indexer implements IApplication
       System.out.println();
       System.out.println("Overall duration: " + (System.currentTimeMillis() - start) / 1000 + " seconds.");
       System.out.println();
-
-      threadPool.shutdown();
     }
-
-    return null;
   }
 
   public void stop()
   {
   }
 
+  /**
+   * Returns the number of repositories whose result of the previous run has been reused by the last {@link #run(String...) run}.
+   */
+  public int getRestoredRepositoryCount()
+  {
+    return restoredRepositories.get();
+  }
+
   private void scanFolder(final File folder, final URI uri)
   {
     if (repositories.size() >= maxRepos)
@@ -192,7 +263,7 @@ public final class P2Indexer implements IApplication
       return;
     }
 
-    threadPool.submit(new Runnable()
+    ioTasks.submit(new Runnable()
     {
       public void run()
       {
@@ -234,7 +305,7 @@ public final class P2Indexer implements IApplication
         final String encodedName = URI.encodeSegment(name, false);
         if (name.equals(URI.decode(encodedName)))
         {
-          threadPool.submit(new Runnable()
+          ioTasks.submit(new Runnable()
           {
             public void run()
             {
@@ -331,7 +402,7 @@ public final class P2Indexer implements IApplication
   {
     for (final Repository repository : repositories.values())
     {
-      threadPool.submit(new Runnable()
+      cpuTasks.submit(new Runnable()
       {
         public void run()
         {
@@ -344,6 +415,13 @@ public final class P2Indexer implements IApplication
 
           try
           {
+            // Reuse the result of the previous run if the metadata file hasn't changed since then.
+            if (previousManifest != null && repository.restore(previousManifest))
+            {
+              restoredRepositories.incrementAndGet();
+              return;
+            }
+
             parser = acquireParser();
             repository.processsMetadata(parser);
           }
@@ -397,19 +475,96 @@ public final class P2Indexer implements IApplication
 
   private void generateIndex(File outputFolder) throws Exception
   {
-    int id = 0;
-    for (Repository repository : repositories.values())
+    List<Repository> orderedRepositories = assignIDs();
+    if (previousManifest != null && previousManifest.hasSameIDs(orderedRepositories))
     {
-      repository.setID(++id);
+      // Capability files that refer to the same repositories with the same IDs remain valid, so they need not be rewritten.
+      timeStamp = previousManifest.getTimeStamp();
     }
 
     outputFolder.mkdirs();
     int count = writeCapabilities(outputFolder);
-    writeRepositories(outputFolder);
+    writeRepositories(outputFolder, orderedRepositories);
     writeCapabilityIndex(outputFolder);
+    CapabilityIndex.write(new File(outputFolder, CapabilityIndex.FILE_NAME), timeStamp, capabilityVersions);
+
+    if (manifestFile != null)
+    {
+      deleteObsoleteCapabilities(outputFolder);
+      Manifest.write(manifestFile, timeStamp, orderedRepositories, capabilityHashes);
+    }
 
     System.out.println(repositories.size() + " repositories");
     System.out.println(count + " capabilities");
+
+    if (previousManifest != null)
+    {
+      System.out.println(restoredRepositories.get() + " unchanged repositories");
+      System.out.println(unchangedCapabilities.get() + " unchanged capabilities");
+    }
+  }
+
+  /**
+   * Assigns the IDs 1 through n to the repositories and returns them ordered by ID.
+   * Repositories that were indexed by the previous run keep their previous ID if possible,
+   * and new repositories fill the gaps left by deleted ones, so that most capability files remain unchanged.
+   */
+  private List<Repository> assignIDs()
+  {
+    List<Repository> sortedRepositories = new ArrayList<Repository>(repositories.values());
+    Collections.sort(sortedRepositories, new Comparator<Repository>()
+    {
+      public int compare(Repository o1, Repository o2)
+      {
+        return o1.getURI().toString().compareTo(o2.getURI().toString());
+      }
+    });
+
+    Repository[] slots = new Repository[sortedRepositories.size()];
+    List<Repository> unassignedRepositories = new ArrayList<Repository>();
+    for (Repository repository : sortedRepositories)
+    {
+      int id = previousManifest == null ? 0 : previousManifest.getID(repository.getURI());
+      if (id > 0 && id <= slots.length && slots[id - 1] == null)
+      {
+        slots[id - 1] = repository;
+      }
+      else
+      {
+        unassignedRepositories.add(repository);
+      }
+    }
+
+    Iterator<Repository> iterator = unassignedRepositories.iterator();
+    for (int i = 0; i < slots.length; i++)
+    {
+      if (slots[i] == null)
+      {
+        slots[i] = iterator.next();
+      }
+
+      slots[i].setID(i + 1);
+    }
+
+    return Arrays.asList(slots);
+  }
+
+  private void deleteObsoleteCapabilities(File outputFolder)
+  {
+    if (previousManifest != null)
+    {
+      for (String name : previousManifest.getCapabilityNames())
+      {
+        if (!capabilityHashes.containsKey(name))
+        {
+          File file = new File(outputFolder, name);
+          if (file.isFile() && !file.delete() && verbose)
+          {
+            System.err.println("Capability " + name + " --> Can't delete obsolete file");
+          }
+        }
+      }
+    }
   }
 
   private void writeCapabilityIndex(File outputFolder) throws FileNotFoundException, UnsupportedEncodingException, IOException
@@ -449,7 +604,7 @@ public final class P2Indexer implements IApplication
     }
   }
 
-  private void writeRepositories(File outputFolder) throws FileNotFoundException, UnsupportedEncodingException, IOException
+  private void writeRepositories(File outputFolder, List<Repository> orderedRepositories) throws FileNotFoundException, UnsupportedEncodingException, IOException
   {
     OutputStream outputStream = null;
 
@@ -469,7 +624,7 @@ public final class P2Indexer implements IApplication
       stream.writeInt(repositories.size());
 
       List<Repository> problematicRepositories = new ArrayList<Repository>();
-      for (Repository repository : repositories.values())
+      for (Repository repository : orderedRepositories)
       {
         repository.write(stream);
 
@@ -498,7 +653,7 @@ public final class P2Indexer implements IApplication
   {
     for (final Map.Entry<String, List<Capability>> entry : capabilities.entrySet())
     {
-      threadPool.submit(new Runnable()
+      ioTasks.submit(new Runnable()
       {
         public void run()
         {
@@ -507,7 +662,7 @@ public final class P2Indexer implements IApplication
       });
     }
 
-    threadPool.awaitFinished();
+    ioTasks.awaitFinished();
     return capabilities.size();
   }
 
@@ -518,31 +673,34 @@ public final class P2Indexer implements IApplication
       System.out.println("Capability " + name);
     }
 
-    Map<Repository, Set<String>> versions = new HashMap<Repository, Set<String>>();
+    // Sort by repository ID and version so that the same capabilities always produce the same content.
+    Map<Integer, Set<String>> versions = new TreeMap<Integer, Set<String>>();
     for (Capability capability : capabilities)
     {
       Repository repository = capability.getRepository();
       if (repositories.containsKey(repository.getURI()))
       {
-        Set<String> set = versions.get(repository);
+        Set<String> set = versions.get(repository.getID());
         if (set == null)
         {
-          set = new HashSet<String>();
-          versions.put(repository, set);
+          set = new TreeSet<String>();
+          versions.put(repository.getID(), set);
         }
 
-        set.add(capability.getVersion());
+        set.add(String.valueOf(capability.getVersion()));
       }
     }
 
+    capabilityVersions.put(name, versions);
+
     List<String> lines = new ArrayList<String>();
     lines.add(Long.toString(timeStamp));
 
-    for (Map.Entry<Repository, Set<String>> versionEntry : versions.entrySet())
+    StringBuilder content = new StringBuilder();
+    for (Map.Entry<Integer, Set<String>> versionEntry : versions.entrySet())
     {
-      Repository repository = versionEntry.getKey();
       StringBuilder builder = new StringBuilder();
-      builder.append(repository.getID());
+      builder.append(versionEntry.getKey());
 
       for (String version : versionEntry.getValue())
       {
@@ -550,12 +708,27 @@ public final class P2Indexer implements IApplication
         builder.append(version);
       }
 
-      lines.add(builder.toString());
+      String line = builder.toString();
+      lines.add(line);
+      content.append(line).append('|');
     }
 
     try
     {
       File file = new File(outputFolder, name);
+      if (manifestFile != null)
+      {
+        String hash = HexUtil.bytesToHex(IOUtil.getSHA1(content.toString()));
+        capabilityHashes.put(name, hash);
+
+        // The file need not be rewritten if neither its time stamp nor its content have changed.
+        if (previousManifest != null && previousManifest.getTimeStamp() == timeStamp && hash.equals(previousManifest.getCapabilityHash(name)) && file.isFile())
+        {
+          unchangedCapabilities.incrementAndGet();
+          return;
+        }
+      }
+
       file.getParentFile().mkdirs();
       IOUtil.writeLines(file, CHARSET, lines);
     }
@@ -616,6 +789,10 @@ public final class P2Indexer implements IApplication
 
     protected final long timestamp;
 
+    protected final long size;
+
+    protected String hash;
+
     protected String elementPath;
 
     protected int id;
@@ -628,6 +805,7 @@ public final class P2Indexer implements IApplication
       this.uri = uri;
       this.metadataFile = metadataFile;
       timestamp = metadataFile.lastModified();
+      size = metadataFile.length();
 
       if (indexer.reporter != null)
       {
@@ -660,6 +838,48 @@ public final class P2Indexer implements IApplication
       return timestamp;
     }
 
+    public long getSize()
+    {
+      return size;
+    }
+
+    /**
+     * Returns the hex-encoded SHA-1 hash of the metadata file, computing it if necessary.
+     */
+    public synchronized String getHash() throws IOException
+    {
+      if (hash == null)
+      {
+        try
+        {
+          hash = HexUtil.bytesToHex(IOUtil.getSHA1(new FileInputStream(metadataFile)));
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+          throw new IOException(ex.getMessage());
+        }
+      }
+
+      return hash;
+    }
+
+    /**
+     * Restores the result of processing the metadata from the given manifest of the previous run,
+     * returning whether that was possible because the metadata file hasn't changed since then.
+     */
+    public boolean restore(Manifest manifest) throws IOException
+    {
+      return false;
+    }
+
+    /**
+     * Writes the result of processing the metadata to the manifest for the next run.
+     */
+    protected void writeManifestEntry(EObjectOutputStream stream) throws IOException
+    {
+      stream.writeCompressedInt(0);
+    }
+
     public List<Composite> getComposites()
     {
       return composites;
@@ -867,6 +1087,11 @@ public final class P2Indexer implements IApplication
      */
     private static final class Simple extends Repository
     {
+      /**
+       * The namespace, name, and version of each capability provided by this repository.
+       */
+      private final List<String[]> providedCapabilities = new ArrayList<String[]>();
+
       private int iuCount;
 
       private int capabilityCount;
@@ -923,25 +1148,68 @@ public final class P2Indexer implements IApplication
             return true;
           }
 
-          synchronized (indexer.capabilityIndex)
-          {
-            CollectionUtil.add(indexer.capabilityIndex, namespace, name);
+          addCapability(namespace, name, version);
+          return true;
+        }
 
-            List<Capability> list = indexer.capabilities.get(qualifiedName);
-            if (list == null)
-            {
-              list = new ArrayList<Capability>();
-              indexer.capabilities.put(qualifiedName, list);
-            }
+        return false;
+      }
+
+      private void addCapability(String namespace, String name, String version)
+      {
+        String qualifiedName = namespace + "/" + name;
+
+        synchronized (indexer.capabilityIndex)
+        {
+          CollectionUtil.add(indexer.capabilityIndex, namespace, name);
 
-            list.add(new Capability(this, version));
-            ++capabilityCount;
+          List<Capability> list = indexer.capabilities.get(qualifiedName);
+          if (list == null)
+          {
+            list = new ArrayList<Capability>();
+            indexer.capabilities.put(qualifiedName, list);
           }
 
-          return true;
+          list.add(new Capability(this, version));
+          ++capabilityCount;
         }
 
-        return false;
+        providedCapabilities.add(new String[] { namespace, name, version });
+      }
+
+      @Override
+      public boolean restore(Manifest manifest) throws IOException
+      {
+        Manifest.Entry entry = manifest.getEntry(uri);
+        if (entry == null || !entry.matches(this))
+        {
+          return false;
+        }
+
+        iuCount = entry.getIUCount();
+        for (String[] providedCapability : entry.getProvidedCapabilities())
+        {
+          addCapability(providedCapability[0], providedCapability[1], providedCapability[2]);
+        }
+
+        return true;
+      }
+
+      @Override
+      protected void writeManifestEntry(EObjectOutputStream stream) throws IOException
+      {
+        // As for composites, nothing follows the unit count of a repository without units.
+        stream.writeCompressedInt(iuCount);
+        if (iuCount > 0)
+        {
+          stream.writeCompressedInt(providedCapabilities.size());
+          for (String[] providedCapability : providedCapabilities)
+          {
+            stream.writeSegmentedString(providedCapability[0]);
+            stream.writeSegmentedString(providedCapability[1]);
+            stream.writeString(providedCapability[2] == null ? "" : providedCapability[2]);
+          }
+        }
       }
     }
 
@@ -1031,6 +1299,262 @@ public final class P2Indexer implements IApplication
     }
   }
 
+  /**
+   * The persisted result of the previous run, which allows unchanged repositories and capability files to be skipped.
+   *
+   * @author Eike Stepper
+   */
+  private static final class Manifest
+  {
+    /**
+     * Version 1 manifests recorded the capabilities of empty simple repositories and can't be read.
+     */
+    private static final int VERSION = 2;
+
+    private final long timeStamp;
+
+    private final List<URI> ids = new ArrayList<URI>();
+
+    private final Map<URI, Entry> entries = new HashMap<URI, Entry>();
+
+    private final Map<String, String> capabilityHashes = new HashMap<String, String>();
+
+    private Manifest(long timeStamp)
+    {
+      this.timeStamp = timeStamp;
+    }
+
+    public long getTimeStamp()
+    {
+      return timeStamp;
+    }
+
+    /**
+     * Returns the ID that the previous run assigned to the repository with the given URI, or <code>0</code> if there is no such repository.
+     */
+    public int getID(URI uri)
+    {
+      Entry entry = entries.get(uri);
+      return entry == null ? 0 : entry.getID();
+    }
+
+    public boolean hasSameIDs(List<Repository> orderedRepositories)
+    {
+      if (ids.size() != orderedRepositories.size())
+      {
+        return false;
+      }
+
+      for (int i = 0; i < ids.size(); i++)
+      {
+        if (!ids.get(i).equals(orderedRepositories.get(i).getURI()))
+        {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    public Entry getEntry(URI uri)
+    {
+      return entries.get(uri);
+    }
+
+    public Set<String> getCapabilityNames()
+    {
+      return capabilityHashes.keySet();
+    }
+
+    public String getCapabilityHash(String name)
+    {
+      return capabilityHashes.get(name);
+    }
+
+    public static Manifest read(File file)
+    {
+      if (!file.isFile())
+      {
+        return null;
+      }
+
+      InputStream inputStream = null;
+
+      try
+      {
+        inputStream = new FileInputStream(file);
+        EObjectInputStream stream = new BinaryResourceImpl.EObjectInputStream(inputStream, getOptions());
+        if (stream.readInt() != VERSION)
+        {
+          return null;
+        }
+
+        Manifest manifest = new Manifest(stream.readLong());
+
+        int repositoryCount = stream.readCompressedInt();
+        for (int id = 1; id <= repositoryCount; id++)
+        {
+          URI uri = stream.readURI();
+          Entry entry = new Entry(id, stream.readSegmentedString(), stream.readLong(), stream.readLong(), stream.readString());
+
+          int iuCount = stream.readCompressedInt();
+          if (iuCount > 0)
+          {
+            entry.iuCount = iuCount;
+
+            int capabilityCount = stream.readCompressedInt();
+            for (int i = 0; i < capabilityCount; i++)
+            {
+              String namespace = stream.readSegmentedString();
+              String name = stream.readSegmentedString();
+              String version = stream.readString();
+              entry.providedCapabilities.add(new String[] { namespace, name, version.length() == 0 ? null : version });
+            }
+          }
+
+          manifest.ids.add(uri);
+          manifest.entries.put(uri, entry);
+        }
+
+        int capabilityCount = stream.readCompressedInt();
+        for (int i = 0; i < capabilityCount; i++)
+        {
+          manifest.capabilityHashes.put(stream.readSegmentedString(), stream.readString());
+        }
+
+        return manifest;
+      }
+      catch (Exception ex)
+      {
+        System.err.println("Ignoring manifest " + file + " --> " + getStackTrace(ex));
+        return null;
+      }
+      finally
+      {
+        IOUtil.close(inputStream);
+      }
+    }
+
+    public static void write(File file, long timeStamp, List<Repository> orderedRepositories, Map<String, String> capabilityHashes) throws IOException
+    {
+      File tempFile = new File(file.getPath() + ".tmp");
+      OutputStream outputStream = null;
+
+      try
+      {
+        file.getParentFile().mkdirs();
+        outputStream = new FileOutputStream(tempFile);
+
+        EObjectOutputStream stream = new BinaryResourceImpl.EObjectOutputStream(outputStream, getOptions());
+        stream.writeInt(VERSION);
+        stream.writeLong(timeStamp);
+
+        stream.writeCompressedInt(orderedRepositories.size());
+        for (Repository repository : orderedRepositories)
+        {
+          stream.writeURI(repository.getURI());
+          stream.writeSegmentedString(repository.getMetadataFile().getName());
+          stream.writeLong(repository.getSize());
+          stream.writeLong(repository.getTimestamp());
+          stream.writeString(repository.isComposed() ? "" : repository.getHash());
+          repository.writeManifestEntry(stream);
+        }
+
+        stream.writeCompressedInt(capabilityHashes.size());
+        for (Map.Entry<String, String> entry : capabilityHashes.entrySet())
+        {
+          stream.writeSegmentedString(entry.getKey());
+          stream.writeString(entry.getValue());
+        }
+
+        stream.flush();
+      }
+      finally
+      {
+        IOUtil.close(outputStream);
+      }
+
+      file.delete();
+      if (!tempFile.renameTo(file))
+      {
+        throw new IOException("Can't rename " + tempFile + " to " + file);
+      }
+    }
+
+    private static Map<Object, Object> getOptions()
+    {
+      Map<Object, Object> options = new HashMap<Object, Object>();
+      options.put(BinaryResourceImpl.OPTION_VERSION, BinaryResourceImpl.BinaryIO.Version.VERSION_1_1);
+      options.put(BinaryResourceImpl.OPTION_STYLE_DATA_CONVERTER, Boolean.TRUE);
+      options.put(BinaryResourceImpl.OPTION_BUFFER_CAPACITY, 8192);
+      return options;
+    }
+
+    /**
+     * @author Eike Stepper
+     */
+    private static final class Entry
+    {
+      private final int id;
+
+      private final String metadataFileName;
+
+      private final long size;
+
+      private final long timestamp;
+
+      private final String hash;
+
+      private final List<String[]> providedCapabilities = new ArrayList<String[]>();
+
+      private int iuCount;
+
+      public Entry(int id, String metadataFileName, long size, long timestamp, String hash)
+      {
+        this.id = id;
+        this.metadataFileName = metadataFileName;
+        this.size = size;
+        this.timestamp = timestamp;
+        this.hash = hash;
+      }
+
+      public int getID()
+      {
+        return id;
+      }
+
+      public int getIUCount()
+      {
+        return iuCount;
+      }
+
+      public List<String[]> getProvidedCapabilities()
+      {
+        return providedCapabilities;
+      }
+
+      /**
+       * Returns whether the repository's metadata file is the same as the one recorded in this entry,
+       * comparing the hashes only if the sizes or time stamps differ.
+       */
+      public boolean matches(Repository repository) throws IOException
+      {
+        if (!metadataFileName.equals(repository.getMetadataFile().getName()))
+        {
+          return false;
+        }
+
+        if (size == repository.getSize() && timestamp == repository.getTimestamp())
+        {
+          repository.hash = hash;
+          return true;
+        }
+
+        return hash.equals(repository.getHash());
+      }
+    }
+  }
+
   /**
    * @author Eike Stepper
    */
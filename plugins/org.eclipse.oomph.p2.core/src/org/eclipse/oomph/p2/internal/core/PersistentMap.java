@@ -24,29 +24,80 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * A map of elements that is persisted in a file of sorted keys, with optional extra information, and that is shared by several processes.
+ * <p>
+ * Adding or removing a single element doesn't rewrite the file, but appends an entry to a journal file next to it,
+ * so that it costs constant I/O, independent of the number of elements.
+ * The journal starts with a header that identifies the state of the file to which its entries apply.
+ * Once the journal has more entries than the map has elements, it's compacted into the file.
+ * A journal whose header doesn't match the file, e.g., because an older version rewrote the file without knowing about the journal, is stale.
+ * Its entries are replayed against the file, which is possible because adding or removing a key is idempotent, and then it's compacted into the file.
+ * <p>
+ * All access to the files is serialized with an operating system lock on a lock file, which is released automatically if a process dies.
+ *
  * @author Eike Stepper
  */
 public abstract class PersistentMap<E>
 {
+  private static final String JOURNAL_HEADER = "#"; //$NON-NLS-1$
+
+  private static final char JOURNAL_ADD = '+';
+
+  private static final char JOURNAL_REMOVE = '-';
+
+  private static final int MIN_COMPACTION_ENTRIES = 100;
+
+  /**
+   * The locks that serialize access from within this process, because file locks are held on behalf of the whole process.
+   */
+  private static final Map<File, ReentrantLock> LOCAL_LOCKS = new HashMap<File, ReentrantLock>();
+
+  private static final Random RANDOM = new Random();
+
   private final File file;
 
   private final File tempFile;
 
+  private final File journalFile;
+
   private final File lockFile;
 
   private final Map<String, E> elements = new LinkedHashMap<String, E>();
 
+  /**
+   * The length and time stamp of the file when it was last read or written by this map.
+   */
+  private String fileStamp;
+
+  /**
+   * The header of the journal as last read or written by this map, or <code>null</code> if there was no journal.
+   */
+  private String journalHeader;
+
+  /**
+   * The position in the journal up to which its entries have been applied to this map.
+   */
+  private long journalPosition;
+
+  private int journalEntries;
+
   public PersistentMap(File file)
   {
     this.file = file;
@@ -58,34 +109,38 @@ public abstract class PersistentMap<E>
 
       String name = file.getName();
       tempFile = new File(folder, name + ".temp"); //$NON-NLS-1$
+      journalFile = new File(folder, name + ".journal"); //$NON-NLS-1$
       lockFile = IOUtil.canWriteFolder(folder) ? new File(folder, name + ".lock") : null; //$NON-NLS-1$
     }
     else
     {
       tempFile = null;
+      journalFile = null;
       lockFile = null;
     }
   }
 
-  public final void load()
+  public final synchronized void load()
   {
-    final boolean[] needsSave = { false };
+    boolean needsSave = false;
 
-    if (file != null && file.exists())
+    if (file != null && (file.exists() || journalFile.exists()))
     {
-      FileWriter lock = lock();
+      Lock lock = lock();
 
       try
       {
-        load(new KeyHandler()
+        for (Map.Entry<String, String> entry : readEntries().entrySet())
         {
-          public void handleKey(String key, String extraInfo) throws Exception
+          String key = entry.getKey();
+
+          try
           {
-            E element = loadElement(key, extraInfo);
+            E element = loadElement(key, entry.getValue());
             if (element == null)
             {
-              needsSave[0] = true;
-              return;
+              needsSave = true;
+              continue;
             }
 
             if (element instanceof AgentManagerElement)
@@ -93,14 +148,18 @@ public abstract class PersistentMap<E>
               AgentManagerElement agentManagerElement = (AgentManagerElement)element;
               if (!agentManagerElement.isValid())
               {
-                needsSave[0] = true;
-                return;
+                needsSave = true;
+                continue;
               }
             }
 
             elements.put(key, element);
           }
-        });
+          catch (Exception ex)
+          {
+            P2CorePlugin.INSTANCE.log(ex);
+          }
+        }
       }
       finally
       {
@@ -110,10 +169,10 @@ public abstract class PersistentMap<E>
     else
     {
       initializeFirstTime();
-      needsSave[0] = true;
+      needsSave = true;
     }
 
-    if (needsSave[0])
+    if (needsSave)
     {
       save(null, null);
     }
@@ -183,7 +242,21 @@ public abstract class PersistentMap<E>
 
   public final synchronized boolean refresh()
   {
-    return reconcile(null, null);
+    if (file == null)
+    {
+      return false;
+    }
+
+    Lock lock = lock();
+
+    try
+    {
+      return synchronize(null, null);
+    }
+    finally
+    {
+      unlock(lock);
+    }
   }
 
   /**
@@ -261,51 +334,46 @@ public abstract class PersistentMap<E>
     }
   }
 
-  public void save(String addedKey, final String removedKey)
+  /**
+   * Persists the addition of the element with the given key, the removal of the element with the other given key, or both.
+   * If both keys are <code>null</code>, all elements are written to the file.
+   * Otherwise, the elements are first synchronized with the changes that other processes have persisted in the meantime,
+   * and the change is appended to the journal.
+   */
+  public synchronized void save(String addedKey, String removedKey)
   {
     if (file != null)
     {
-      FileWriter lock = lock();
-      FileWriter tempWriter = null;
+      Lock lock = lock();
 
       try
       {
-        if (addedKey != null || removedKey != null)
+        if (addedKey == null && removedKey == null)
         {
-          if (file.exists())
-          {
-            reconcile(addedKey, removedKey);
-          }
+          compact();
+          return;
         }
 
-        tempWriter = new FileWriter(tempFile);
-        BufferedWriter bufferedWriter = new BufferedWriter(tempWriter);
+        synchronize(addedKey, removedKey);
 
-        List<String> sortedKeys = new ArrayList<String>(elements.keySet());
-        Collections.sort(sortedKeys);
-
-        for (String key : sortedKeys)
+        if (addedKey != null)
         {
-          bufferedWriter.write(key);
-
-          E element = elements.get(key);
-          if (element instanceof ExtraInfoProvider)
+          E element = elements.get(addedKey);
+          if (element != null)
           {
-            String extraInfo = ((ExtraInfoProvider)element).getExtraInfo();
-
-            bufferedWriter.write('|');
-            bufferedWriter.write(extraInfo);
+            appendJournal(JOURNAL_ADD + getLine(addedKey, element));
           }
-
-          bufferedWriter.write(StringUtil.NL);
         }
 
-        bufferedWriter.flush();
-        IOUtil.closeSilent(tempWriter);
-        tempWriter = null;
+        if (removedKey != null && !removedKey.equals(addedKey))
+        {
+          appendJournal(JOURNAL_REMOVE + removedKey);
+        }
 
-        file.delete();
-        tempFile.renameTo(file);
+        if (journalEntries > Math.max(MIN_COMPACTION_ENTRIES, elements.size()))
+        {
+          compact();
+        }
       }
       catch (IOException ex)
       {
@@ -313,42 +381,162 @@ public abstract class PersistentMap<E>
       }
       finally
       {
-        IOUtil.closeSilent(tempWriter);
         unlock(lock);
       }
     }
   }
 
-  private boolean reconcile(String addedKey, final String removedKey)
+  /**
+   * Writes all elements to the file and deletes the journal.
+   */
+  private void compact()
   {
-    final boolean[] changed = { false };
+    List<String> sortedKeys = new ArrayList<String>(elements.keySet());
+    Collections.sort(sortedKeys);
 
-    final Set<String> fileKeys = new HashSet<String>();
-    fileKeys.add(addedKey);
+    List<String> lines = new ArrayList<String>(sortedKeys.size());
+    for (String key : sortedKeys)
+    {
+      lines.add(getLine(key, elements.get(key)));
+    }
+
+    write(lines);
+  }
+
+  /**
+   * Writes the given entries to the file and deletes the journal.
+   */
+  private void compact(Map<String, String> entries)
+  {
+    List<String> sortedKeys = new ArrayList<String>(entries.keySet());
+    Collections.sort(sortedKeys);
+
+    List<String> lines = new ArrayList<String>(sortedKeys.size());
+    for (String key : sortedKeys)
+    {
+      String extraInfo = entries.get(key);
+      lines.add(extraInfo == null ? key : key + "|" + extraInfo); //$NON-NLS-1$
+    }
+
+    write(lines);
+  }
+
+  private void write(List<String> lines)
+  {
+    FileWriter tempWriter = null;
 
     try
     {
-      load(new KeyHandler()
+      tempWriter = new FileWriter(tempFile);
+      BufferedWriter bufferedWriter = new BufferedWriter(tempWriter);
+
+      for (String line : lines)
       {
-        public void handleKey(String key, String extraInfo) throws Exception
+        bufferedWriter.write(line);
+        bufferedWriter.write(StringUtil.NL);
+      }
+
+      bufferedWriter.flush();
+      IOUtil.closeSilent(tempWriter);
+      tempWriter = null;
+
+      file.delete();
+      tempFile.renameTo(file);
+      journalFile.delete();
+
+      fileStamp = getFileStamp();
+      resetJournal();
+    }
+    catch (IOException ex)
+    {
+      throw new IORuntimeException(ex);
+    }
+    finally
+    {
+      IOUtil.closeSilent(tempWriter);
+    }
+  }
+
+  /**
+   * Applies the changes that other processes have persisted since this map last read or wrote the files.
+   * If only new journal entries have been appended, only those are read.
+   * Otherwise, the file and the journal are read completely and the elements are reconciled with them.
+   */
+  private boolean synchronize(final String addedKey, final String removedKey)
+  {
+    final boolean[] changed = { false };
+
+    if (fileStamp != null && fileStamp.equals(getFileStamp()))
+    {
+      try
+      {
+        if (readJournal(new JournalHandler()
         {
-          fileKeys.add(key);
+          public void handleAdd(String key, String extraInfo)
+          {
+            if (!key.equals(removedKey) && !elements.containsKey(key))
+            {
+              E element = createElement(key, extraInfo);
+              if (element != null)
+              {
+                elements.put(key, element);
+                changed[0] = true;
+              }
+            }
+          }
 
-          if (!key.equals(removedKey) && !elements.containsKey(key))
+          public void handleRemove(String key)
           {
-            E element = createElement(key, extraInfo);
-            if (element != null)
+            if (!key.equals(addedKey) && elements.remove(key) != null)
             {
-              elements.put(key, element);
               changed[0] = true;
             }
           }
+        }))
+        {
+          return changed[0];
         }
-      });
+      }
+      catch (IOException ex)
+      {
+        P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+      }
+    }
+
+    Map<String, String> entries;
+
+    try
+    {
+      entries = readEntries();
     }
     catch (IORuntimeException ex)
     {
       P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+      entries = Collections.emptyMap();
+    }
+
+    Set<String> fileKeys = new HashSet<String>(entries.keySet());
+    fileKeys.add(addedKey);
+
+    for (Map.Entry<String, String> entry : entries.entrySet())
+    {
+      String key = entry.getKey();
+      if (!key.equals(removedKey) && !elements.containsKey(key))
+      {
+        try
+        {
+          E element = createElement(key, entry.getValue());
+          if (element != null)
+          {
+            elements.put(key, element);
+            changed[0] = true;
+          }
+        }
+        catch (Exception ex)
+        {
+          P2CorePlugin.INSTANCE.log(ex);
+        }
+      }
     }
 
     for (Iterator<String> it = elements.keySet().iterator(); it.hasNext();)
@@ -364,60 +552,354 @@ public abstract class PersistentMap<E>
     return changed[0];
   }
 
-  private FileWriter lock()
+  /**
+   * Reads the file and the journal completely and returns the resulting map of keys to extra information.
+   */
+  private Map<String, String> readEntries()
   {
-    if (lockFile == null)
+    final Map<String, String> entries = new LinkedHashMap<String, String>();
+    if (file.exists())
     {
-      return null;
+      load(new KeyHandler()
+      {
+        public void handleKey(String key, String extraInfo) throws Exception
+        {
+          entries.put(key, extraInfo);
+        }
+      });
     }
 
-    long start = System.currentTimeMillis();
+    fileStamp = getFileStamp();
+    resetJournal();
 
-    for (;;)
+    JournalHandler handler = new JournalHandler()
     {
-      try
+      public void handleAdd(String key, String extraInfo)
       {
-        return new FileWriter(lockFile);
+        entries.put(key, extraInfo);
       }
-      catch (IOException ex)
+
+      public void handleRemove(String key)
+      {
+        entries.remove(key);
+      }
+    };
+
+    try
+    {
+      if (!readJournal(handler))
       {
-        if (System.currentTimeMillis() - start >= 10000L)
+        replayStaleJournal(handler);
+
+        if (lockFile != null)
         {
-          throw new RuntimeException(NLS.bind(Messages.PersistentMap_LockTimeout_exception, lockFile), ex);
+          compact(entries);
         }
       }
+    }
+    catch (IOException ex)
+    {
+      P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+    }
 
-      try
+    return entries;
+  }
+
+  /**
+   * Passes the journal entries after the current journal position to the given handler.
+   *
+   * @return <code>false</code> if the journal doesn't continue the journal that was read before, i.e., it has been compacted in the meantime,
+   * or if there was no journal before and the journal doesn't apply to the current file, i.e., it's {@link #replayStaleJournal(JournalHandler) stale}.
+   */
+  private boolean readJournal(JournalHandler handler) throws IOException
+  {
+    if (!journalFile.isFile())
+    {
+      return journalHeader == null;
+    }
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw"); //$NON-NLS-1$
+
+    try
+    {
+      long length = randomAccessFile.length();
+      String header = readLine(randomAccessFile, 0);
+      if (header == null || !header.startsWith(JOURNAL_HEADER + fileStamp + ",")) //$NON-NLS-1$
       {
-        Thread.sleep(10L);
+        return false;
       }
-      catch (InterruptedException ex)
+
+      if (journalHeader == null)
       {
-        throw new RuntimeException(NLS.bind(Messages.PersistentMap_LockInterrupted_exception, lockFile), ex);
+        journalHeader = header;
+        journalPosition = header.length() + 1;
+      }
+      else if (!journalHeader.equals(header) || length < journalPosition)
+      {
+        return false;
+      }
+
+      if (length > journalPosition)
+      {
+        byte[] bytes = new byte[(int)(length - journalPosition)];
+        randomAccessFile.seek(journalPosition);
+        randomAccessFile.readFully(bytes);
+
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++)
+        {
+          if (bytes[i] == '\n')
+          {
+            String line = new String(bytes, start, i - start);
+            handleJournalEntry(line.trim(), handler);
+            ++journalEntries;
+            start = i + 1;
+          }
+        }
+
+        journalPosition += start;
+        if (start < bytes.length)
+        {
+          // Truncate an incomplete entry of a process that died while appending it.
+          randomAccessFile.setLength(journalPosition);
+        }
       }
+
+      return true;
+    }
+    finally
+    {
+      IOUtil.closeSilent(randomAccessFile);
     }
   }
 
-  private void unlock(FileWriter lock)
+  /**
+   * Passes all complete entries of a journal that doesn't apply to the current file to the given handler.
+   * Such a journal was written for an earlier state of the file, e.g., before an older version rewrote the file without knowing about the journal.
+   * The entries only add or remove keys, so replaying them against the current file results in the state that the writers of the journal intended.
+   */
+  private void replayStaleJournal(JournalHandler handler) throws IOException
   {
-    if (lock != null)
+    if (!journalFile.isFile())
     {
-      try
+      return;
+    }
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "r"); //$NON-NLS-1$
+
+    try
+    {
+      byte[] bytes = new byte[(int)randomAccessFile.length()];
+      randomAccessFile.readFully(bytes);
+
+      // Skip the header and ignore an incomplete last entry of a process that died while appending it.
+      int start = -1;
+      for (int i = 0; i < bytes.length; i++)
+      {
+        if (bytes[i] == '\n')
+        {
+          if (start != -1)
+          {
+            String line = new String(bytes, start, i - start);
+            handleJournalEntry(line.trim(), handler);
+          }
+
+          start = i + 1;
+        }
+      }
+    }
+    finally
+    {
+      IOUtil.closeSilent(randomAccessFile);
+    }
+  }
+
+  private void handleJournalEntry(String line, JournalHandler handler)
+  {
+    if (line.length() > 1)
+    {
+      String entry = line.substring(1);
+      char operation = line.charAt(0);
+      if (operation == JOURNAL_ADD)
       {
-        IOUtil.close(lock);
+        int pos = entry.indexOf('|');
+        if (pos == -1)
+        {
+          handler.handleAdd(entry, null);
+        }
+        else
+        {
+          handler.handleAdd(entry.substring(0, pos), entry.substring(pos + 1));
+        }
       }
-      catch (Exception ex)
+      else if (operation == JOURNAL_REMOVE)
       {
-        P2CorePlugin.INSTANCE.log(ex);
+        handler.handleRemove(entry);
+      }
+    }
+  }
+
+  private void appendJournal(String entry) throws IOException
+  {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "rw"); //$NON-NLS-1$
+
+    try
+    {
+      if (journalHeader == null)
+      {
+        journalHeader = JOURNAL_HEADER + fileStamp + "," + Long.toHexString(RANDOM.nextLong()); //$NON-NLS-1$
+        randomAccessFile.setLength(0);
+        randomAccessFile.write((journalHeader + "\n").getBytes()); //$NON-NLS-1$
+        journalPosition = randomAccessFile.getFilePointer();
+      }
+
+      byte[] bytes = (entry + "\n").getBytes(); //$NON-NLS-1$
+      randomAccessFile.seek(journalPosition);
+      randomAccessFile.write(bytes);
+      journalPosition += bytes.length;
+      ++journalEntries;
+    }
+    finally
+    {
+      IOUtil.close(randomAccessFile);
+    }
+  }
+
+  private void resetJournal()
+  {
+    journalHeader = null;
+    journalPosition = 0;
+    journalEntries = 0;
+  }
+
+  private String getFileStamp()
+  {
+    return file.exists() ? file.length() + "," + file.lastModified() : "0,0"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  private String getLine(String key, E element)
+  {
+    if (element instanceof ExtraInfoProvider)
+    {
+      return key + "|" + ((ExtraInfoProvider)element).getExtraInfo(); //$NON-NLS-1$
+    }
+
+    return key;
+  }
+
+  private static String readLine(RandomAccessFile randomAccessFile, long position) throws IOException
+  {
+    byte[] bytes = new byte[(int)Math.min(1024, randomAccessFile.length() - position)];
+    randomAccessFile.seek(position);
+    randomAccessFile.readFully(bytes);
+
+    for (int i = 0; i < bytes.length; i++)
+    {
+      if (bytes[i] == '\n')
+      {
+        return new String(bytes, 0, i);
+      }
+    }
+
+    return null;
+  }
+
+  private Lock lock()
+  {
+    if (lockFile == null)
+    {
+      return null;
+    }
+
+    ReentrantLock localLock;
+    synchronized (LOCAL_LOCKS)
+    {
+      localLock = LOCAL_LOCKS.get(lockFile);
+      if (localLock == null)
+      {
+        localLock = new ReentrantLock();
+        LOCAL_LOCKS.put(lockFile, localLock);
       }
+    }
+
+    localLock.lock();
+    if (localLock.getHoldCount() > 1)
+    {
+      // This thread already holds the file lock.
+      return new Lock(localLock, null, null);
+    }
+
+    RandomAccessFile randomAccessFile = null;
+
+    try
+    {
+      randomAccessFile = new RandomAccessFile(lockFile, "rw"); //$NON-NLS-1$
+      FileLock fileLock = randomAccessFile.getChannel().lock();
+      return new Lock(localLock, randomAccessFile, fileLock);
+    }
+    catch (FileLockInterruptionException ex)
+    {
+      IOUtil.closeSilent(randomAccessFile);
+      localLock.unlock();
+      throw new RuntimeException(NLS.bind(Messages.PersistentMap_LockInterrupted_exception, lockFile), ex);
+    }
+    catch (IOException ex)
+    {
+      IOUtil.closeSilent(randomAccessFile);
+      localLock.unlock();
+      throw new IORuntimeException(ex);
+    }
+    catch (RuntimeException ex)
+    {
+      IOUtil.closeSilent(randomAccessFile);
+      localLock.unlock();
+      throw ex;
+    }
+  }
+
+  private void unlock(Lock lock)
+  {
+    if (lock != null)
+    {
+      lock.release();
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class Lock
+  {
+    private final ReentrantLock localLock;
 
+    private final RandomAccessFile randomAccessFile;
+
+    private final FileLock fileLock;
+
+    public Lock(ReentrantLock localLock, RandomAccessFile randomAccessFile, FileLock fileLock)
+    {
+      this.localLock = localLock;
+      this.randomAccessFile = randomAccessFile;
+      this.fileLock = fileLock;
+    }
+
+    public void release()
+    {
       try
       {
-        lockFile.delete();
+        if (fileLock != null)
+        {
+          fileLock.release();
+        }
       }
       catch (Exception ex)
       {
-        // Ignore
+        P2CorePlugin.INSTANCE.log(ex);
+      }
+      finally
+      {
+        IOUtil.closeSilent(randomAccessFile);
+        localLock.unlock();
       }
     }
   }
@@ -430,6 +912,16 @@ public abstract class PersistentMap<E>
     public void handleKey(String key, String extraInfo) throws Exception;
   }
 
+  /**
+   * @author Eike Stepper
+   */
+  private interface JournalHandler
+  {
+    public void handleAdd(String key, String extraInfo);
+
+    public void handleRemove(String key);
+  }
+
   /**
    * @author Eike Stepper
    */
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.TaskScheduler;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the latest profile file of each profile directory of a profile registry, with the help of an index file in the registry folder.
+ * <p>
+ * The index records the modification time of the registry folder and, for each profile directory, its name, its modification time, and the name of its latest profile file.
+ * Adding or removing a profile directory changes the modification time of the registry folder,
+ * and adding or removing a profile file changes the modification time of its profile directory,
+ * so the registry folder only needs to be listed if its modification time has changed
+ * and a profile directory only needs to be listed if its own modification time has changed.
+ * Modification times that are too recent to be distinguishable from a subsequent modification are not recorded, so those folders are listed again next time.
+ * <p>
+ * The profile directories that must be listed are listed concurrently on the I/O lane of the {@link TaskScheduler}.
+ *
+ * @author Eike Stepper
+ */
+final class ProfileRegistryIndex
+{
+  public static final String FILE_NAME = ".oomph.profiles"; //$NON-NLS-1$
+
+  private static final String VERSION = "1"; //$NON-NLS-1$
+
+  private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+  private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+  private static final long UNKNOWN = -1;
+
+  private final File store;
+
+  private final File file;
+
+  private long storeLastModified = UNKNOWN;
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  private boolean dirty;
+
+  private ProfileRegistryIndex(File store)
+  {
+    this.store = store;
+    file = new File(store, FILE_NAME);
+  }
+
+  private void load()
+  {
+    if (file.isFile())
+    {
+      try
+      {
+        List<String> lines = IOUtil.readLines(file, UTF_8);
+        if (lines.size() >= 2 && VERSION.equals(lines.get(0)))
+        {
+          storeLastModified = Long.parseLong(lines.get(1));
+
+          for (String line : lines.subList(2, lines.size()))
+          {
+            String[] segments = line.split("\\|", -1); //$NON-NLS-1$
+            if (segments.length == 3)
+            {
+              entries.put(segments[0], new Entry(Long.parseLong(segments[1]), segments[2]));
+            }
+          }
+
+          return;
+        }
+      }
+      catch (RuntimeException ex)
+      {
+        P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+      }
+
+      storeLastModified = UNKNOWN;
+      entries.clear();
+    }
+  }
+
+  private void save()
+  {
+    long now = System.currentTimeMillis();
+
+    List<String> lines = new ArrayList<String>();
+    lines.add(VERSION);
+    lines.add(Long.toString(getReliableLastModified(storeLastModified, now)));
+
+    for (Map.Entry<String, Entry> mapEntry : entries.entrySet())
+    {
+      Entry entry = mapEntry.getValue();
+      lines.add(mapEntry.getKey() + "|" + getReliableLastModified(entry.lastModified, now) + "|" + entry.latestFileName); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    File tempFile = new File(store, FILE_NAME + ".temp"); //$NON-NLS-1$
+
+    try
+    {
+      IOUtil.writeLines(tempFile, UTF_8, lines);
+      file.delete();
+      tempFile.renameTo(file);
+    }
+    catch (RuntimeException ex)
+    {
+      tempFile.delete();
+      P2CorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+    }
+  }
+
+  private String[] getProfileDirectoryNames()
+  {
+    long lastModified = store.lastModified();
+    if (lastModified != storeLastModified || storeLastModified == UNKNOWN)
+    {
+      File[] profileDirectories = store.listFiles(new FileFilter()
+      {
+        public boolean accept(File pathname)
+        {
+          return pathname.getName().endsWith(LazyProfileRegistry.PROFILE_EXT) && pathname.isDirectory();
+        }
+      });
+
+      if (profileDirectories == null)
+      {
+        profileDirectories = new File[0];
+      }
+
+      String[] names = new String[profileDirectories.length];
+      for (int i = 0; i < profileDirectories.length; i++)
+      {
+        names[i] = profileDirectories[i].getName();
+      }
+
+      entries.keySet().retainAll(Arrays.asList(names));
+      storeLastModified = lastModified;
+      dirty = true;
+      return names;
+    }
+
+    return entries.keySet().toArray(new String[entries.size()]);
+  }
+
+  private Map<File, File> scan(IProgressMonitor monitor)
+  {
+    String[] names = getProfileDirectoryNames();
+    monitor.beginTask("", names.length); //$NON-NLS-1$
+
+    try
+    {
+      Map<File, File> result = new LinkedHashMap<File, File>();
+      Map<String, Future<File>> scans = new LinkedHashMap<String, Future<File>>();
+      Map<String, Long> scanLastModifieds = new HashMap<String, Long>();
+
+      for (String name : names)
+      {
+        File profileDirectory = new File(store, name);
+        long lastModified = profileDirectory.lastModified();
+        Entry entry = entries.get(name);
+        if (entry != null && entry.lastModified != UNKNOWN && entry.lastModified == lastModified)
+        {
+          result.put(profileDirectory, entry.latestFileName.length() == 0 ? null : new File(profileDirectory, entry.latestFileName));
+          monitor.worked(1);
+        }
+        else
+        {
+          // Record the modification time before listing, so that a concurrent modification is detected next time.
+          result.put(profileDirectory, null);
+          scanLastModifieds.put(name, lastModified);
+          scans.put(name, submit(profileDirectory));
+        }
+      }
+
+      if (!scans.isEmpty())
+      {
+        dirty = true;
+
+        try
+        {
+          for (Map.Entry<String, Future<File>> mapEntry : scans.entrySet())
+          {
+            String name = mapEntry.getKey();
+            File latestFile = TaskScheduler.get(mapEntry.getValue(), monitor);
+
+            result.put(new File(store, name), latestFile);
+            entries.put(name, new Entry(scanLastModifieds.get(name), latestFile == null ? "" : latestFile.getName())); //$NON-NLS-1$
+            monitor.worked(1);
+          }
+        }
+        finally
+        {
+          for (Future<File> future : scans.values())
+          {
+            future.cancel(false);
+          }
+        }
+      }
+
+      return result;
+    }
+    finally
+    {
+      monitor.done();
+    }
+  }
+
+  /**
+   * Returns a map from each profile directory of the given registry folder to its latest profile file, or <code>null</code> if it has none.
+   * If the folder can be written, the index file is updated.
+   *
+   * @throws OperationCanceledException if the given monitor is canceled.
+   */
+  public static Map<File, File> findLatestProfileFiles(File store, boolean canWrite, IProgressMonitor monitor)
+  {
+    ProfileRegistryIndex index = new ProfileRegistryIndex(store);
+    index.load();
+
+    Map<File, File> result = index.scan(monitor);
+    if (canWrite && index.dirty)
+    {
+      index.save();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the given modification time, if it's far enough in the past that a later modification will result in a different modification time,
+   * or <code>-1</code> otherwise.
+   */
+  private static long getReliableLastModified(long lastModified, long now)
+  {
+    return now - lastModified > MODIFICATION_TIME_RESOLUTION ? lastModified : UNKNOWN;
+  }
+
+  private static Future<File> submit(final File profileDirectory)
+  {
+    return TaskScheduler.submit(TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_INTERACTIVE, null, new Callable<File>()
+    {
+      public File call() throws Exception
+      {
+        return LazyProfileRegistry.findLatestProfileFile(profileDirectory);
+      }
+    });
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class Entry
+  {
+    private final long lastModified;
+
+    private final String latestFileName;
+
+    public Entry(long lastModified, String latestFileName)
+    {
+      this.lastModified = lastModified;
+      this.latestFileName = latestFileName;
+    }
+  }
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.IORuntimeException;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.LockFile;
+import org.eclipse.oomph.util.PropertiesUtil;
+import org.eclipse.oomph.util.StreamDigester;
+import org.eclipse.oomph.util.TaskScheduler;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.osgi.util.NLS;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Downloads a large artifact of known size and checksum by splitting it into byte ranges that are fetched in parallel over several connections,
+ * writing each range directly at its offset in a preallocated partial file.
+ * <p>
+ * The progress of each range is recorded in a sidecar file, so an interrupted download resumes from the partial file rather than starting over,
+ * even if it's resumed from a different mirror.
+ * Once all ranges are complete, the partial file is verified against the checksum and committed to the {@link ContentAddressedCache}.
+ * <p>
+ * The number of connections is configured with the <code>oomph.p2.download.connections</code> system property, 4 by default,
+ * and the minimum range size, in megabytes, with the <code>oomph.p2.download.range.min.size</code> system property, 8 by default.
+ * Artifacts smaller than two minimum ranges are downloaded as usual.
+ *
+ * @author Eike Stepper
+ */
+@SuppressWarnings("restriction")
+public final class RangedDownload
+{
+  public static final String PROP_CONNECTIONS = "oomph.p2.download.connections"; //$NON-NLS-1$
+
+  public static final String PROP_MIN_RANGE_SIZE = "oomph.p2.download.range.min.size"; //$NON-NLS-1$
+
+  private static final int CONNECTIONS = Math.max(1, PropertiesUtil.getProperty(PROP_CONNECTIONS, 4));
+
+  private static final long MIN_RANGE_SIZE = Math.max(1, PropertiesUtil.getProperty(PROP_MIN_RANGE_SIZE, 8)) * 1024L * 1024L;
+
+  private static final String PARTIAL_FILE_EXTENSION = ".downloading"; //$NON-NLS-1$
+
+  private static final String RANGES_FILE_EXTENSION = ".ranges.downloading"; //$NON-NLS-1$
+
+  private static final String LOCK_FILE_EXTENSION = ".lock.downloading"; //$NON-NLS-1$
+
+  private static final String PROPERTY_SIZE = "size"; //$NON-NLS-1$
+
+  private static final String PROPERTY_RANGES = "ranges"; //$NON-NLS-1$
+
+  private static final long POLL_INTERVAL = 500;
+
+  private static final int POLLS_PER_SAVE = 4;
+
+  private final Transport transport;
+
+  private final URI uri;
+
+  private final ContentAddressedCache cache;
+
+  private final String digest;
+
+  private final long size;
+
+  private final File partialFile;
+
+  private final File rangesFile;
+
+  private long[] starts;
+
+  private long[] ends;
+
+  private AtomicLongArray done;
+
+  private File result;
+
+  public RangedDownload(Transport transport, URI uri, ContentAddressedCache cache, String digest, long size)
+  {
+    this.transport = transport;
+    this.uri = uri;
+    this.cache = cache;
+    this.digest = digest;
+    this.size = size;
+
+    File file = cache.getFile(digest);
+    partialFile = new File(file.getPath() + PARTIAL_FILE_EXTENSION);
+    rangesFile = new File(file.getPath() + RANGES_FILE_EXTENSION);
+  }
+
+  /**
+   * Returns the committed cache file after a successful {@link #download(IProgressMonitor) download}.
+   */
+  public File getResult()
+  {
+    return result;
+  }
+
+  /**
+   * Downloads the artifact into the cache.
+   * Returns <code>null</code> if the artifact is currently being downloaded by another thread or process,
+   * in which case the caller should download it the usual way.
+   */
+  public IStatus download(IProgressMonitor monitor)
+  {
+    File file = cache.getFile(digest);
+    IOUtil.mkdirs(file.getParentFile());
+
+    LockFile lockFile = new LockFile(new File(file.getPath() + LOCK_FILE_EXTENSION));
+
+    try
+    {
+      lockFile.lock();
+    }
+    catch (IOException ex)
+    {
+      return null;
+    }
+    catch (RuntimeException ex)
+    {
+      // An OverlappingFileLockException indicates that another thread of this process holds the lock.
+      return null;
+    }
+
+    try
+    {
+      long start = System.currentTimeMillis();
+      IStatus status = downloadRanges(monitor);
+      if (!status.isOK())
+      {
+        return status;
+      }
+
+      // The ranges are written out of order, so the checksum can only be computed once all of them are complete.
+      // All configured digests are computed in the same pass, so the committed file never needs to be read again to compute them.
+      result = cache.commit(partialFile, digest, computeDigests());
+      IOUtil.deleteBestEffort(rangesFile, false);
+      if (result == null)
+      {
+        // Content with the wrong checksum must not be resumed.
+        IOUtil.deleteBestEffort(partialFile, false);
+        return new Status(IStatus.ERROR, P2CorePlugin.INSTANCE.getSymbolicName(),
+            NLS.bind(Messages.RangedDownload_ChecksumMismatch_exception, uri, digest));
+      }
+
+      long duration = Math.max(1, System.currentTimeMillis() - start);
+      DownloadStatus downloadStatus = new DownloadStatus(IStatus.OK, P2CorePlugin.INSTANCE.getSymbolicName(), Status.OK_STATUS.getMessage());
+      downloadStatus.setFileSize(size);
+      downloadStatus.setTransferRate(1000 * size / duration);
+      return downloadStatus;
+    }
+    catch (IOException ex)
+    {
+      return P2CorePlugin.INSTANCE.getStatus(ex);
+    }
+    finally
+    {
+      lockFile.unlock();
+    }
+  }
+
+  private IStatus downloadRanges(final IProgressMonitor monitor) throws IOException
+  {
+    RandomAccessFile randomAccessFile = null;
+
+    try
+    {
+      boolean resumed = loadRanges();
+      if (!resumed)
+      {
+        initRanges();
+      }
+
+      randomAccessFile = new RandomAccessFile(partialFile, "rw"); //$NON-NLS-1$
+      if (randomAccessFile.length() != size)
+      {
+        if (resumed)
+        {
+          // The partial file doesn't match the recorded progress, so start over.
+          initRanges();
+        }
+
+        randomAccessFile.setLength(size);
+      }
+
+      final FileChannel channel = randomAccessFile.getChannel();
+      final IProgressMonitor rangeMonitor = new NullProgressMonitor()
+      {
+        @Override
+        public boolean isCanceled()
+        {
+          return super.isCanceled() || monitor != null && monitor.isCanceled();
+        }
+      };
+
+      List<Future<IStatus>> futures = new ArrayList<Future<IStatus>>();
+      for (int i = 0; i < starts.length; i++)
+      {
+        final int range = i;
+        if (starts[range] + done.get(range) < ends[range])
+        {
+          futures.add(TaskScheduler.submit(TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_DEFAULT, uri.getHost(), new Callable<IStatus>()
+          {
+            public IStatus call() throws Exception
+            {
+              return downloadRange(range, channel, rangeMonitor);
+            }
+          }));
+        }
+      }
+
+      MultiStatus status = new MultiStatus(P2CorePlugin.INSTANCE.getSymbolicName(), 0, NLS.bind(Messages.RangedDownload_Failed_exception, uri), null);
+      boolean interrupted = false;
+      int polls = 0;
+      for (Future<IStatus> future : futures)
+      {
+        for (;;)
+        {
+          try
+          {
+            status.add(future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS));
+            break;
+          }
+          catch (TimeoutException ex)
+          {
+            if (++polls % POLLS_PER_SAVE == 0)
+            {
+              // Record the progress from time to time so that a crashed process can resume as much as possible.
+              channel.force(false);
+              saveRanges();
+            }
+          }
+          catch (InterruptedException ex)
+          {
+            // Let the ranges stop and wait for them, so that no range writes to the channel after it's closed.
+            // The interrupt is restored once they have stopped, because an interrupted thread would fail each further wait immediately.
+            interrupted = true;
+            rangeMonitor.setCanceled(true);
+          }
+          catch (ExecutionException ex)
+          {
+            status.add(P2CorePlugin.INSTANCE.getStatus(ex.getCause()));
+            break;
+          }
+        }
+      }
+
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+
+      channel.force(false);
+
+      if (rangeMonitor.isCanceled())
+      {
+        return Status.CANCEL_STATUS;
+      }
+
+      return status.isOK() ? Status.OK_STATUS : status;
+    }
+    finally
+    {
+      IOUtil.closeSilent(randomAccessFile);
+
+      if (starts != null)
+      {
+        saveRanges();
+      }
+    }
+  }
+
+  private IStatus downloadRange(int range, FileChannel channel, IProgressMonitor monitor)
+  {
+    long position = starts[range] + done.get(range);
+    RangeOutputStream out = new RangeOutputStream(channel, range);
+    IStatus status = transport.download(uri, out, position, monitor);
+    if (out.isComplete())
+    {
+      // We aborted the transfer ourselves once the range was complete, so whatever the transport reports doesn't matter.
+      return Status.OK_STATUS;
+    }
+
+    if (status.isOK())
+    {
+      // The transfer ended before the range was complete.
+      return new Status(IStatus.ERROR, P2CorePlugin.INSTANCE.getSymbolicName(),
+          NLS.bind(Messages.RangedDownload_Incomplete_exception, new Object[] { uri, starts[range], ends[range] }));
+    }
+
+    return status;
+  }
+
+  private void initRanges()
+  {
+    int count = (int)Math.max(1, Math.min(CONNECTIONS, size / MIN_RANGE_SIZE));
+    long rangeSize = size / count;
+
+    starts = new long[count];
+    ends = new long[count];
+    done = new AtomicLongArray(count);
+
+    for (int i = 0; i < count; i++)
+    {
+      starts[i] = i * rangeSize;
+      ends[i] = i == count - 1 ? size : (i + 1) * rangeSize;
+    }
+  }
+
+  private boolean loadRanges()
+  {
+    if (!rangesFile.isFile() || !partialFile.isFile())
+    {
+      return false;
+    }
+
+    try
+    {
+      Map<String, String> properties = PropertiesUtil.loadProperties(rangesFile);
+      if (Long.parseLong(properties.get(PROPERTY_SIZE)) != size)
+      {
+        return false;
+      }
+
+      int count = Integer.parseInt(properties.get(PROPERTY_RANGES));
+      long[] loadedStarts = new long[count];
+      long[] loadedEnds = new long[count];
+      AtomicLongArray loadedDone = new AtomicLongArray(count);
+      for (int i = 0; i < count; i++)
+      {
+        loadedStarts[i] = Long.parseLong(properties.get("start." + i)); //$NON-NLS-1$
+        loadedEnds[i] = Long.parseLong(properties.get("end." + i)); //$NON-NLS-1$
+        loadedDone.set(i, Long.parseLong(properties.get("done." + i))); //$NON-NLS-1$
+      }
+
+      starts = loadedStarts;
+      ends = loadedEnds;
+      done = loadedDone;
+      return true;
+    }
+    catch (RuntimeException ex)
+    {
+      // The progress file is corrupt, so start over.
+      return false;
+    }
+  }
+
+  private void saveRanges()
+  {
+    Map<String, String> properties = new LinkedHashMap<String, String>();
+    properties.put(PROPERTY_SIZE, Long.toString(size));
+    properties.put(PROPERTY_RANGES, Integer.toString(starts.length));
+    for (int i = 0; i < starts.length; i++)
+    {
+      properties.put("start." + i, Long.toString(starts[i])); //$NON-NLS-1$
+      properties.put("end." + i, Long.toString(ends[i])); //$NON-NLS-1$
+      properties.put("done." + i, Long.toString(done.get(i))); //$NON-NLS-1$
+    }
+
+    try
+    {
+      PropertiesUtil.saveProperties(rangesFile, properties, false);
+    }
+    catch (IORuntimeException ex)
+    {
+      // Without the progress file, the next attempt will simply start over.
+    }
+  }
+
+  private StreamDigester computeDigests() throws IOException
+  {
+    StreamDigester digester = new StreamDigester(ContentAddressedCache.ALGORITHM);
+    FileInputStream in = new FileInputStream(partialFile);
+
+    try
+    {
+      byte[] buffer = new byte[64 * 1024];
+      int n;
+      while ((n = in.read(buffer)) != -1)
+      {
+        digester.update(buffer, 0, n);
+      }
+
+      return digester;
+    }
+    finally
+    {
+      IOUtil.closeSilent(in);
+    }
+  }
+
+  public static boolean isApplicable(long size)
+  {
+    return size >= 2 * MIN_RANGE_SIZE;
+  }
+
+  /**
+   * Writes the bytes of one range at their offsets in the partial file.
+   * Once the range is complete, further writes throw a {@link RangeCompleteException} to abort the transfer,
+   * because the transport requests everything from the start position to the end of the file.
+   *
+   * @author Eike Stepper
+   */
+  private final class RangeOutputStream extends OutputStream
+  {
+    private final FileChannel channel;
+
+    private final int range;
+
+    private boolean complete;
+
+    public RangeOutputStream(FileChannel channel, int range)
+    {
+      this.channel = channel;
+      this.range = range;
+    }
+
+    public boolean isComplete()
+    {
+      return complete;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      long position = starts[range] + done.get(range);
+      int length = (int)Math.min(len, ends[range] - position);
+
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, length);
+      while (buffer.hasRemaining())
+      {
+        position += channel.write(buffer, position);
+      }
+
+      done.addAndGet(range, length);
+
+      if (position >= ends[range])
+      {
+        complete = true;
+        throw new RangeCompleteException();
+      }
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class RangeCompleteException extends IOException
+  {
+    private static final long serialVersionUID = 1L;
+  }
+}
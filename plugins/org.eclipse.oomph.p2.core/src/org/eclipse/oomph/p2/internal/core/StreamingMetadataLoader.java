@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.internal.core;
+
+import org.eclipse.oomph.util.IOUtil;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.metadata.MetadataFactory;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+import org.eclipse.equinox.p2.query.Collector;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Queries the installable units of a metadata repository while its <code>content.xml</code> is being parsed, without loading the repository.
+ * <p>
+ * Loading a metadata repository through the repository manager materializes every installable unit of the repository,
+ * which for huge repositories needs more heap than their matching units ever will.
+ * This loader instead parses the metadata with SAX, creates a shallow installable unit for one unit element at a time,
+ * and keeps only the units that match the query.
+ * A shallow unit has the ID, version, singleton flag, filter, properties, provided capabilities,
+ * and simple required capabilities of the original unit, but no touchpoint data, artifacts, licenses, or update descriptor.
+ * <p>
+ * Match queries, such as ID, version, capability, and property queries, are evaluated per unit.
+ * Other queries, such as latest queries, are evaluated on all shallow units at the end.
+ * Composite repositories are queried recursively.
+ *
+ * @author Eike Stepper
+ */
+@SuppressWarnings("restriction")
+public final class StreamingMetadataLoader
+{
+  private static final String[] CONTENT_SUFFIXES = { "content.jar", "content.xml" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+  private static final String[] COMPOSITE_SUFFIXES = { "compositeContent.jar", "compositeContent.xml" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+  private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+  private final Transport transport;
+
+  public StreamingMetadataLoader(IProvisioningAgent agent)
+  {
+    transport = (Transport)agent.getService(Transport.SERVICE_NAME);
+    if (transport == null)
+    {
+      throw new IllegalArgumentException(Messages.CachingTransport_ServiceNotAvailable_exception);
+    }
+  }
+
+  /**
+   * Returns the shallow installable units of the repository at the given location that match the given query.
+   */
+  public IQueryResult<IInstallableUnit> query(URI location, IQuery<IInstallableUnit> query, IProgressMonitor monitor) throws ProvisionException
+  {
+    if (monitor == null)
+    {
+      monitor = new NullProgressMonitor();
+    }
+
+    boolean matchQuery = QueryUtil.isMatchQuery(query);
+    List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+    query(location, matchQuery ? query : null, units, new HashSet<URI>(), monitor);
+
+    Collector<IInstallableUnit> result = new Collector<IInstallableUnit>();
+    if (matchQuery)
+    {
+      for (IInstallableUnit unit : units)
+      {
+        result.accept(unit);
+      }
+    }
+    else
+    {
+      result.addAll(query.perform(units.iterator()));
+    }
+
+    return result;
+  }
+
+  private void query(URI location, IQuery<IInstallableUnit> matchQuery, List<IInstallableUnit> units, Set<URI> visited, IProgressMonitor monitor)
+      throws ProvisionException
+  {
+    if (!visited.add(location))
+    {
+      return;
+    }
+
+    // Download the metadata in the same scope as the repository manager does, so that the transport uses its cache and respects the offline mode.
+    CachingTransport.startLoadingRepository(location);
+
+    try
+    {
+      for (String suffix : CONTENT_SUFFIXES)
+      {
+        if (parse(location, suffix, new UnitHandler(matchQuery, units, monitor), monitor))
+        {
+          return;
+        }
+      }
+
+      for (String suffix : COMPOSITE_SUFFIXES)
+      {
+        ChildHandler childHandler = new ChildHandler();
+        if (parse(location, suffix, childHandler, monitor))
+        {
+          for (String child : childHandler.getChildren())
+          {
+            try
+            {
+              query(URIUtil.makeAbsolute(new URI(child), location), matchQuery, units, visited, monitor);
+            }
+            catch (URISyntaxException ex)
+            {
+              throw new ProvisionException(new Status(IStatus.ERROR, P2CorePlugin.INSTANCE.getSymbolicName(), ProvisionException.REPOSITORY_INVALID_LOCATION,
+                  ex.getMessage(), ex));
+            }
+          }
+
+          return;
+        }
+      }
+
+      throw new ProvisionException(new Status(IStatus.ERROR, P2CorePlugin.INSTANCE.getSymbolicName(), ProvisionException.REPOSITORY_NOT_FOUND,
+          location.toString(), null));
+    }
+    finally
+    {
+      CachingTransport.stopLoadingRepository();
+    }
+  }
+
+  /**
+   * Downloads the metadata file with the given suffix to a temporary file and parses it with the given handler,
+   * returning <code>false</code> if there is no such metadata file.
+   */
+  private boolean parse(URI location, String suffix, DefaultHandler handler, IProgressMonitor monitor) throws ProvisionException
+  {
+    File file = null;
+    InputStream inputStream = null;
+
+    try
+    {
+      file = File.createTempFile("metadata-", suffix.endsWith(".jar") ? ".jar" : ".xml"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+      OutputStream outputStream = new FileOutputStream(file);
+      IStatus status;
+
+      try
+      {
+        status = transport.download(URIUtil.append(location, suffix), outputStream, monitor);
+      }
+      finally
+      {
+        IOUtil.close(outputStream);
+      }
+
+      if (status.getSeverity() == IStatus.CANCEL || monitor.isCanceled())
+      {
+        throw new OperationCanceledException();
+      }
+
+      if (!status.isOK())
+      {
+        return false;
+      }
+
+      inputStream = new FileInputStream(file);
+      if (suffix.endsWith(".jar")) //$NON-NLS-1$
+      {
+        ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+        inputStream = zipInputStream;
+
+        ZipEntry entry;
+        while ((entry = zipInputStream.getNextEntry()) != null)
+        {
+          if (entry.getName().endsWith(".xml")) //$NON-NLS-1$
+          {
+            break;
+          }
+        }
+
+        if (entry == null)
+        {
+          return false;
+        }
+      }
+
+      SAXParser parser = PARSER_FACTORY.newSAXParser();
+      parser.parse(inputStream, handler);
+      return true;
+    }
+    catch (ProvisionException ex)
+    {
+      throw ex;
+    }
+    catch (OperationCanceledException ex)
+    {
+      throw ex;
+    }
+    catch (Exception ex)
+    {
+      throw new ProvisionException(new Status(IStatus.ERROR, P2CorePlugin.INSTANCE.getSymbolicName(), ProvisionException.REPOSITORY_FAILED_READ,
+          URIUtil.append(location, suffix).toString(), ex));
+    }
+    finally
+    {
+      IOUtil.closeSilent(inputStream);
+      if (file != null)
+      {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * Creates a shallow installable unit per unit element and keeps it if it matches the query.
+   *
+   * @author Eike Stepper
+   */
+  private static final class UnitHandler extends DefaultHandler
+  {
+    private final IQuery<IInstallableUnit> matchQuery;
+
+    private final List<IInstallableUnit> units;
+
+    private final IProgressMonitor monitor;
+
+    /**
+     * The names of the currently open elements, starting at the unit element, or empty outside of a unit element.
+     */
+    private final List<String> path = new ArrayList<String>();
+
+    private final List<IProvidedCapability> providedCapabilities = new ArrayList<IProvidedCapability>();
+
+    private final List<IRequirement> requirements = new ArrayList<IRequirement>();
+
+    private final StringBuilder filter = new StringBuilder();
+
+    private InstallableUnitDescription description;
+
+    public UnitHandler(IQuery<IInstallableUnit> matchQuery, List<IInstallableUnit> units, IProgressMonitor monitor)
+    {
+      this.matchQuery = matchQuery;
+      this.units = units;
+      this.monitor = monitor;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+    {
+      if (path.isEmpty())
+      {
+        if ("unit".equals(qName)) //$NON-NLS-1$
+        {
+          if (monitor.isCanceled())
+          {
+            throw new OperationCanceledException();
+          }
+
+          description = new InstallableUnitDescription();
+          description.setId(attributes.getValue("id")); //$NON-NLS-1$
+          description.setVersion(Version.create(attributes.getValue("version"))); //$NON-NLS-1$
+          description.setSingleton(!"false".equals(attributes.getValue("singleton"))); //$NON-NLS-1$ //$NON-NLS-2$
+          path.add(qName);
+        }
+
+        return;
+      }
+
+      path.add(qName);
+
+      int depth = path.size();
+      String parent = path.get(depth - 2);
+      if (depth == 3 && "property".equals(qName) && "properties".equals(parent)) //$NON-NLS-1$ //$NON-NLS-2$
+      {
+        description.setProperty(attributes.getValue("name"), attributes.getValue("value")); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      else if (depth == 3 && "provided".equals(qName) && "provides".equals(parent)) //$NON-NLS-1$ //$NON-NLS-2$
+      {
+        String version = attributes.getValue("version"); //$NON-NLS-1$
+        providedCapabilities.add(MetadataFactory.createProvidedCapability(attributes.getValue("namespace"), attributes.getValue("name"), //$NON-NLS-1$ //$NON-NLS-2$
+            version == null ? Version.emptyVersion : Version.create(version)));
+      }
+      else if (depth == 3 && "required".equals(qName) && "requires".equals(parent)) //$NON-NLS-1$ //$NON-NLS-2$
+      {
+        String range = attributes.getValue("range"); //$NON-NLS-1$
+        boolean optional = "true".equals(attributes.getValue("optional")); //$NON-NLS-1$ //$NON-NLS-2$
+        boolean greedy = !"false".equals(attributes.getValue("greedy")); //$NON-NLS-1$ //$NON-NLS-2$
+        requirements.add(MetadataFactory.createRequirement(attributes.getValue("namespace"), attributes.getValue("name"), //$NON-NLS-1$ //$NON-NLS-2$
+            range == null ? VersionRange.emptyRange : VersionRange.create(range), null, optional, false, greedy));
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException
+    {
+      if (path.size() == 2 && "filter".equals(path.get(1))) //$NON-NLS-1$
+      {
+        filter.append(ch, start, length);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException
+    {
+      if (path.isEmpty())
+      {
+        return;
+      }
+
+      path.remove(path.size() - 1);
+      if (path.isEmpty())
+      {
+        IInstallableUnit unit = createUnit();
+        if (matchQuery == null || !matchQuery.perform(Collections.singleton(unit).iterator()).isEmpty())
+        {
+          units.add(unit);
+        }
+      }
+    }
+
+    private IInstallableUnit createUnit()
+    {
+      try
+      {
+        description.setCapabilities(providedCapabilities.toArray(new IProvidedCapability[providedCapabilities.size()]));
+        description.setRequirements(requirements.toArray(new IRequirement[requirements.size()]));
+
+        String filter = this.filter.toString().trim();
+        if (filter.length() != 0)
+        {
+          description.setFilter(filter);
+        }
+
+        return MetadataFactory.createInstallableUnit(description);
+      }
+      finally
+      {
+        description = null;
+        providedCapabilities.clear();
+        requirements.clear();
+        filter.setLength(0);
+      }
+    }
+  }
+
+  /**
+   * Collects the child locations of a composite repository.
+   *
+   * @author Eike Stepper
+   */
+  private static final class ChildHandler extends DefaultHandler
+  {
+    private final List<String> children = new ArrayList<String>();
+
+    public List<String> getChildren()
+    {
+      return children;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
+    {
+      if ("child".equals(qName)) //$NON-NLS-1$
+      {
+        String location = attributes.getValue("location"); //$NON-NLS-1$
+        if (location != null)
+        {
+          children.add(location);
+        }
+      }
+    }
+  }
+}
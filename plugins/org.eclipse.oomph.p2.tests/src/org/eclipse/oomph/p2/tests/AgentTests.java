@@ -16,12 +16,14 @@ import org.eclipse.oomph.p2.P2Factory;
 import org.eclipse.oomph.p2.ProfileDefinition;
 import org.eclipse.oomph.p2.core.Agent;
 import org.eclipse.oomph.p2.core.AgentManager;
+import org.eclipse.oomph.p2.core.BundlePool;
 import org.eclipse.oomph.p2.core.P2Util;
 import org.eclipse.oomph.p2.core.Profile;
 import org.eclipse.oomph.p2.core.ProfileCreator;
 import org.eclipse.oomph.p2.core.ProfileTransaction;
 import org.eclipse.oomph.p2.core.ProfileTransaction.Resolution;
 import org.eclipse.oomph.p2.internal.core.AgentManagerImpl;
+import org.eclipse.oomph.p2.internal.core.BundlePoolCollector;
 import org.eclipse.oomph.p2.internal.core.CachingRepositoryManager;
 import org.eclipse.oomph.p2.internal.core.ProfileImpl;
 import org.eclipse.oomph.util.IOUtil;
@@ -33,6 +35,7 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.engine.IProfileRegistry;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.VersionRange;
 
 import org.junit.Assert;
@@ -50,6 +53,8 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * @author Eike Stepper
@@ -406,6 +411,68 @@ public class AgentTests extends AbstractP2Test
     assertThat(new File(plugins, oldVersion).isFile(), is(true));
   }
 
+  @Test
+  public void testCollectBundlePool() throws Exception
+  {
+    Agent agent = getAgent();
+    File poolFolder = new File(getUserHome(), "pool");
+
+    String oldVersion = "org.eclipse.net4j.util_3.3.0.v20130601-1611";
+    String newVersion = "org.eclipse.net4j.util_3.3.1.v20140218-1709";
+
+    // Two profiles share the bundle pool, one with the old version and one with the new version.
+    BundlePool bundlePool = agent.addBundlePool(poolFolder);
+    Profile profile1 = bundlePool.addProfile("profile-app1", "Installation").setInstallFolder(new File(getUserHome(), "app1")).create();
+    Profile profile2 = bundlePool.addProfile("profile-app2", "Installation").setInstallFolder(new File(getUserHome(), "app2")).create();
+
+    ProfileTransaction transaction1 = profile1.change();
+    transaction1.getProfileDefinition().getRequirements().add(P2Factory.eINSTANCE.createRequirement("org.eclipse.net4j.util"));
+    transaction1.getProfileDefinition().getRepositories().add(P2Factory.eINSTANCE.createRepository(CDO_OLD.toURI().toString()));
+    commitProfileTransaction(transaction1, true);
+
+    ProfileTransaction transaction2 = profile2.change();
+    transaction2.getProfileDefinition().getRequirements().add(P2Factory.eINSTANCE.createRequirement("org.eclipse.net4j.util"));
+    transaction2.getProfileDefinition().getRepositories().add(P2Factory.eINSTANCE.createRepository(CDO_NEW.toURI().toString()));
+    commitProfileTransaction(transaction2, true);
+
+    File plugins = new File(poolFolder, "plugins");
+    assertThat(new File(plugins, oldVersion + ".jar").isFile(), is(true));
+    assertThat(new File(plugins, newVersion + ".jar").isFile(), is(true));
+
+    // Nothing is collected while both versions are used.
+    BundlePoolCollector collector = new BundlePoolCollector(P2Util.getAgentManager());
+    assertThat(collector.collect(true, new NullProgressMonitor()).getUnreachableArtifactsCount(), is(0));
+
+    // After the deletion of the first profile, a dry run reports the old version as unreachable, but doesn't remove it.
+    profile1.delete();
+
+    Set<String> unreachableArtifacts = getUnreachableArtifacts(collector.collect(true, new NullProgressMonitor()));
+    assertThat(unreachableArtifacts, is((Set<String>)new HashSet<String>(Arrays.asList(oldVersion))));
+    assertThat(new File(plugins, oldVersion + ".jar").isFile(), is(true));
+
+    // A real run removes the old version and keeps the new version.
+    unreachableArtifacts = getUnreachableArtifacts(collector.collect(false, new NullProgressMonitor()));
+    assertThat(unreachableArtifacts, is((Set<String>)new HashSet<String>(Arrays.asList(oldVersion))));
+    assertThat(new File(plugins, oldVersion + ".jar").exists(), is(false));
+    assertThat(new File(plugins, newVersion + ".jar").isFile(), is(true));
+
+    assertThat(collector.collect(true, new NullProgressMonitor()).getUnreachableArtifactsCount(), is(0));
+  }
+
+  private static Set<String> getUnreachableArtifacts(BundlePoolCollector.Report report)
+  {
+    Set<String> result = new HashSet<String>();
+    for (BundlePoolCollector.BundlePoolReport bundlePoolReport : report.getBundlePools())
+    {
+      for (IArtifactKey key : bundlePoolReport.getUnreachableArtifacts())
+      {
+        result.add(key.getId() + "_" + key.getVersion());
+      }
+    }
+
+    return result;
+  }
+
   @Test
   public void testDetectProfileDefinitionCreation() throws Exception
   {
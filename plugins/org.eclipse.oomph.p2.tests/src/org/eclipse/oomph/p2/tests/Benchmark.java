@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.tests;
+
+import org.eclipse.oomph.util.PropertiesUtil;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A minimal micro benchmark harness in the spirit of JMH, which measures the throughput and the allocation per operation of a benchmark operation.
+ * <p>
+ * Each benchmark runs a number of warmup iterations, whose results are discarded, followed by a number of measurement iterations.
+ * Each iteration calls the operation repeatedly for a fixed amount of time.
+ * The throughput is reported as the median of the measurement iterations, and the allocation per operation is measured
+ * with the HotSpot-specific <code>getThreadAllocatedBytes()</code> method of the thread MX bean, if available.
+ * <p>
+ * The following system properties control the harness:
+ * <ul>
+ * <li><code>oomph.benchmark.warmups</code>, the number of warmup iterations, defaults to 3.
+ * <li><code>oomph.benchmark.iterations</code>, the number of measurement iterations, defaults to 5.
+ * <li><code>oomph.benchmark.time</code>, the duration of each iteration in milliseconds, defaults to 1000.
+ * <li><code>oomph.benchmark.results</code>, a properties file to which the results are written, so that they can be used as a baseline later.
+ * <li><code>oomph.benchmark.baseline</code>, a properties file with the results of an earlier run, against which the results are compared.
+ * <li><code>oomph.benchmark.tolerance</code>, the percentage by which the throughput may fall below the baseline before the benchmark fails, defaults to 20.
+ * </ul>
+ *
+ * @author Eike Stepper
+ */
+public final class Benchmark
+{
+  public static final String PROP_WARMUPS = "oomph.benchmark.warmups";
+
+  public static final String PROP_ITERATIONS = "oomph.benchmark.iterations";
+
+  public static final String PROP_TIME = "oomph.benchmark.time";
+
+  public static final String PROP_RESULTS = "oomph.benchmark.results";
+
+  public static final String PROP_BASELINE = "oomph.benchmark.baseline";
+
+  public static final String PROP_TOLERANCE = "oomph.benchmark.tolerance";
+
+  private static final int WARMUPS = PropertiesUtil.getProperty(PROP_WARMUPS, 3);
+
+  private static final int ITERATIONS = Math.max(1, PropertiesUtil.getProperty(PROP_ITERATIONS, 5));
+
+  private static final long TIME = Math.max(1, PropertiesUtil.getProperty(PROP_TIME, 1000));
+
+  private static final int TOLERANCE = PropertiesUtil.getProperty(PROP_TOLERANCE, 20);
+
+  private static final Map<String, Result> RESULTS = new LinkedHashMap<String, Result>();
+
+  /**
+   * Prevents the JIT from eliminating operations whose results are otherwise unused.
+   */
+  private static volatile Object blackhole;
+
+  private Benchmark()
+  {
+  }
+
+  /**
+   * Runs the given operation as a benchmark with the given name, reports the result, and checks it against the baseline, if one is specified.
+   *
+   * @throws AssertionError if the throughput has regressed beyond the tolerance.
+   */
+  public static Result run(String name, Operation operation) throws Exception
+  {
+    for (int i = 0; i < WARMUPS; i++)
+    {
+      iterate(operation);
+    }
+
+    double[] throughputs = new double[ITERATIONS];
+    long totalOperations = 0;
+    long totalAllocatedBytes = 0;
+
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      long allocatedBytes = getAllocatedBytes();
+      long start = System.nanoTime();
+      long operations = iterate(operation);
+      long duration = System.nanoTime() - start;
+      if (allocatedBytes == -1 || totalAllocatedBytes == -1)
+      {
+        totalAllocatedBytes = -1;
+      }
+      else
+      {
+        totalAllocatedBytes += getAllocatedBytes() - allocatedBytes;
+      }
+
+      totalOperations += operations;
+
+      throughputs[i] = operations * 1000000000d / duration;
+    }
+
+    Arrays.sort(throughputs);
+
+    long allocation = totalAllocatedBytes < 0 ? -1 : totalAllocatedBytes / totalOperations;
+    Result result = new Result(name, throughputs[ITERATIONS / 2], throughputs[0], throughputs[ITERATIONS - 1], allocation);
+    RESULTS.put(name, result);
+    System.out.println(result);
+
+    saveResults();
+    checkBaseline(result);
+    return result;
+  }
+
+  public static void consume(Object object)
+  {
+    blackhole = object;
+  }
+
+  private static long iterate(Operation operation) throws Exception
+  {
+    long operations = 0;
+    long end = System.nanoTime() + TIME * 1000000L;
+
+    do
+    {
+      operation.run();
+      ++operations;
+    } while (System.nanoTime() < end);
+
+    return operations;
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far, or <code>-1</code> if that can't be measured.
+   */
+  private static long getAllocatedBytes()
+  {
+    try
+    {
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      Method method = bean.getClass().getMethod("getThreadAllocatedBytes", long.class);
+      method.setAccessible(true);
+      return (Long)method.invoke(bean, Thread.currentThread().getId());
+    }
+    catch (Throwable ex)
+    {
+      return -1;
+    }
+  }
+
+  private static void saveResults()
+  {
+    String results = PropertiesUtil.getProperty(PROP_RESULTS);
+    if (results != null)
+    {
+      Map<String, String> properties = new LinkedHashMap<String, String>();
+      File file = new File(results);
+      if (file.isFile())
+      {
+        properties.putAll(PropertiesUtil.loadProperties(file));
+      }
+
+      for (Result result : RESULTS.values())
+      {
+        properties.put(result.getName(), Double.toString(result.getThroughput()));
+      }
+
+      PropertiesUtil.saveProperties(file, properties, true);
+    }
+  }
+
+  private static void checkBaseline(Result result)
+  {
+    String baseline = PropertiesUtil.getProperty(PROP_BASELINE);
+    if (baseline != null)
+    {
+      String value = PropertiesUtil.loadProperties(new File(baseline)).get(result.getName());
+      if (value != null)
+      {
+        double baselineThroughput = Double.parseDouble(value);
+        double minimumThroughput = baselineThroughput * (100 - TOLERANCE) / 100;
+        if (result.getThroughput() < minimumThroughput)
+        {
+          throw new AssertionError(String.format(Locale.ENGLISH, "%s regressed from %.1f ops/s to %.1f ops/s", result.getName(), baselineThroughput,
+              result.getThroughput()));
+        }
+      }
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  public interface Operation
+  {
+    public void run() throws Exception;
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  public static final class Result
+  {
+    private final String name;
+
+    private final double throughput;
+
+    private final double minThroughput;
+
+    private final double maxThroughput;
+
+    private final long allocation;
+
+    private Result(String name, double throughput, double minThroughput, double maxThroughput, long allocation)
+    {
+      this.name = name;
+      this.throughput = throughput;
+      this.minThroughput = minThroughput;
+      this.maxThroughput = maxThroughput;
+      this.allocation = allocation;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    /**
+     * Returns the median number of operations per second.
+     */
+    public double getThroughput()
+    {
+      return throughput;
+    }
+
+    public double getMinThroughput()
+    {
+      return minThroughput;
+    }
+
+    public double getMaxThroughput()
+    {
+      return maxThroughput;
+    }
+
+    /**
+     * Returns the number of bytes allocated per operation, or <code>-1</code> if that couldn't be measured.
+     */
+    public long getAllocation()
+    {
+      return allocation;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format(Locale.ENGLISH, "%-50s %12.1f ops/s [%.1f .. %.1f] %12s B/op", name, throughput, minThroughput, maxThroughput,
+          allocation < 0 ? "n/a" : Long.toString(allocation));
+    }
+  }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.tests;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.oomph.internal.util.HTTPServer;
+import org.eclipse.oomph.internal.util.HTTPServer.FileContext;
+import org.eclipse.oomph.tests.AbstractTest;
+import org.eclipse.oomph.util.IOUtil;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the {@link HTTPServer} by sending raw requests over real sockets to a {@link FileContext}.
+ * Each test starts its own server.
+ *
+ * @author Eike Stepper
+ */
+public class HTTPServerTests extends AbstractTest
+{
+  private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789abcdefghijklmnopqrstuvwxyzAB";
+
+  private HTTPServer httpServer;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    super.setUp();
+    startServer();
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    if (httpServer != null)
+    {
+      httpServer.stop();
+      httpServer = null;
+    }
+
+    super.tearDown();
+  }
+
+  @Test
+  public void testGet() throws Exception
+  {
+    Response response = get("GET /files/file.txt HTTP/1.1\r\n\r\n");
+    assertThat(response.status, is("200 OK"));
+    assertThat(response.getHeader("Content-Length"), is("100"));
+    assertThat(response.getHeader("Accept-Ranges"), is("bytes"));
+    assertThat(response.getHeader("ETag"), notNullValue());
+    assertThat(response.getHeader("Connection"), is("keep-alive"));
+    assertThat(response.body, is(CONTENT));
+
+    assertThat(get("GET /files/missing.txt HTTP/1.1\r\n\r\n").status, is("404 Not Found"));
+  }
+
+  @Test
+  public void testRange() throws Exception
+  {
+    assertRange("bytes=10-19", "bytes 10-19/100", CONTENT.substring(10, 20));
+
+    // Open-ended ranges and ranges that end beyond the contents end with the contents.
+    assertRange("bytes=90-", "bytes 90-99/100", CONTENT.substring(90));
+    assertRange("bytes=95-200", "bytes 95-99/100", CONTENT.substring(95));
+
+    // Suffix ranges are the given number of last bytes, or all bytes if there are fewer.
+    assertRange("bytes=-5", "bytes 95-99/100", CONTENT.substring(95));
+    assertRange("bytes=-500", "bytes 0-99/100", CONTENT);
+
+    // Ranges that start beyond the contents and empty suffix ranges can't be satisfied.
+    assertUnsatisfiable("bytes=100-");
+    assertUnsatisfiable("bytes=1000-2000");
+    assertUnsatisfiable("bytes=-0");
+
+    // Malformed ranges, reversed ranges, and multiple ranges are ignored.
+    assertIgnoredRange("bytes=a-b");
+    assertIgnoredRange("bytes=20-10");
+    assertIgnoredRange("items=0-9");
+    assertIgnoredRange("bytes=0-1,5-6");
+  }
+
+  @Test
+  public void testIfRange() throws Exception
+  {
+    Response response = get("GET /files/file.txt HTTP/1.1\r\n\r\n");
+    String etag = response.getHeader("ETag");
+    String lastModified = response.getHeader("Last-Modified");
+
+    // The range is sent only if the contents haven't changed since the validator was received, otherwise the entire contents are sent.
+    response = get("GET /files/file.txt HTTP/1.1\r\nRange: bytes=10-19\r\nIf-Range: " + etag + "\r\n\r\n");
+    assertThat(response.status, is("206 Partial Content"));
+    assertThat(response.body, is(CONTENT.substring(10, 20)));
+
+    response = get("GET /files/file.txt HTTP/1.1\r\nRange: bytes=10-19\r\nIf-Range: " + lastModified + "\r\n\r\n");
+    assertThat(response.status, is("206 Partial Content"));
+
+    response = get("GET /files/file.txt HTTP/1.1\r\nRange: bytes=10-19\r\nIf-Range: \"other\"\r\n\r\n");
+    assertThat(response.status, is("200 OK"));
+    assertThat(response.body, is(CONTENT));
+
+    response = get("GET /files/file.txt HTTP/1.1\r\nRange: bytes=10-19\r\nIf-Range: Thu, 01 Jan 2015 00:00:00 GMT\r\n\r\n");
+    assertThat(response.status, is("200 OK"));
+    assertThat(response.body, is(CONTENT));
+  }
+
+  @Test
+  public void testNotModified() throws Exception
+  {
+    Response response = get("GET /files/file.txt HTTP/1.1\r\n\r\n");
+    String etag = response.getHeader("ETag");
+    String lastModified = response.getHeader("Last-Modified");
+
+    response = get("GET /files/file.txt HTTP/1.1\r\nIf-None-Match: " + etag + "\r\n\r\n");
+    assertThat(response.status, is("304 Not Modified"));
+    assertThat(response.getHeader("ETag"), is(etag));
+    assertThat(response.getHeader("Content-Length"), isNull());
+    assertThat(response.body, is(""));
+
+    assertThat(get("GET /files/file.txt HTTP/1.1\r\nIf-None-Match: \"other\", W/" + etag + "\r\n\r\n").status, is("304 Not Modified"));
+    assertThat(get("GET /files/file.txt HTTP/1.1\r\nIf-None-Match: *\r\n\r\n").status, is("304 Not Modified"));
+    assertThat(get("GET /files/file.txt HTTP/1.1\r\nIf-Modified-Since: " + lastModified + "\r\n\r\n").status, is("304 Not Modified"));
+
+    // A mismatching ETag takes precedence over the modification date.
+    response = get("GET /files/file.txt HTTP/1.1\r\nIf-None-Match: \"other\"\r\nIf-Modified-Since: " + lastModified + "\r\n\r\n");
+    assertThat(response.status, is("200 OK"));
+    assertThat(response.body, is(CONTENT));
+
+    // The ETag changes with the contents.
+    IOUtil.writeUTF8(new File(getUserHome(), "files/file.txt"), CONTENT + "more");
+    response = get("GET /files/file.txt HTTP/1.1\r\nIf-None-Match: " + etag + "\r\n\r\n");
+    assertThat(response.status, is("200 OK"));
+    assertThat(response.getHeader("ETag").equals(etag), is(false));
+  }
+
+  @Test
+  public void testKeepAlivePipelining() throws Exception
+  {
+    Socket socket = connect();
+
+    try
+    {
+      // Requests that are sent without waiting for the responses are answered in order on the same connection.
+      write(socket, "GET /files/file.txt HTTP/1.1\r\n\r\n" //
+          + "HEAD /files/file.txt HTTP/1.1\r\n\r\n" //
+          + "GET /files/file.txt HTTP/1.1\r\nRange: bytes=-3\r\n\r\n" //
+          + "GET /files/other.txt HTTP/1.1\r\n\r\n");
+
+      InputStream input = socket.getInputStream();
+      Response response = Response.read(input, true);
+      assertThat(response.status, is("200 OK"));
+      assertThat(response.body, is(CONTENT));
+
+      response = Response.read(input, false);
+      assertThat(response.status, is("200 OK"));
+      assertThat(response.getHeader("Content-Length"), is("100"));
+      assertThat(response.body, is(""));
+
+      response = Response.read(input, true);
+      assertThat(response.status, is("206 Partial Content"));
+      assertThat(response.body, is(CONTENT.substring(97)));
+
+      response = Response.read(input, true);
+      assertThat(response.status, is("200 OK"));
+      assertThat(response.body, is("other"));
+
+      // The connection is still alive after the pipelined requests.
+      write(socket, "GET /files/other.txt HTTP/1.1\r\nConnection: close\r\n\r\n");
+      response = Response.read(input, true);
+      assertThat(response.body, is("other"));
+      assertThat(response.getHeader("Connection"), is("close"));
+      assertThat(input.read(), is(-1));
+    }
+    finally
+    {
+      socket.close();
+    }
+
+    // HTTP/1.0 connections are closed unless they're explicitly kept alive.
+    socket = connect();
+
+    try
+    {
+      write(socket, "GET /files/other.txt HTTP/1.0\r\n\r\n");
+      InputStream input = socket.getInputStream();
+      Response response = Response.read(input, true);
+      assertThat(response.getHeader("Connection"), is("close"));
+      assertThat(input.read(), is(-1));
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testNotImplementedCloses() throws Exception
+  {
+    Socket socket = connect();
+
+    try
+    {
+      // The body of the request isn't read, so the connection is closed rather than taking the body as the next request.
+      write(socket, "POST /files/file.txt HTTP/1.1\r\nContent-Length: 32\r\n\r\nGET /files/other.txt HTTP/1.1\r\n\r\n");
+
+      InputStream input = socket.getInputStream();
+      Response response = Response.read(input, true);
+      assertThat(response.status, is("501 Not Implemented"));
+      assertThat(response.getHeader("Connection"), is("close"));
+      assertThat(input.read(), is(-1));
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testMaxConnections() throws Exception
+  {
+    httpServer.stop();
+
+    System.setProperty(HTTPServer.PROP_MAX_CONNECTIONS, "2");
+
+    try
+    {
+      startServer();
+    }
+    finally
+    {
+      System.clearProperty(HTTPServer.PROP_MAX_CONNECTIONS);
+    }
+
+    Socket socket1 = connect();
+    Socket socket2 = connect();
+    Socket socket3 = connect();
+
+    try
+    {
+      assertThat(request(socket1, "GET /files/other.txt HTTP/1.1\r\n\r\n").body, is("other"));
+      assertThat(request(socket2, "GET /files/other.txt HTTP/1.1\r\n\r\n").body, is("other"));
+      assertThat(httpServer.getConnectionCount(), is(2));
+
+      // The third connection isn't accepted while the other two are kept alive.
+      write(socket3, "GET /files/other.txt HTTP/1.1\r\n\r\n");
+      socket3.setSoTimeout(1000);
+
+      try
+      {
+        Response.read(socket3.getInputStream(), true);
+        throw new AssertionError("Expected the third connection to wait");
+      }
+      catch (SocketTimeoutException ex)
+      {
+        //$FALL-THROUGH$
+      }
+
+      assertThat(httpServer.getConnectionCount(), is(2));
+
+      // Once a connection is closed, the waiting connection is accepted and its request is answered.
+      socket1.close();
+      socket3.setSoTimeout(10000);
+      assertThat(Response.read(socket3.getInputStream(), true).body, is("other"));
+      assertThat(httpServer.getConnectionCount(), is(2));
+    }
+    finally
+    {
+      socket1.close();
+      socket2.close();
+      socket3.close();
+    }
+  }
+
+  private void startServer() throws Exception
+  {
+    File folder = new File(getUserHome(), "files");
+    IOUtil.writeUTF8(new File(folder, "file.txt"), CONTENT);
+    IOUtil.writeUTF8(new File(folder, "other.txt"), "other");
+
+    httpServer = new HTTPServer(2345, 5000);
+    httpServer.addContext(new FileContext("/files", false, folder));
+  }
+
+  private void assertRange(String range, String contentRange, String body) throws Exception
+  {
+    Response response = get("GET /files/file.txt HTTP/1.1\r\nRange: " + range + "\r\n\r\n");
+    assertThat(range, response.status, is("206 Partial Content"));
+    assertThat(range, response.getHeader("Content-Range"), is(contentRange));
+    assertThat(range, response.getHeader("Content-Length"), is(Integer.toString(body.length())));
+    assertThat(range, response.body, is(body));
+  }
+
+  private void assertUnsatisfiable(String range) throws Exception
+  {
+    Response response = get("GET /files/file.txt HTTP/1.1\r\nRange: " + range + "\r\n\r\n");
+    assertThat(range, response.status, is("416 Range Not Satisfiable"));
+    assertThat(range, response.getHeader("Content-Range"), is("bytes */100"));
+    assertThat(range, response.body, is(""));
+  }
+
+  private void assertIgnoredRange(String range) throws Exception
+  {
+    Response response = get("GET /files/file.txt HTTP/1.1\r\nRange: " + range + "\r\n\r\n");
+    assertThat(range, response.status, is("200 OK"));
+    assertThat(range, response.getHeader("Content-Range"), isNull());
+    assertThat(range, response.body, is(CONTENT));
+  }
+
+  /**
+   * Sends the given request on a new connection and returns the response.
+   */
+  private Response get(String request) throws Exception
+  {
+    Socket socket = connect();
+
+    try
+    {
+      return request(socket, request);
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  private Socket connect() throws IOException
+  {
+    Socket socket = new Socket("127.0.0.1", httpServer.getPort());
+    socket.setSoTimeout(10000);
+    return socket;
+  }
+
+  private static Response request(Socket socket, String request) throws IOException
+  {
+    write(socket, request);
+    return Response.read(socket.getInputStream(), !request.startsWith("HEAD "));
+  }
+
+  private static void write(Socket socket, String request) throws IOException
+  {
+    OutputStream output = socket.getOutputStream();
+    output.write(request.getBytes("ISO-8859-1"));
+    output.flush();
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class Response
+  {
+    private final Map<String, String> headers = new HashMap<String, String>();
+
+    private String status;
+
+    private String body;
+
+    public String getHeader(String name)
+    {
+      return headers.get(name.toLowerCase());
+    }
+
+    /**
+     * Reads a single response from the given stream, leaving the stream positioned at the next response.
+     */
+    public static Response read(InputStream input, boolean expectBody) throws IOException
+    {
+      Response response = new Response();
+
+      String statusLine = readLine(input);
+      response.status = statusLine.substring(statusLine.indexOf(' ') + 1);
+
+      for (String line; (line = readLine(input)).length() != 0;)
+      {
+        int colon = line.indexOf(':');
+        response.headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+      }
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      String contentLength = response.getHeader("Content-Length");
+      if (expectBody && contentLength != null && !response.status.startsWith("304"))
+      {
+        for (int i = Integer.parseInt(contentLength); i > 0; --i)
+        {
+          body.write(readByte(input));
+        }
+      }
+
+      response.body = body.toString("UTF-8");
+      return response;
+    }
+
+    private static String readLine(InputStream input) throws IOException
+    {
+      StringBuilder builder = new StringBuilder();
+      for (int b; (b = readByte(input)) != '\n';)
+      {
+        if (b != '\r')
+        {
+          builder.append((char)b);
+        }
+      }
+
+      return builder.toString();
+    }
+
+    private static int readByte(InputStream input) throws IOException
+    {
+      int b = input.read();
+      if (b == -1)
+      {
+        throw new EOFException();
+      }
+
+      return b;
+    }
+  }
+}
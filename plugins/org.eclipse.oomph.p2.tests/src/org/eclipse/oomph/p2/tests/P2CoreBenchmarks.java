@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.tests;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.oomph.p2.core.Agent;
+import org.eclipse.oomph.p2.core.AgentManager;
+import org.eclipse.oomph.p2.core.P2Util;
+import org.eclipse.oomph.p2.internal.core.AgentManagerImpl;
+import org.eclipse.oomph.p2.internal.core.CachingTransport;
+import org.eclipse.oomph.p2.internal.core.LazyProfileRegistry;
+import org.eclipse.oomph.p2.internal.core.P2Indexer;
+import org.eclipse.oomph.p2.internal.core.PersistentMap;
+import org.eclipse.oomph.tests.AbstractTest;
+import org.eclipse.oomph.util.IOUtil;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.engine.IProfileRegistry;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks for the hot paths of the p2 core: the caching transport, the persistent maps of the agent manager,
+ * the lazy profile registry, and the indexer's metadata processing.
+ * All repositories, profiles, and cache folders are generated locally, so no network access is needed.
+ * <p>
+ * The benchmarks are controlled by the system properties described in {@link Benchmark}.
+ *
+ * @author Eike Stepper
+ */
+public class P2CoreBenchmarks extends AbstractTest
+{
+  private static final int PERSISTENT_MAP_SIZE = 2000;
+
+  private static final int PROFILES = 50;
+
+  private static final int REPOSITORIES = 20;
+
+  private static final int UNITS = 500;
+
+  private static final int DOWNLOAD_SIZE = 1024 * 1024;
+
+  @Override
+  public void setUp() throws Exception
+  {
+    super.setUp();
+    AgentManagerImpl.instance = new AgentManagerImpl(getUserHome());
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    AgentManagerImpl.instance = null;
+    super.tearDown();
+  }
+
+  @Test
+  public void benchmarkCachingTransportDownload() throws Exception
+  {
+    Agent agent = getAgent();
+    final CachingTransport transport = (CachingTransport)agent.getProvisioningAgent().getService(CachingTransport.SERVICE_NAME);
+
+    byte[] bytes = new byte[DOWNLOAD_SIZE];
+    new Random(0).nextBytes(bytes);
+
+    File file = new File(getUserHome(), "download.bin");
+    write(file, bytes);
+
+    final URI uri = file.toURI();
+    final NullProgressMonitor monitor = new NullProgressMonitor();
+
+    Benchmark.run("CachingTransport.download", new Benchmark.Operation()
+    {
+      public void run() throws Exception
+      {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(DOWNLOAD_SIZE);
+        IStatus status = transport.download(uri, out, monitor);
+        assertThat(status.isOK(), is(true));
+        Benchmark.consume(out);
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkPersistentMapLoad() throws Exception
+  {
+    final File file = new File(getUserHome(), "map.txt");
+    BenchmarkMap map = new BenchmarkMap(file);
+    map.load();
+
+    for (int i = 0; i < PERSISTENT_MAP_SIZE; i++)
+    {
+      map.addElement("key" + i, "extra" + i);
+    }
+
+    Benchmark.run("PersistentMap.load", new Benchmark.Operation()
+    {
+      public void run() throws Exception
+      {
+        BenchmarkMap map = new BenchmarkMap(file);
+        map.load();
+        Benchmark.consume(map);
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkPersistentMapAddRemove() throws Exception
+  {
+    final BenchmarkMap map = new BenchmarkMap(new File(getUserHome(), "map.txt"));
+    map.load();
+
+    for (int i = 0; i < PERSISTENT_MAP_SIZE; i++)
+    {
+      map.addElement("key" + i, "extra" + i);
+    }
+
+    Benchmark.run("PersistentMap.addElement/removeElement", new Benchmark.Operation()
+    {
+      public void run() throws Exception
+      {
+        map.addElement("benchmark", "extra");
+        map.removeElement("benchmark");
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkLazyProfileRegistryGetProfileMap() throws Exception
+  {
+    final LazyProfileRegistry profileRegistry = createProfiles();
+    final NullProgressMonitor monitor = new NullProgressMonitor();
+
+    Benchmark.run("LazyProfileRegistry.getProfileMap", new Benchmark.Operation()
+    {
+      public void run() throws Exception
+      {
+        profileRegistry.resetProfiles();
+        Benchmark.consume(profileRegistry.getProfileMap(monitor));
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkLazyProfileRegistryGetProfiles() throws Exception
+  {
+    final LazyProfileRegistry profileRegistry = createProfiles();
+    final NullProgressMonitor monitor = new NullProgressMonitor();
+
+    Benchmark.run("LazyProfileRegistry.getProfiles", new Benchmark.Operation()
+    {
+      public void run() throws Exception
+      {
+        profileRegistry.resetProfiles();
+        Benchmark.consume(profileRegistry.getProfiles(monitor));
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkP2IndexerProcessMetadata() throws Exception
+  {
+    final File scanFolder = new File(getUserHome(), "repositories").getCanonicalFile();
+    final File outputFolder = new File(getUserHome(), "index").getCanonicalFile();
+    createRepositories(scanFolder);
+
+    PrintStream out = System.out;
+
+    try
+    {
+      // The indexer reports its progress on the console, which would dominate the measurement.
+      System.setOut(new PrintStream(new ByteArrayOutputStream()));
+
+      Benchmark.run("P2Indexer.run", new Benchmark.Operation()
+      {
+        public void run() throws Exception
+        {
+          new P2Indexer().run(scanFolder.getPath(), "1", "http://localhost/benchmark", outputFolder.getPath());
+        }
+      });
+    }
+    finally
+    {
+      System.setOut(out);
+    }
+  }
+
+  private Agent getAgent()
+  {
+    AgentManager agentManager = P2Util.getAgentManager();
+    return agentManager.getAgents().iterator().next();
+  }
+
+  private LazyProfileRegistry createProfiles() throws Exception
+  {
+    Agent agent = getAgent();
+    for (int i = 0; i < PROFILES; i++)
+    {
+      agent.addProfile("profile" + i, "Benchmark").create();
+    }
+
+    IProfileRegistry profileRegistry = agent.getProfileRegistry();
+    assertThat(profileRegistry, instanceOf(LazyProfileRegistry.class));
+    return (LazyProfileRegistry)profileRegistry;
+  }
+
+  private static void createRepositories(File scanFolder) throws Exception
+  {
+    for (int i = 0; i < REPOSITORIES; i++)
+    {
+      File repositoryFolder = new File(scanFolder, "repository" + i);
+      repositoryFolder.mkdirs();
+
+      List<String> lines = new ArrayList<String>();
+      lines.add("<?xml version='1.0' encoding='UTF-8'?>");
+      lines.add("<?metadataRepository version='1.1.0'?>");
+      lines.add("<repository name='repository" + i
+          + "' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>");
+      lines.add("  <properties size='1'>");
+      lines.add("    <property name='p2.timestamp' value='" + System.currentTimeMillis() + "'/>");
+      lines.add("  </properties>");
+      lines.add("  <units size='" + UNITS + "'>");
+
+      for (int j = 0; j < UNITS; j++)
+      {
+        String id = "org.example.bundle" + j;
+        String version = "1." + i + "." + j;
+        lines.add("    <unit id='" + id + "' version='" + version + "'>");
+        lines.add("      <provides size='3'>");
+        lines.add("        <provided namespace='org.eclipse.equinox.p2.iu' name='" + id + "' version='" + version + "'/>");
+        lines.add("        <provided namespace='osgi.bundle' name='" + id + "' version='" + version + "'/>");
+        lines.add("        <provided namespace='java.package' name='" + id + ".api' version='" + version + "'/>");
+        lines.add("      </provides>");
+        lines.add("      <requires size='1'>");
+        lines.add("        <required namespace='osgi.bundle' name='org.example.bundle" + (j + 1) % UNITS + "' range='[1.0.0,2.0.0)'/>");
+        lines.add("      </requires>");
+        lines.add("    </unit>");
+      }
+
+      lines.add("  </units>");
+      lines.add("</repository>");
+
+      IOUtil.writeLines(new File(repositoryFolder, "content.xml"), "UTF-8", lines);
+    }
+  }
+
+  private static void write(File file, byte[] bytes) throws Exception
+  {
+    OutputStream out = new FileOutputStream(file);
+
+    try
+    {
+      out.write(bytes);
+    }
+    finally
+    {
+      IOUtil.close(out);
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class BenchmarkMap extends PersistentMap<String>
+  {
+    public BenchmarkMap(File file)
+    {
+      super(file);
+    }
+
+    @Override
+    protected String createElement(String key, String extraInfo)
+    {
+      return key;
+    }
+  }
+}
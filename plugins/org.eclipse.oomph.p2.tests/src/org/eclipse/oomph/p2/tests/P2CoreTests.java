@@ -0,0 +1,490 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.tests;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.oomph.p2.core.Agent;
+import org.eclipse.oomph.p2.core.P2Util;
+import org.eclipse.oomph.p2.internal.core.AgentManagerImpl;
+import org.eclipse.oomph.p2.internal.core.CachingTransport;
+import org.eclipse.oomph.p2.internal.core.ContentAddressedCache;
+import org.eclipse.oomph.p2.internal.core.P2Indexer;
+import org.eclipse.oomph.p2.internal.core.PersistentMap;
+import org.eclipse.oomph.p2.internal.core.RangedDownload;
+import org.eclipse.oomph.tests.AbstractTest;
+import org.eclipse.oomph.util.HexUtil;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.PropertiesUtil;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for the caches and persistent data structures of the p2 core.
+ * All repositories, profiles, and cache folders are generated locally, so no network access is needed.
+ *
+ * @author Eike Stepper
+ */
+public class P2CoreTests extends AbstractTest
+{
+  @Override
+  public void setUp() throws Exception
+  {
+    super.setUp();
+    AgentManagerImpl.instance = new AgentManagerImpl(getUserHome());
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    AgentManagerImpl.instance = null;
+    super.tearDown();
+  }
+
+  @Test
+  public void testContentAddressedDownload() throws Exception
+  {
+    byte[] bytes = createBytes(4096);
+    File file = new File(getUserHome(), "artifact.jar");
+    write(file, bytes);
+
+    URI uri = file.toURI();
+    String digest = HexUtil.bytesToHex(MessageDigest.getInstance(ContentAddressedCache.ALGORITHM).digest(bytes));
+
+    CachingTransport transport = createContentAddressedTransport();
+    ContentAddressedCache cache = transport.getContentAddressedCache();
+    cache.addDigest(uri, digest, -1);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    IStatus status = transport.download(uri, out, new NullProgressMonitor());
+    assertThat(status.isOK(), is(true));
+    assertThat(Arrays.equals(out.toByteArray(), bytes), is(true));
+
+    File cacheFile = cache.getFile(digest);
+    assertThat(cacheFile.isFile(), is(true));
+    assertThat(cacheFile.length(), is((long)bytes.length));
+    assertThat(cacheFile.getParentFile().list().length, is(2)); // The cache file and its sidecar.
+  }
+
+  @Test
+  public void testContentAddressedDownloadChecksumMismatch() throws Exception
+  {
+    byte[] bytes = createBytes(4096);
+    File file = new File(getUserHome(), "artifact.jar");
+    write(file, bytes);
+
+    URI uri = file.toURI();
+    char[] zeros = new char[64];
+    Arrays.fill(zeros, '0');
+    String digest = new String(zeros);
+
+    CachingTransport transport = createContentAddressedTransport();
+    ContentAddressedCache cache = transport.getContentAddressedCache();
+    cache.addDigest(uri, digest, -1);
+
+    // The downloaded bytes must be passed along as is, so that p2's own checksum verification can report the problem.
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    IStatus status = transport.download(uri, out, new NullProgressMonitor());
+    assertThat(status.isOK(), is(true));
+    assertThat(Arrays.equals(out.toByteArray(), bytes), is(true));
+
+    // Neither the cache file nor the temporary file must remain.
+    File cacheFile = cache.getFile(digest);
+    assertThat(cacheFile.exists(), is(false));
+
+    String[] children = cacheFile.getParentFile().list();
+    assertThat(children == null || children.length == 0, is(true));
+  }
+
+  @Test
+  public void testRangedDownloadResume() throws Exception
+  {
+    byte[] bytes = createBytes(1024 * 1024);
+    String digest = HexUtil.bytesToHex(MessageDigest.getInstance(ContentAddressedCache.ALGORITHM).digest(bytes));
+    ContentAddressedCache cache = new ContentAddressedCache(getUserHome());
+    File file = cache.getFile(digest);
+    IOUtil.mkdirs(file.getParentFile());
+
+    // An interrupted download of two ranges, the first of which is complete and the second of which has 1000 bytes.
+    int half = bytes.length / 2;
+    byte[] partialBytes = new byte[bytes.length];
+    System.arraycopy(bytes, 0, partialBytes, 0, half + 1000);
+    write(new File(file.getPath() + ".downloading"), partialBytes);
+
+    Map<String, String> ranges = new LinkedHashMap<String, String>();
+    ranges.put("size", Integer.toString(bytes.length));
+    ranges.put("ranges", "2");
+    ranges.put("start.0", "0");
+    ranges.put("end.0", Integer.toString(half));
+    ranges.put("done.0", Integer.toString(half));
+    ranges.put("start.1", Integer.toString(half));
+    ranges.put("end.1", Integer.toString(bytes.length));
+    ranges.put("done.1", "1000");
+    File rangesFile = new File(file.getPath() + ".ranges.downloading");
+    PropertiesUtil.saveProperties(rangesFile, ranges, false);
+
+    ByteArrayTransport transport = new ByteArrayTransport(bytes);
+    RangedDownload download = new RangedDownload(transport, new URI("http://127.0.0.1/artifact.jar"), cache, digest, bytes.length);
+    IStatus status = download.download(new NullProgressMonitor());
+    assertThat(status.isOK(), is(true));
+
+    // Only the rest of the second range is requested.
+    assertThat(transport.getStartPositions(), is(Collections.singletonList((long)half + 1000)));
+
+    assertThat(download.getResult(), is(file));
+    assertThat(Arrays.equals(IOUtil.readFile(file), bytes), is(true));
+    assertThat(rangesFile.exists(), is(false));
+    assertThat(new File(file.getPath() + ".downloading").exists(), is(false));
+  }
+
+  @Test
+  public void testRangedDownloadChecksumMismatch() throws Exception
+  {
+    byte[] bytes = createBytes(1024 * 1024);
+    char[] zeros = new char[64];
+    Arrays.fill(zeros, '0');
+    String digest = new String(zeros);
+    ContentAddressedCache cache = new ContentAddressedCache(getUserHome());
+
+    ByteArrayTransport transport = new ByteArrayTransport(bytes);
+    RangedDownload download = new RangedDownload(transport, new URI("http://127.0.0.1/artifact.jar"), cache, digest, bytes.length);
+    IStatus status = download.download(new NullProgressMonitor());
+    assertThat(status.getSeverity(), is(IStatus.ERROR));
+    assertThat(download.getResult(), isNull());
+
+    // Content with the wrong checksum must neither be committed nor resumed.
+    File file = cache.getFile(digest);
+    assertThat(file.exists(), is(false));
+    assertThat(new File(file.getPath() + ".downloading").exists(), is(false));
+    assertThat(new File(file.getPath() + ".ranges.downloading").exists(), is(false));
+  }
+
+  @Test
+  public void testIncrementalIndexer() throws Exception
+  {
+    File scanFolder = new File(getUserHome(), "repositories").getCanonicalFile();
+    createRepository(new File(scanFolder, "empty"), 0);
+    createRepository(new File(scanFolder, "full"), 10);
+    createRepository(new File(scanFolder, "other"), 5);
+
+    File manifestFile = new File(getUserHome(), "manifest");
+    File outputFolder = new File(getUserHome(), "index1");
+    runIndexer(scanFolder, outputFolder, manifestFile);
+    assertThat(manifestFile.isFile(), is(true));
+
+    // All repositories, including the empty one, must be restored from the manifest, and the index must be the same.
+    File restoredOutputFolder = new File(getUserHome(), "index2");
+    P2Indexer indexer = runIndexer(scanFolder, restoredOutputFolder, manifestFile);
+    assertThat(indexer.getRestoredRepositoryCount(), is(3));
+
+    String[] names = outputFolder.list();
+    Arrays.sort(names);
+
+    String[] restoredNames = restoredOutputFolder.list();
+    Arrays.sort(restoredNames);
+    assertThat(Arrays.equals(restoredNames, names), is(true));
+
+    for (String name : names)
+    {
+      File file = new File(outputFolder, name);
+      if (file.isFile())
+      {
+        assertThat(name, Arrays.equals(IOUtil.readFile(new File(restoredOutputFolder, name)), IOUtil.readFile(file)), is(true));
+      }
+    }
+  }
+
+  @Test
+  public void testPersistentMapConcurrentWriters() throws Exception
+  {
+    final File file = new File(getUserHome(), "map.txt");
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    Set<String> expectedKeys = new HashSet<String>();
+
+    // Each writer has its own map, like the processes that share a file.
+    List<Thread> writers = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++)
+    {
+      final String prefix = "writer" + i + "-";
+      for (int j = 1; j < 100; j += 2)
+      {
+        expectedKeys.add(prefix + j);
+      }
+
+      writers.add(new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            TestMap map = new TestMap(file);
+            map.load();
+            startSignal.await();
+
+            for (int j = 0; j < 100; j++)
+            {
+              map.addElement(prefix + j, null);
+            }
+
+            for (int j = 0; j < 100; j += 2)
+            {
+              map.removeElement(prefix + j);
+            }
+          }
+          catch (Throwable ex)
+          {
+            failures.add(ex);
+          }
+        }
+      });
+    }
+
+    for (Thread writer : writers)
+    {
+      writer.start();
+    }
+
+    startSignal.countDown();
+    for (Thread writer : writers)
+    {
+      writer.join();
+    }
+
+    assertThat(failures.toString(), failures.isEmpty(), is(true));
+
+    TestMap map = new TestMap(file);
+    map.load();
+    assertThat(map.getElementKeys(), is(expectedKeys));
+  }
+
+  @Test
+  public void testPersistentMapStaleJournal() throws Exception
+  {
+    File file = new File(getUserHome(), "map.txt");
+    File journalFile = new File(getUserHome(), "map.txt.journal");
+
+    TestMap map = new TestMap(file);
+    map.load();
+    map.addElement("a", null);
+    map.addElement("b", null);
+    map.removeElement("a");
+    assertThat(journalFile.isFile(), is(true));
+
+    // An older version rewrites the file without knowing about the journal, which makes the journal stale.
+    IOUtil.writeLines(file, "UTF-8", Arrays.asList("a", "old"));
+
+    TestMap reloadedMap = new TestMap(file);
+    reloadedMap.load();
+    assertThat(reloadedMap.getElementKeys(), is((Set<String>)new HashSet<String>(Arrays.asList("b", "old"))));
+
+    // The stale journal must have been compacted into the file.
+    assertThat(journalFile.exists(), is(false));
+    assertThat(IOUtil.readLines(file, "UTF-8"), is(Arrays.asList("b", "old")));
+
+    // The map that wrote the stale journal must pick up the compacted file.
+    map.refresh();
+    assertThat(map.getElementKeys(), is(reloadedMap.getElementKeys()));
+  }
+
+  private static P2Indexer runIndexer(File scanFolder, File outputFolder, File manifestFile) throws Exception
+  {
+    PrintStream out = System.out;
+
+    try
+    {
+      System.setOut(new PrintStream(new ByteArrayOutputStream()));
+
+      P2Indexer indexer = new P2Indexer();
+      indexer.run(scanFolder.getPath(), "1", "http://localhost/test", outputFolder.getPath(), "-incremental", manifestFile.getPath());
+      return indexer;
+    }
+    finally
+    {
+      System.setOut(out);
+    }
+  }
+
+  private static void createRepository(File repositoryFolder, int units) throws Exception
+  {
+    repositoryFolder.mkdirs();
+
+    List<String> lines = new ArrayList<String>();
+    lines.add("<?xml version='1.0' encoding='UTF-8'?>");
+    lines.add("<?metadataRepository version='1.1.0'?>");
+    lines.add("<repository name='" + repositoryFolder.getName() + "' type='org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository' version='1'>");
+    lines.add("  <units size='" + units + "'>");
+
+    for (int i = 0; i < units; i++)
+    {
+      String id = "org.example." + repositoryFolder.getName() + i;
+      lines.add("    <unit id='" + id + "' version='1.0." + i + "'>");
+      lines.add("      <provides size='2'>");
+      lines.add("        <provided namespace='org.eclipse.equinox.p2.iu' name='" + id + "' version='1.0." + i + "'/>");
+      lines.add("        <provided namespace='osgi.bundle' name='" + id + "' version='1.0." + i + "'/>");
+      lines.add("      </provides>");
+      lines.add("    </unit>");
+    }
+
+    lines.add("  </units>");
+    lines.add("</repository>");
+
+    IOUtil.writeLines(new File(repositoryFolder, "content.xml"), "UTF-8", lines);
+  }
+
+  private CachingTransport createContentAddressedTransport()
+  {
+    Agent agent = P2Util.getAgentManager().getAgents().iterator().next();
+    CachingTransport agentTransport = (CachingTransport)agent.getProvisioningAgent().getService(CachingTransport.SERVICE_NAME);
+
+    System.setProperty(ContentAddressedCache.PROP_CONTENT_ADDRESSED_CACHE, "true");
+
+    try
+    {
+      return new CachingTransport(agentTransport.getDelegate(), agent.getProvisioningAgent());
+    }
+    finally
+    {
+      System.clearProperty(ContentAddressedCache.PROP_CONTENT_ADDRESSED_CACHE);
+    }
+  }
+
+  private static byte[] createBytes(int size)
+  {
+    byte[] bytes = new byte[size];
+    new Random(0).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static void write(File file, byte[] bytes) throws Exception
+  {
+    OutputStream out = new FileOutputStream(file);
+
+    try
+    {
+      out.write(bytes);
+    }
+    finally
+    {
+      IOUtil.close(out);
+    }
+  }
+
+  /**
+   * Serves the bytes of a single artifact from any start position and records the requested start positions.
+   *
+   * @author Eike Stepper
+   */
+  @SuppressWarnings("restriction")
+  private static final class ByteArrayTransport extends org.eclipse.equinox.internal.p2.repository.Transport
+  {
+    private final byte[] bytes;
+
+    private final List<Long> startPositions = Collections.synchronizedList(new ArrayList<Long>());
+
+    public ByteArrayTransport(byte[] bytes)
+    {
+      this.bytes = bytes;
+    }
+
+    public List<Long> getStartPositions()
+    {
+      return startPositions;
+    }
+
+    @Override
+    public IStatus download(URI uri, OutputStream target, long startPos, IProgressMonitor monitor)
+    {
+      startPositions.add(startPos);
+
+      try
+      {
+        for (int position = (int)startPos; position < bytes.length; position += 8192)
+        {
+          if (monitor.isCanceled())
+          {
+            return Status.CANCEL_STATUS;
+          }
+
+          target.write(bytes, position, Math.min(8192, bytes.length - position));
+        }
+
+        return Status.OK_STATUS;
+      }
+      catch (IOException ex)
+      {
+        return new Status(IStatus.ERROR, "org.eclipse.oomph.p2.tests", ex.getMessage(), ex);
+      }
+    }
+
+    @Override
+    public IStatus download(URI uri, OutputStream target, IProgressMonitor monitor)
+    {
+      return download(uri, target, 0, monitor);
+    }
+
+    @Override
+    public InputStream stream(URI uri, IProgressMonitor monitor)
+    {
+      return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public long getLastModified(URI uri, IProgressMonitor monitor)
+    {
+      return 0;
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class TestMap extends PersistentMap<String>
+  {
+    public TestMap(File file)
+    {
+      super(file);
+    }
+
+    @Override
+    protected String createElement(String key, String extraInfo)
+    {
+      return key;
+    }
+  }
+}
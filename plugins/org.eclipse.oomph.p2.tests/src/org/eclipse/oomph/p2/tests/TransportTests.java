@@ -30,6 +30,10 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.ICompositeRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -43,6 +47,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -609,6 +614,73 @@ public class TransportTests extends AbstractP2Test
     );
   }
 
+  @Test
+  public void test_9_CompositeWithConcurrentChildLoads() throws Exception
+  {
+    File root = new File(getUserHome(), "composite");
+    String[] childNames = { "child1", "child2", "child3", "child4" };
+
+    StringBuilder children = new StringBuilder();
+    for (String childName : childNames)
+    {
+      IOUtil.copyTree(CDO_NEW, new File(root, childName));
+      children.append("        <child location='" + childName + "' />\n");
+    }
+
+    IOUtil.writeUTF8(new File(root, "compositeContent.xml"), "<?xml version='1.0' encoding='UTF-8'?>\n" //
+        + "<?compositeMetadataRepository version='1.0.0'?>\n" //
+        + "<repository name='Composite repository' type='org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository' version='1.0.0'>\n" //
+        + "    <properties size='2'>\n" //
+        + "        <property name='p2.timestamp' value='1313779613760'/>\n" //
+        + "        <property name='p2.atomic.composite.loading' value='true'/>\n" //
+        + "    </properties>\n" //
+        + "    <children size='" + childNames.length + "'>\n" //
+        + children //
+        + "    </children>\n" //
+        + "</repository>\n");
+
+    FileContext context = new FileContext("/composite", false, root);
+    httpServer.addContext(context);
+    contexts.add(context);
+
+    Agent agent = P2Util.getAgentManager().addAgent(new File(getUserHome(), "p2"));
+    CachingTransport cachingTransport = (CachingTransport)agent.getProvisioningAgent().getService(CachingTransport.SERVICE_NAME);
+    CountingTransport countingTransport = new CountingTransport(cachingTransport.getDelegate());
+    cachingTransport.setDelegate(countingTransport);
+
+    System.setProperty("oomph.p2.repository.parallel.loads", "3");
+
+    try
+    {
+      IMetadataRepositoryManager manager = agent.getMetadataRepositoryManager();
+      IMetadataRepository repository = manager.loadRepository(new URI(httpServer + "/composite"), new NullProgressMonitor());
+      assertThat(repository instanceof ICompositeRepository<?>, is(true));
+      assertThat(((ICompositeRepository<?>)repository).getChildren().size(), is(childNames.length));
+      assertThat(repository.query(QueryUtil.createIUQuery("org.eclipse.net4j.util"), null).isEmpty(), is(false));
+
+      for (String childName : childNames)
+      {
+        assertThat(manager.contains(new URI(httpServer + "/composite/" + childName)), is(true));
+
+        // Each child is downloaded once, whether it's loaded concurrently or by the composite itself.
+        int downloads = 0;
+        for (String request : new ArrayList<String>(countingTransport.getRequests()))
+        {
+          if (request.startsWith("GET ") && request.endsWith("/composite/" + childName + "/content.jar"))
+          {
+            ++downloads;
+          }
+        }
+
+        assertThat(childName, downloads, is(1));
+      }
+    }
+    finally
+    {
+      System.clearProperty("oomph.p2.repository.parallel.loads");
+    }
+  }
+
   /**
    * @author Eike Stepper
    */
@@ -617,7 +689,7 @@ public class TransportTests extends AbstractP2Test
   {
     private final org.eclipse.equinox.internal.p2.repository.Transport delegate;
 
-    private final List<String> requests = new ArrayList<String>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
 
     private CountingTransport(org.eclipse.equinox.internal.p2.repository.Transport delegate)
     {
@@ -0,0 +1,902 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.p2.tests;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.oomph.tests.AbstractTest;
+import org.eclipse.oomph.util.IORuntimeException;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.SingleFlight;
+import org.eclipse.oomph.util.TaskScheduler;
+import org.eclipse.oomph.util.TaskScheduler.Lane;
+import org.eclipse.oomph.util.TaskScheduler.TaskGroup;
+import org.eclipse.oomph.util.ZIPUtil;
+
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Tests for the utilities that the p2 core builds on.
+ * The files of each test are created in its own user home.
+ * Each test that submits tasks for a host uses its own host name, so that the tests don't share the slots of a host.
+ *
+ * @author Eike Stepper
+ */
+public class UtilTests extends AbstractTest
+{
+  @Test
+  public void testTaskSchedulerMaxTasksPerHost() throws Exception
+  {
+    String host = "max.tasks.test";
+    int maxTasks = TaskScheduler.getMaxTasksPerHost();
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger executing = new AtomicInteger();
+    final AtomicInteger maxExecuting = new AtomicInteger();
+
+    TaskGroup group = new TaskGroup(Lane.IO, TaskScheduler.PRIORITY_DEFAULT, host);
+    for (int i = 0; i < 3 * maxTasks; i++)
+    {
+      group.submit(new Runnable()
+      {
+        public void run()
+        {
+          int count = executing.incrementAndGet();
+          for (;;)
+          {
+            int max = maxExecuting.get();
+            if (count <= max || maxExecuting.compareAndSet(max, count))
+            {
+              break;
+            }
+          }
+
+          awaitUninterruptibly(release);
+          executing.decrementAndGet();
+        }
+      });
+    }
+
+    assertThat(TaskScheduler.getRunningTaskCount(host), is(maxTasks));
+    assertThat(TaskScheduler.getWaitingTaskCount(host), is(2 * maxTasks));
+
+    release.countDown();
+    group.awaitFinished();
+
+    assertThat(maxExecuting.get() <= maxTasks, is(true));
+    assertThat(TaskScheduler.getRunningTaskCount(host), is(0));
+    assertThat(TaskScheduler.getWaitingTaskCount(host), is(0));
+  }
+
+  @Test
+  public void testTaskSchedulerPriorities() throws Exception
+  {
+    String host = "priorities.test";
+    int maxTasks = TaskScheduler.getMaxTasksPerHost();
+    final CountDownLatch go = new CountDownLatch(1);
+    final CountDownLatch hold = new CountDownLatch(1);
+    final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+    // Occupy all slots of the host, such that the following tasks wait for the host.
+    // Once the first slot is released, the waiting tasks are executed one after the other in that slot.
+    // The occupying tasks have the lowest priority, so that the waiting tasks are not queued behind them if the lane has fewer threads than the host has slots.
+    TaskGroup group = new TaskGroup(Lane.IO, TaskScheduler.PRIORITY_DEFAULT, host);
+    for (int i = 0; i < maxTasks; i++)
+    {
+      final CountDownLatch latch = i == 0 ? go : hold;
+      group.submit(TaskScheduler.PRIORITY_BACKGROUND, new Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          awaitUninterruptibly(latch);
+          return null;
+        }
+      });
+    }
+
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    futures.add(group.submit(TaskScheduler.PRIORITY_DEFAULT, record(order, "default 1")));
+    futures.add(group.submit(TaskScheduler.PRIORITY_INTERACTIVE, record(order, "interactive")));
+    futures.add(group.submit(TaskScheduler.PRIORITY_DEFAULT, record(order, "default 2")));
+    assertThat(TaskScheduler.getWaitingTaskCount(host), is(3));
+
+    go.countDown();
+    for (Future<?> future : futures)
+    {
+      TaskScheduler.get(future, null);
+    }
+
+    hold.countDown();
+    group.awaitFinished();
+
+    assertThat(order, is(Arrays.asList("interactive", "default 1", "default 2")));
+  }
+
+  @Test
+  public void testTaskGroupAwaitFinished() throws Exception
+  {
+    final AtomicInteger count = new AtomicInteger();
+    final TaskGroup group = new TaskGroup(Lane.CPU);
+
+    for (int i = 0; i < 10; i++)
+    {
+      group.submit(new Runnable()
+      {
+        public void run()
+        {
+          // Tasks that are submitted by tasks of the group are awaited as well.
+          group.submit(new Runnable()
+          {
+            public void run()
+            {
+              sleep(10);
+              count.incrementAndGet();
+            }
+          });
+
+          sleep(10);
+          count.incrementAndGet();
+        }
+      });
+    }
+
+    group.awaitFinished();
+    assertThat(count.get(), is(20));
+    assertThat(group.getUnfinishedTaskCount(), is(0));
+  }
+
+  @Test
+  public void testTaskSchedulerCancel() throws Exception
+  {
+    String host = "cancel.test";
+    int maxTasks = TaskScheduler.getMaxTasksPerHost();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicBoolean canceledTaskExecuted = new AtomicBoolean();
+
+    TaskGroup group = new TaskGroup(Lane.IO, TaskScheduler.PRIORITY_DEFAULT, host);
+    Future<?> executingTask = group.submit(TaskScheduler.PRIORITY_INTERACTIVE, new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        started.countDown();
+
+        // Like a task that doesn't respond to interruption while it still uses its connection to the host.
+        awaitUninterruptibly(release);
+        return null;
+      }
+    });
+
+    for (int i = 1; i < maxTasks; i++)
+    {
+      group.submit(TaskScheduler.PRIORITY_BACKGROUND, new Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          awaitUninterruptibly(release);
+          return null;
+        }
+      });
+    }
+
+    Future<?> waitingTask = group.submit(new Runnable()
+    {
+      public void run()
+      {
+      }
+    });
+
+    Future<?> canceledTask = group.submit(new Runnable()
+    {
+      public void run()
+      {
+        canceledTaskExecuted.set(true);
+      }
+    });
+
+    started.await();
+    assertThat(TaskScheduler.getRunningTaskCount(host), is(maxTasks));
+    assertThat(TaskScheduler.getWaitingTaskCount(host), is(2));
+
+    // The slot of a canceled task is not released while the task is still executing.
+    assertThat(executingTask.cancel(true), is(true));
+    assertThat(TaskScheduler.getRunningTaskCount(host), is(maxTasks));
+    assertThat(TaskScheduler.getWaitingTaskCount(host), is(2));
+
+    // A task that is canceled while it's waiting for the host is removed right away.
+    assertThat(canceledTask.cancel(false), is(true));
+    assertThat(TaskScheduler.getRunningTaskCount(host), is(maxTasks));
+    assertThat(TaskScheduler.getWaitingTaskCount(host), is(1));
+
+    release.countDown();
+    TaskScheduler.get(waitingTask, null);
+    group.awaitFinished();
+
+    assertThat(canceledTaskExecuted.get(), is(false));
+    assertThat(TaskScheduler.getRunningTaskCount(host), is(0));
+    assertThat(TaskScheduler.getWaitingTaskCount(host), is(0));
+  }
+
+  @Test
+  public void testMaterializeFileCopy() throws Exception
+  {
+    File source = new File(getUserHome(), "source.jar");
+    File target = new File(getUserHome(), "target/target.jar");
+    IOUtil.writeUTF8(source, "source");
+
+    IOUtil.materializeFile(source, target);
+    assertThat(IOUtil.readUTF8(target), is("source"));
+
+    // A copy can be modified in place without modifying its source.
+    IOUtil.writeUTF8(target, "target");
+    assertThat(IOUtil.readUTF8(source), is("source"));
+  }
+
+  @Test
+  public void testMaterializeFileLink() throws Exception
+  {
+    File source = new File(getUserHome(), "source.jar");
+    File target = new File(getUserHome(), "target/target.jar");
+    IOUtil.writeUTF8(source, "source");
+    IOUtil.writeUTF8(target, "existing");
+
+    System.setProperty(IOUtil.PROP_MATERIALIZATION, "link");
+
+    try
+    {
+      // Whether the file system supports hard links or not, the target has the content of the source and replaces an existing file.
+      IOUtil.materializeFile(source, target);
+      assertThat(IOUtil.readUTF8(target), is("source"));
+      assertThat(IOUtil.readUTF8(source), is("source"));
+    }
+    finally
+    {
+      System.clearProperty(IOUtil.PROP_MATERIALIZATION);
+    }
+  }
+
+  @Test
+  public void testMaterializeTreeClone() throws Exception
+  {
+    File source = new File(getUserHome(), "source");
+    createTree(source);
+
+    System.setProperty(IOUtil.PROP_MATERIALIZATION, "clone");
+
+    try
+    {
+      // Whether the file system supports clones or the tree is copied instead, the content and the modification times are preserved.
+      File target = new File(getUserHome(), "target/clone");
+      IOUtil.materializeTree(source, target, false);
+      assertTree(source, target, true);
+
+      // An existing target is always copied into.
+      File existingTarget = new File(getUserHome(), "target/existing");
+      IOUtil.mkdirs(existingTarget);
+      IOUtil.materializeTree(source, existingTarget, false);
+      assertTree(source, existingTarget, true);
+    }
+    finally
+    {
+      System.clearProperty(IOUtil.PROP_MATERIALIZATION);
+    }
+  }
+
+  @Test
+  public void testCopyTree() throws Exception
+  {
+    File source = new File(getUserHome(), "source");
+    createTree(source);
+
+    File target = new File(getUserHome(), "target/concurrent");
+    IOUtil.copyTree(source, target);
+    assertTree(source, target, true);
+
+    System.setProperty(IOUtil.PROP_COPY_THREADS, "1");
+
+    try
+    {
+      File sequentialTarget = new File(getUserHome(), "target/sequential");
+      IOUtil.copyTree(source, sequentialTarget);
+      assertTree(source, sequentialTarget, true);
+    }
+    finally
+    {
+      System.clearProperty(IOUtil.PROP_COPY_THREADS);
+    }
+  }
+
+  @Test
+  public void testCopyTreeFolderFailure() throws Exception
+  {
+    File source = new File(getUserHome(), "source");
+    createTree(source);
+
+    // A folder that can't be created is reported, even if the files that can't be copied are skipped.
+    File target = new File(getUserHome(), "target");
+    IOUtil.writeUTF8(new File(target, "folder1"), "file");
+
+    try
+    {
+      IOUtil.copyTree(source, target, true);
+      throw new AssertionError("Expected an IORuntimeException");
+    }
+    catch (IORuntimeException ex)
+    {
+      assertThat(ex.getMessage().contains("folder1"), is(true));
+    }
+  }
+
+  @Test
+  public void testZipRoundTrip() throws Exception
+  {
+    File source = new File(getUserHome(), "source");
+    createTree(source);
+    createLargeFile(new File(source, "folder1/large.bin"), 9 * 1024 * 1024);
+
+    // The files are deflated concurrently, the large file while it's written.
+    File zipFile = new File(getUserHome(), "parallel.zip");
+    ZIPUtil.zip(source, true, zipFile);
+    assertThat(isZippedSequentially(zipFile), is(false));
+    assertZip(source, zipFile);
+
+    File target = new File(getUserHome(), "target/parallel");
+    ZIPUtil.unzip(zipFile, target);
+    assertTree(source, target, false);
+
+    File streamTarget = new File(getUserHome(), "target/stream");
+    InputStream input = IOUtil.openInputStream(zipFile);
+
+    try
+    {
+      ZIPUtil.unzip(input, new ZIPUtil.FileSystemUnzipHandler(streamTarget));
+    }
+    finally
+    {
+      IOUtil.closeSilent(input);
+    }
+
+    assertTree(source, streamTarget, false);
+
+    System.setProperty(ZIPUtil.PROP_THREADS, "1");
+
+    try
+    {
+      File sequentialZipFile = new File(getUserHome(), "sequential.zip");
+      ZIPUtil.zip(source, true, sequentialZipFile);
+      assertThat(isZippedSequentially(sequentialZipFile), is(true));
+      assertZip(source, sequentialZipFile);
+
+      File sequentialTarget = new File(getUserHome(), "target/sequential");
+      ZIPUtil.unzip(sequentialZipFile, sequentialTarget);
+      assertTree(source, sequentialTarget, false);
+    }
+    finally
+    {
+      System.clearProperty(ZIPUtil.PROP_THREADS);
+    }
+  }
+
+  @Test
+  public void testZipMaxEntries() throws Exception
+  {
+    File source = new File(getUserHome(), "source");
+    for (int i = 0; i < 0xFFFF; i++)
+    {
+      File file = new File(source, "folder" + i / 1000 + "/file" + i + ".txt");
+      IOUtil.mkdirs(file.getParentFile());
+      IOUtil.writeUTF8(file, "content " + i);
+    }
+
+    // Too many entries for a zip file without ZIP64 extensions, so the files are zipped sequentially.
+    File zipFile = new File(getUserHome(), "source.zip");
+    ZIPUtil.zip(source, true, zipFile);
+    assertThat(isZippedSequentially(zipFile), is(true));
+    assertZip(source, zipFile);
+
+    File target = new File(getUserHome(), "target");
+    ZIPUtil.unzip(zipFile, target);
+    assertTree(source, target, false);
+  }
+
+  @Test
+  public void testZipMaxTotalSize() throws Exception
+  {
+    File source = new File(getUserHome(), "source");
+    createTree(source);
+
+    // A sparse file that's too large for a zip file without ZIP64 extensions, so the files are zipped sequentially.
+    File largeFile = new File(source, "large.bin");
+    RandomAccessFile file = new RandomAccessFile(largeFile, "rw");
+
+    try
+    {
+      file.setLength(0xF0000000L);
+    }
+    finally
+    {
+      file.close();
+    }
+
+    File zipFile = new File(getUserHome(), "source.zip");
+    ZIPUtil.zip(source, true, zipFile);
+    assertThat(isZippedSequentially(zipFile), is(true));
+    assertZip(source, zipFile);
+  }
+
+  @Test
+  public void testUnzipHandlerClosesStream() throws Exception
+  {
+    File source = new File(getUserHome(), "source");
+    createTree(source);
+
+    File zipFile = new File(getUserHome(), "source.zip");
+    ZIPUtil.zip(source, true, zipFile);
+
+    final Map<String, String> contents = new HashMap<String, String>();
+    InputStream input = IOUtil.openInputStream(zipFile);
+
+    try
+    {
+      ZIPUtil.unzip(input, new ZIPUtil.UnzipHandler()
+      {
+        public void unzipDirectory(String name) throws IOException
+        {
+        }
+
+        public void unzipFile(String name, InputStream zipStream) throws IOException
+        {
+          // Closing the stream of an entry must not prevent the following entries from being read.
+          ByteArrayOutputStream content = new ByteArrayOutputStream();
+          IOUtil.copy(zipStream, content);
+          zipStream.close();
+          contents.put(name, content.toString("UTF-8"));
+        }
+      });
+
+      // The stream of the zip file is not closed.
+      assertThat(input.read(), is(-1));
+    }
+    finally
+    {
+      IOUtil.closeSilent(input);
+    }
+
+    assertThat(contents.size(), is(12));
+    assertThat(contents.get("folder1/nested/file2.txt"), is("content 1 2"));
+    assertThat(contents.get("folder2/empty.txt"), is(""));
+  }
+
+  @Test
+  public void testSingleFlightCoalescing() throws Exception
+  {
+    final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger executions = new AtomicInteger();
+    final SingleFlight.Request<Object> request = new SingleFlight.Request<Object>()
+    {
+      public Object execute() throws Exception
+      {
+        executions.incrementAndGet();
+        awaitUninterruptibly(release);
+        return new Object();
+      }
+    };
+
+    List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    for (int i = 0; i < 4; i++)
+    {
+      futures.add(start(new Callable<Object>()
+      {
+        public Object call() throws Exception
+        {
+          return singleFlight.execute("key", request, null, 0);
+        }
+      }));
+    }
+
+    awaitInFlight(singleFlight, "key");
+    sleep(200);
+    release.countDown();
+
+    Object value = futures.get(0).get();
+    for (Future<Object> future : futures)
+    {
+      assertThat(future.get(), is(value));
+    }
+
+    assertThat(executions.get(), is(1));
+    assertThat(singleFlight.isInFlight("key"), is(false));
+  }
+
+  @Test
+  public void testSingleFlightTimeout() throws Exception
+  {
+    final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+    final CountDownLatch release = new CountDownLatch(1);
+    Future<Object> leader = start(new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        return singleFlight.execute("key", new SingleFlight.Request<Object>()
+        {
+          public Object execute() throws Exception
+          {
+            awaitUninterruptibly(release);
+            return "leader";
+          }
+        }, null);
+      }
+    });
+
+    awaitInFlight(singleFlight, "key");
+
+    try
+    {
+      // A requester that has waited long enough executes its own request, while the leader is still executing.
+      SingleFlight.Request<Object> request = constant("own");
+      assertThat(singleFlight.execute("key", request, null, 100), is((Object)"own"));
+      assertThat(singleFlight.executeExclusively("key", request, null, 100), is((Object)"own"));
+      assertThat(leader.isDone(), is(false));
+    }
+    finally
+    {
+      release.countDown();
+    }
+
+    assertThat(leader.get(), is((Object)"leader"));
+  }
+
+  @Test
+  public void testSingleFlightLeaderFailure() throws Exception
+  {
+    final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+    final CountDownLatch release = new CountDownLatch(1);
+    final IOException exception = new IOException("leader failed");
+    final SingleFlight.Request<Object> failingRequest = new SingleFlight.Request<Object>()
+    {
+      public Object execute() throws Exception
+      {
+        awaitUninterruptibly(release);
+        throw exception;
+      }
+    };
+
+    Future<Object> leader = start(new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        return singleFlight.execute("key", failingRequest, null);
+      }
+    });
+
+    awaitInFlight(singleFlight, "key");
+
+    // A shared execution hands the leader's failure to its waiters, whereas an exclusive execution executes the waiter's own request afterwards.
+    Future<Object> waiter = start(new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        return singleFlight.execute("key", constant("waiter"), null);
+      }
+    });
+
+    Future<Object> exclusiveWaiter = start(new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        return singleFlight.executeExclusively("key", constant("exclusive waiter"), null);
+      }
+    });
+
+    sleep(200);
+    release.countDown();
+
+    assertThat(getException(leader), is((Throwable)exception));
+    assertThat(getException(waiter), is((Throwable)exception));
+    assertThat(exclusiveWaiter.get(), is((Object)"exclusive waiter"));
+    assertThat(singleFlight.isInFlight("key"), is(false));
+  }
+
+  @Test
+  public void testSingleFlightLeaderCanceled() throws Exception
+  {
+    final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+    final CountDownLatch release = new CountDownLatch(1);
+    Future<Object> leader = start(new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        return singleFlight.execute("key", new SingleFlight.Request<Object>()
+        {
+          public Object execute() throws Exception
+          {
+            awaitUninterruptibly(release);
+            throw new OperationCanceledException();
+          }
+        }, null);
+      }
+    });
+
+    awaitInFlight(singleFlight, "key");
+
+    // A waiter that wasn't canceled itself executes its own request.
+    Future<Object> waiter = start(new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        return singleFlight.execute("key", constant("waiter"), null);
+      }
+    });
+
+    sleep(200);
+    release.countDown();
+
+    assertThat(getException(leader) instanceof OperationCanceledException, is(true));
+    assertThat(waiter.get(), is((Object)"waiter"));
+  }
+
+  @Test
+  public void testSingleFlightReentry() throws Exception
+  {
+    final SingleFlight<String, Object> singleFlight = new SingleFlight<String, Object>();
+    final AtomicInteger executions = new AtomicInteger();
+
+    long start = System.currentTimeMillis();
+    Object value = singleFlight.execute("key", new SingleFlight.Request<Object>()
+    {
+      public Object execute() throws Exception
+      {
+        executions.incrementAndGet();
+
+        // Like a redirect to the same key, which must not wait for the leader, because that's this thread.
+        return singleFlight.executeExclusively("key", new SingleFlight.Request<Object>()
+        {
+          public Object execute() throws Exception
+          {
+            executions.incrementAndGet();
+            return "nested";
+          }
+        }, null, 0);
+      }
+    }, null, 0);
+
+    assertThat(value, is((Object)"nested"));
+    assertThat(executions.get(), is(2));
+    assertThat(System.currentTimeMillis() - start < SingleFlight.DEFAULT_TIMEOUT, is(true));
+  }
+
+  private static Callable<Object> record(final List<String> order, final String name)
+  {
+    return new Callable<Object>()
+    {
+      public Object call() throws Exception
+      {
+        order.add(name);
+        return null;
+      }
+    };
+  }
+
+  private static SingleFlight.Request<Object> constant(final Object value)
+  {
+    return new SingleFlight.Request<Object>()
+    {
+      public Object execute() throws Exception
+      {
+        return value;
+      }
+    };
+  }
+
+  private static void awaitInFlight(SingleFlight<String, ?> singleFlight, String key)
+  {
+    while (!singleFlight.isInFlight(key))
+    {
+      sleep(10);
+    }
+  }
+
+  /**
+   * Calls the given callable on a new thread.
+   */
+  private static <T> Future<T> start(Callable<T> callable)
+  {
+    FutureTask<T> future = new FutureTask<T>(callable);
+    new Thread(future, "UtilTests").start();
+    return future;
+  }
+
+  private static Throwable getException(Future<?> future) throws Exception
+  {
+    try
+    {
+      future.get();
+      return null;
+    }
+    catch (ExecutionException ex)
+    {
+      return ex.getCause();
+    }
+  }
+
+  /**
+   * Creates a tree of nested folders and files with distinct contents and modification times.
+   */
+  private static void createTree(File folder) throws Exception
+  {
+    long lastModified = 1500000000000L;
+    for (int i = 0; i < 3; i++)
+    {
+      File subFolder = new File(folder, "folder" + i);
+      for (int j = 0; j < 3; j++)
+      {
+        File file = new File(new File(subFolder, "nested"), "file" + j + ".txt");
+        IOUtil.mkdirs(file.getParentFile());
+        IOUtil.writeUTF8(file, "content " + i + " " + j);
+        file.setLastModified(lastModified += 1000);
+      }
+
+      IOUtil.writeUTF8(new File(subFolder, "empty.txt"), "");
+      new File(subFolder, "nested").setLastModified(lastModified += 1000);
+      subFolder.setLastModified(lastModified += 1000);
+    }
+
+    IOUtil.mkdirs(new File(folder, "empty"));
+  }
+
+  /**
+   * Creates a file with the given size whose content doesn't deflate well.
+   */
+  private static void createLargeFile(File file, int size) throws Exception
+  {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    IOUtil.writeFile(file, content);
+  }
+
+  /**
+   * Returns whether the first entry of the given zip file has a data descriptor, like the entries that are written by a {@link java.util.zip.ZipOutputStream}.
+   */
+  private static boolean isZippedSequentially(File zipFile) throws Exception
+  {
+    RandomAccessFile file = new RandomAccessFile(zipFile, "r");
+
+    try
+    {
+      file.seek(6);
+      int flags = file.read() | file.read() << 8;
+      return (flags & 1 << 3) != 0;
+    }
+    finally
+    {
+      file.close();
+    }
+  }
+
+  /**
+   * Asserts that the given zip file contains an entry with the same size for each file and folder in the given source folder.
+   */
+  private static void assertZip(File source, File zipFile) throws Exception
+  {
+    List<File> files = IOUtil.listBreadthFirst(source);
+    ZipFile zip = new ZipFile(zipFile);
+
+    try
+    {
+      assertThat(zip.size(), is(files.size() - 1));
+
+      int prefixLength = source.getPath().length() + 1;
+      for (File file : files.subList(1, files.size()))
+      {
+        String name = file.getPath().substring(prefixLength).replace(File.separatorChar, '/');
+        ZipEntry entry = zip.getEntry(file.isDirectory() ? name + "/" : name);
+        assertThat(name, entry, notNullValue());
+        assertThat(name, entry.isDirectory(), is(file.isDirectory()));
+        if (!entry.isDirectory())
+        {
+          assertThat(name, entry.getSize(), is(file.length()));
+        }
+      }
+    }
+    finally
+    {
+      zip.close();
+    }
+  }
+
+  private static void assertTree(File source, File target, boolean lastModified) throws Exception
+  {
+    assertThat(target.getPath(), target.isDirectory(), is(source.isDirectory()));
+
+    if (source.isDirectory())
+    {
+      String[] names = source.list();
+      Arrays.sort(names);
+
+      String[] targetNames = target.list();
+      Arrays.sort(targetNames);
+      assertThat(target.getPath(), Arrays.asList(targetNames), is(Arrays.asList(names)));
+
+      for (String name : names)
+      {
+        assertTree(new File(source, name), new File(target, name), lastModified);
+      }
+    }
+    else
+    {
+      assertThat(target.getPath(), IOUtil.readUTF8(target), is(IOUtil.readUTF8(source)));
+    }
+
+    if (lastModified)
+    {
+      assertThat(target.getPath(), target.lastModified(), is(source.lastModified()));
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch)
+  {
+    boolean interrupted = false;
+
+    for (;;)
+    {
+      try
+      {
+        latch.await();
+        break;
+      }
+      catch (InterruptedException ex)
+      {
+        interrupted = true;
+      }
+    }
+
+    if (interrupted)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep(long millis)
+  {
+    try
+    {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -49,6 +49,7 @@ import org.eclipse.osgi.util.NLS;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -76,11 +77,12 @@ public abstract class AbstractSetupTaskContext extends StringExpander implements
 
   private boolean mirrors = true;
 
-  private Set<String> restartReasons = new LinkedHashSet<String>();
+  private Set<String> restartReasons = Collections.synchronizedSet(new LinkedHashSet<String>());
 
   private URIConverter uriConverter;
 
-  private Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+  // Synchronized because tasks may be checked and performed concurrently.
+  private Map<Object, Object> map = Collections.synchronizedMap(new LinkedHashMap<Object, Object>());
 
   private String launcherName;
 
@@ -489,7 +491,16 @@ public abstract class AbstractSetupTaskContext extends StringExpander implements
 
   public Object put(Object key, Object value)
   {
-    return map.put(key, value);
+    // Synchronized on this context, so that callers can iterate the key set while tasks are performed in parallel.
+    synchronized (this)
+    {
+      if (key instanceof String)
+      {
+        invalidate((String)key);
+      }
+
+      return map.put(key, value);
+    }
   }
 
   public Set<Object> keySet()
@@ -63,6 +63,7 @@ import org.eclipse.oomph.setup.WorkspaceTask;
 import org.eclipse.oomph.setup.impl.SetupTaskImpl;
 import org.eclipse.oomph.setup.internal.core.util.Authenticator;
 import org.eclipse.oomph.setup.internal.core.util.SetupCoreUtil;
+import org.eclipse.oomph.setup.internal.core.util.SetupTaskCompositionCache;
 import org.eclipse.oomph.setup.log.ProgressLog;
 import org.eclipse.oomph.setup.log.ProgressLogFilter;
 import org.eclipse.oomph.setup.log.ProgressLogMonitor;
@@ -81,6 +82,7 @@ import org.eclipse.oomph.util.Pair;
 import org.eclipse.oomph.util.PropertiesUtil;
 import org.eclipse.oomph.util.ReflectUtil;
 import org.eclipse.oomph.util.StringUtil;
+import org.eclipse.oomph.util.TaskScheduler;
 import org.eclipse.oomph.util.UserCallback;
 
 import org.eclipse.emf.common.CommonPlugin;
@@ -128,6 +130,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
@@ -163,15 +166,24 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -204,6 +216,10 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
 
   private static final ThreadLocal<IProgressMonitor> CREATION_MONITOR = new ThreadLocal<IProgressMonitor>();
 
+  private static final int PARALLEL_THREADS = PropertiesUtil.getProperty(SetupProperties.PROP_SETUP_PARALLEL_THREADS, 0);
+
+  private static final int NEEDED_THREADS = PropertiesUtil.getProperty(SetupProperties.PROP_SETUP_NEEDED_THREADS, 0);
+
   private final Set<String> filterProperties = new LinkedHashSet<String>();
 
   private ProgressLog progress;
@@ -235,6 +251,21 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
 
   private IProgressMonitor progressMonitor;
 
+  /**
+   * The execution of the task that the current thread performs when tasks are performed in parallel.
+   */
+  private final ThreadLocal<ConcurrentTaskExecution> concurrentTaskExecution = new ThreadLocal<ConcurrentTaskExecution>();
+
+  /**
+   * The dependencies between the tasks before {@link #reorderSetupTasks(EList)} chains them in their final order.
+   */
+  private Map<SetupTask, Set<SetupTask>> setupTaskDependencies;
+
+  /**
+   * The value of the auto building preference if a performed task sets it.
+   */
+  private Boolean autoBuildingPreference;
+
   private final List<EStructuralFeature.Setting> unresolvedSettings = new ArrayList<EStructuralFeature.Setting>();
 
   private final List<VariableTask> passwordVariables = new ArrayList<VariableTask>();
@@ -2269,35 +2300,73 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
       {
         monitor.beginTask("", triggeredSetupTasks.size()); //$NON-NLS-1$
 
+        // The tasks whose check has no side effects are checked concurrently, while the other tasks are checked in order on this thread.
+        // Only a few of these checks are in flight at a time, submitted in the order of the tasks, so that the check that's needed next is never queued behind later ones.
+        LinkedList<SetupTask> pendingChecks = new LinkedList<SetupTask>();
+        Map<SetupTask, Future<ConcurrentTaskExecution>> concurrentChecks = new HashMap<SetupTask, Future<ConcurrentTaskExecution>>();
+        if (NEEDED_THREADS > 0)
+        {
+          for (SetupTask setupTask : triggeredSetupTasks)
+          {
+            if (setupTask.isNeededSideEffectFree())
+            {
+              pendingChecks.add(setupTask);
+            }
+          }
+
+          submitConcurrentChecks(pendingChecks, concurrentChecks);
+        }
+
         try
         {
           for (Iterator<SetupTask> it = triggeredSetupTasks.iterator(); it.hasNext();)
           {
             SetupTask setupTask = it.next();
             checkCancelation();
-            progressMonitor = MonitorUtil.create(monitor, 1);
 
-            try
+            Future<ConcurrentTaskExecution> concurrentCheck = concurrentChecks.remove(setupTask);
+            if (concurrentCheck != null)
             {
-              if (setupTask.isNeeded(this))
+              ConcurrentTaskExecution check = TaskScheduler.get(concurrentCheck, monitor);
+              submitConcurrentChecks(pendingChecks, concurrentChecks);
+
+              // The results are collected in the order of the tasks, so the needed tasks and the log are the same as when they're checked in order.
+              if (isNeeded(check, monitor))
               {
                 neededSetupTasks.add(setupTask);
               }
             }
-            catch (NoClassDefFoundError ex)
-            {
-              // Don't perform tasks that can't load their enabling dependencies
-              SetupCorePlugin.INSTANCE.log(ex);
-            }
-            finally
+            else
             {
-              progressMonitor.done();
-              progressMonitor = null;
+              progressMonitor = MonitorUtil.create(monitor, 1);
+
+              try
+              {
+                if (setupTask.isNeeded(this))
+                {
+                  neededSetupTasks.add(setupTask);
+                }
+              }
+              catch (NoClassDefFoundError ex)
+              {
+                // Don't perform tasks that can't load their enabling dependencies
+                SetupCorePlugin.INSTANCE.log(ex);
+              }
+              finally
+              {
+                progressMonitor.done();
+                progressMonitor = null;
+              }
             }
           }
         }
         finally
         {
+          for (Future<ConcurrentTaskExecution> concurrentCheck : concurrentChecks.values())
+          {
+            concurrentCheck.cancel(false);
+          }
+
           monitor.done();
         }
       }
@@ -2306,6 +2375,46 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
     return neededSetupTasks;
   }
 
+  /**
+   * Submits the pending checks to the I/O lane of the task scheduler, in order, until {@link #NEEDED_THREADS} checks, but at most half of the threads of the lane, are in flight.
+   */
+  private void submitConcurrentChecks(LinkedList<SetupTask> pendingChecks, Map<SetupTask, Future<ConcurrentTaskExecution>> concurrentChecks)
+  {
+    // The checks may themselves wait for tasks on the I/O lane, so they must not occupy all of its threads.
+    int maxChecks = Math.max(1, Math.min(NEEDED_THREADS, TaskScheduler.getThreadCount(TaskScheduler.Lane.IO) / 2));
+    while (concurrentChecks.size() < maxChecks && !pendingChecks.isEmpty())
+    {
+      SetupTask setupTask = pendingChecks.removeFirst();
+      concurrentChecks.put(setupTask,
+          TaskScheduler.submit(TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_INTERACTIVE, null, new ConcurrentTaskExecution(setupTask)));
+    }
+  }
+
+  private boolean isNeeded(ConcurrentTaskExecution check, IProgressMonitor monitor) throws Exception
+  {
+    check.report(monitor);
+
+    Throwable exception = check.exception;
+    if (exception instanceof NoClassDefFoundError)
+    {
+      // Don't perform tasks that can't load their enabling dependencies
+      SetupCorePlugin.INSTANCE.log(exception);
+      return false;
+    }
+
+    if (exception instanceof Error)
+    {
+      throw (Error)exception;
+    }
+
+    if (exception != null)
+    {
+      throw (Exception)exception;
+    }
+
+    return check.needed;
+  }
+
   public EList<SetupTask> getNeededTasks()
   {
     return neededSetupTasks;
@@ -2323,6 +2432,8 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
 
   public IProgressMonitor getProgressMonitor(boolean working)
   {
+    ConcurrentTaskExecution execution = concurrentTaskExecution.get();
+    IProgressMonitor progressMonitor = execution != null ? execution.progressMonitor : this.progressMonitor;
     if (!working || progressMonitor == null)
     {
       return new ProgressLogMonitor(this);
@@ -2402,6 +2513,13 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
 
   public void log(String line, boolean filter, Severity severity)
   {
+    ConcurrentTaskExecution execution = concurrentTaskExecution.get();
+    if (execution != null)
+    {
+      execution.log(line, filter, severity);
+      return;
+    }
+
     if (progress != null)
     {
       if (logMessageBuffer != null)
@@ -2675,9 +2793,19 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
       expandVariableTaskValue(keys, setupTask);
     }
 
-    for (Iterator<EObject> it = EcoreUtil.getAllContents(setupTasks); it.hasNext();)
+    // Many strings, e.g., of copied macros, are expanded repeatedly with the same variable values.
+    setMemoizing(true);
+
+    try
+    {
+      for (Iterator<EObject> it = EcoreUtil.getAllContents(setupTasks); it.hasNext();)
+      {
+        expand(keys, it.next());
+      }
+    }
+    finally
     {
-      expand(keys, it.next());
+      setMemoizing(false);
     }
 
     handleFeatureSubstitutions(setupTasks);
@@ -2712,6 +2840,7 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
   @Override
   protected String resolve(String key)
   {
+    SetupTaskCompositionCache.keyResolved(getPrompter(), key);
     return lookup(key);
   }
 
@@ -2863,19 +2992,7 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
       return null;
     }
 
-    Set<String> result = new LinkedHashSet<String>();
-    for (Matcher matcher = STRING_EXPANSION_PATTERN.matcher(string); matcher.find();)
-    {
-      String key = matcher.group(1);
-      if (!"$".equals(key)) //$NON-NLS-1$
-      {
-        key = matcher.group(2);
-      }
-
-      result.add(key);
-    }
-
-    return result;
+    return new LinkedHashSet<String>(StringExpander.Template.compile(string).getKeys());
   }
 
   public static boolean isFilterUsed(String name, EObject eObject)
@@ -3816,50 +3933,13 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
 
       monitor.beginTask("", totalWork); //$NON-NLS-1$
 
-      for (SetupTask neededTask : neededSetupTasks)
+      if (PARALLEL_THREADS > 1)
       {
-        checkCancelation();
-
-        // Once we're past all the installation priority tasks that might cause restart reasons and there are restart reasons, stop performing.
-        if (trigger != Trigger.BOOTSTRAP && neededTask.getPriority() >= SetupTask.PRIORITY_CONFIGURATION && !getRestartReasons().isEmpty())
-        {
-          break;
-        }
-
-        task(neededTask);
-
-        int work = Math.max(0, neededTask.getProgressMonitorWork());
-        progressMonitor = MonitorUtil.create(monitor, work);
-
-        try
-        {
-          // We need special case support for setting the auto building preference, because we save and restore this value during the perform process.
-          // In the case of false, we don't want to set it back to true.
-          // In the case of true, we don't want to set it to true until after all the tasks have performed.
-          if (neededTask instanceof PreferenceTask)
-          {
-            PreferenceTask preferenceTask = (PreferenceTask)neededTask;
-            if ("/instance/org.eclipse.core.resources/description.autobuilding".equals(preferenceTask.getKey())) //$NON-NLS-1$
-            {
-              String value = preferenceTask.getValue();
-              autoBuilding = value == null ? Boolean.TRUE : Boolean.valueOf(value);
-              neededTask.dispose();
-              continue;
-            }
-          }
-
-          neededTask.perform(this);
-          neededTask.dispose();
-        }
-        catch (NoClassDefFoundError ex)
-        {
-          log(ex);
-        }
-        finally
-        {
-          progressMonitor.done();
-          progressMonitor = null;
-        }
+        performNeededSetupTasksInParallel(monitor);
+      }
+      else
+      {
+        performNeededSetupTasksSequentially(monitor);
       }
     }
     catch (OperationCanceledException ex)
@@ -3880,6 +3960,11 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
     {
       monitor.done();
 
+      if (autoBuildingPreference != null)
+      {
+        autoBuilding = autoBuildingPreference;
+      }
+
       if (Boolean.TRUE.equals(autoBuilding))
       {
         // Disable the PDE's API analysis builder, if it's installed, and remember its previously current state.
@@ -3932,6 +4017,278 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
     }
   }
 
+  /**
+   * Performs the needed tasks one after the other, in their order.
+   */
+  private void performNeededSetupTasksSequentially(IProgressMonitor monitor) throws Exception
+  {
+    for (SetupTask neededTask : neededSetupTasks)
+    {
+      checkCancelation();
+
+      // Once we're past all the installation priority tasks that might cause restart reasons and there are restart reasons, stop performing.
+      if (isRestartNeededBefore(neededTask))
+      {
+        break;
+      }
+
+      performNeededSetupTask(neededTask, monitor);
+    }
+  }
+
+  /**
+   * Performs the needed tasks on a bounded pool of threads, each as soon as the tasks on which it depends have been performed.
+   * A task depends on the earlier tasks that it transitively requires, on the earlier tasks with a lower priority,
+   * and on the earlier tasks with an equal {@link SetupTask#getExclusivityToken() exclusivity token}.
+   * A task without an exclusivity token depends on all earlier tasks, all later tasks depend on it, and it's performed on the calling thread.
+   * <p>
+   * The log messages of the tasks that are performed by the pool are buffered,
+   * and the log and the progress monitor are updated in the order of the tasks, as if the tasks were performed one after the other.
+   */
+  private void performNeededSetupTasksInParallel(IProgressMonitor monitor) throws Exception
+  {
+    int size = neededSetupTasks.size();
+    Object[] tokens = new Object[size];
+    for (int i = 0; i < size; ++i)
+    {
+      tokens[i] = neededSetupTasks.get(i).getExclusivityToken();
+    }
+
+    int[] pendingCounts = new int[size];
+    List<List<Integer>> dependents = new ArrayList<List<Integer>>(size);
+    for (int i = 0; i < size; ++i)
+    {
+      SetupTask neededTask = neededSetupTasks.get(i);
+      Set<SetupTask> requiredTasks = getRequiredSetupTasks(neededTask);
+      dependents.add(new ArrayList<Integer>());
+
+      for (int j = 0; j < i; ++j)
+      {
+        SetupTask earlierTask = neededSetupTasks.get(j);
+        if (tokens[i] == null || tokens[j] == null || tokens[i].equals(tokens[j]) || earlierTask.getPriority() < neededTask.getPriority()
+            || requiredTasks.contains(earlierTask))
+        {
+          dependents.get(j).add(i);
+          ++pendingCounts[i];
+        }
+      }
+    }
+
+    TreeSet<Integer> readyTasks = new TreeSet<Integer>();
+    for (int i = 0; i < size; ++i)
+    {
+      if (pendingCounts[i] == 0)
+      {
+        readyTasks.add(i);
+      }
+    }
+
+    // The tasks may themselves wait for tasks on the I/O lane, e.g., for the ranges of a download, so they must not occupy all of its threads.
+    int maxRunning = Math.max(1, Math.min(PARALLEL_THREADS, TaskScheduler.getThreadCount(TaskScheduler.Lane.IO) / 2));
+
+    ConcurrentTaskExecution[] executions = new ConcurrentTaskExecution[size];
+    CompletionService<ConcurrentTaskExecution> completionService = new ExecutorCompletionService<ConcurrentTaskExecution>(
+        TaskScheduler.getExecutor(TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_INTERACTIVE, null));
+    ConcurrentTaskExecution failedExecution = null;
+    boolean stopping = false;
+    int running = 0;
+    int reported = 0;
+
+    for (;;)
+    {
+      reported = reportConcurrentTaskExecutions(executions, reported, monitor);
+
+      if (!stopping && isCanceled())
+      {
+        stopping = true;
+      }
+
+      while (!stopping && !readyTasks.isEmpty())
+      {
+        int index = readyTasks.first();
+        if (tokens[index] != null && running >= maxRunning)
+        {
+          break;
+        }
+
+        SetupTask neededTask = neededSetupTasks.get(index);
+
+        // Once we're past all the installation priority tasks that might cause restart reasons and there are restart reasons, stop performing.
+        if (isRestartNeededBefore(neededTask))
+        {
+          stopping = true;
+          break;
+        }
+
+        readyTasks.remove(index);
+        executions[index] = new ConcurrentTaskExecution(index, neededTask, tokens[index] == null);
+
+        if (tokens[index] != null)
+        {
+          completionService.submit(executions[index]);
+          ++running;
+        }
+        else
+        {
+          // All earlier tasks are done, so report them before this task logs directly.
+          reported = reportConcurrentTaskExecutions(executions, reported, monitor);
+
+          performNeededSetupTask(neededTask, monitor);
+          executions[index].done = true;
+          releaseDependents(dependents.get(index), pendingCounts, readyTasks);
+        }
+      }
+
+      if (running == 0)
+      {
+        break;
+      }
+
+      Future<ConcurrentTaskExecution> future = completionService.poll(100, TimeUnit.MILLISECONDS);
+      if (future == null)
+      {
+        continue;
+      }
+
+      --running;
+
+      ConcurrentTaskExecution execution = future.get();
+      if (execution.exception != null)
+      {
+        // The running tasks are allowed to finish, but no further tasks are started.
+        if (failedExecution == null || execution.index < failedExecution.index)
+        {
+          failedExecution = execution;
+        }
+
+        stopping = true;
+      }
+      else
+      {
+        releaseDependents(dependents.get(execution.index), pendingCounts, readyTasks);
+      }
+    }
+
+    // Report the remaining tasks that were performed, even if some task before them wasn't.
+    for (int i = reported; i < size; ++i)
+    {
+      if (executions[i] != null && executions[i].done)
+      {
+        executions[i].report(monitor);
+      }
+    }
+
+    if (failedExecution != null)
+    {
+      Throwable exception = failedExecution.exception;
+      if (exception instanceof Error)
+      {
+        throw (Error)exception;
+      }
+
+      throw (Exception)exception;
+    }
+
+    checkCancelation();
+  }
+
+  private static void releaseDependents(List<Integer> dependents, int[] pendingCounts, Set<Integer> readyTasks)
+  {
+    for (int dependent : dependents)
+    {
+      if (--pendingCounts[dependent] == 0)
+      {
+        readyTasks.add(dependent);
+      }
+    }
+  }
+
+  private int reportConcurrentTaskExecutions(ConcurrentTaskExecution[] executions, int reported, IProgressMonitor monitor)
+  {
+    while (reported < executions.length && executions[reported] != null && executions[reported].done)
+    {
+      executions[reported++].report(monitor);
+    }
+
+    return reported;
+  }
+
+  /**
+   * Returns the tasks that the given task transitively requires, including the ones that aren't needed.
+   */
+  private Set<SetupTask> getRequiredSetupTasks(SetupTask setupTask)
+  {
+    Set<SetupTask> result = new HashSet<SetupTask>();
+    List<SetupTask> pendingTasks = new ArrayList<SetupTask>();
+    pendingTasks.add(setupTask);
+
+    while (!pendingTasks.isEmpty())
+    {
+      SetupTask pendingTask = pendingTasks.remove(pendingTasks.size() - 1);
+
+      // Without the original dependencies, the predecessors chain all tasks in their order.
+      Collection<SetupTask> dependencies = setupTaskDependencies != null ? setupTaskDependencies.get(pendingTask) : pendingTask.getPredecessors();
+      if (dependencies != null)
+      {
+        for (SetupTask dependency : dependencies)
+        {
+          if (result.add(dependency))
+          {
+            pendingTasks.add(dependency);
+          }
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Performs the given task on the calling thread.
+   */
+  private void performNeededSetupTask(SetupTask neededTask, IProgressMonitor monitor) throws Exception
+  {
+    task(neededTask);
+
+    int work = Math.max(0, neededTask.getProgressMonitorWork());
+    progressMonitor = MonitorUtil.create(monitor, work);
+
+    try
+    {
+      // We need special case support for setting the auto building preference, because we save and restore this value during the perform process.
+      // In the case of false, we don't want to set it back to true.
+      // In the case of true, we don't want to set it to true until after all the tasks have performed.
+      if (neededTask instanceof PreferenceTask)
+      {
+        PreferenceTask preferenceTask = (PreferenceTask)neededTask;
+        if ("/instance/org.eclipse.core.resources/description.autobuilding".equals(preferenceTask.getKey())) //$NON-NLS-1$
+        {
+          String value = preferenceTask.getValue();
+          autoBuildingPreference = value == null ? Boolean.TRUE : Boolean.valueOf(value);
+          neededTask.dispose();
+          return;
+        }
+      }
+
+      neededTask.perform(this);
+      neededTask.dispose();
+    }
+    catch (NoClassDefFoundError ex)
+    {
+      log(ex);
+    }
+    finally
+    {
+      progressMonitor.done();
+      progressMonitor = null;
+    }
+  }
+
+  private boolean isRestartNeededBefore(SetupTask neededTask)
+  {
+    return getTrigger() != Trigger.BOOTSTRAP && neededTask.getPriority() >= SetupTask.PRIORITY_CONFIGURATION && !getRestartReasons().isEmpty();
+  }
+
   private void logJREInfos()
   {
     log(System.getProperty("java.runtime.name") + " " + System.getProperty("java.runtime.version")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -4337,6 +4694,12 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
   {
     EList<Map.Entry<String, Set<String>>> list = new BasicEList<Map.Entry<String, Set<String>>>(variables.entrySet());
 
+    final Map<String, Map.Entry<String, Set<String>>> entries = new HashMap<String, Map.Entry<String, Set<String>>>(2 * list.size());
+    for (Map.Entry<String, Set<String>> entry : list)
+    {
+      entries.put(entry.getKey(), entry);
+    }
+
     SetupCoreUtil.reorder(list, new SetupCoreUtil.DependencyProvider<Map.Entry<String, Set<String>>>()
     {
       public Collection<Map.Entry<String, Set<String>>> getDependencies(Map.Entry<String, Set<String>> variable)
@@ -4344,12 +4707,10 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
         Collection<Map.Entry<String, Set<String>>> result = new ArrayList<Map.Entry<String, Set<String>>>();
         for (String key : variable.getValue())
         {
-          for (Map.Entry<String, Set<String>> entry : variables.entrySet())
+          Map.Entry<String, Set<String>> entry = entries.get(key);
+          if (entry != null)
           {
-            if (entry.getKey().equals(key))
-            {
-              result.add(entry);
-            }
+            result.add(entry);
           }
         }
 
@@ -4381,6 +4742,8 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
       }
     }
 
+    setupTaskDependencies = dependencies;
+
     SetupCoreUtil.reorder(setupTasks, new SetupCoreUtil.DependencyProvider<SetupTask>()
     {
       public Collection<SetupTask> getDependencies(SetupTask setupTask)
@@ -4496,6 +4859,29 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
     List<VariableTask> allPasswordVariables = new ArrayList<VariableTask>();
     Map<VariableTask, EAttribute> allRuleAttributes = new LinkedHashMap<VariableTask, EAttribute>();
 
+    SetupTaskCompositionCache compositionCache = SetupTaskCompositionCache.create(uriConverter, prompter, trigger, setupContext, fullPrompt, fullComposition);
+    if (compositionCache != null)
+    {
+      SetupTaskCompositionCache.Composition composition = compositionCache.load();
+      if (composition != null)
+      {
+        try
+        {
+          return createComposedPerformer(uriConverter, prompter, trigger, setupContext, composition);
+        }
+        catch (OperationCanceledException ex)
+        {
+          throw ex;
+        }
+        catch (Exception ex)
+        {
+          // Discard the composition, so that it's replaced by the composition of the tasks as usual.
+          SetupCorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+          compositionCache.discard();
+        }
+      }
+    }
+
     Workspace workspace = setupContext.getWorkspace();
     List<Stream> streams = workspace == null ? null : workspace.getStreams();
     if (streams == null || streams.isEmpty())
@@ -4509,7 +4895,8 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
 
       if (stream == null || !stream.eIsProxy())
       {
-        SetupTaskPerformer performer = new SetupTaskPerformer(uriConverter, prompter, null, setupContext, stream);
+        SetupTaskPerformer performer = new SetupTaskPerformer(uriConverter, compositionCache == null ? prompter : compositionCache.getPrompter(), null,
+            setupContext, stream);
         Set<String> undeclaredVariables = performer.getUndeclaredVariables();
         final Set<VariableTask> demandCreatedUnresolvedVariables = new LinkedHashSet<VariableTask>();
         if (!undeclaredVariables.isEmpty())
@@ -4663,6 +5050,22 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
       bundles.addAll(performer.getBundles());
     }
 
+    if (compositionCache != null)
+    {
+      if (needsPrompt || !allAppliedRuleVariables.isEmpty() || !allPasswordVariables.isEmpty() || !allRuleAttributes.isEmpty())
+      {
+        compositionCache.invalidate();
+      }
+
+      for (SetupTaskPerformer performer : performers)
+      {
+        compositionCache.addEnvironmentNames(performer.filterProperties);
+      }
+
+      // The composed performer modifies the tasks, so they must be serialized before.
+      compositionCache.prepare(setupTasks, bundles);
+    }
+
     SetupTaskPerformer composedPerformer = new SetupTaskPerformer(uriConverter, prompter, trigger, setupContext, setupTasks);
     composedPerformer.getBundles().addAll(bundles);
     composedPerformer.getAppliedRuleVariables().addAll(allAppliedRuleVariables);
@@ -4714,22 +5117,18 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
     }
     else
     {
-      File workspaceLocation = composedPerformer.getWorkspaceLocation();
-      if (workspaceLocation != null)
+      URI workspaceURI = composedPerformer.getWorkspaceSetupURI();
+      if (workspaceURI != null)
       {
-        File workspaceSetupLocation = new File(workspaceLocation, ".metadata/.plugins/org.eclipse.oomph.setup/workspace.setup"); //$NON-NLS-1$
-        URI workspaceURI = URI.createFileURI(workspaceSetupLocation.toString());
         for (SetupTaskPerformer performer : performers)
         {
           performer.getWorkspace().eResource().setURI(workspaceURI);
         }
       }
 
-      File configurationLocation = composedPerformer.getProductConfigurationLocation();
-      if (configurationLocation != null)
+      URI installationURI = composedPerformer.getInstallationSetupURI();
+      if (installationURI != null)
       {
-        File installationLocation = new File(configurationLocation, "org.eclipse.oomph.setup/installation.setup"); //$NON-NLS-1$
-        URI installationURI = URI.createFileURI(installationLocation.toString());
         for (SetupTaskPerformer performer : performers)
         {
           performer.getInstallation().eResource().setURI(installationURI);
@@ -4748,14 +5147,94 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
         value.remove(""); //$NON-NLS-1$
         if (value.size() == 1)
         {
-          finalComposedMap.put(key, value.iterator().next());
+          Object singleValue = value.iterator().next();
+          finalComposedMap.put(key, singleValue);
+
+          if (compositionCache != null)
+          {
+            compositionCache.putVariable(key, singleValue);
+          }
         }
       }
     }
 
+    if (compositionCache != null)
+    {
+      compositionCache.store();
+    }
+
     return composedPerformer;
   }
 
+  /**
+   * Creates the composed performer for a composition that was restored from the {@link SetupTaskCompositionCache composition cache},
+   * just like {@link #create(URIConverter, SetupPrompter, Trigger, SetupContext, boolean, boolean) create} does for freshly composed tasks.
+   */
+  private static SetupTaskPerformer createComposedPerformer(URIConverter uriConverter, SetupPrompter prompter, Trigger trigger, SetupContext setupContext,
+      SetupTaskCompositionCache.Composition composition)
+  {
+    SetupTaskPerformer composedPerformer = new SetupTaskPerformer(uriConverter, prompter, trigger, setupContext, composition.getSetupTasks());
+    composedPerformer.getBundles().addAll(composition.getBundles());
+    composedPerformer.redirectTriggeredSetupTasks();
+
+    // The restored copies of the workspace and installation resources have the URIs of their originals.
+    Workspace workspace = setupContext.getWorkspace();
+    URI originalWorkspaceURI = workspace == null ? null : workspace.eResource().getURI();
+    Installation installation = setupContext.getInstallation();
+    URI originalInstallationURI = installation == null ? null : installation.eResource().getURI();
+
+    URI workspaceURI = composedPerformer.getWorkspaceSetupURI();
+    URI installationURI = composedPerformer.getInstallationSetupURI();
+    for (Resource resource : composition.getResources())
+    {
+      URI uri = resource.getURI();
+      if (workspaceURI != null && uri.equals(originalWorkspaceURI))
+      {
+        resource.setURI(workspaceURI);
+      }
+      else if (installationURI != null && uri.equals(originalInstallationURI))
+      {
+        resource.setURI(installationURI);
+      }
+    }
+
+    Map<Object, Object> finalComposedMap = composedPerformer.getMap();
+    for (Map.Entry<String, String> entry : composition.getVariables().entrySet())
+    {
+      String key = entry.getKey();
+      if (!finalComposedMap.containsKey(key))
+      {
+        finalComposedMap.put(key, entry.getValue());
+      }
+    }
+
+    return composedPerformer;
+  }
+
+  private URI getWorkspaceSetupURI()
+  {
+    File workspaceLocation = getWorkspaceLocation();
+    if (workspaceLocation == null)
+    {
+      return null;
+    }
+
+    File workspaceSetupLocation = new File(workspaceLocation, ".metadata/.plugins/org.eclipse.oomph.setup/workspace.setup"); //$NON-NLS-1$
+    return URI.createFileURI(workspaceSetupLocation.toString());
+  }
+
+  private URI getInstallationSetupURI()
+  {
+    File configurationLocation = getProductConfigurationLocation();
+    if (configurationLocation == null)
+    {
+      return null;
+    }
+
+    File installationLocation = new File(configurationLocation, "org.eclipse.oomph.setup/installation.setup"); //$NON-NLS-1$
+    return URI.createFileURI(installationLocation.toString());
+  }
+
   public static Set<? extends Authenticator> getAuthenticators(VariableTask variable)
   {
     VariableAdapter variableAdapter = (VariableAdapter)EcoreUtil.getExistingAdapter(variable, VariableAdapter.class);
@@ -4767,6 +5246,144 @@ public class SetupTaskPerformer extends AbstractSetupTaskContext
     return null;
   }
 
+  /**
+   * The performance of a needed task when the tasks are {@link SetupTaskPerformer#performNeededSetupTasksInParallel(IProgressMonitor) performed in parallel},
+   * or the concurrent check whether a task with a {@link SetupTask#isNeededSideEffectFree() side-effect-free check} is needed.
+   * A task that's performed or checked by a pool thread has its log messages buffered until the execution is {@link #report(IProgressMonitor) reported}.
+   *
+   * @author Eike Stepper
+   */
+  private final class ConcurrentTaskExecution implements Callable<ConcurrentTaskExecution>
+  {
+    private final int index;
+
+    private final SetupTask setupTask;
+
+    private final boolean inline;
+
+    private final boolean checking;
+
+    private final List<Object[]> logMessages = new ArrayList<Object[]>();
+
+    private final IProgressMonitor progressMonitor = new NullProgressMonitor()
+    {
+      @Override
+      public boolean isCanceled()
+      {
+        return SetupTaskPerformer.this.isCanceled();
+      }
+
+      @Override
+      public void setCanceled(boolean canceled)
+      {
+        SetupTaskPerformer.this.setCanceled(canceled);
+      }
+    };
+
+    private volatile boolean done;
+
+    private Throwable exception;
+
+    private boolean needed;
+
+    /**
+     * Creates an execution that performs the given task, unless it's performed inline by the calling thread.
+     */
+    public ConcurrentTaskExecution(int index, SetupTask setupTask, boolean inline)
+    {
+      this.index = index;
+      this.setupTask = setupTask;
+      this.inline = inline;
+      checking = false;
+    }
+
+    /**
+     * Creates an execution that checks whether the given task is needed.
+     */
+    public ConcurrentTaskExecution(SetupTask setupTask)
+    {
+      index = -1;
+      this.setupTask = setupTask;
+      inline = false;
+      checking = true;
+    }
+
+    public ConcurrentTaskExecution call() throws Exception
+    {
+      concurrentTaskExecution.set(this);
+
+      try
+      {
+        if (checking)
+        {
+          needed = setupTask.isNeeded(SetupTaskPerformer.this);
+        }
+        else
+        {
+          setupTask.perform(SetupTaskPerformer.this);
+          setupTask.dispose();
+        }
+      }
+      catch (NoClassDefFoundError ex)
+      {
+        if (checking)
+        {
+          exception = ex;
+        }
+        else
+        {
+          SetupTaskPerformer.this.log(ex);
+        }
+      }
+      catch (Throwable ex)
+      {
+        exception = ex;
+      }
+      finally
+      {
+        concurrentTaskExecution.remove();
+        done = true;
+      }
+
+      return this;
+    }
+
+    public void log(String line, boolean filter, Severity severity)
+    {
+      synchronized (logMessages)
+      {
+        logMessages.add(new Object[] { line, filter, severity });
+      }
+    }
+
+    /**
+     * Logs the buffered log messages, preceded by this task if it was performed, and advances the given progress monitor by the work of this execution.
+     * Tasks that were performed on the calling thread have already done so.
+     */
+    public void report(IProgressMonitor monitor)
+    {
+      if (inline)
+      {
+        return;
+      }
+
+      if (!checking)
+      {
+        task(setupTask);
+      }
+
+      synchronized (logMessages)
+      {
+        for (Object[] logMessage : logMessages)
+        {
+          SetupTaskPerformer.this.log((String)logMessage[0], (Boolean)logMessage[1], (Severity)logMessage[2]);
+        }
+      }
+
+      monitor.worked(checking ? 1 : Math.max(0, setupTask.getProgressMonitorWork()));
+    }
+  }
+
   private static class VariableAdapter extends AdapterImpl
   {
     private SetupTaskPerformer performer;
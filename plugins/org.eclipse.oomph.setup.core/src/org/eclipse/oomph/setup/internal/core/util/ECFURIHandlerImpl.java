@@ -17,6 +17,7 @@ import org.eclipse.oomph.setup.internal.core.SetupContext;
 import org.eclipse.oomph.setup.internal.core.SetupCorePlugin;
 import org.eclipse.oomph.setup.internal.core.util.ECFURIHandlerImpl.AuthorizationHandler.Authorization;
 import org.eclipse.oomph.setup.util.SetupUtil;
+import org.eclipse.oomph.util.CacheEvictor;
 import org.eclipse.oomph.util.IOExceptionWithCause;
 import org.eclipse.oomph.util.IORuntimeException;
 import org.eclipse.oomph.util.IOUtil;
@@ -24,6 +25,8 @@ import org.eclipse.oomph.util.OS;
 import org.eclipse.oomph.util.ObjectUtil;
 import org.eclipse.oomph.util.PropertiesUtil;
 import org.eclipse.oomph.util.ReflectUtil;
+import org.eclipse.oomph.util.SingleFlight;
+import org.eclipse.oomph.util.StreamDigester;
 import org.eclipse.oomph.util.StringUtil;
 import org.eclipse.oomph.util.WorkerPool;
 
@@ -142,7 +145,18 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
 
   private static final Map<URI, IOException> EXPECTED_EXCEPTIONS = Collections.synchronizedMap(new HashMap<URI, IOException>());
 
-  private static final Map<URI, CountDownLatch> LOCKS = new HashMap<URI, CountDownLatch>();
+  private static final SingleFlight<URI, Object> FLIGHTS = new SingleFlight<URI, Object>();
+
+  private static final CacheEvictor CACHE_EVICTOR = new CacheEvictor(new File(CACHE_FOLDER.toFileString()), SetupProperties.PROP_SETUP_ECF_CACHE, ".etag", //$NON-NLS-1$
+      StreamDigester.SIDECAR_EXTENSION);
+
+  static
+  {
+    if (CACHE_EVICTOR.isBounded())
+    {
+      CACHE_EVICTOR.scheduleEviction();
+    }
+  }
 
   private static final boolean TEST_IO_EXCEPTION = false;
 
@@ -323,39 +337,32 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
     return new InputStreamConnectionHandler(uri, options).process();
   }
 
-  private static CountDownLatch acquireLock(URI uri) throws IOException
+  /**
+   * Executes the given request once no other request for the same URI is being executed.
+   * The requests for a URI are processed one after the other because each depends on its own options,
+   * but the first one populates the cache and the expected ETag so that the others are typically served from the cache.
+   * Waiting requests don't block a monitor, remain cancelable via their progress monitor, and stop waiting after the {@link SetupProperties#PROP_SETUP_ECF_WAIT_TIMEOUT wait timeout}.
+   * A request that's made while processing a request for the same URI, for example for a redirect, is processed right away.
+   */
+  private static <T> T execute(URI uri, SingleFlight.Request<T> request, IProgressMonitor monitor) throws IOException
   {
-    CountDownLatch countDownLatch = null;
-    synchronized (LOCKS)
+    try
     {
-      countDownLatch = LOCKS.get(uri);
-      if (countDownLatch == null)
-      {
-        countDownLatch = new CountDownLatch(1);
-        LOCKS.put(uri, countDownLatch);
-        return countDownLatch;
-      }
+      int timeout = PropertiesUtil.getProperty(SetupProperties.PROP_SETUP_ECF_WAIT_TIMEOUT, SingleFlight.DEFAULT_TIMEOUT);
+      return FLIGHTS.executeExclusively(uri, request, monitor, timeout);
     }
-
-    try
+    catch (IOException ex)
     {
-      countDownLatch.await();
-      return acquireLock(uri);
+      throw ex;
     }
-    catch (InterruptedException ex)
+    catch (RuntimeException ex)
     {
-      throw new IOExceptionWithCause(ex);
+      throw ex;
     }
-  }
-
-  private static void releaseLock(URI uri, CountDownLatch countDownLatch)
-  {
-    synchronized (LOCKS)
+    catch (Exception ex)
     {
-      LOCKS.remove(uri);
+      throw new IOExceptionWithCause(ex);
     }
-
-    countDownLatch.countDown();
   }
 
   private IContainer createContainer() throws IOException
@@ -400,6 +407,11 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
     return job;
   }
 
+  public static CacheEvictor getCacheEvictor()
+  {
+    return CACHE_EVICTOR;
+  }
+
   public static URI getCacheFile(URI uri)
   {
     return CACHE_FOLDER.appendSegment(
@@ -849,6 +861,8 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
 
     public ByteArrayOutputStream out;
 
+    public StreamDigester digester;
+
     public long lastModified;
 
     public Exception exception;
@@ -892,6 +906,7 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
         }
 
         out = new ByteArrayOutputStream();
+        digester = new StreamDigester();
 
         @SuppressWarnings("rawtypes")
         Map responseHeaders = receiveStartEvent.getResponseHeaders();
@@ -935,7 +950,7 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
 
         try
         {
-          receiveStartEvent.receive(out);
+          receiveStartEvent.receive(digester.filter(out));
         }
         catch (IOException ex)
         {
@@ -1298,6 +1313,12 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
       return new Worker(NLS.bind(Messages.ECFURIHandlerImpl_ETagMirror_thread, key), this, key, workerID, secondary);
     }
 
+    @Override
+    protected String getHost(URI key)
+    {
+      return key.host();
+    }
+
     public void begin(Set<? extends URI> uris, final IProgressMonitor monitor)
     {
       options.put(OPTION_MONITOR, monitor);
@@ -1427,397 +1448,400 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
     public T process() throws IOException
     {
       // First transform the URI, if necessary, extracting a login URI or form URI if one is needed.
-      Map<Object, Object> transformedOptions = new HashMap<Object, Object>(options);
+      final Map<Object, Object> transformedOptions = new HashMap<Object, Object>(options);
       uri = SetupContext.INDEX_SETUP_ARCHIVE_LOCATION_URI.equals(uri) ? ACTUAL_INDEX_SETUP_ARCHIVE_LOCATION_URI : transform(originalURI, transformedOptions);
 
       // This is used to prefix all tracing statements.
       tracePrefix = NLS.bind(Messages.ECFURIHandlerImpl_ECFPrefix_message, uri);
 
-      IProgressMonitor monitor = (IProgressMonitor)options.get(OPTION_MONITOR);
+      final IProgressMonitor monitor = (IProgressMonitor)options.get(OPTION_MONITOR);
 
-      CountDownLatch countDownLatch = acquireLock(uri);
-      try
+      return execute(uri, new SingleFlight.Request<T>()
       {
-        if (TEST_IO_EXCEPTION)
+        public T execute() throws Exception
         {
-          File folder = new File(CACHE_FOLDER.toFileString());
-          if (folder.isDirectory())
-          {
-            System.out.println(NLS.bind(Messages.ECFURIHandlerImpl_DeletingCache_message, folder));
-            IOUtil.deleteBestEffort(folder);
-          }
-
-          throw new IOException(NLS.bind(Messages.ECFURIHandlerImpl_NetworkProblem_exception, uri));
-        }
-
-        // Setup the basic context for subsequent processing.
-        CacheHandling cacheHandling = getCacheHandling(options);
-        URIConverter uriConverter = getURIConverter(options);
-        URI cacheURI = getCacheFile(uri);
-        String eTag = cacheHandling == CacheHandling.CACHE_IGNORE ? null : getETag(uriConverter, cacheURI);
-        String expectedETag = cacheHandling == CacheHandling.CACHE_IGNORE ? null : getExpectedETag(uri);
-
-        if (TRACE)
-        {
-          System.out.println(tracePrefix + " uri=" + uri); //$NON-NLS-1$
-          System.out.println(tracePrefix + " cacheURI=" + cacheURI); //$NON-NLS-1$
-          System.out.println(tracePrefix + " eTag=" + eTag); //$NON-NLS-1$
-          System.out.println(tracePrefix + " expectedETag=" + expectedETag); //$NON-NLS-1$
-        }
-
-        // To prevent Eclipse's Git server from being overload, because it can't scale to thousands of users, we block all direct access.
-        String host = getHost(uri);
-        boolean isBlockedEclipseGitURI = !SetupUtil.SETUP_ARCHIVER_APPLICATION && "git.eclipse.org".equals(host); //$NON-NLS-1$
-        if (isBlockedEclipseGitURI && uriConverter.exists(cacheURI, options))
-        {
-          // If the file is in the cache, it's okay to use that cached version, so try that first.
-          cacheHandling = CacheHandling.CACHE_ONLY;
+          return processExclusively(transformedOptions, monitor);
         }
+      }, monitor);
+    }
 
-        // This is a URI that fails to load at all, so fail quickly.
-        if (FAILED_EXPECTED_ETAG.equals(expectedETag))
+    private T processExclusively(Map<Object, Object> transformedOptions, IProgressMonitor monitor) throws IOException
+    {
+      if (TEST_IO_EXCEPTION)
+      {
+        File folder = new File(CACHE_FOLDER.toFileString());
+        if (folder.isDirectory())
         {
-          throw EXPECTED_EXCEPTIONS.get(uri);
+          System.out.println(NLS.bind(Messages.ECFURIHandlerImpl_DeletingCache_message, folder));
+          IOUtil.deleteBestEffort(folder);
         }
 
-        if (expectedETag != null || cacheHandling == CacheHandling.CACHE_ONLY || cacheHandling == CacheHandling.CACHE_WITHOUT_ETAG_CHECKING)
-        {
-          if (cacheHandling == CacheHandling.CACHE_ONLY || //
-              cacheHandling == CacheHandling.CACHE_WITHOUT_ETAG_CHECKING ? eTag != null : expectedETag.equals(eTag))
-          {
-            try
-            {
-              return handleCache(uriConverter, cacheURI, expectedETag);
-            }
-            catch (IOException ex)
-            {
-              // Perhaps another JVM is busy writing this file.
-              // Proceed as if it doesn't exist.
-              if (TRACE)
-              {
-                System.out.println(tracePrefix + Messages.ECFURIHandlerImpl_UnableToLoadCache_message);
-              }
-            }
-          }
-        }
+        throw new IOException(NLS.bind(Messages.ECFURIHandlerImpl_NetworkProblem_exception, uri));
+      }
 
-        // In general all Eclipse-hosted setups should be in the Eclipse project or product catalog and therefore should be in
-        // SetupContext.INDEX_SETUP_ARCHIVE_LOCATION_URI or should already be in the cache from running the setup archiver application.
-        if (isBlockedEclipseGitURI)
-        {
-          synchronized (this)
-          {
-            if (!loggedBlockedURI)
-            {
-              String launcher = OS.getCurrentLauncher(true);
-              if (launcher == null)
-              {
-                launcher = "eclipse"; //$NON-NLS-1$
-              }
+      // Setup the basic context for subsequent processing.
+      CacheHandling cacheHandling = getCacheHandling(options);
+      URIConverter uriConverter = getURIConverter(options);
+      URI cacheURI = getCacheFile(uri);
+      String eTag = cacheHandling == CacheHandling.CACHE_IGNORE ? null : getETag(uriConverter, cacheURI);
+      String expectedETag = cacheHandling == CacheHandling.CACHE_IGNORE ? null : getExpectedETag(uri);
 
-              // We'll log a single warning for this case.
-              SetupCorePlugin.INSTANCE.log(NLS.bind(Messages.ECFURIHandlerImpl_EclipseGitBlocked_meesage, uri, launcher), //
-                  IStatus.WARNING);
+      if (TRACE)
+      {
+        System.out.println(tracePrefix + " uri=" + uri); //$NON-NLS-1$
+        System.out.println(tracePrefix + " cacheURI=" + cacheURI); //$NON-NLS-1$
+        System.out.println(tracePrefix + " eTag=" + eTag); //$NON-NLS-1$
+        System.out.println(tracePrefix + " expectedETag=" + expectedETag); //$NON-NLS-1$
+      }
 
-              loggedBlockedURI = true;
-            }
-          }
+      // To prevent Eclipse's Git server from being overload, because it can't scale to thousands of users, we block all direct access.
+      String host = getHost(uri);
+      boolean isBlockedEclipseGitURI = !SetupUtil.SETUP_ARCHIVER_APPLICATION && "git.eclipse.org".equals(host); //$NON-NLS-1$
+      if (isBlockedEclipseGitURI && uriConverter.exists(cacheURI, options))
+      {
+        // If the file is in the cache, it's okay to use that cached version, so try that first.
+        cacheHandling = CacheHandling.CACHE_ONLY;
+      }
 
-          return handleEclipseGit();
-        }
+      // This is a URI that fails to load at all, so fail quickly.
+      if (FAILED_EXPECTED_ETAG.equals(expectedETag))
+      {
+        throw EXPECTED_EXCEPTIONS.get(uri);
+      }
 
-        URI loginURI = (URI)transformedOptions.get(OPTION_LOGIN_URI);
-        if (loginURI != null)
+      if (expectedETag != null || cacheHandling == CacheHandling.CACHE_ONLY || cacheHandling == CacheHandling.CACHE_WITHOUT_ETAG_CHECKING)
+      {
+        if (cacheHandling == CacheHandling.CACHE_ONLY || //
+            cacheHandling == CacheHandling.CACHE_WITHOUT_ETAG_CHECKING ? eTag != null : expectedETag.equals(eTag))
         {
           try
           {
-            if (TRACE)
-            {
-              System.out.println(NLS.bind(Messages.ECFURIHandlerImpl_ReadingLogin_message, loginURI));
-            }
-
-            InputStream inputStream = createInputStream(loginURI, options);
-            inputStream.close();
+            return handleCache(uriConverter, cacheURI, expectedETag);
           }
           catch (IOException ex)
           {
-            // Ignore this.
-            // The main URI should still be attempted.
-            // If it can't get authorization and isn't in the cache,
-            // there will be an appropriate stack trace for that URI.
+            // Perhaps another JVM is busy writing this file.
+            // Proceed as if it doesn't exist.
+            if (TRACE)
+            {
+              System.out.println(tracePrefix + Messages.ECFURIHandlerImpl_UnableToLoadCache_message);
+            }
           }
         }
+      }
 
-        // Determine the authorization handler for handling credentials.
-        AuthorizationHandler authorizationHandler = getAuthorizatonHandler(options);
-
-        URI formURI = (URI)transformedOptions.get(OPTION_FORM_URI);
-        if (formURI != null)
+      // In general all Eclipse-hosted setups should be in the Eclipse project or product catalog and therefore should be in
+      // SetupContext.INDEX_SETUP_ARCHIVE_LOCATION_URI or should already be in the cache from running the setup archiver application.
+      if (isBlockedEclipseGitURI)
+      {
+        synchronized (this)
         {
-          try
+          if (!loggedBlockedURI)
           {
-            if (TRACE)
+            String launcher = OS.getCurrentLauncher(true);
+            if (launcher == null)
             {
-              System.out.println(NLS.bind(Messages.ECFURIHandlerImpl_ProcessingForm_message, formURI));
+              launcher = "eclipse"; //$NON-NLS-1$
             }
 
-            FormHandler formHandler = new FormHandler(formURI, uriConverter, authorizationHandler);
-            formHandler.process();
-          }
-          catch (IOException ex)
-          {
-            // Ignore this.
-            // The main URI should still be attempted.
-            // If it can't get authorization and isn't in the cache,
-            // there will be an appropriate stack trace for that URI.
+            // We'll log a single warning for this case.
+            SetupCorePlugin.INSTANCE.log(NLS.bind(Messages.ECFURIHandlerImpl_EclipseGitBlocked_meesage, uri, launcher), //
+                IStatus.WARNING);
+
+            loggedBlockedURI = true;
           }
         }
 
-        // Encapsulate all the information needed to access and process the URI.
-        ProxyWrapper proxyWrapper = ProxyWrapper.create(uri);
+        return handleEclipseGit();
+      }
 
-        // Create the container for the connection.
-        IContainer container = createContainer();
+      URI loginURI = (URI)transformedOptions.get(OPTION_LOGIN_URI);
+      if (loginURI != null)
+      {
+        try
+        {
+          if (TRACE)
+          {
+            System.out.println(NLS.bind(Messages.ECFURIHandlerImpl_ReadingLogin_message, loginURI));
+          }
 
-        // If we don't have an authorization in the options, but we have a handler,
-        // we might as well get the authorization that might exist in the secure storage so our first access uses the right credentials up front.
-        Authorization authorization = getAuthorizaton(options);
-        if (authorization == null && authorizationHandler != null)
+          InputStream inputStream = createInputStream(loginURI, options);
+          inputStream.close();
+        }
+        catch (IOException ex)
         {
-          authorization = authorizationHandler.authorize(uri);
+          // Ignore this.
+          // The main URI should still be attempted.
+          // If it can't get authorization and isn't in the cache,
+          // there will be an appropriate stack trace for that URI.
         }
+      }
+
+      // Determine the authorization handler for handling credentials.
+      AuthorizationHandler authorizationHandler = getAuthorizatonHandler(options);
 
-        // If we are forcing basic authentication...
-        boolean basicAuthentication = Boolean.TRUE.equals(transformedOptions.get(OPTION_BASIC_AUTHENTICATION));
-        if (basicAuthentication)
+      URI formURI = (URI)transformedOptions.get(OPTION_FORM_URI);
+      if (formURI != null)
+      {
+        try
         {
-          // Ensure that we have an authorization, if possible.
-          if ((authorization == null || !authorization.isAuthorized()) && authorizationHandler != null)
+          if (TRACE)
           {
-            authorization = authorizationHandler.reauthorize(uri, authorization);
+            System.out.println(NLS.bind(Messages.ECFURIHandlerImpl_ProcessingForm_message, formURI));
           }
 
-          // Record it so that it's definitely passed in the request header.
-          forceAuthorization = authorization;
+          FormHandler formHandler = new FormHandler(formURI, uriConverter, authorizationHandler);
+          formHandler.process();
         }
+        catch (IOException ex)
+        {
+          // Ignore this.
+          // The main URI should still be attempted.
+          // If it can't get authorization and isn't in the cache,
+          // there will be an appropriate stack trace for that URI.
+        }
+      }
+
+      // Encapsulate all the information needed to access and process the URI.
+      ProxyWrapper proxyWrapper = ProxyWrapper.create(uri);
+
+      // Create the container for the connection.
+      IContainer container = createContainer();
 
-        // If we don't have a proxy authorization in the options, but we have a handler,
-        // we might as well get the proxy authorization that might exist in the secure storage so our first access uses the right proxy credentials up front.
-        Authorization proxyAuthorization = getProxyAuthorizaton(options);
-        if (proxyWrapper.isProxified() && proxyAuthorization == null && authorizationHandler != null)
+      // If we don't have an authorization in the options, but we have a handler,
+      // we might as well get the authorization that might exist in the secure storage so our first access uses the right credentials up front.
+      Authorization authorization = getAuthorizaton(options);
+      if (authorization == null && authorizationHandler != null)
+      {
+        authorization = authorizationHandler.authorize(uri);
+      }
+
+      // If we are forcing basic authentication...
+      boolean basicAuthentication = Boolean.TRUE.equals(transformedOptions.get(OPTION_BASIC_AUTHENTICATION));
+      if (basicAuthentication)
+      {
+        // Ensure that we have an authorization, if possible.
+        if ((authorization == null || !authorization.isAuthorized()) && authorizationHandler != null)
         {
-          proxyAuthorization = authorizationHandler.authorize(proxyWrapper.getProxyURI());
+          authorization = authorizationHandler.reauthorize(uri, authorization);
         }
 
-        // If we are using a proxy and it doesn't have an authorization, but we have a proxy authorization that is authorized,
-        // use those credentials for the proxy.
-        if (proxyWrapper.isProxified() && !proxyWrapper.hasAuthorization() && proxyAuthorization != null && proxyAuthorization.isAuthorized())
+        // Record it so that it's definitely passed in the request header.
+        forceAuthorization = authorization;
+      }
+
+      // If we don't have a proxy authorization in the options, but we have a handler,
+      // we might as well get the proxy authorization that might exist in the secure storage so our first access uses the right proxy credentials up front.
+      Authorization proxyAuthorization = getProxyAuthorizaton(options);
+      if (proxyWrapper.isProxified() && proxyAuthorization == null && authorizationHandler != null)
+      {
+        proxyAuthorization = authorizationHandler.authorize(proxyWrapper.getProxyURI());
+      }
+
+      // If we are using a proxy and it doesn't have an authorization, but we have a proxy authorization that is authorized,
+      // use those credentials for the proxy.
+      if (proxyWrapper.isProxified() && !proxyWrapper.hasAuthorization() && proxyAuthorization != null && proxyAuthorization.isAuthorized())
+      {
+        proxyWrapper.authorize(proxyAuthorization);
+      }
+
+      if (TRACE)
+      {
+        if (proxyWrapper.isProxified())
         {
-          proxyWrapper.authorize(proxyAuthorization);
+          System.out.println(tracePrefix + " proxy=" + proxyWrapper); //$NON-NLS-1$
         }
 
+        System.out.println(tracePrefix + " authorizationHandler=" + authorizationHandler); //$NON-NLS-1$
+      }
+
+      int triedReauthorization = 0;
+      int triedProxyReauthorization = 0;
+      for (int i = 0;; ++i)
+      {
         if (TRACE)
         {
-          if (proxyWrapper.isProxified())
-          {
-            System.out.println(tracePrefix + " proxy=" + proxyWrapper); //$NON-NLS-1$
-          }
-
-          System.out.println(tracePrefix + " authorizationHandler=" + authorizationHandler); //$NON-NLS-1$
+          System.out.println(tracePrefix + " trying=" + i); //$NON-NLS-1$
+          System.out.println(tracePrefix + " triedReauthorization=" + triedReauthorization); //$NON-NLS-1$
+          System.out.println(tracePrefix + " authorization=" + authorization); //$NON-NLS-1$
+          System.out.println(tracePrefix + " triedProxyReauthorization=" + triedProxyReauthorization); //$NON-NLS-1$
+          System.out.println(tracePrefix + " proxyAuthorization=" + proxyAuthorization); //$NON-NLS-1$
         }
 
-        int triedReauthorization = 0;
-        int triedProxyReauthorization = 0;
-        for (int i = 0;; ++i)
+        // Configure the connection and its associated listener.
+        ConnectionListener transferListener = createConnectionListener(container, proxyWrapper, authorization, eTag, monitor);
+
+        try
+        {
+          // Start the connection for the URI's associated transfer ID.
+          FileTransferID fileTransferID = new FileTransferID(new FileTransferNamespace(), proxyWrapper.getURI());
+          sendConnectionRequest(fileTransferID, host);
+        }
+        catch (ECFException ex)
         {
           if (TRACE)
           {
-            System.out.println(tracePrefix + " trying=" + i); //$NON-NLS-1$
-            System.out.println(tracePrefix + " triedReauthorization=" + triedReauthorization); //$NON-NLS-1$
-            System.out.println(tracePrefix + " authorization=" + authorization); //$NON-NLS-1$
-            System.out.println(tracePrefix + " triedProxyReauthorization=" + triedProxyReauthorization); //$NON-NLS-1$
-            System.out.println(tracePrefix + " proxyAuthorization=" + proxyAuthorization); //$NON-NLS-1$
+            System.out.println(tracePrefix + " " + ex.getClass().getSimpleName()); //$NON-NLS-1$
+            ex.printStackTrace(System.out);
           }
 
-          // Configure the connection and its associated listener.
-          ConnectionListener transferListener = createConnectionListener(container, proxyWrapper, authorization, eTag, monitor);
+          throw createIOException(uri.toString(), ex);
+        }
 
-          try
+        try
+        {
+          // Wait for the connection processing to complete.
+          transferListener.await();
+        }
+        catch (InterruptedException ex)
+        {
+          if (TRACE)
           {
-            // Start the connection for the URI's associated transfer ID.
-            FileTransferID fileTransferID = new FileTransferID(new FileTransferNamespace(), proxyWrapper.getURI());
-            sendConnectionRequest(fileTransferID, host);
+            System.out.println(tracePrefix + " InterruptedException"); //$NON-NLS-1$
+            ex.printStackTrace(System.out);
           }
-          catch (ECFException ex)
-          {
-            if (TRACE)
-            {
-              System.out.println(tracePrefix + " " + ex.getClass().getSimpleName()); //$NON-NLS-1$
-              ex.printStackTrace(System.out);
-            }
 
-            throw createIOException(uri.toString(), ex);
-          }
+          throw createIOException(uri.toString(), ex);
+        }
 
-          try
+        // Handle any exception captured during the connection processing.
+        Exception exception = transferListener.getException();
+        if (exception != null)
+        {
+          if (TRACE)
           {
-            // Wait for the connection processing to complete.
-            transferListener.await();
-          }
-          catch (InterruptedException ex)
-          {
-            if (TRACE)
-            {
-              System.out.println(tracePrefix + " InterruptedException"); //$NON-NLS-1$
-              ex.printStackTrace(System.out);
-            }
-
-            throw createIOException(uri.toString(), ex);
+            System.out.println(tracePrefix + " transferLister.exception"); //$NON-NLS-1$
+            exception.printStackTrace(System.out);
           }
 
-          // Handle any exception captured during the connection processing.
-          Exception exception = transferListener.getException();
-          if (exception != null)
+          // If it's not a cancel exception...
+          if (!(exception instanceof UserCancelledException))
           {
-            if (TRACE)
+            // If it's a socked timeout exception, retry the socket 3 times before failing.
+            if ((exception instanceof SocketTimeoutException || exception.getCause() instanceof SocketTimeoutException) && i < 2)
             {
-              System.out.println(tracePrefix + " transferLister.exception"); //$NON-NLS-1$
-              exception.printStackTrace(System.out);
+              continue;
             }
 
-            // If it's not a cancel exception...
-            if (!(exception instanceof UserCancelledException))
+            // If there an authorization handler and the listener's exception is the specialized exception associated with the listener.
+            if (authorizationHandler != null && transferListener.hasTransferException())
             {
-              // If it's a socked timeout exception, retry the socket 3 times before failing.
-              if ((exception instanceof SocketTimeoutException || exception.getCause() instanceof SocketTimeoutException) && i < 2)
+              // In this case the exception has an error code.
+              int errorCode = transferListener.getErrorCode();
+              if (TRACE)
               {
-                continue;
+                System.out.println(tracePrefix + " errorCode=" + errorCode); //$NON-NLS-1$
               }
 
-              // If there an authorization handler and the listener's exception is the specialized exception associated with the listener.
-              if (authorizationHandler != null && transferListener.hasTransferException())
+              // If we have a proxy authentication problem...
+              if (errorCode == HttpURLConnection.HTTP_PROXY_AUTH && proxyWrapper.isProxified())
               {
-                // In this case the exception has an error code.
-                int errorCode = transferListener.getErrorCode();
-                if (TRACE)
+                // Get the proxy authorization if we don't already have one.
+                if (proxyAuthorization == null)
                 {
-                  System.out.println(tracePrefix + " errorCode=" + errorCode); //$NON-NLS-1$
-                }
+                  proxyAuthorization = authorizationHandler.authorize(proxyWrapper.getProxyURI());
 
-                // If we have a proxy authentication problem...
-                if (errorCode == HttpURLConnection.HTTP_PROXY_AUTH && proxyWrapper.isProxified())
-                {
-                  // Get the proxy authorization if we don't already have one.
-                  if (proxyAuthorization == null)
+                  // If the proxy is already authorized, apply those credentials to the proxy.
+                  if (proxyAuthorization.isAuthorized())
                   {
-                    proxyAuthorization = authorizationHandler.authorize(proxyWrapper.getProxyURI());
-
-                    // If the proxy is already authorized, apply those credentials to the proxy.
-                    if (proxyAuthorization.isAuthorized())
-                    {
-                      proxyWrapper.authorize(proxyAuthorization);
-                      --i;
-                      continue;
-                    }
+                    proxyWrapper.authorize(proxyAuthorization);
+                    --i;
+                    continue;
                   }
+                }
 
-                  // If the proxy authorization remains authorizable, prompt for the password at most three times.
-                  if (!proxyAuthorization.isUnauthorizeable() && triedProxyReauthorization++ < 3)
+                // If the proxy authorization remains authorizable, prompt for the password at most three times.
+                if (!proxyAuthorization.isUnauthorizeable() && triedProxyReauthorization++ < 3)
+                {
+                  proxyAuthorization = authorizationHandler.reauthorize(proxyWrapper.getProxyURI(), proxyAuthorization);
+                  if (proxyAuthorization.isAuthorized())
                   {
-                    proxyAuthorization = authorizationHandler.reauthorize(proxyWrapper.getProxyURI(), proxyAuthorization);
-                    if (proxyAuthorization.isAuthorized())
-                    {
-                      proxyWrapper.authorize(proxyAuthorization);
-                      --i;
-                      continue;
-                    }
+                    proxyWrapper.authorize(proxyAuthorization);
+                    --i;
+                    continue;
                   }
                 }
-                // We assume contents can be accessed via the github API https://developer.github.com/v3/repos/contents/#get-contents
-                // That API, for security reasons, does not return HTTP_UNAUTHORIZED, so we need this special case for that host.
-                else if (errorCode == HttpURLConnection.HTTP_UNAUTHORIZED
-                    || API_GITHUB_HOST.equals(getHost(uri)) && errorCode == HttpURLConnection.HTTP_NOT_FOUND
-                    || forceAuthorization != null && (errorCode == HttpURLConnection.HTTP_FORBIDDEN || errorCode == HttpURLConnection.HTTP_NOT_FOUND))
+              }
+              // We assume contents can be accessed via the github API https://developer.github.com/v3/repos/contents/#get-contents
+              // That API, for security reasons, does not return HTTP_UNAUTHORIZED, so we need this special case for that host.
+              else if (errorCode == HttpURLConnection.HTTP_UNAUTHORIZED
+                  || API_GITHUB_HOST.equals(getHost(uri)) && errorCode == HttpURLConnection.HTTP_NOT_FOUND
+                  || forceAuthorization != null && (errorCode == HttpURLConnection.HTTP_FORBIDDEN || errorCode == HttpURLConnection.HTTP_NOT_FOUND))
+              {
+                // Get the authorization if we don't already have one.
+                if (authorization == null)
                 {
-                  // Get the authorization if we don't already have one.
-                  if (authorization == null)
-                  {
-                    authorization = authorizationHandler.authorize(uri);
+                  authorization = authorizationHandler.authorize(uri);
 
-                    // If it is authorized, use it now.
-                    if (authorization.isAuthorized())
+                  // If it is authorized, use it now.
+                  if (authorization.isAuthorized())
+                  {
+                    --i;
+                    if (forceAuthorization != null)
                     {
-                      --i;
-                      if (forceAuthorization != null)
-                      {
-                        forceAuthorization = authorization;
-                      }
-
-                      continue;
+                      forceAuthorization = authorization;
                     }
+
+                    continue;
                   }
+                }
 
-                  // If the authorization remains authorizable, prompt for the password at most three times.
-                  if (!authorization.isUnauthorizeable() && triedReauthorization++ < 3)
+                // If the authorization remains authorizable, prompt for the password at most three times.
+                if (!authorization.isUnauthorizeable() && triedReauthorization++ < 3)
+                {
+                  authorization = authorizationHandler.reauthorize(uri, authorization);
+                  if (authorization.isAuthorized())
                   {
-                    authorization = authorizationHandler.reauthorize(uri, authorization);
-                    if (authorization.isAuthorized())
+                    --i;
+                    if (forceAuthorization != null)
                     {
-                      --i;
-                      if (forceAuthorization != null)
-                      {
-                        forceAuthorization = authorization;
-                      }
-
-                      continue;
+                      forceAuthorization = authorization;
                     }
+
+                    continue;
                   }
                 }
               }
+            }
 
-              if (transferListener.hasTransferException())
+            if (transferListener.hasTransferException())
+            {
+              // We can't do a HEAD request.
+              int errorCode = transferListener.getErrorCode();
+              if (errorCode == HttpURLConnection.HTTP_BAD_METHOD)
               {
-                // We can't do a HEAD request.
-                int errorCode = transferListener.getErrorCode();
-                if (errorCode == HttpURLConnection.HTTP_BAD_METHOD)
+                T result = handleBadMethod(options);
+                if (result != null)
                 {
-                  T result = handleBadMethod(options);
-                  if (result != null)
-                  {
-                    return result;
-                  }
+                  return result;
                 }
               }
             }
+          }
 
-            if (!CacheHandling.CACHE_IGNORE.equals(cacheHandling) && uriConverter.exists(cacheURI, options)
-                && (!transferListener.hasTransferException() || transferListener.getErrorCode() != HttpURLConnection.HTTP_NOT_FOUND)
-                || uri.equals(ACTUAL_INDEX_SETUP_ARCHIVE_LOCATION_URI) || loginURI != null)
-            {
-              return handleCache(uriConverter, cacheURI, eTag);
-            }
-
-            if (TRACE)
-            {
-              System.out.println(tracePrefix + Messages.ECFURIHandlerImpl_Failing_message);
-            }
-
-            IOException ioException = createIOException(uri.toString(), transferListener.getException());
-            EXPECTED_EXCEPTIONS.put(uri, ioException);
-            setExpectedETag(uri, FAILED_EXPECTED_ETAG);
+          if (!CacheHandling.CACHE_IGNORE.equals(cacheHandling) && uriConverter.exists(cacheURI, options)
+              && (!transferListener.hasTransferException() || transferListener.getErrorCode() != HttpURLConnection.HTTP_NOT_FOUND)
+              || uri.equals(ACTUAL_INDEX_SETUP_ARCHIVE_LOCATION_URI) || loginURI != null)
+          {
+            return handleCache(uriConverter, cacheURI, eTag);
+          }
 
-            throw ioException;
+          if (TRACE)
+          {
+            System.out.println(tracePrefix + Messages.ECFURIHandlerImpl_Failing_message);
           }
 
-          // Saves the credentials for the proxy if they've been authorized at some point during the connection processing.
-          proxyWrapper.update();
+          IOException ioException = createIOException(uri.toString(), transferListener.getException());
+          EXPECTED_EXCEPTIONS.put(uri, ioException);
+          setExpectedETag(uri, FAILED_EXPECTED_ETAG);
 
-          return handleResult(uriConverter, cacheURI);
+          throw ioException;
         }
-      }
-      finally
-      {
-        releaseLock(uri, countDownLatch);
+
+        // Saves the credentials for the proxy if they've been authorized at some point during the connection processing.
+        proxyWrapper.update();
+
+        return handleResult(uriConverter, cacheURI);
       }
     }
 
@@ -1860,6 +1884,11 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
       setExpectedETag(uri, transferListener == null ? expectedETag
           : transferListener.eTag == null ? expectedETag == null ? Long.toString(System.currentTimeMillis()) : expectedETag : transferListener.eTag);
       InputStream result = uriConverter.createInputStream(cacheURI, options);
+      if (cacheURI.isFile())
+      {
+        CACHE_EVICTOR.hit(new File(cacheURI.toFileString()));
+      }
+
       if (TRACE)
       {
         System.out.println(tracePrefix + Messages.ECFURIHandlerImpl_ReturningCachedContents_message);
@@ -1954,6 +1983,7 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
     protected InputStream handleResult(URIConverter uriConverter, URI cacheURI) throws IOException
     {
       byte[] bytes = transferListener.out.toByteArray();
+      StreamDigester digester = transferListener.digester;
 
       // In the case of the Github API, the bytes will be JSON that contains a "content" pair containing the Base64 encoding of the actual contents.
       if (API_GITHUB_HOST.equals(getHost(uri)))
@@ -1982,6 +2012,10 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
 
             out.close();
             bytes = out.toByteArray();
+
+            // The cache file contains the converted bytes, so the digests of the received bytes don't apply.
+            digester = new StreamDigester();
+            digester.update(bytes, 0, bytes.length);
           }
         }
       }
@@ -1994,6 +2028,12 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
         }
 
         BaseUtil.writeFile(uriConverter, options, cacheURI, bytes);
+        if (cacheURI.isFile())
+        {
+          File cacheFile = new File(cacheURI.toFileString());
+          CACHE_EVICTOR.miss(cacheFile);
+          digester.writeSidecar(cacheFile);
+        }
       }
       catch (IORuntimeException ex)
       {
@@ -2932,96 +2972,106 @@ public class ECFURIHandlerImpl extends URIHandlerImpl implements URIResolver
 
     public boolean process() throws IOException
     {
-      boolean result = false;
       if (authorizationHandler != null)
       {
-        Authorization authorization = authorizationHandler.authorize(formURI);
-        URI formLockURI = URI.createURI("form:" + formURI); //$NON-NLS-1$
-        CountDownLatch countDownLatch = acquireLock(formLockURI);
-        try
+        final Authorization authorization = authorizationHandler.authorize(formURI);
+        final URI formLockURI = URI.createURI("form:" + formURI); //$NON-NLS-1$
+        return execute(formLockURI, new SingleFlight.Request<Boolean>()
         {
-          // If we've previously successfully authorized with the same credentials...
-          if (authorization.equals(AUTHORIZED_FORMS.get(formLockURI)))
+          public Boolean execute() throws Exception
           {
-            if (!isRedo())
-            {
-              // Return here so that we don't needlessly put the same authorization back the map.
-              return true;
-            }
+            return processExclusively(formLockURI, authorization);
+          }
+        }, null);
+      }
 
-            java.net.URI javaNetFormURI;
-            try
-            {
-              javaNetFormURI = new java.net.URI(formURI.toString());
-            }
-            catch (URISyntaxException ex)
-            {
-              throw new IOExceptionWithCause(ex);
-            }
+      return false;
+    }
 
-            for (HttpCookie httpCookie : COOKIE_STORE.get(javaNetFormURI))
-            {
-              COOKIE_STORE.remove(javaNetFormURI, httpCookie);
-            }
-          }
+    private boolean processExclusively(URI formLockURI, Authorization authorization) throws IOException
+    {
+      boolean result = false;
+      try
+      {
+      // If we've previously successfully authorized with the same credentials...
+      if (authorization.equals(AUTHORIZED_FORMS.get(formLockURI)))
+      {
+        if (!isRedo())
+        {
+          // Return here so that we don't needlessly put the same authorization back the map.
+          return true;
+        }
 
-          URI formActionURI = readForm(formURI);
+        java.net.URI javaNetFormURI;
+        try
+        {
+          javaNetFormURI = new java.net.URI(formURI.toString());
+        }
+        catch (URISyntaxException ex)
+        {
+          throw new IOExceptionWithCause(ex);
+        }
 
-          if (!secureParameters.isEmpty() && formActionURI != null)
-          {
-            int limit = 3;
-            if (!authorization.isAuthorized())
-            {
-              --limit;
-              authorization = authorizationHandler.reauthorize(formURI, authorization);
-            }
+        for (HttpCookie httpCookie : COOKIE_STORE.get(javaNetFormURI))
+        {
+          COOKIE_STORE.remove(javaNetFormURI, httpCookie);
+        }
+      }
+
+      URI formActionURI = readForm(formURI);
 
-            Set<String> emptyKeys = new HashSet<String>();
-            for (int i = 0; i < limit && !authorization.isUnauthorizeable(); ++i)
+      if (!secureParameters.isEmpty() && formActionURI != null)
+      {
+        int limit = 3;
+        if (!authorization.isAuthorized())
+        {
+          --limit;
+          authorization = authorizationHandler.reauthorize(formURI, authorization);
+        }
+
+        Set<String> emptyKeys = new HashSet<String>();
+        for (int i = 0; i < limit && !authorization.isUnauthorizeable(); ++i)
+        {
+          if (authorization.isAuthorized())
+          {
+            boolean consumedUser = false;
+            for (Map.Entry<String, String> entry : parameterValues.entrySet())
             {
-              if (authorization.isAuthorized())
+              String key = entry.getKey();
+              String value = entry.getValue();
+              if (StringUtil.isEmpty(value) || emptyKeys.contains(key))
               {
-                boolean consumedUser = false;
-                for (Map.Entry<String, String> entry : parameterValues.entrySet())
+                String type = parameterTypes.get(key);
+                if ("password".equals(type)) //$NON-NLS-1$
                 {
-                  String key = entry.getKey();
-                  String value = entry.getValue();
-                  if (StringUtil.isEmpty(value) || emptyKeys.contains(key))
-                  {
-                    String type = parameterTypes.get(key);
-                    if ("password".equals(type)) //$NON-NLS-1$
-                    {
-                      emptyKeys.add(key);
-                      parameterValues.put(key, PreferencesUtil.encrypt(authorization.getPassword()));
-                    }
-                    else if (!consumedUser && "text".equals(type)) //$NON-NLS-1$
-                    {
-                      emptyKeys.add(key);
-                      parameterValues.put(key, authorization.getUser());
-                      consumedUser = true;
-                    }
-                  }
+                  emptyKeys.add(key);
+                  parameterValues.put(key, PreferencesUtil.encrypt(authorization.getPassword()));
                 }
-
-                if (postForm(formActionURI))
+                else if (!consumedUser && "text".equals(type)) //$NON-NLS-1$
                 {
-                  result = true;
-                  break;
+                  emptyKeys.add(key);
+                  parameterValues.put(key, authorization.getUser());
+                  consumedUser = true;
                 }
-
-                authorization = authorizationHandler.reauthorize(formURI, authorization);
               }
             }
+
+            if (postForm(formActionURI))
+            {
+              result = true;
+              break;
+            }
+
+            authorization = authorizationHandler.reauthorize(formURI, authorization);
           }
         }
-        finally
+      }
+      }
+      finally
+      {
+        if (result)
         {
-          if (result)
-          {
-            AUTHORIZED_FORMS.put(formLockURI, authorization);
-          }
-
-          releaseLock(formLockURI, countDownLatch);
+          AUTHORIZED_FORMS.put(formLockURI, authorization);
         }
       }
 
@@ -74,6 +74,12 @@ public class ResourceMirror extends WorkerPool<ResourceMirror, URI, ResourceMirr
     return loadJob;
   }
 
+  @Override
+  protected String getHost(URI key)
+  {
+    return key.host();
+  }
+
   public ResourceSet getResourceSet()
   {
     return resourceSet;
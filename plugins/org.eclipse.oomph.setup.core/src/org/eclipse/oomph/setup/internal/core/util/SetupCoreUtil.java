@@ -55,6 +55,8 @@ import org.eclipse.oomph.util.ReflectUtil;
 import org.eclipse.oomph.util.ReflectUtil.ReflectionException;
 import org.eclipse.oomph.util.StringUtil;
 
+import org.eclipse.emf.common.notify.NotifyingList;
+import org.eclipse.emf.common.util.ECollections;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.EMap;
 import org.eclipse.emf.common.util.TreeIterator;
@@ -147,6 +149,12 @@ public final class SetupCoreUtil
     configureURIHandlers(URI_CONVERTER);
   }
 
+  private static final byte REORDER_UNVISITED = 0;
+
+  private static final byte REORDER_ON_PATH = 1;
+
+  private static final byte REORDER_ORDERED = 2;
+
   private static final boolean SKIP_STATS = PropertiesUtil.isProperty(SetupProperties.PROP_SETUP_STATS_SKIP);
 
   private static final URI HTTP_GIT_ECLIPSE_ORG = URI.createURI("http://git.eclipse.org/"); //$NON-NLS-1$
@@ -722,40 +730,118 @@ public final class SetupCoreUtil
     }
   }
 
-  public static <T> void reorder(EList<T> values, DependencyProvider<T> dependencyProvider)
+  /**
+   * Stably reorders the given values so that each value comes after the values on which it depends, in time linear in the number of values and dependencies.
+   * For acyclic dependencies, the resulting order is the one that results from repeatedly moving the dependencies of the first value that isn't yet in its final position
+   * in front of that value, in the order in which the dependency provider returns them.
+   * That is a depth-first post-order in which the values are visited in the order of the list and the dependencies of each value are visited in reverse order.
+   * Dependencies that aren't contained in the list and dependencies of a value on itself are ignored.
+   * <p>
+   * Each dependency that closes a cycle is ignored and the cycle is logged as a warning.
+   * Returns the cycles that were found, each as a list of values that starts and ends with the same value and in which each value depends on the next one.
+   */
+  public static <T> List<List<T>> reorder(EList<T> values, DependencyProvider<T> dependencyProvider)
   {
-    for (int i = 0, size = values.size(), count = 0; i < size; ++i)
+    int size = values.size();
+    Map<T, Integer> indexes = new HashMap<T, Integer>(2 * size);
+    for (int i = size - 1; i >= 0; --i)
+    {
+      indexes.put(values.get(i), i);
+    }
+
+    // Each index is first unvisited, then on the path, and then ordered.
+    byte[] states = new byte[size];
+    int[] remainingDependencies = new int[size];
+    List<Integer> pathIndexes = new ArrayList<Integer>();
+    List<List<T>> pathDependencies = new ArrayList<List<T>>();
+    List<T> orderedValues = new ArrayList<T>(size);
+    List<List<T>> cycles = new ArrayList<List<T>>();
+
+    for (int i = 0; i < size; ++i)
     {
-      T value = values.get(i);
-      if (count == size)
+      if (indexes.get(values.get(i)) != i)
+      {
+        // Duplicates stay where they are.
+        orderedValues.add(values.get(i));
+        continue;
+      }
+
+      if (states[i] != REORDER_UNVISITED)
       {
-        SetupCorePlugin.INSTANCE.log(NLS.bind(Messages.SetupCoreUtil_CircularDependencies_message, value), IStatus.WARNING);
-        return;
+        continue;
       }
 
-      boolean changed = false;
+      pushReorderPath(values, dependencyProvider, i, states, remainingDependencies, pathIndexes, pathDependencies);
 
-      // TODO Consider basing this on a provider that just returns a boolean based on "does v1 depend on v2".
-      for (T dependency : dependencyProvider.getDependencies(value))
+      while (!pathIndexes.isEmpty())
       {
-        int index = values.indexOf(dependency);
-        if (index > i)
+        int top = pathIndexes.size() - 1;
+        int index = pathIndexes.get(top);
+        if (remainingDependencies[index] == 0)
         {
-          values.move(i, index);
-          changed = true;
+          pathIndexes.remove(top);
+          pathDependencies.remove(top);
+          states[index] = REORDER_ORDERED;
+          orderedValues.add(values.get(index));
+          continue;
+        }
+
+        // The dependencies are visited in reverse order, because the last one is the first to be moved in front of all others.
+        T dependency = pathDependencies.get(top).get(--remainingDependencies[index]);
+        Integer dependencyIndex = indexes.get(dependency);
+        if (dependencyIndex == null || dependencyIndex == index)
+        {
+          continue;
+        }
+
+        byte state = states[dependencyIndex];
+        if (state == REORDER_UNVISITED)
+        {
+          pushReorderPath(values, dependencyProvider, dependencyIndex, states, remainingDependencies, pathIndexes, pathDependencies);
+        }
+        else if (state == REORDER_ON_PATH)
+        {
+          List<T> cycle = new ArrayList<T>();
+          for (int j = pathIndexes.lastIndexOf(dependencyIndex); j <= top; ++j)
+          {
+            cycle.add(values.get(pathIndexes.get(j)));
+          }
+
+          cycle.add(dependency);
+          cycles.add(cycle);
+
+          SetupCorePlugin.INSTANCE.log(NLS.bind(Messages.SetupCoreUtil_CircularDependencies_message, cycle), IStatus.WARNING);
         }
       }
+    }
 
-      if (changed)
+    if (!orderedValues.equals(values))
+    {
+      if (values instanceof NotifyingList<?>)
       {
-        --i;
-        ++count;
+        // Avoid removing the values from a containment list.
+        ECollections.setEList(values, orderedValues);
       }
       else
       {
-        count = 0;
+        values.clear();
+        values.addAll(orderedValues);
       }
     }
+
+    return cycles;
+  }
+
+  private static <T> void pushReorderPath(EList<T> values, DependencyProvider<T> dependencyProvider, int index, byte[] states, int[] remainingDependencies,
+      List<Integer> pathIndexes, List<List<T>> pathDependencies)
+  {
+    Collection<? extends T> dependencies = dependencyProvider.getDependencies(values.get(index));
+    List<T> list = dependencies == null ? Collections.<T> emptyList() : new ArrayList<T>(dependencies);
+
+    states[index] = REORDER_ON_PATH;
+    remainingDependencies[index] = list.size();
+    pathIndexes.add(index);
+    pathDependencies.add(list);
   }
 
   public static void migrate(Resource resource, Collection<EObject> result)
@@ -0,0 +1,1139 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.setup.internal.core.util;
+
+import org.eclipse.oomph.internal.setup.SetupPrompter;
+import org.eclipse.oomph.internal.setup.SetupProperties;
+import org.eclipse.oomph.preferences.util.PreferencesUtil;
+import org.eclipse.oomph.setup.Installation;
+import org.eclipse.oomph.setup.SetupTask;
+import org.eclipse.oomph.setup.SetupTaskContext;
+import org.eclipse.oomph.setup.Trigger;
+import org.eclipse.oomph.setup.User;
+import org.eclipse.oomph.setup.VariableTask;
+import org.eclipse.oomph.setup.VariableType;
+import org.eclipse.oomph.setup.Workspace;
+import org.eclipse.oomph.setup.internal.core.SetupContext;
+import org.eclipse.oomph.setup.internal.core.SetupCorePlugin;
+import org.eclipse.oomph.util.HexUtil;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.OS;
+import org.eclipse.oomph.util.PropertiesUtil;
+import org.eclipse.oomph.util.UserCallback;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectInputStream;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectOutputStream;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the composed setup tasks of the {@link Trigger#STARTUP startup} trigger in the global state location,
+ * so that a later startup with the same inputs can skip the filtering, gathering, and copying of the setup models.
+ * <p>
+ * A composition is stored in a binary file that's named by the fingerprint of its inputs:
+ * the trigger, the version of this bundle, the operating system and VM of the prompter,
+ * and the URI and time stamp of each resource in the resource set of the setup context.
+ * A digest of the values of the environment variables and system properties that were used during the composition,
+ * and the versions of the contributing bundles, are stored in the file and are verified when the composition is loaded.
+ * The values themselves aren't stored, because they may be secrets.
+ * <p>
+ * The cache is enabled by the <code>oomph.setup.composition.cache</code> system property.
+ * A composition isn't stored if it involved prompting, passwords, secure storage, password-filtered values, attribute rules, or volatile system properties,
+ * and a composition that can't be restored completely is ignored, so that the tasks are composed as usual.
+ * Compositions that can't be stored or read are reported as warnings in the log.
+ *
+ * @author Eike Stepper
+ */
+public final class SetupTaskCompositionCache
+{
+  private static final boolean ENABLED = PropertiesUtil.isProperty(SetupProperties.PROP_SETUP_COMPOSITION_CACHE);
+
+  private static final String FORMAT = "oomph.setup.composition.2"; //$NON-NLS-1$
+
+  private static final File CACHE_FOLDER = new File(SetupContext.GLOBAL_STATE_LOCATION_URI.toFileString(), "compositions"); //$NON-NLS-1$
+
+  private static final String EXTENSION = ".composition"; //$NON-NLS-1$
+
+  private static final int MAX_COMPOSITIONS = 10;
+
+  private static final URI COMPOSITION_URI = URI.createURI("composition:/"); //$NON-NLS-1$
+
+  /**
+   * Matches a variable reference whose value is filtered as a password, such as <code>${name|password}</code>.
+   */
+  private static final Pattern PASSWORD_FILTER_PATTERN = Pattern.compile("\\$\\{[^}]*\\|\\s*password\\s*[|}]"); //$NON-NLS-1$
+
+  private static final String SECURE_STORAGE_URI = PreferencesUtil.ROOT_PREFERENCE_NODE_URI.appendSegments(new String[] { PreferencesUtil.SECURE_NODE, "" }) //$NON-NLS-1$
+      .toString();
+
+  private static final Set<String> VOLATILE_KEYS = new HashSet<String>(Arrays.asList(new String[] { "eclipse.starttime", "org.osgi.framework.uuid" })); //$NON-NLS-1$ //$NON-NLS-2$
+
+  private static final Map<Object, Object> BINARY_OPTIONS = new HashMap<Object, Object>();
+
+  private static final Map<String, Object> TIMESTAMP_OPTIONS = Collections
+      .<String, Object> singletonMap(URIConverter.OPTION_REQUESTED_ATTRIBUTES, Collections.singleton(URIConverter.ATTRIBUTE_TIMESTAMP));
+
+  static
+  {
+    BINARY_OPTIONS.put(BinaryResourceImpl.OPTION_VERSION, BinaryResourceImpl.BinaryIO.Version.VERSION_1_1);
+    BINARY_OPTIONS.put(BinaryResourceImpl.OPTION_STYLE_DATA_CONVERTER, Boolean.TRUE);
+    BINARY_OPTIONS.put(BinaryResourceImpl.OPTION_BUFFER_CAPACITY, 8192);
+  }
+
+  private final File folder;
+
+  private final URIConverter uriConverter;
+
+  private final SetupPrompter prompter;
+
+  private final Trigger trigger;
+
+  private final ResourceSet resourceSet;
+
+  private final String fingerprint;
+
+  private final RecordingPrompter recordingPrompter;
+
+  private final Set<String> environmentNames = new TreeSet<String>();
+
+  private final Map<String, String> variables = new LinkedHashMap<String, String>();
+
+  private boolean cacheable = true;
+
+  private List<String> bundleNames;
+
+  private List<String> resourceURIs;
+
+  private List<byte[]> resourceContents;
+
+  private List<String> taskURIs;
+
+  private SetupTaskCompositionCache(File folder, URIConverter uriConverter, SetupPrompter prompter, Trigger trigger, ResourceSet resourceSet, String fingerprint)
+  {
+    this.folder = folder;
+    this.uriConverter = uriConverter;
+    this.prompter = prompter;
+    this.trigger = trigger;
+    this.resourceSet = resourceSet;
+    this.fingerprint = fingerprint;
+    recordingPrompter = new RecordingPrompter(prompter);
+  }
+
+  /**
+   * Returns the prompter that must be used while composing the tasks, so that the values it provides and the keys that are resolved are recorded.
+   */
+  public SetupPrompter getPrompter()
+  {
+    return recordingPrompter;
+  }
+
+  /**
+   * Records the names of environment variables or system properties on which the composed tasks depend, for example because they're used in filters.
+   */
+  public void addEnvironmentNames(Collection<String> names)
+  {
+    environmentNames.addAll(names);
+  }
+
+  /**
+   * Records a variable that's added to the composed performer after the tasks have been composed.
+   */
+  public void putVariable(Object key, Object value)
+  {
+    if (key instanceof String && value instanceof String && !isSecret((String)value))
+    {
+      variables.put((String)key, (String)value);
+    }
+    else
+    {
+      cacheable = false;
+    }
+  }
+
+  /**
+   * Prevents the composition from being stored, for example, because it depends on the user's input.
+   */
+  public void invalidate()
+  {
+    cacheable = false;
+  }
+
+  /**
+   * Serializes the given composed tasks and all the objects that they reference, except for those in the resource set of the setup context.
+   * This must be called before the tasks are modified by the composed performer.
+   */
+  public void prepare(EList<SetupTask> setupTasks, Set<Bundle> bundles)
+  {
+    if (!cacheable || recordingPrompter.isPrompted())
+    {
+      cacheable = false;
+      return;
+    }
+
+    for (SetupTask setupTask : setupTasks)
+    {
+      if (setupTask instanceof VariableTask && isSecret((VariableTask)setupTask))
+      {
+        // Passwords must never be written to disk in clear text.
+        cacheable = false;
+        return;
+      }
+    }
+
+    List<Resource> resources = new ArrayList<Resource>();
+    List<EObject> detachedRoots = new ArrayList<EObject>();
+    if (!gather(setupTasks, resources, detachedRoots))
+    {
+      cacheable = false;
+      return;
+    }
+
+    List<EObject> serializedContents = new ArrayList<EObject>(detachedRoots);
+    for (Resource resource : resources)
+    {
+      serializedContents.addAll(resource.getContents());
+    }
+
+    if (hasSecrets(serializedContents))
+    {
+      cacheable = false;
+      return;
+    }
+
+    Resource detachedResource = null;
+    if (!detachedRoots.isEmpty())
+    {
+      detachedResource = new ResourceImpl();
+      resources.add(detachedResource);
+    }
+
+    // Give each serialized resource a unique URI, because the copied resources have the same URIs as the resources that they copy.
+    List<URI> originalURIs = new ArrayList<URI>();
+    for (int i = 0, size = resources.size(); i < size; ++i)
+    {
+      Resource resource = resources.get(i);
+      originalURIs.add(resource == detachedResource ? null : resource.getURI());
+      resource.setURI(COMPOSITION_URI.appendSegment(Integer.toString(i)));
+    }
+
+    try
+    {
+      if (detachedResource != null)
+      {
+        detachedResource.getContents().addAll(detachedRoots);
+      }
+
+      taskURIs = new ArrayList<String>();
+      for (SetupTask setupTask : setupTasks)
+      {
+        taskURIs.add(EcoreUtil.getURI(setupTask).toString());
+      }
+
+      resourceURIs = new ArrayList<String>();
+      resourceContents = new ArrayList<byte[]>();
+      for (int i = 0, size = resources.size(); i < size; ++i)
+      {
+        URI originalURI = originalURIs.get(i);
+        resourceURIs.add(originalURI == null ? null : originalURI.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EObjectOutputStream stream = new BinaryResourceImpl.EObjectOutputStream(bytes, BINARY_OPTIONS);
+        stream.saveResource(resources.get(i));
+        stream.flush();
+        resourceContents.add(bytes.toByteArray());
+      }
+
+      bundleNames = new ArrayList<String>();
+      for (Bundle bundle : bundles)
+      {
+        bundleNames.add(bundle.getSymbolicName());
+        bundleNames.add(bundle.getVersion().toString());
+      }
+    }
+    catch (Exception ex)
+    {
+      cacheable = false;
+    }
+    finally
+    {
+      if (detachedResource != null)
+      {
+        detachedResource.getContents().clear();
+      }
+
+      for (int i = 0, size = resources.size(); i < size; ++i)
+      {
+        resources.get(i).setURI(originalURIs.get(i));
+      }
+    }
+  }
+
+  /**
+   * Stores the prepared composition, unless something happened since the cache was created that prevents it.
+   */
+  public void store()
+  {
+    if (!cacheable || taskURIs == null || recordingPrompter.isPrompted())
+    {
+      return;
+    }
+
+    Set<String> names = new TreeSet<String>(environmentNames);
+    names.addAll(recordingPrompter.getResolvedKeys());
+    for (String name : names)
+    {
+      if (VOLATILE_KEYS.contains(name.toLowerCase()))
+      {
+        return;
+      }
+    }
+
+    // If resources were loaded or modified during the composition, the next startup would compute a different fingerprint or fail to restore the references.
+    if (!fingerprint.equals(computeFingerprint(uriConverter, prompter, trigger, resourceSet)))
+    {
+      return;
+    }
+
+    File file = getFile();
+    File tempFile = null;
+    DataOutputStream out = null;
+
+    try
+    {
+      folder.mkdirs();
+      tempFile = File.createTempFile(fingerprint, ".tmp", folder); //$NON-NLS-1$
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      out.writeUTF(FORMAT);
+      out.writeUTF(fingerprint);
+
+      writeStrings(out, bundleNames);
+      writeStrings(out, new ArrayList<String>(names));
+
+      out.writeUTF(getEnvironmentDigest(names));
+
+      writeStrings(out, new ArrayList<String>(variables.keySet()));
+      writeStrings(out, new ArrayList<String>(variables.values()));
+
+      out.writeInt(resourceURIs.size());
+      for (int i = 0, size = resourceURIs.size(); i < size; ++i)
+      {
+        String resourceURI = resourceURIs.get(i);
+        out.writeBoolean(resourceURI != null);
+        if (resourceURI != null)
+        {
+          out.writeUTF(resourceURI);
+        }
+
+        byte[] contents = resourceContents.get(i);
+        out.writeInt(contents.length);
+        out.write(contents);
+      }
+
+      writeStrings(out, taskURIs);
+      out.close();
+      out = null;
+
+      if (!tempFile.renameTo(file))
+      {
+        file.delete();
+        tempFile.renameTo(file);
+      }
+
+      prune();
+    }
+    catch (IOException ex)
+    {
+      SetupCorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+    }
+    catch (RuntimeException ex)
+    {
+      SetupCorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+    }
+    finally
+    {
+      IOUtil.closeSilent(out);
+      if (tempFile != null)
+      {
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the stored composition for the inputs of this cache, or <code>null</code> if there is none or if it can't be restored completely.
+   * The composition is only restored; it must still be processed by a composed performer.
+   */
+  public Composition load()
+  {
+    File file = getFile();
+    if (!file.isFile())
+    {
+      return null;
+    }
+
+    Composition composition = null;
+    DataInputStream in = null;
+
+    try
+    {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (FORMAT.equals(in.readUTF()) && fingerprint.equals(in.readUTF()))
+      {
+        composition = load(in);
+      }
+    }
+    catch (Exception ex)
+    {
+      SetupCorePlugin.INSTANCE.log(ex, IStatus.WARNING);
+      composition = null;
+    }
+    finally
+    {
+      IOUtil.closeSilent(in);
+    }
+
+    if (composition == null)
+    {
+      file.delete();
+    }
+    else
+    {
+      file.setLastModified(System.currentTimeMillis());
+    }
+
+    return composition;
+  }
+
+  /**
+   * Deletes the stored composition for the inputs of this cache, for example, because it was loaded but can't be processed.
+   */
+  public void discard()
+  {
+    getFile().delete();
+  }
+
+  private Composition load(DataInputStream in) throws IOException
+  {
+    Set<Bundle> bundles = new LinkedHashSet<Bundle>();
+    List<String> bundleNames = readStrings(in);
+    for (int i = 0, size = bundleNames.size(); i < size; i += 2)
+    {
+      Bundle bundle = getBundle(bundleNames.get(i), bundleNames.get(i + 1));
+      if (bundle == null)
+      {
+        return null;
+      }
+
+      bundles.add(bundle);
+    }
+
+    Set<String> names = new TreeSet<String>(readStrings(in));
+    if (!in.readUTF().equals(getEnvironmentDigest(names)))
+    {
+      return null;
+    }
+
+    Map<String, String> variables = readMap(in);
+
+    // Resolve references to the restored resources first, and all other references to the already loaded resources of the setup context.
+    ResourceSet restoringResourceSet = new ResourceSetImpl()
+    {
+      @Override
+      public Resource getResource(URI uri, boolean loadOnDemand)
+      {
+        return super.getResource(uri, false);
+      }
+
+      @Override
+      protected Resource delegatedGetResource(URI uri, boolean loadOnDemand)
+      {
+        return resourceSet.getResource(uri, false);
+      }
+    };
+
+    restoringResourceSet.setPackageRegistry(resourceSet.getPackageRegistry());
+    restoringResourceSet.setURIConverter(resourceSet.getURIConverter());
+
+    List<Resource> resources = new ArrayList<Resource>();
+    List<URI> originalURIs = new ArrayList<URI>();
+    for (int i = 0, size = in.readInt(); i < size; ++i)
+    {
+      URI originalURI = in.readBoolean() ? URI.createURI(in.readUTF()) : null;
+      byte[] contents = new byte[in.readInt()];
+      in.readFully(contents);
+
+      URI uri = COMPOSITION_URI.appendSegment(Integer.toString(i));
+      Resource resource = originalURI == null ? new ResourceImpl(uri) : resourceSet.getResourceFactoryRegistry().getFactory(originalURI).createResource(uri);
+      restoringResourceSet.getResources().add(resource);
+
+      EObjectInputStream stream = new BinaryResourceImpl.EObjectInputStream(new ByteArrayInputStream(contents), BINARY_OPTIONS);
+      stream.loadResource(resource);
+
+      resources.add(resource);
+      originalURIs.add(originalURI);
+    }
+
+    try
+    {
+      EcoreUtil.resolveAll(restoringResourceSet);
+      for (Resource resource : resources)
+      {
+        if (hasProxies(resource.getContents()))
+        {
+          return null;
+        }
+      }
+
+      EList<SetupTask> setupTasks = new BasicEList<SetupTask>();
+      for (String taskURI : readStrings(in))
+      {
+        EObject eObject = restoringResourceSet.getEObject(URI.createURI(taskURI), false);
+        if (!(eObject instanceof SetupTask))
+        {
+          return null;
+        }
+
+        setupTasks.add((SetupTask)eObject);
+      }
+
+      List<Resource> restoredResources = new ArrayList<Resource>();
+      for (int i = 0, size = resources.size(); i < size; ++i)
+      {
+        Resource resource = resources.get(i);
+        URI originalURI = originalURIs.get(i);
+        if (originalURI == null)
+        {
+          // The detached objects must be detached again.
+          resource.getContents().clear();
+        }
+        else
+        {
+          resource.setURI(originalURI);
+          restoredResources.add(resource);
+        }
+      }
+
+      return new Composition(setupTasks, bundles, variables, restoredResources);
+    }
+    finally
+    {
+      // Like the copies, the restored resources don't belong to any resource set.
+      restoringResourceSet.getResources().clear();
+    }
+  }
+
+  /**
+   * Gathers the resources without resource set and the objects without resource that are reachable from the given tasks.
+   * Returns <code>false</code> if an unresolved proxy is reachable.
+   */
+  private static boolean gather(EList<SetupTask> setupTasks, List<Resource> resources, List<EObject> detachedRoots)
+  {
+    Set<Object> visited = new HashSet<Object>();
+    List<EObject> pendingObjects = new ArrayList<EObject>(setupTasks);
+    while (!pendingObjects.isEmpty())
+    {
+      EObject root = EcoreUtil.getRootContainer(pendingObjects.remove(pendingObjects.size() - 1));
+      Resource resource = root.eResource();
+
+      Collection<EObject> contents;
+      if (resource == null)
+      {
+        if (!visited.add(root))
+        {
+          continue;
+        }
+
+        detachedRoots.add(root);
+        contents = Collections.singleton(root);
+      }
+      else if (resource.getResourceSet() == null)
+      {
+        if (!visited.add(resource))
+        {
+          continue;
+        }
+
+        resources.add(resource);
+        contents = resource.getContents();
+      }
+      else
+      {
+        continue;
+      }
+
+      for (TreeIterator<EObject> it = EcoreUtil.getAllProperContents(contents, false); it.hasNext();)
+      {
+        for (Iterator<EObject> it2 = ((InternalEList<EObject>)it.next().eCrossReferences()).basicIterator(); it2.hasNext();)
+        {
+          EObject eObject = it2.next();
+          if (eObject.eIsProxy())
+          {
+            return false;
+          }
+
+          pendingObjects.add(eObject);
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns whether a string value of the given objects or of their contents is a password or refers to one.
+   */
+  private static boolean hasSecrets(Collection<EObject> contents)
+  {
+    for (TreeIterator<EObject> it = EcoreUtil.getAllProperContents(contents, false); it.hasNext();)
+    {
+      EObject eObject = it.next();
+      if (eObject instanceof VariableTask && isSecret((VariableTask)eObject))
+      {
+        return true;
+      }
+
+      for (EAttribute attribute : eObject.eClass().getEAllAttributes())
+      {
+        if (attribute.getEAttributeType().getInstanceClass() == String.class && !attribute.isDerived())
+        {
+          Object value = eObject.eGet(attribute);
+          Collection<?> values = attribute.isMany() ? (Collection<?>)value : Collections.singleton(value);
+          for (Object element : values)
+          {
+            if (element instanceof String && isSecret((String)element))
+            {
+              return true;
+            }
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isSecret(VariableTask variable)
+  {
+    if (variable.getType() == VariableType.PASSWORD)
+    {
+      return true;
+    }
+
+    URI storageURI = variable.getStorageURI();
+    return storageURI != null && isSecret(storageURI.toString());
+  }
+
+  /**
+   * Returns whether the given string refers to secure storage or to a value that's filtered as a password.
+   */
+  private static boolean isSecret(String value)
+  {
+    return value.startsWith(SECURE_STORAGE_URI) || PASSWORD_FILTER_PATTERN.matcher(value).find();
+  }
+
+  private static boolean hasProxies(Collection<EObject> contents)
+  {
+    for (TreeIterator<EObject> it = EcoreUtil.getAllProperContents(contents, false); it.hasNext();)
+    {
+      for (Iterator<EObject> it2 = ((InternalEList<EObject>)it.next().eCrossReferences()).basicIterator(); it2.hasNext();)
+      {
+        if (it2.next().eIsProxy())
+        {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  private static Bundle getBundle(String symbolicName, String version)
+  {
+    Bundle[] bundles = Platform.getBundles(symbolicName, version);
+    if (bundles != null)
+    {
+      for (Bundle bundle : bundles)
+      {
+        if (bundle.getVersion().toString().equals(version))
+        {
+          return bundle;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns a digest of the current values of the environment variables and system properties with the given names,
+   * which changes whenever one of these values changes.
+   */
+  private static String getEnvironmentDigest(Set<String> names)
+  {
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+      update(digest, FORMAT);
+
+      for (Map.Entry<String, String> entry : getEnvironment(names).entrySet())
+      {
+        update(digest, entry.getKey());
+        update(digest, entry.getValue());
+      }
+
+      return HexUtil.bytesToHex(digest.digest());
+    }
+    catch (NoSuchAlgorithmException ex)
+    {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * Returns the current values of the environment variables and system properties with the given names,
+   * either as they're used in variable references or as they're used in filters.
+   */
+  private static Map<String, String> getEnvironment(Set<String> names)
+  {
+    Map<String, String> result = new TreeMap<String, String>();
+    for (Map.Entry<String, String> entry : System.getenv().entrySet())
+    {
+      String key = entry.getKey();
+      if (names.contains(key) || names.contains(key.replace('_', '.').toLowerCase()))
+      {
+        result.put("env." + key, entry.getValue()); //$NON-NLS-1$
+      }
+    }
+
+    Properties properties = System.getProperties();
+    synchronized (properties)
+    {
+      for (Map.Entry<Object, Object> entry : properties.entrySet())
+      {
+        Object key = entry.getKey();
+        Object value = entry.getValue();
+        if (key instanceof String && value instanceof String && (names.contains(key) || names.contains(((String)key).toLowerCase())))
+        {
+          result.put("property." + key, (String)value); //$NON-NLS-1$
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+  {
+    out.writeInt(strings.size());
+    for (String string : strings)
+    {
+      out.writeUTF(string);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException
+  {
+    int size = in.readInt();
+    List<String> result = new ArrayList<String>(size);
+    for (int i = 0; i < size; ++i)
+    {
+      result.add(in.readUTF());
+    }
+
+    return result;
+  }
+
+  private static Map<String, String> readMap(DataInputStream in) throws IOException
+  {
+    List<String> keys = readStrings(in);
+    List<String> values = readStrings(in);
+    if (keys.size() != values.size())
+    {
+      throw new IOException("Corrupt composition"); //$NON-NLS-1$
+    }
+
+    Map<String, String> result = new LinkedHashMap<String, String>();
+    for (int i = 0, size = keys.size(); i < size; ++i)
+    {
+      result.put(keys.get(i), values.get(i));
+    }
+
+    return result;
+  }
+
+  private File getFile()
+  {
+    return new File(folder, fingerprint + EXTENSION);
+  }
+
+  private void prune()
+  {
+    File[] files = folder.listFiles();
+    if (files != null && files.length > MAX_COMPOSITIONS)
+    {
+      List<File> compositions = new ArrayList<File>();
+      for (File file : files)
+      {
+        if (file.getName().endsWith(EXTENSION))
+        {
+          compositions.add(file);
+        }
+      }
+
+      Collections.sort(compositions, new Comparator<File>()
+      {
+        public int compare(File file1, File file2)
+        {
+          long lastModified1 = file1.lastModified();
+          long lastModified2 = file2.lastModified();
+          return lastModified1 > lastModified2 ? -1 : lastModified1 == lastModified2 ? 0 : 1;
+        }
+      });
+
+      for (int i = MAX_COMPOSITIONS, size = compositions.size(); i < size; ++i)
+      {
+        compositions.get(i).delete();
+      }
+    }
+  }
+
+  /**
+   * Returns a cache for the composition of the given setup context, or <code>null</code> if the cache is disabled or the composition can't be cached.
+   */
+  public static SetupTaskCompositionCache create(URIConverter uriConverter, SetupPrompter prompter, Trigger trigger, SetupContext setupContext,
+      boolean fullPrompt, boolean fullComposition)
+  {
+    if (!ENABLED || trigger != Trigger.STARTUP || fullPrompt || fullComposition)
+    {
+      return null;
+    }
+
+    return create(CACHE_FOLDER, uriConverter, prompter, trigger, setupContext);
+  }
+
+  /**
+   * Returns a cache for the composition of the given setup context that's stored in the given folder, or <code>null</code> if the composition can't be cached.
+   */
+  public static SetupTaskCompositionCache create(File folder, URIConverter uriConverter, SetupPrompter prompter, Trigger trigger, SetupContext setupContext)
+  {
+    ResourceSet resourceSet = getResourceSet(setupContext);
+    if (resourceSet == null)
+    {
+      return null;
+    }
+
+    String fingerprint = computeFingerprint(uriConverter, prompter, trigger, resourceSet);
+    if (fingerprint == null)
+    {
+      return null;
+    }
+
+    return new SetupTaskCompositionCache(folder, uriConverter, prompter, trigger, resourceSet, fingerprint);
+  }
+
+  /**
+   * Records that the given key is resolved by a performer that uses the given prompter.
+   */
+  public static void keyResolved(SetupPrompter prompter, String key)
+  {
+    if (prompter instanceof RecordingPrompter)
+    {
+      ((RecordingPrompter)prompter).getResolvedKeys().add(key);
+    }
+  }
+
+  private static ResourceSet getResourceSet(SetupContext setupContext)
+  {
+    Installation installation = setupContext.getInstallation();
+    Workspace workspace = setupContext.getWorkspace();
+    User user = setupContext.getUser();
+
+    ResourceSet result = null;
+    for (EObject eObject : new EObject[] { installation, workspace, user })
+    {
+      if (eObject != null)
+      {
+        Resource resource = eObject.eResource();
+        ResourceSet resourceSet = resource == null ? null : resource.getResourceSet();
+        if (resourceSet == null || result != null && result != resourceSet)
+        {
+          return null;
+        }
+
+        result = resourceSet;
+      }
+    }
+
+    return result;
+  }
+
+  private static String computeFingerprint(URIConverter uriConverter, SetupPrompter prompter, Trigger trigger, ResourceSet resourceSet)
+  {
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+      update(digest, FORMAT);
+      update(digest, trigger.getLiteral());
+      update(digest, SetupCorePlugin.INSTANCE.getBundle().getVersion().toString());
+
+      OS os = prompter.getOS();
+      update(digest, os.getOsgiOS());
+      update(digest, os.getOsgiWS());
+      update(digest, os.getOsgiArch());
+      update(digest, prompter.getVMPath());
+
+      Map<URI, String> archiveStamps = new HashMap<URI, String>();
+      for (Resource resource : new ArrayList<Resource>(resourceSet.getResources()))
+      {
+        String stamp = getStamp(uriConverter, resource, archiveStamps);
+        if (stamp == null)
+        {
+          return null;
+        }
+
+        update(digest, resource.getURI().toString());
+        update(digest, stamp);
+      }
+
+      return HexUtil.bytesToHex(digest.digest());
+    }
+    catch (NoSuchAlgorithmException ex)
+    {
+      return null;
+    }
+    catch (RuntimeException ex)
+    {
+      return null;
+    }
+  }
+
+  private static void update(MessageDigest digest, String string)
+  {
+    try
+    {
+      digest.update(String.valueOf(string).getBytes("UTF-8")); //$NON-NLS-1$
+      digest.update((byte)0);
+    }
+    catch (IOException ex)
+    {
+      // All systems support UTF-8.
+    }
+  }
+
+  /**
+   * Returns a stamp that changes whenever the contents of the given resource might have changed, or <code>null</code> if there is no such stamp.
+   */
+  private static String getStamp(URIConverter uriConverter, Resource resource, Map<URI, String> archiveStamps)
+  {
+    if (!resource.isLoaded())
+    {
+      return "-"; //$NON-NLS-1$
+    }
+
+    if (resource.isModified())
+    {
+      return null;
+    }
+
+    URI uri = uriConverter.normalize(resource.getURI());
+    if (uri.isArchive())
+    {
+      // All entries of an archive share the stamp of the archive, so that the archive isn't opened for each of them.
+      String authority = uri.authority();
+      uri = URI.createURI(authority.substring(0, authority.length() - 1));
+
+      String stamp = archiveStamps.get(uri);
+      if (stamp == null)
+      {
+        stamp = getTimeStamp(uriConverter, uri);
+        archiveStamps.put(uri, stamp);
+      }
+
+      return stamp == null ? null : stamp + "/" + resource.getErrors().size(); //$NON-NLS-1$
+    }
+
+    String scheme = uri.scheme();
+    if ("http".equals(scheme) || "https".equals(scheme)) //$NON-NLS-1$ //$NON-NLS-2$
+    {
+      // Remote resources are always loaded from their cache file.
+      uri = ECFURIHandlerImpl.getCacheFile(uri);
+    }
+
+    String stamp = getTimeStamp(uriConverter, uri);
+    return stamp == null ? null : stamp + "/" + resource.getErrors().size(); //$NON-NLS-1$
+  }
+
+  private static String getTimeStamp(URIConverter uriConverter, URI uri)
+  {
+    Object timeStamp = uriConverter.getAttributes(uri, TIMESTAMP_OPTIONS).get(URIConverter.ATTRIBUTE_TIMESTAMP);
+    return timeStamp instanceof Long && (Long)timeStamp > 0 ? timeStamp.toString() : null;
+  }
+
+  /**
+   * The restored result of a composition.
+   *
+   * @author Eike Stepper
+   */
+  public static final class Composition
+  {
+    private final EList<SetupTask> setupTasks;
+
+    private final Set<Bundle> bundles;
+
+    private final Map<String, String> variables;
+
+    private final List<Resource> resources;
+
+    private Composition(EList<SetupTask> setupTasks, Set<Bundle> bundles, Map<String, String> variables, List<Resource> resources)
+    {
+      this.setupTasks = setupTasks;
+      this.bundles = bundles;
+      this.variables = variables;
+      this.resources = resources;
+    }
+
+    /**
+     * Returns the composed tasks, which must be passed to a composed performer.
+     */
+    public EList<SetupTask> getSetupTasks()
+    {
+      return setupTasks;
+    }
+
+    public Set<Bundle> getBundles()
+    {
+      return bundles;
+    }
+
+    /**
+     * Returns the variables that must be added to the composed performer, unless it already defines them.
+     */
+    public Map<String, String> getVariables()
+    {
+      return variables;
+    }
+
+    /**
+     * Returns the restored copies of the resources of the setup models, which have the URIs of their originals but don't belong to any resource set.
+     */
+    public List<Resource> getResources()
+    {
+      return resources;
+    }
+  }
+
+  /**
+   * Records whether the delegate prompter provided any value and which keys were resolved.
+   *
+   * @author Eike Stepper
+   */
+  private static final class RecordingPrompter implements SetupPrompter
+  {
+    private final SetupPrompter delegate;
+
+    private final Set<String> resolvedKeys = new HashSet<String>();
+
+    private boolean prompted;
+
+    public RecordingPrompter(SetupPrompter delegate)
+    {
+      this.delegate = delegate;
+    }
+
+    public boolean isPrompted()
+    {
+      return prompted;
+    }
+
+    public Set<String> getResolvedKeys()
+    {
+      return resolvedKeys;
+    }
+
+    public OS getOS()
+    {
+      return delegate.getOS();
+    }
+
+    public String getVMPath()
+    {
+      return delegate.getVMPath();
+    }
+
+    public UserCallback getUserCallback()
+    {
+      return delegate.getUserCallback();
+    }
+
+    public String getValue(VariableTask variable)
+    {
+      String value = delegate.getValue(variable);
+      if (value != null)
+      {
+        prompted = true;
+      }
+
+      return value;
+    }
+
+    public boolean promptVariables(List<? extends SetupTaskContext> performers)
+    {
+      prompted = true;
+      return delegate.promptVariables(performers);
+    }
+  }
+}
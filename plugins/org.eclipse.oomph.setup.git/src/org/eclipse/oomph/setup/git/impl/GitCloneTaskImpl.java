@@ -754,6 +754,15 @@ public class GitCloneTaskImpl extends SetupTaskImpl implements GitCloneTask
     return 100;
   }
 
+  /**
+   * Clones into different locations don't interfere with each other.
+   */
+  @Override
+  public Object getExclusivityToken()
+  {
+    return workDir;
+  }
+
   public boolean isNeeded(final SetupTaskContext context) throws Exception
   {
     if (StringUtil.isEmpty(getRemoteURI()))
@@ -1117,20 +1126,24 @@ public class GitCloneTaskImpl extends SetupTaskImpl implements GitCloneTask
   private static Set<String> getGerritPatterns(SetupTaskContext context)
   {
     Set<String> gerritPatterns = new HashSet<String>();
-    for (Object key : context.keySet())
+    synchronized (context)
     {
-      if (key instanceof String)
+      for (Object key : context.keySet())
       {
-        if (key.toString().endsWith(".gerrit.uri.pattern")) //$NON-NLS-1$
+        if (key instanceof String)
         {
-          Object value = context.get(key);
-          if (value instanceof String)
+          if (key.toString().endsWith(".gerrit.uri.pattern")) //$NON-NLS-1$
           {
-            gerritPatterns.add(value.toString());
+            Object value = context.get(key);
+            if (value instanceof String)
+            {
+              gerritPatterns.add(value.toString());
+            }
           }
         }
       }
     }
+
     return gerritPatterns;
   }
 
@@ -154,7 +154,7 @@ public final class KeepInstallerUtil
   {
     File source = new File(launcher).getParentFile();
     File target = new File(targetLocation);
-    IOUtil.copyTree(source, target, true);
+    IOUtil.materializeTree(source, target, true);
 
     String launcherName = new File(launcher).getName();
     File permanentLauncher = new File(target, launcherName);
@@ -11,7 +11,7 @@
 package org.eclipse.oomph.setup.internal.installer;
 
 import org.eclipse.oomph.util.IOUtil;
-import org.eclipse.oomph.util.ThreadPool;
+import org.eclipse.oomph.util.TaskScheduler;
 
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
@@ -106,11 +106,11 @@ public final class OwnershipMapper
 
       stats = new BufferedWriter(new FileWriter("folders.txt"));
       long start = System.currentTimeMillis();
-      ThreadPool threadPool = new ThreadPool();
+      TaskScheduler.TaskGroup tasks = new TaskScheduler.TaskGroup(TaskScheduler.Lane.IO);
 
       for (final File topLevelFolder : topLevelFolders)
       {
-        threadPool.submit(new Runnable()
+        tasks.submit(new Runnable()
         {
           public void run()
           {
@@ -126,7 +126,7 @@ public final class OwnershipMapper
         });
       }
 
-      threadPool.awaitFinished();
+      tasks.awaitFinished();
 
       writeStats(rootFolder.relativize(rootFolder), start, IGNORE, IGNORE, ROOT);
       stats.close();
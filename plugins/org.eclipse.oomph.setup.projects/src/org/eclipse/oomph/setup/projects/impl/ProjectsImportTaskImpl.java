@@ -294,6 +294,12 @@ public class ProjectsImportTaskImpl extends SetupTaskImpl implements ProjectsImp
     return 50;
   }
 
+  @Override
+  public boolean isNeededSideEffectFree()
+  {
+    return true;
+  }
+
   public boolean isNeeded(SetupTaskContext context) throws Exception
   {
     if (isForce() || context.getTrigger() == Trigger.MANUAL)
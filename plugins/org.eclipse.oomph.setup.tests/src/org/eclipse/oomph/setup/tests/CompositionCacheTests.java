@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.setup.tests;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.oomph.internal.setup.SetupPrompter;
+import org.eclipse.oomph.setup.SetupFactory;
+import org.eclipse.oomph.setup.SetupTask;
+import org.eclipse.oomph.setup.SetupTaskContext;
+import org.eclipse.oomph.setup.Trigger;
+import org.eclipse.oomph.setup.User;
+import org.eclipse.oomph.setup.VariableTask;
+import org.eclipse.oomph.setup.VariableType;
+import org.eclipse.oomph.setup.internal.core.SetupContext;
+import org.eclipse.oomph.setup.internal.core.util.SetupTaskCompositionCache;
+import org.eclipse.oomph.setup.internal.core.util.SetupTaskCompositionCache.Composition;
+import org.eclipse.oomph.tests.AbstractTest;
+import org.eclipse.oomph.util.IOUtil;
+import org.eclipse.oomph.util.OS;
+import org.eclipse.oomph.util.UserCallback;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+
+import org.eclipse.core.runtime.Platform;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the {@link SetupTaskCompositionCache}, which stores and restores the composed tasks of a startup.
+ * The setup models are created locally, and each test uses its own cache folder.
+ *
+ * @author Eike Stepper
+ */
+public class CompositionCacheTests extends AbstractTest
+{
+  private static final String PROPERTY_NAME = "oomph.setup.tests.composition";
+
+  @Test
+  public void testStoreAndLoad() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+    Bundle bundle = Platform.getBundle("org.eclipse.oomph.setup.core");
+
+    SetupTaskCompositionCache cache = createCache(folder, setupContext, SetupPrompter.OK);
+    assertThat(cache.load(), isNull());
+
+    cache.prepare(tasks(createVariable("test.name", "test value", VariableType.STRING)), Collections.singleton(bundle));
+    cache.putVariable("test.variable", "variable value");
+    cache.store();
+    assertThat(folder.list().length, is(1));
+
+    Composition composition = createCache(folder, setupContext, SetupPrompter.OK).load();
+    assertThat(composition, notNullValue());
+
+    EList<SetupTask> setupTasks = composition.getSetupTasks();
+    assertThat(setupTasks.size(), is(1));
+
+    VariableTask variable = (VariableTask)setupTasks.get(0);
+    assertThat(variable.getName(), is("test.name"));
+    assertThat(variable.getValue(), is("test value"));
+
+    assertThat(composition.getBundles(), is(Collections.singleton(bundle)));
+    assertThat(composition.getVariables(), is(Collections.singletonMap("test.variable", "variable value")));
+  }
+
+  @Test
+  public void testResourceTimeStampChanged() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+
+    store(folder, setupContext, SetupPrompter.OK, createVariable("test.name", "test value", VariableType.STRING));
+    assertThat(createCache(folder, setupContext, SetupPrompter.OK).load(), notNullValue());
+
+    // A modified setup model changes the fingerprint, so the stored composition doesn't match anymore.
+    File file = new File(setupContext.getUser().eResource().getURI().toFileString());
+    assertThat(file.setLastModified(file.lastModified() + 10000), is(true));
+
+    assertThat(createCache(folder, setupContext, SetupPrompter.OK).load(), isNull());
+  }
+
+  @Test
+  public void testEnvironmentMismatch() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+
+    try
+    {
+      System.setProperty(PROPERTY_NAME, "a");
+
+      SetupTaskCompositionCache cache = createCache(folder, setupContext, SetupPrompter.OK);
+      cache.addEnvironmentNames(Collections.singleton(PROPERTY_NAME));
+      cache.prepare(tasks(createVariable("test.name", "test value", VariableType.STRING)), Collections.<Bundle> emptySet());
+      cache.store();
+      assertThat(createCache(folder, setupContext, SetupPrompter.OK).load(), notNullValue());
+
+      // A different value of a system property or environment variable that was used during the composition invalidates it.
+      System.setProperty(PROPERTY_NAME, "b");
+      assertThat(createCache(folder, setupContext, SetupPrompter.OK).load(), isNull());
+
+      // The invalid composition is deleted.
+      System.setProperty(PROPERTY_NAME, "a");
+      assertThat(createCache(folder, setupContext, SetupPrompter.OK).load(), isNull());
+      assertThat(folder.list().length, is(0));
+    }
+    finally
+    {
+      System.clearProperty(PROPERTY_NAME);
+    }
+  }
+
+  @Test
+  public void testMissingBundleVersion() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+
+    // A bundle version that isn't installed, like after an update of the product.
+    Bundle bundle = createBundle("org.eclipse.oomph.setup.core", new Version(0, 0, 1));
+
+    SetupTaskCompositionCache cache = createCache(folder, setupContext, SetupPrompter.OK);
+    cache.prepare(tasks(createVariable("test.name", "test value", VariableType.STRING)), Collections.singleton(bundle));
+    cache.store();
+    assertThat(folder.list().length, is(1));
+
+    assertThat(createCache(folder, setupContext, SetupPrompter.OK).load(), isNull());
+    assertThat(folder.list().length, is(0));
+  }
+
+  @Test
+  public void testPromptedValueNotStored() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+    TestPrompter prompter = new TestPrompter("secret");
+
+    SetupTaskCompositionCache cache = createCache(folder, setupContext, prompter);
+    assertThat(cache.getPrompter().getValue(createVariable("test.name", null, VariableType.STRING)), is("secret"));
+
+    cache.prepare(tasks(createVariable("test.name", "secret", VariableType.STRING)), Collections.<Bundle> emptySet());
+    cache.store();
+    assertThat(folder.exists(), is(false));
+  }
+
+  @Test
+  public void testPasswordNotStored() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+
+    store(folder, setupContext, SetupPrompter.OK, createVariable("test.password", "secret", VariableType.PASSWORD));
+    assertThat(folder.exists(), is(false));
+  }
+
+  @Test
+  public void testEnvironmentValueNotStored() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+
+    try
+    {
+      System.setProperty(PROPERTY_NAME, "secret environment value");
+
+      SetupTaskCompositionCache cache = createCache(folder, setupContext, SetupPrompter.OK);
+      cache.addEnvironmentNames(Collections.singleton(PROPERTY_NAME));
+      cache.prepare(tasks(createVariable("test.name", "test value", VariableType.STRING)), Collections.<Bundle> emptySet());
+      cache.store();
+      assertThat(folder.list().length, is(1));
+
+      // Only a digest of the value is stored, which is still verified when the composition is loaded.
+      String contents = new String(IOUtil.readFile(folder.listFiles()[0]), "UTF-8");
+      assertThat(contents.contains(PROPERTY_NAME), is(true));
+      assertThat(contents.contains("secret environment value"), is(false));
+      assertThat(createCache(folder, setupContext, SetupPrompter.OK).load(), notNullValue());
+    }
+    finally
+    {
+      System.clearProperty(PROPERTY_NAME);
+    }
+  }
+
+  @Test
+  public void testPasswordFilterNotStored() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+
+    store(folder, setupContext, SetupPrompter.OK, createVariable("test.name", "${test.password|password}", VariableType.STRING));
+    assertThat(folder.exists(), is(false));
+
+    SetupTaskCompositionCache cache = createCache(folder, setupContext, SetupPrompter.OK);
+    cache.prepare(tasks(createVariable("test.name", "test value", VariableType.STRING)), Collections.<Bundle> emptySet());
+    cache.putVariable("test.variable", "user:${test.password|password}");
+    cache.store();
+    assertThat(folder.exists(), is(false));
+  }
+
+  @Test
+  public void testSecureStorageNotStored() throws Exception
+  {
+    File folder = new File(getUserHome(), "compositions");
+    SetupContext setupContext = createSetupContext();
+
+    VariableTask variable = createVariable("test.name", "test value", VariableType.STRING);
+    variable.setStorageURI(URI.createURI("preference:/secure/org.eclipse.oomph.setup/test.name/"));
+
+    store(folder, setupContext, SetupPrompter.OK, variable);
+    assertThat(folder.exists(), is(false));
+  }
+
+  private SetupContext createSetupContext() throws Exception
+  {
+    ResourceSet resourceSet = new ResourceSetImpl();
+    resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(Resource.Factory.Registry.DEFAULT_EXTENSION, new XMIResourceFactoryImpl());
+
+    URI uri = URI.createFileURI(new File(getUserHome(), "user.setup").getAbsolutePath());
+    Resource resource = resourceSet.createResource(uri);
+    User user = SetupFactory.eINSTANCE.createUser();
+    user.setName("user");
+    resource.getContents().add(user);
+    resource.save(null);
+
+    // Load the user model into a fresh resource set, as a startup does.
+    ResourceSet loadingResourceSet = new ResourceSetImpl();
+    loadingResourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap().put(Resource.Factory.Registry.DEFAULT_EXTENSION, new XMIResourceFactoryImpl());
+    Resource loadedResource = loadingResourceSet.getResource(uri, true);
+    return SetupContext.create(null, null, (User)loadedResource.getContents().get(0));
+  }
+
+  private static SetupTaskCompositionCache createCache(File folder, SetupContext setupContext, SetupPrompter prompter)
+  {
+    ResourceSet resourceSet = setupContext.getUser().eResource().getResourceSet();
+    SetupTaskCompositionCache cache = SetupTaskCompositionCache.create(folder, resourceSet.getURIConverter(), prompter, Trigger.STARTUP, setupContext);
+    assertThat(cache, notNullValue());
+    return cache;
+  }
+
+  private static void store(File folder, SetupContext setupContext, SetupPrompter prompter, SetupTask... setupTasks)
+  {
+    SetupTaskCompositionCache cache = createCache(folder, setupContext, prompter);
+    cache.prepare(tasks(setupTasks), Collections.<Bundle> emptySet());
+    cache.store();
+  }
+
+  private static EList<SetupTask> tasks(SetupTask... setupTasks)
+  {
+    EList<SetupTask> result = new BasicEList<SetupTask>();
+    Collections.addAll(result, setupTasks);
+    return result;
+  }
+
+  private static VariableTask createVariable(String name, String value, VariableType type)
+  {
+    VariableTask variable = SetupFactory.eINSTANCE.createVariableTask();
+    variable.setName(name);
+    variable.setValue(value);
+    variable.setType(type);
+    return variable;
+  }
+
+  private static Bundle createBundle(final String symbolicName, final Version version)
+  {
+    return (Bundle)Proxy.newProxyInstance(CompositionCacheTests.class.getClassLoader(), new Class<?>[] { Bundle.class }, new InvocationHandler()
+    {
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+      {
+        String name = method.getName();
+        if ("getSymbolicName".equals(name))
+        {
+          return symbolicName;
+        }
+
+        if ("getVersion".equals(name))
+        {
+          return version;
+        }
+
+        if ("hashCode".equals(name))
+        {
+          return System.identityHashCode(proxy);
+        }
+
+        if ("equals".equals(name))
+        {
+          return proxy == args[0];
+        }
+
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class TestPrompter implements SetupPrompter
+  {
+    private final String value;
+
+    public TestPrompter(String value)
+    {
+      this.value = value;
+    }
+
+    public OS getOS()
+    {
+      return OS.INSTANCE;
+    }
+
+    public String getVMPath()
+    {
+      return null;
+    }
+
+    public UserCallback getUserCallback()
+    {
+      return null;
+    }
+
+    public String getValue(VariableTask variable)
+    {
+      return value;
+    }
+
+    public boolean promptVariables(List<? extends SetupTaskContext> performers)
+    {
+      return true;
+    }
+  }
+}
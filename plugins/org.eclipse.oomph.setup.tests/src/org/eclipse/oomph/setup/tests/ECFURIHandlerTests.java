@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.setup.tests;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.oomph.internal.setup.SetupProperties;
+import org.eclipse.oomph.internal.util.HTTPServer;
+import org.eclipse.oomph.internal.util.HTTPServer.Exchange;
+import org.eclipse.oomph.internal.util.HTTPServer.FileContext;
+import org.eclipse.oomph.setup.internal.core.util.ECFURIHandlerImpl;
+import org.eclipse.oomph.tests.AbstractTest;
+import org.eclipse.oomph.util.IOUtil;
+
+import org.eclipse.emf.common.util.URI;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Tests that concurrent requests of the same URI are processed one after the other by the {@link ECFURIHandlerImpl},
+ * such that the first request populates the cache for the others.
+ * Each test uses its own context path, so that the tests don't share cached files and expected ETags.
+ *
+ * @author Eike Stepper
+ */
+public class ECFURIHandlerTests extends AbstractTest
+{
+  private static HTTPServer httpServer;
+
+  private final List<URI> uris = new ArrayList<URI>();
+
+  private BlockingContext context;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception
+  {
+    httpServer = new HTTPServer(2345, 5000);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception
+  {
+    if (httpServer != null)
+    {
+      httpServer.stop();
+      httpServer = null;
+    }
+  }
+
+  @Override
+  public void setUp() throws Exception
+  {
+    super.setUp();
+
+    File folder = new File(getUserHome(), "files");
+    IOUtil.writeUTF8(new File(folder, "baseline.txt"), "baseline");
+    IOUtil.writeUTF8(new File(folder, "file.txt"), "content");
+
+    context = new BlockingContext("/" + testName.getMethodName(), folder);
+    httpServer.addContext(context);
+  }
+
+  @Override
+  public void tearDown() throws Exception
+  {
+    context.release();
+    httpServer.removeContext(context);
+
+    ECFURIHandlerImpl.clearExpectedETags();
+    for (URI uri : uris)
+    {
+      URI cacheFile = ECFURIHandlerImpl.getCacheFile(uri);
+      IOUtil.deleteBestEffort(new File(cacheFile.toFileString()));
+      IOUtil.deleteBestEffort(new File(cacheFile.appendFileExtension("etag").toFileString()));
+    }
+
+    super.tearDown();
+  }
+
+  @Test
+  public void testCoalescing() throws Exception
+  {
+    int baseline = countRequests("baseline.txt");
+
+    context.block();
+
+    List<Future<String>> futures = new ArrayList<Future<String>>();
+    for (int i = 0; i < 4; i++)
+    {
+      futures.add(read("file.txt"));
+    }
+
+    // While the first request is being processed, the other requests wait for it rather than connecting to the server.
+    context.awaitRequests(1);
+    Thread.sleep(500);
+    assertThat(context.getRequests().size(), is(1));
+
+    context.release();
+    for (Future<String> future : futures)
+    {
+      assertThat(future.get(), is("content"));
+    }
+
+    // The waiting requests are served from the cache that's populated by the first request.
+    assertThat(context.getRequests().size(), is(baseline));
+  }
+
+  @Test
+  public void testWaitTimeout() throws Exception
+  {
+    context.block();
+    Future<String> leader = read("file.txt");
+    context.awaitRequests(1);
+
+    System.setProperty(SetupProperties.PROP_SETUP_ECF_WAIT_TIMEOUT, "200");
+
+    try
+    {
+      // A request that has waited long enough connects to the server itself, while the first request is still being processed.
+      Future<String> waiter = read("file.txt");
+      context.awaitRequests(2);
+      assertThat(leader.isDone(), is(false));
+
+      context.release();
+      assertThat(waiter.get(), is("content"));
+      assertThat(leader.get(), is("content"));
+    }
+    finally
+    {
+      System.clearProperty(SetupProperties.PROP_SETUP_ECF_WAIT_TIMEOUT);
+    }
+  }
+
+  @Test
+  public void testLeaderFailure() throws Exception
+  {
+    int baseline = countRequests("missing-baseline.txt");
+
+    context.block();
+
+    List<Future<String>> futures = new ArrayList<Future<String>>();
+    for (int i = 0; i < 3; i++)
+    {
+      futures.add(read("missing.txt"));
+    }
+
+    context.awaitRequests(1);
+    Thread.sleep(500);
+    assertThat(context.getRequests().size(), is(1));
+
+    context.release();
+    for (Future<String> future : futures)
+    {
+      try
+      {
+        future.get();
+        throw new AssertionError("Expected an IOException");
+      }
+      catch (ExecutionException ex)
+      {
+        assertThat(ex.getCause() instanceof IOException, is(true));
+      }
+    }
+
+    // The waiting requests fail with the failure of the first request, without connecting to the server.
+    assertThat(context.getRequests().size(), is(baseline));
+  }
+
+  /**
+   * Reads the given file once and returns the number of requests that the server received for it.
+   */
+  private int countRequests(String name) throws Exception
+  {
+    try
+    {
+      read(name).get();
+    }
+    catch (ExecutionException ex)
+    {
+      //$FALL-THROUGH$
+    }
+
+    int count = context.getRequests().size();
+    context.getRequests().clear();
+    return count;
+  }
+
+  /**
+   * Reads the given file of the context on a new thread.
+   */
+  private Future<String> read(String name)
+  {
+    final URI uri = URI.createURI(context.getURL(httpServer) + "/" + name);
+    uris.add(uri);
+
+    FutureTask<String> future = new FutureTask<String>(new Callable<String>()
+    {
+      public String call() throws Exception
+      {
+        Map<Object, Object> options = new HashMap<Object, Object>();
+        options.put(ECFURIHandlerImpl.OPTION_CACHE_HANDLING, ECFURIHandlerImpl.CacheHandling.CACHE_WITH_ETAG_CHECKING);
+
+        InputStream input = new ECFURIHandlerImpl(null).createInputStream(uri, options);
+
+        try
+        {
+          ByteArrayOutputStream content = new ByteArrayOutputStream();
+          IOUtil.copy(input, content);
+          return content.toString("UTF-8");
+        }
+        finally
+        {
+          IOUtil.closeSilent(input);
+        }
+      }
+    });
+
+    new Thread(future, "ECFURIHandlerTests").start();
+    return future;
+  }
+
+  /**
+   * A file context that records the requested paths and that can hold the requests until it's released.
+   *
+   * @author Eike Stepper
+   */
+  private static final class BlockingContext extends FileContext
+  {
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    private volatile CountDownLatch latch = new CountDownLatch(0);
+
+    public BlockingContext(String path, File root)
+    {
+      super(path, false, root);
+    }
+
+    public List<String> getRequests()
+    {
+      return requests;
+    }
+
+    public void block()
+    {
+      latch = new CountDownLatch(1);
+    }
+
+    public void release()
+    {
+      latch.countDown();
+    }
+
+    public void awaitRequests(int count) throws InterruptedException
+    {
+      long deadline = System.currentTimeMillis() + 10000;
+      while (requests.size() < count)
+      {
+        assertThat("Requests received in time", System.currentTimeMillis() < deadline, is(true));
+        Thread.sleep(10);
+      }
+    }
+
+    @Override
+    protected void handleRequest(String path, Exchange exchange) throws IOException
+    {
+      requests.add(path);
+
+      try
+      {
+        latch.await();
+      }
+      catch (InterruptedException ex)
+      {
+        throw new IOException(ex.getMessage());
+      }
+
+      super.handleRequest(path, exchange);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.setup.tests;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.oomph.setup.internal.core.util.SetupCoreUtil;
+import org.eclipse.oomph.setup.internal.core.util.SetupCoreUtil.DependencyProvider;
+import org.eclipse.oomph.tests.AbstractTest;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests {@link SetupCoreUtil#reorder(EList, DependencyProvider)} against the quadratic algorithm that it replaces.
+ *
+ * @author Eike Stepper
+ */
+public class ReorderTests extends AbstractTest
+{
+  @Test
+  public void testNoDependencies() throws Exception
+  {
+    EList<String> values = list("a", "b", "c");
+    List<List<String>> cycles = SetupCoreUtil.reorder(values, dependencies());
+
+    assertThat(values, is(list("a", "b", "c")));
+    assertThat(cycles.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testDependencies() throws Exception
+  {
+    EList<String> values = list("a", "b", "c", "d");
+    SetupCoreUtil.reorder(values, dependencies("a", "c", "d", "b", "d"));
+
+    assertThat(values, is(list("d", "c", "a", "b")));
+  }
+
+  @Test
+  public void testUnknownAndSelfDependencies() throws Exception
+  {
+    EList<String> values = list("a", "b");
+    List<List<String>> cycles = SetupCoreUtil.reorder(values, dependencies("a", "x", "a", "b", "b"));
+
+    assertThat(values, is(list("a", "b")));
+    assertThat(cycles.isEmpty(), is(true));
+  }
+
+  @Test
+  public void testCycle() throws Exception
+  {
+    EList<String> values = list("d", "a", "b", "c");
+    List<List<String>> cycles = SetupCoreUtil.reorder(values, dependencies("a", "b", "b", "c", "c", "a"));
+
+    assertThat(values, is(list("d", "c", "b", "a")));
+    assertThat(cycles, is(Collections.singletonList(Arrays.asList("a", "b", "c", "a"))));
+  }
+
+  @Test
+  public void testSameOrderAsLegacy() throws Exception
+  {
+    Random random = new Random(4711);
+    for (int i = 0; i < 10000; ++i)
+    {
+      int size = 1 + random.nextInt(30);
+      DependencyProvider<Integer> dependencyProvider = createAcyclicDependencies(random, size, 5);
+      List<Integer> values = createShuffledValues(random, size);
+
+      EList<Integer> expected = new BasicEList<Integer>(values);
+      reorderLegacy(expected, dependencyProvider);
+
+      EList<Integer> actual = new BasicEList<Integer>(values);
+      SetupCoreUtil.reorder(actual, dependencyProvider);
+
+      assertThat("Values " + values, actual, is(expected));
+    }
+  }
+
+  @Test
+  public void testBenchmark() throws Exception
+  {
+    int size = 5000;
+    Random random = new Random(4711);
+    DependencyProvider<Integer> dependencyProvider = createAcyclicDependencies(random, size, 3);
+    List<Integer> values = createShuffledValues(random, size);
+
+    EList<Integer> expected = new BasicEList<Integer>(values);
+    long legacyStart = System.nanoTime();
+    reorderLegacy(expected, dependencyProvider);
+    long legacyTime = System.nanoTime() - legacyStart;
+
+    EList<Integer> actual = new BasicEList<Integer>(values);
+    long start = System.nanoTime();
+    SetupCoreUtil.reorder(actual, dependencyProvider);
+    long time = System.nanoTime() - start;
+
+    // The timings are only reported, because they depend too much on the machine and its load to be asserted.
+    log("Reordering " + size + " values: legacy " + legacyTime / 1000000 + " ms, now " + time / 1000000 + " ms");
+    assertThat(actual, is(expected));
+  }
+
+  private static EList<String> list(String... values)
+  {
+    return new BasicEList<String>(Arrays.asList(values));
+  }
+
+  /**
+   * Returns a dependency provider for the given pairs of a value and one of its dependencies.
+   */
+  private static DependencyProvider<String> dependencies(String... pairs)
+  {
+    final Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+    for (int i = 0; i < pairs.length; i += 2)
+    {
+      List<String> list = dependencies.get(pairs[i]);
+      if (list == null)
+      {
+        list = new ArrayList<String>();
+        dependencies.put(pairs[i], list);
+      }
+
+      list.add(pairs[i + 1]);
+    }
+
+    return new DependencyProvider<String>()
+    {
+      public Collection<String> getDependencies(String value)
+      {
+        List<String> list = dependencies.get(value);
+        return list == null ? Collections.<String> emptyList() : list;
+      }
+    };
+  }
+
+  private static DependencyProvider<Integer> createAcyclicDependencies(Random random, int size, int maxDependencies)
+  {
+    final List<List<Integer>> dependencies = new ArrayList<List<Integer>>();
+    for (int value = 0; value < size; ++value)
+    {
+      List<Integer> list = new ArrayList<Integer>();
+      if (value != 0)
+      {
+        for (int i = random.nextInt(maxDependencies + 1); i > 0; --i)
+        {
+          // Lower values only, so that there are no cycles, possibly twice.
+          list.add(random.nextInt(value));
+        }
+      }
+
+      dependencies.add(list);
+    }
+
+    return new DependencyProvider<Integer>()
+    {
+      public Collection<Integer> getDependencies(Integer value)
+      {
+        return dependencies.get(value);
+      }
+    };
+  }
+
+  private static List<Integer> createShuffledValues(Random random, int size)
+  {
+    List<Integer> values = new ArrayList<Integer>();
+    for (int value = 0; value < size; ++value)
+    {
+      values.add(value);
+    }
+
+    Collections.shuffle(values, random);
+    return values;
+  }
+
+  /**
+   * The algorithm that {@link SetupCoreUtil#reorder(EList, DependencyProvider)} used before it was made linear.
+   */
+  private static <T> void reorderLegacy(EList<T> values, DependencyProvider<T> dependencyProvider)
+  {
+    for (int i = 0, size = values.size(), count = 0; i < size; ++i)
+    {
+      T value = values.get(i);
+      if (count == size)
+      {
+        throw new IllegalArgumentException("Circular dependencies " + value);
+      }
+
+      boolean changed = false;
+      for (T dependency : dependencyProvider.getDependencies(value))
+      {
+        int index = values.indexOf(dependency);
+        if (index > i)
+        {
+          values.move(i, index);
+          changed = true;
+        }
+      }
+
+      if (changed)
+      {
+        --i;
+        ++count;
+      }
+      else
+      {
+        count = 0;
+      }
+    }
+  }
+}
@@ -24,8 +24,12 @@ import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * TODO Test with Unix file separator.
@@ -259,6 +263,43 @@ public class StringExpanderTests extends AbstractTest
     assertThat(expander.expandString("START${xml.iso-8859-1|base64.utf-8}END"), is(expected));
   }
 
+  @Test
+  public void testTemplateKeys() throws Exception
+  {
+    assertThat(new ArrayList<String>(StringExpander.Template.compile("$${a}${b|uri}${c/x}$$${b}${}${d").getKeys()), is(Arrays.asList("$", "b", "c")));
+  }
+
+  @Test
+  public void testMemoizing() throws Exception
+  {
+    WindowsStringExpander expander = new WindowsStringExpander();
+    expander.memoize();
+    assertThat(expander.expandString("START${user.name}${windows.path}END"), is("STARTstepperC:\\develop\\java-latestEND"));
+    int resolveCount = expander.getResolveCount();
+    assertThat(resolveCount > 0, is(true));
+
+    // A memoized expansion doesn't resolve its variables again.
+    assertThat(expander.expandString("START${user.name}${windows.path}END"), is("STARTstepperC:\\develop\\java-latestEND"));
+    assertThat(expander.getResolveCount(), is(resolveCount));
+
+    // An invalidated expansion resolves its variables again.
+    expander.put("user.name", "merks");
+    assertThat(expander.expandString("START${user.name}${windows.path}END"), is("STARTmerksC:\\develop\\java-latestEND"));
+    assertThat(expander.getResolveCount() > resolveCount, is(true));
+
+    // The expansions of other strings remain memoized.
+    resolveCount = expander.getResolveCount();
+    assertThat(expander.expandString("${windows.path}"), is("C:\\develop\\java-latest"));
+    assertThat(expander.expandString("${windows.path}"), is("C:\\develop\\java-latest"));
+    expander.put("user.name", "stepper");
+    assertThat(expander.expandString("${windows.path}"), is("C:\\develop\\java-latest"));
+    assertThat(expander.getResolveCount(), is(resolveCount + 1));
+
+    Set<String> keys = new HashSet<String>();
+    assertThat(expander.expandString("START${user.home}END", keys), isNull());
+    assertThat(keys.isEmpty(), is(true));
+  }
+
   /**
    * @author Eike Stepper
    */
@@ -266,6 +307,8 @@ public class StringExpanderTests extends AbstractTest
   {
     private final Map<String, String> variables = new HashMap<String, String>();
 
+    private int resolveCount;
+
     public WindowsStringExpander()
     {
       variables.put("windows.path", "C:\\develop\\java-latest");
@@ -279,15 +322,32 @@ public class StringExpanderTests extends AbstractTest
           "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\r\n<root id=\"\u00B5\u00B9\u00B2\u00B3\">\r\n\t<child>\u00C7\u00C4\u00DE\u00C9\u00DF\u00C5\u00DF\u00CB</child>\r\n</root>");
     }
 
+    public void memoize()
+    {
+      setMemoizing(true);
+    }
+
+    public void put(String key, String value)
+    {
+      variables.put(key, value);
+      invalidate(key);
+    }
+
     @Override
     protected String getFileSeparator()
     {
       return "\\";
     }
 
+    public int getResolveCount()
+    {
+      return resolveCount;
+    }
+
     @Override
     protected String resolve(String key)
     {
+      ++resolveCount;
       return variables.get(key);
     }
 
@@ -87,6 +87,38 @@ public class SetupProperties
 
   public static final String PROP_SETUP_ECF_READ_TIMEOUT = "oomph.setup.ecf.read.timeout"; //$NON-NLS-1$
 
+  /**
+   * The number of milliseconds that a request waits for a concurrent request of the same URI before proceeding anyway, or <code>0</code> to wait indefinitely.
+   * The default is one minute.
+   */
+  public static final String PROP_SETUP_ECF_WAIT_TIMEOUT = "oomph.setup.ecf.wait.timeout"; //$NON-NLS-1$
+
+  /**
+   * The prefix of the <code>.max.size</code> (megabytes) and <code>.max.age</code> (days) properties that bound the ECF download cache.
+   */
+  public static final String PROP_SETUP_ECF_CACHE = "oomph.setup.ecf.cache"; //$NON-NLS-1$
+
+  /**
+   * The maximum number of independent setup tasks that are performed in parallel on the I/O lane of the task scheduler, or <code>0</code> (the default) to perform all tasks one after the other.
+   */
+  public static final String PROP_SETUP_PARALLEL_THREADS = "oomph.setup.parallel.threads"; //$NON-NLS-1$
+
+  /**
+   * The maximum number of side-effect-free checks whether setup tasks are needed that run concurrently on the I/O lane of the task scheduler,
+   * or <code>0</code> (the default) to check all tasks one after the other.
+   */
+  public static final String PROP_SETUP_NEEDED_THREADS = "oomph.setup.needed.threads"; //$NON-NLS-1$
+
+  /**
+   * The maximum total number of characters of the compiled string templates that are shared by all string expanders, which defaults to 1000000.
+   */
+  public static final String PROP_SETUP_STRING_TEMPLATES = "oomph.setup.string.templates"; //$NON-NLS-1$
+
+  /**
+   * If set to true, the composed setup tasks of the startup trigger are stored in the global state location and reused by later startups with unchanged inputs.
+   */
+  public static final String PROP_SETUP_COMPOSITION_CACHE = "oomph.setup.composition.cache"; //$NON-NLS-1$
+
   public static final String PROP_INSTALLER_UPDATE_URL = "oomph.installer.update.url"; //$NON-NLS-1$
 
   public static final String PROP_SETUP_USER_AGENT = "oomph.userAgent"; //$NON-NLS-1$
@@ -296,6 +296,19 @@ public interface SetupTask extends ModelElement
 
   int getProgressMonitorWork();
 
+  /**
+   * Returns a token that identifies what this task needs exclusive access to when tasks are performed in parallel,
+   * or <code>null</code> if this task must not be performed concurrently with any other task.
+   * Tasks with equal tokens are performed one after the other.
+   */
+  Object getExclusivityToken();
+
+  /**
+   * Returns whether {@link #isNeeded(SetupTaskContext)} only reads the context and modifies nothing but the transient state of this task,
+   * such that it can be called concurrently with the checks of other tasks.
+   */
+  boolean isNeededSideEffectFree();
+
   boolean isNeeded(SetupTaskContext context) throws Exception;
 
   void perform(SetupTaskContext context) throws Exception;
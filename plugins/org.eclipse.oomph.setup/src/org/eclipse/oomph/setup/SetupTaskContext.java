@@ -75,6 +75,10 @@ public interface SetupTaskContext extends ProgressLog
 
   public Object put(Object key, Object value);
 
+  /**
+   * Returns a live view of the keys of the variables of this context.
+   * Callers that iterate over it while tasks may be performed in parallel must synchronize on this context, which excludes concurrent {@link #put(Object, Object) puts}.
+   */
   public Set<Object> keySet();
 
   public String getLauncherName();
@@ -41,14 +41,10 @@ public class Messages extends NLS
 
   public static String ResourceCopyTaskImpl_CopyingResource_message;
 
-  public static String ResourceCopyTaskImpl_DownloadingResource_message;
-
   public static String ResourceCopyTaskImpl_UnsupportedCopyingFolder_message;
 
   public static String ResourceCopyTaskImpl_UnzippingResource_message;
 
-  public static String ResourceCopyTaskImpl_UnzippingTempFile_message;
-
   public static String ResourceCreationTaskImpl_Creating_message;
 
   public static String StringSubstitutionTaskImpl_SettingVariable_message;
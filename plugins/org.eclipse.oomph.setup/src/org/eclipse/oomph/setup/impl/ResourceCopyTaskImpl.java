@@ -353,6 +353,12 @@ public class ResourceCopyTaskImpl extends SetupTaskImpl implements ResourceCopyT
     return uri.hasTrailingPathSeparator() || uri.lastSegment() == null;
   }
 
+  @Override
+  public boolean isNeededSideEffectFree()
+  {
+    return true;
+  }
+
   public boolean isNeeded(SetupTaskContext context) throws Exception
   {
     URI sourceURI = createResolvedURI(getSourceURL());
@@ -415,19 +421,25 @@ public class ResourceCopyTaskImpl extends SetupTaskImpl implements ResourceCopyT
         if (normalizedSourceURI.isArchive() && isFile(normalizedTargetURI))
         {
           URI archiveURI = getArchiveURI(normalizedSourceURI);
+          context.log(NLS.bind(Messages.ResourceCopyTaskImpl_UnzippingResource_message, normalizedSourceURI, normalizedTargetURI));
           if (isFile(archiveURI))
           {
-            context.log(NLS.bind(Messages.ResourceCopyTaskImpl_UnzippingResource_message, normalizedSourceURI, normalizedTargetURI));
             ZIPUtil.unzip(new File(archiveURI.toFileString()), new File(normalizedTargetURI.toFileString()));
           }
           else
           {
-            File tempZipFile = File.createTempFile("archive", "zip"); //$NON-NLS-1$ //$NON-NLS-2$
-            context.log(NLS.bind(Messages.ResourceCopyTaskImpl_DownloadingResource_message, uriConverter.normalize(archiveURI), tempZipFile));
-            copy(uriConverter, archiveURI, URI.createFileURI(tempZipFile.getAbsolutePath()));
-
-            context.log(NLS.bind(Messages.ResourceCopyTaskImpl_UnzippingTempFile_message, tempZipFile, normalizedTargetURI));
-            ZIPUtil.unzip(tempZipFile, new File(normalizedTargetURI.toFileString()));
+            // Unzip the remote archive while it's being downloaded, rather than downloading it to a temp file first.
+            InputStream input = null;
+
+            try
+            {
+              input = uriConverter.createInputStream(archiveURI, Collections.singletonMap(OPTION_ZIP_CACHE, Boolean.FALSE));
+              ZIPUtil.unzip(input, new ZIPUtil.FileSystemUnzipHandler(new File(normalizedTargetURI.toFileString())));
+            }
+            finally
+            {
+              IOUtil.closeSilent(input);
+            }
           }
         }
         else if (isFile(normalizedTargetURI) && isFile(normalizedSourceURI))
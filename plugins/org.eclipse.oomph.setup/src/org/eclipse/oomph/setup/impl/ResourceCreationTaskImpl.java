@@ -396,6 +396,12 @@ public class ResourceCreationTaskImpl extends SetupTaskImpl implements ResourceC
     return createToken(getTargetURL());
   }
 
+  @Override
+  public boolean isNeededSideEffectFree()
+  {
+    return true;
+  }
+
   public boolean isNeeded(SetupTaskContext context) throws Exception
   {
     URI targetURI = createResolvedURI(getTargetURL());
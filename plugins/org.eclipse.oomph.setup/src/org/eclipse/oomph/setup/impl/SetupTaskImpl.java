@@ -633,6 +633,22 @@ public abstract class SetupTaskImpl extends ModelElementImpl implements SetupTas
     return 1;
   }
 
+  /**
+   * Subclasses may override to allow this task to be performed concurrently with other tasks.
+   */
+  public Object getExclusivityToken()
+  {
+    return null;
+  }
+
+  /**
+   * Subclasses may override to allow {@link #isNeeded(SetupTaskContext)} to be called concurrently with the checks of other tasks.
+   */
+  public boolean isNeededSideEffectFree()
+  {
+    return false;
+  }
+
   /**
    * Subclasses may override to reset this task to its initial state.
    */
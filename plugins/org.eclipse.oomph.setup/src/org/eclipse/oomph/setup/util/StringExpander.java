@@ -10,11 +10,20 @@
  */
 package org.eclipse.oomph.setup.util;
 
+import org.eclipse.oomph.internal.setup.SetupProperties;
+import org.eclipse.oomph.util.PropertiesUtil;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -70,6 +79,8 @@ public abstract class StringExpander
     }
   }
 
+  private Memo memo;
+
   protected static String resolve(StringExpander stringExpander, String key)
   {
     return stringExpander.resolve(key);
@@ -108,54 +119,163 @@ public abstract class StringExpander
       return null;
     }
 
-    StringBuilder result = new StringBuilder();
-    int previous = 0;
-    boolean unresolved = false;
-    for (Matcher matcher = StringExpander.STRING_EXPANSION_PATTERN.matcher(string); matcher.find();)
+    if (string.indexOf('$') == -1)
+    {
+      return string;
+    }
+
+    if (memo != null)
+    {
+      return memo.expandString(string, keys);
+    }
+
+    return Template.compile(string).expand(this, keys);
+  }
+
+  /**
+   * Starts or stops memoizing the expansions of this expander.
+   * While memoizing, each string is expanded only once, until one of the variables that it references is {@link #invalidate(String) invalidated}.
+   * Subclasses that memoize must invalidate a key whenever the result of {@link #resolve(String)} or {@link #isUnexpanded(String)} for that key changes.
+   * The memo is not thread-safe.
+   */
+  protected final void setMemoizing(boolean memoizing)
+  {
+    if (!memoizing)
+    {
+      memo = null;
+    }
+    else if (memo == null)
+    {
+      memo = new Memo();
+    }
+  }
+
+  /**
+   * Discards the memoized expansions of the strings that reference the given key.
+   * Keys that differ only in '.' versus '_' are considered the same.
+   */
+  protected final void invalidate(String key)
+  {
+    if (memo != null)
+    {
+      memo.invalidate(key);
+    }
+  }
+
+  /**
+   * A string that has been parsed into literal, escaped dollar, and variable segments, so that it can be expanded repeatedly without matching the
+   * {@link StringExpander#STRING_EXPANSION_PATTERN expansion pattern} again.
+   * The templates are shared by all expanders in a cache that's bounded by the total length of their strings,
+   * so that a few very long strings can't occupy more memory than many short ones.
+   *
+   * @author Eike Stepper
+   */
+  public static final class Template
+  {
+    private static final long CACHE_LENGTH = PropertiesUtil.getProperty(SetupProperties.PROP_SETUP_STRING_TEMPLATES, 1000000);
+
+    /**
+     * The templates in the order of their last use, guarded by itself.
+     */
+    private static final Map<String, Template> CACHE = new LinkedHashMap<String, Template>(16, 0.75f, true);
+
+    /**
+     * The total length of the strings of the templates in the {@link #CACHE}, guarded by the cache.
+     */
+    private static long cacheLength;
+
+    private static final Segment[] NO_SEGMENTS = {};
+
+    private final String string;
+
+    private final Segment[] segments;
+
+    private final Set<String> keys;
+
+    private Template(String string, Segment[] segments)
     {
-      result.append(string.substring(previous, matcher.start()));
-      String key = matcher.group(1);
-      if ("$".equals(key)) //$NON-NLS-1$
+      this.string = string;
+      this.segments = segments;
+
+      Set<String> keys = new LinkedHashSet<String>();
+      for (Segment segment : segments)
       {
-        result.append('$');
+        if (segment.key != null)
+        {
+          keys.add(segment.key);
+        }
       }
-      else
+
+      this.keys = Collections.unmodifiableSet(keys);
+    }
+
+    public String getString()
+    {
+      return string;
+    }
+
+    /**
+     * Returns the keys of the variables that this template references, in the order of their first occurrence.
+     * An escaped dollar sign is represented by the key <code>$</code>.
+     */
+    public Set<String> getKeys()
+    {
+      return keys;
+    }
+
+    /**
+     * Expands this template as {@link StringExpander#expandString(String, Set)} does.
+     */
+    public String expand(StringExpander stringExpander, Set<String> keys)
+    {
+      if (segments.length == 0)
       {
-        key = matcher.group(2);
-        boolean isUnexpanded = isUnexpanded(key);
+        return string;
+      }
 
-        String value = isUnexpanded ? null : resolve(key);
-        if (value == null)
+      StringBuilder result = new StringBuilder(string.length());
+      boolean unresolved = false;
+      for (Segment segment : segments)
+      {
+        if (segment.key == null)
         {
-          if (keys != null)
+          result.append(segment.text);
+        }
+        else if (segment.extensions == null)
+        {
+          result.append('$');
+        }
+        else
+        {
+          String key = segment.key;
+          boolean isUnexpanded = stringExpander.isUnexpanded(key);
+
+          String value = isUnexpanded ? null : stringExpander.resolve(key);
+          if (value == null)
           {
-            unresolved = true;
+            if (keys != null)
+            {
+              unresolved = true;
 
-            if (!isUnexpanded)
+              if (!isUnexpanded)
+              {
+                keys.add(key);
+              }
+            }
+            else if (!unresolved)
             {
-              keys.add(key);
+              result.append(segment.text);
             }
           }
-          else if (!unresolved)
-          {
-            result.append(matcher.group());
-          }
-        }
-        else
-        {
-          String extensions = matcher.group(3);
-          if (extensions != null)
+          else
           {
-            ExtensionParser parser = new ExtensionParser(extensions);
-            Extension extension;
-
-            while ((extension = parser.parseNext()) != null)
+            for (Extension extension : segment.extensions)
             {
               if (extension.filter)
               {
                 if (extension.name.length() != 0)
                 {
-                  value = filter(value, extension.name);
+                  value = stringExpander.filter(value, extension.name);
                   if (value == null)
                   {
                     if (keys != null)
@@ -169,7 +289,7 @@ public abstract class StringExpander
                     }
                     else if (!unresolved)
                     {
-                      result.append(matcher.group());
+                      result.append(segment.text);
                     }
 
                     continue;
@@ -180,31 +300,291 @@ public abstract class StringExpander
               {
                 if (!value.endsWith("/") && !value.endsWith("\\")) //$NON-NLS-1$ //$NON-NLS-2$
                 {
-                  value += getFileSeparator();
+                  value += stringExpander.getFileSeparator();
                 }
 
                 value += extension.name;
               }
             }
+
+            if (!unresolved)
+            {
+              result.append(value);
+            }
           }
+        }
+      }
+
+      if (unresolved)
+      {
+        return null;
+      }
 
-          if (!unresolved)
+      return result.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+      return string;
+    }
+
+    /**
+     * Returns the template for the given string, which is parsed only if it isn't already in the cache.
+     */
+    public static Template compile(String string)
+    {
+      if (string.indexOf('$') == -1)
+      {
+        return new Template(string, NO_SEGMENTS);
+      }
+
+      Template template;
+      synchronized (CACHE)
+      {
+        template = CACHE.get(string);
+      }
+
+      if (template == null)
+      {
+        template = new Template(string, parse(string));
+
+        synchronized (CACHE)
+        {
+          if (CACHE.put(string, template) == null)
+          {
+            cacheLength += string.length();
+          }
+
+          // Evict the least recently used templates, which may include this one if its string alone exceeds the bound.
+          for (Iterator<Template> it = CACHE.values().iterator(); cacheLength > CACHE_LENGTH && it.hasNext();)
           {
-            result.append(value);
+            cacheLength -= it.next().string.length();
+            it.remove();
           }
         }
       }
 
-      previous = matcher.end();
+      return template;
+    }
+
+    /**
+     * Splits the given string into segments exactly where {@link StringExpander#STRING_EXPANSION_PATTERN} would find its matches.
+     */
+    private static Segment[] parse(String string)
+    {
+      List<Segment> segments = new ArrayList<Segment>();
+      int length = string.length();
+      int previous = 0;
+
+      for (int start = string.indexOf('$'); start != -1;)
+      {
+        Segment segment = parseVariable(string, start);
+        if (segment == null && start + 1 < length && string.charAt(start + 1) == '$')
+        {
+          segment = Segment.DOLLAR;
+        }
+
+        if (segment == null)
+        {
+          start = string.indexOf('$', start + 1);
+          continue;
+        }
+
+        if (start > previous)
+        {
+          segments.add(new Segment(string.substring(previous, start), null, null));
+        }
+
+        segments.add(segment);
+        previous = start + segment.text.length();
+        start = string.indexOf('$', previous);
+      }
+
+      if (previous == 0 && segments.isEmpty())
+      {
+        return NO_SEGMENTS;
+      }
+
+      if (previous < length)
+      {
+        segments.add(new Segment(string.substring(previous), null, null));
+      }
+
+      return segments.toArray(new Segment[segments.size()]);
     }
 
-    if (unresolved)
+    private static Segment parseVariable(String string, int start)
     {
+      int length = string.length();
+      int i = start + 1;
+      if (i == length || string.charAt(i) != '{')
+      {
+        return null;
+      }
+
+      int keyStart = ++i;
+      while (i < length && "${}|/".indexOf(string.charAt(i)) == -1) //$NON-NLS-1$
+      {
+        ++i;
+      }
+
+      int keyEnd = i;
+      if (keyEnd == keyStart)
+      {
+        return null;
+      }
+
+      while (i < length)
+      {
+        char c = string.charAt(i);
+        if (c == '}')
+        {
+          List<Extension> extensions = new ArrayList<Extension>();
+          ExtensionParser parser = new ExtensionParser(string.substring(keyEnd, i));
+          Extension extension;
+
+          while ((extension = parser.parseNext()) != null)
+          {
+            extensions.add(extension);
+          }
+
+          return new Segment(string.substring(start, i + 1), string.substring(keyStart, keyEnd), extensions.toArray(new Extension[extensions.size()]));
+        }
+
+        if (c != '|' && c != '/')
+        {
+          return null;
+        }
+
+        while (++i < length && "{}|/".indexOf(string.charAt(i)) == -1) //$NON-NLS-1$
+        {
+          // Skip the extension name.
+        }
+      }
+
       return null;
     }
+  }
+
+  /**
+   * A literal segment has neither a key nor extensions, an escaped dollar has the key <code>$</code> but no extensions,
+   * and a variable has a key and extensions.
+   *
+   * @author Eike Stepper
+   */
+  private static final class Segment
+  {
+    public static final Segment DOLLAR = new Segment("$$", "$", null); //$NON-NLS-1$ //$NON-NLS-2$
+
+    public final String text;
+
+    public final String key;
+
+    public final Extension[] extensions;
+
+    public Segment(String text, String key, Extension[] extensions)
+    {
+      this.text = text;
+      this.key = key;
+      this.extensions = extensions;
+    }
+  }
 
-    result.append(string.substring(previous));
-    return result.toString();
+  /**
+   * @author Eike Stepper
+   */
+  private final class Memo
+  {
+    private final Map<String, Expansion> expansions = new HashMap<String, Expansion>();
+
+    private final Map<String, Expansion> trackingExpansions = new HashMap<String, Expansion>();
+
+    private final Map<String, Set<String>> dependentStrings = new HashMap<String, Set<String>>();
+
+    public String expandString(String string, Set<String> keys)
+    {
+      Map<String, Expansion> map = keys == null ? expansions : trackingExpansions;
+      Expansion expansion = map.get(string);
+      if (expansion == null)
+      {
+        Template template = Template.compile(string);
+        Set<String> unresolvedKeys = keys == null ? null : new LinkedHashSet<String>();
+        String value;
+
+        try
+        {
+          value = template.expand(StringExpander.this, unresolvedKeys);
+        }
+        catch (RuntimeException ex)
+        {
+          // Report the keys that were collected before the failure, as an expansion without memo does.
+          if (keys != null)
+          {
+            keys.addAll(unresolvedKeys);
+          }
+
+          throw ex;
+        }
+
+        expansion = new Expansion(value, unresolvedKeys);
+        map.put(string, expansion);
+
+        for (String key : template.getKeys())
+        {
+          String normalizedKey = normalize(key);
+          Set<String> strings = dependentStrings.get(normalizedKey);
+          if (strings == null)
+          {
+            strings = new HashSet<String>();
+            dependentStrings.put(normalizedKey, strings);
+          }
+
+          strings.add(string);
+        }
+      }
+
+      if (keys != null)
+      {
+        keys.addAll(expansion.unresolvedKeys);
+      }
+
+      return expansion.value;
+    }
+
+    public void invalidate(String key)
+    {
+      Set<String> strings = dependentStrings.remove(normalize(key));
+      if (strings != null)
+      {
+        for (String string : strings)
+        {
+          expansions.remove(string);
+          trackingExpansions.remove(string);
+        }
+      }
+    }
+
+    private String normalize(String key)
+    {
+      return key.replace('.', '_');
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class Expansion
+  {
+    public final String value;
+
+    public final Set<String> unresolvedKeys;
+
+    public Expansion(String value, Set<String> unresolvedKeys)
+    {
+      this.value = value;
+      this.unresolvedKeys = unresolvedKeys;
+    }
   }
 
   /**
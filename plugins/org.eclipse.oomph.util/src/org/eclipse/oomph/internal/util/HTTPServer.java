@@ -14,55 +14,93 @@ import org.eclipse.oomph.util.HexUtil;
 import org.eclipse.oomph.util.IOExceptionWithCause;
 import org.eclipse.oomph.util.IOUtil;
 import org.eclipse.oomph.util.OomphPlugin.BundleFile;
+import org.eclipse.oomph.util.PropertiesUtil;
 import org.eclipse.oomph.util.StringUtil;
 
 import org.eclipse.core.runtime.Platform;
 
 import org.osgi.framework.Bundle;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.BindException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * A small HTTP/1.1 server for the contents of {@link Context contexts}.
+ * <p>
+ * A single dispatcher thread accepts the connections, waits for requests on idle connections, and reads the request headers without blocking.
+ * Complete requests are handled by a bounded pool of worker threads, as many as specified by the <code>oomph.http.server.threads</code> system property,
+ * which defaults to twice the number of available processors.
+ * Connections are kept alive between requests and closed when they've been idle for 15 seconds.
+ * Not more connections than specified by the <code>oomph.http.server.max.connections</code> system property, which defaults to 256, are accepted at the same time.
+ * <p>
+ * Files of known length are served with an ETag, support conditional requests with <code>If-None-Match</code> and <code>If-Modified-Since</code>,
+ * support single byte ranges, and are transferred directly from their file channels to the sockets, where the context supports that.
+ *
  * @author Eike Stepper
  */
 @SuppressWarnings("nls")
 public final class HTTPServer
 {
+  public static final String PROP_THREADS = "oomph.http.server.threads";
+
+  public static final String PROP_MAX_CONNECTIONS = "oomph.http.server.max.connections";
+
   private static final boolean DEBUG = false;
 
   private static final boolean DEBUG_REQUEST = false;
 
   private static final boolean DEBUG_RESPONSE = false;
 
+  private static final int THREADS = Math.max(1, PropertiesUtil.getProperty(PROP_THREADS, Runtime.getRuntime().availableProcessors() * 2));
+
+  private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final long KEEP_ALIVE_TIMEOUT = 15000;
+
+  private static final long SELECT_TIMEOUT = 1000;
+
+  private static final String HEADER_CHARSET = "ISO-8859-1";
+
+  private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+
   private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
 
   private static final ImageContext IMAGE_CONTEXT = new ImageContext();
@@ -73,23 +111,31 @@ public final class HTTPServer
 
   private static final String STATUS_OK = "200 OK";
 
+  private static final String STATUS_PARTIAL_CONTENT = "206 Partial Content";
+
   private static final String STATUS_SEE_OTHER = "303 See Other";
 
+  private static final String STATUS_NOT_MODIFIED = "304 Not Modified";
+
   private static final String STATUS_BAD_REQUEST = "400 Bad Request";
 
   private static final String STATUS_FORBIDDEN = "403 Forbidden";
 
   private static final String STATUS_NOT_FOUND = "404 Not Found";
 
+  private static final String STATUS_RANGE_NOT_SATISFIABLE = "416 Range Not Satisfiable";
+
   private static final String STATUS_INTERNAL_SERVER_ERROR = "500 Internal Server Error";
 
   private static final String STATUS_NOT_IMPLEMENTED = "501 Not Implemented";
 
   private final List<Context> contexts = new ArrayList<Context>();
 
-  private final ExecutorService threadPool = Executors.newCachedThreadPool();
+  private final int maxConnections = Math.max(1, PropertiesUtil.getProperty(PROP_MAX_CONNECTIONS, 256));
+
+  private final ThreadPoolExecutor threadPool;
 
-  private Acceptor acceptor;
+  private Dispatcher dispatcher;
 
   public HTTPServer() throws IOException
   {
@@ -100,32 +146,51 @@ public final class HTTPServer
   {
     addContext(IMAGE_CONTEXT);
 
+    threadPool = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+    {
+      private final AtomicInteger counter = new AtomicInteger();
+
+      public Thread newThread(Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, "Httpd Worker " + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    threadPool.allowCoreThreadTimeOut(true);
+
     for (int port = minPort; port <= maxPort; port++)
     {
+      ServerSocketChannel serverChannel = ServerSocketChannel.open();
+
       try
       {
-        ServerSocket serverSocket = new ServerSocket(port, 500);
-        acceptor = new Acceptor(serverSocket);
+        serverChannel.socket().bind(new InetSocketAddress(port), 500);
+        dispatcher = new Dispatcher(serverChannel);
         return;
       }
       catch (BindException ex)
       {
         // Try next port.
+        IOUtil.closeSilent(serverChannel);
       }
       catch (InterruptedException ex)
       {
+        IOUtil.closeSilent(serverChannel);
         throw new IOExceptionWithCause("Start interrupted", ex);
       }
     }
 
+    threadPool.shutdown();
     throw new IOException("No port available between " + minPort + " and " + maxPort);
   }
 
   public int getPort()
   {
-    if (acceptor != null)
+    if (dispatcher != null)
     {
-      return acceptor.getPort();
+      return dispatcher.getPort();
     }
 
     return 0;
@@ -133,7 +198,7 @@ public final class HTTPServer
 
   public String getURL()
   {
-    int port = acceptor != null ? acceptor.getPort() : 0;
+    int port = dispatcher != null ? dispatcher.getPort() : 0;
     return LOCALHOST + port;
   }
 
@@ -161,11 +226,29 @@ public final class HTTPServer
     return null;
   }
 
+  private synchronized List<Context> getContexts()
+  {
+    return new ArrayList<Context>(contexts);
+  }
+
+  /**
+   * Returns the number of currently open connections.
+   */
+  public int getConnectionCount()
+  {
+    if (dispatcher != null)
+    {
+      return dispatcher.connections.get();
+    }
+
+    return 0;
+  }
+
   public void stop() throws IOException
   {
-    if (acceptor != null)
+    if (dispatcher != null)
     {
-      acceptor.interrupt();
+      dispatcher.interrupt();
       threadPool.shutdown();
     }
   }
@@ -184,6 +267,38 @@ public final class HTTPServer
     }
   }
 
+  private static String getContentType(String fileName)
+  {
+    int lastDot = fileName == null ? -1 : fileName.lastIndexOf('.');
+    String extension = lastDot == -1 ? "txt" : fileName.substring(lastDot + 1);
+
+    String contentType = CONTENT_TYPES.get(extension);
+    if (contentType == null)
+    {
+      contentType = CONTENT_TYPES.get("txt");
+    }
+
+    return contentType;
+  }
+
+  private static int indexOfHeaderEnd(byte[] bytes, int length)
+  {
+    LOOP: for (int i = 0; i <= length - HEADER_END.length; i++)
+    {
+      for (int j = 0; j < HEADER_END.length; j++)
+      {
+        if (bytes[i + j] != HEADER_END[j])
+        {
+          continue LOOP;
+        }
+      }
+
+      return i;
+    }
+
+    return -1;
+  }
+
   static
   {
     registerContentType("application/java-archive", "jar");
@@ -229,227 +344,853 @@ public final class HTTPServer
   }
 
   /**
+   * Accepts the connections and reads the requests without blocking.
+   * Connections with a complete request are switched to blocking mode and handed over to the worker threads,
+   * which hand them back when they're kept alive.
+   *
    * @author Eike Stepper
    */
-  private final class Acceptor extends Thread
+  private final class Dispatcher extends Thread
   {
-    private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverChannel;
+
+    private final Selector selector;
 
     private final CountDownLatch started = new CountDownLatch(1);
 
-    public Acceptor(ServerSocket serverSocket) throws InterruptedException
+    private final Queue<Connection> returnedConnections = new ConcurrentLinkedQueue<Connection>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private volatile boolean stopped;
+
+    public Dispatcher(ServerSocketChannel serverChannel) throws IOException, InterruptedException
     {
       super("Httpd");
-      this.serverSocket = serverSocket;
+      this.serverChannel = serverChannel;
       setDaemon(true);
 
+      selector = Selector.open();
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
       start();
       started.await();
     }
 
     public int getPort()
     {
-      return serverSocket.getLocalPort();
+      return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void run()
+    {
+      started.countDown();
+
+      try
+      {
+        List<Connection> requestedConnections = new ArrayList<Connection>();
+        while (!stopped)
+        {
+          // Stop accepting connections while the maximum number of connections is open; the backlog of the server socket holds them until then.
+          SelectionKey serverKey = serverChannel.keyFor(selector);
+          serverKey.interestOps(connections.get() < maxConnections ? SelectionKey.OP_ACCEPT : 0);
+
+          selector.select(SELECT_TIMEOUT);
+
+          for (Connection connection; (connection = returnedConnections.poll()) != null;)
+          {
+            register(connection);
+          }
+
+          for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();)
+          {
+            SelectionKey key = it.next();
+            it.remove();
+
+            if (!key.isValid())
+            {
+              continue;
+            }
+
+            if (key.isAcceptable())
+            {
+              accept();
+            }
+            else if (key.isReadable())
+            {
+              Connection connection = (Connection)key.attachment();
+              if (connection.read())
+              {
+                key.cancel();
+                requestedConnections.add(connection);
+              }
+            }
+          }
+
+          if (!requestedConnections.isEmpty())
+          {
+            // Deregister the canceled keys, so that the channels can be switched to blocking mode.
+            selector.selectNow();
+
+            for (Connection connection : requestedConnections)
+            {
+              connection.dispatch();
+            }
+
+            requestedConnections.clear();
+          }
+
+          closeIdleConnections();
+        }
+      }
+      catch (Exception ex)
+      {
+        if (!stopped)
+        {
+          UtilPlugin.INSTANCE.log(ex);
+        }
+      }
+      finally
+      {
+        for (SelectionKey key : selector.keys())
+        {
+          Object attachment = key.attachment();
+          if (attachment instanceof Connection)
+          {
+            ((Connection)attachment).close();
+          }
+        }
+
+        IOUtil.closeSilent(selector);
+        IOUtil.closeSilent(serverChannel);
+      }
+    }
+
+    private void accept() throws IOException
+    {
+      while (connections.get() < maxConnections)
+      {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+        {
+          break;
+        }
+
+        connections.incrementAndGet();
+
+        Connection connection = new Connection(this, channel);
+        channel.socket().setTcpNoDelay(true);
+        register(connection);
+      }
+    }
+
+    private void register(Connection connection)
+    {
+      try
+      {
+        connection.channel.configureBlocking(false);
+        connection.channel.register(selector, SelectionKey.OP_READ, connection);
+      }
+      catch (IOException ex)
+      {
+        connection.close();
+      }
+    }
+
+    private void closeIdleConnections()
+    {
+      long timeout = System.currentTimeMillis() - KEEP_ALIVE_TIMEOUT;
+      for (SelectionKey key : selector.keys())
+      {
+        Object attachment = key.attachment();
+        if (attachment instanceof Connection && ((Connection)attachment).lastActivity < timeout)
+        {
+          key.cancel();
+          ((Connection)attachment).close();
+        }
+      }
+    }
+
+    /**
+     * Called by the worker threads.
+     */
+    private void returnConnection(Connection connection)
+    {
+      returnedConnections.add(connection);
+      selector.wakeup();
+    }
+
+    /**
+     * Called by the worker threads and by the dispatcher thread.
+     */
+    private void connectionClosed()
+    {
+      connections.decrementAndGet();
+      selector.wakeup();
+    }
+
+    @Override
+    public void interrupt()
+    {
+      stopped = true;
+      selector.wakeup();
+    }
+  }
+
+  /**
+   * A connection whose requests are read by the {@link Dispatcher dispatcher} and handled by a worker thread.
+   *
+   * @author Eike Stepper
+   */
+  private final class Connection implements Runnable
+  {
+    private final Dispatcher dispatcher;
+
+    private final SocketChannel channel;
+
+    private final ByteBuffer input = ByteBuffer.allocate(MAX_HEADER_SIZE);
+
+    private long lastActivity = System.currentTimeMillis();
+
+    private boolean closed;
+
+    public Connection(Dispatcher dispatcher, SocketChannel channel)
+    {
+      this.dispatcher = dispatcher;
+      this.channel = channel;
+    }
+
+    /**
+     * Reads the available bytes and returns whether a complete request header has been read.
+     * Called by the dispatcher thread.
+     */
+    public boolean read()
+    {
+      try
+      {
+        if (channel.read(input) == -1)
+        {
+          close();
+          return false;
+        }
+
+        lastActivity = System.currentTimeMillis();
+        if (hasRequest())
+        {
+          return true;
+        }
+
+        if (!input.hasRemaining())
+        {
+          // The request header is too large.
+          close();
+        }
+      }
+      catch (IOException ex)
+      {
+        close();
+      }
+
+      return false;
+    }
+
+    /**
+     * Switches this connection to blocking mode and hands it over to a worker thread.
+     * Called by the dispatcher thread.
+     */
+    public void dispatch()
+    {
+      try
+      {
+        channel.configureBlocking(true);
+        threadPool.execute(this);
+      }
+      catch (Exception ex)
+      {
+        close();
+      }
+    }
+
+    /**
+     * Handles the requests that have been read and returns the connection to the {@link Dispatcher dispatcher} if it's kept alive.
+     * Called by a worker thread.
+     */
+    public void run()
+    {
+      try
+      {
+        boolean keepAlive;
+        do
+        {
+          keepAlive = handleRequest(takeRequest());
+        } while (keepAlive && hasRequest());
+
+        if (keepAlive)
+        {
+          lastActivity = System.currentTimeMillis();
+          dispatcher.returnConnection(this);
+          return;
+        }
+      }
+      catch (Exception ex)
+      {
+        if (DEBUG || !(ex instanceof IOException))
+        {
+          UtilPlugin.INSTANCE.log(ex);
+        }
+      }
+
+      close();
+    }
+
+    public synchronized void close()
+    {
+      if (!closed)
+      {
+        closed = true;
+        IOUtil.closeSilent(channel);
+        dispatcher.connectionClosed();
+      }
+    }
+
+    private boolean hasRequest()
+    {
+      return indexOfHeaderEnd(input.array(), input.position()) != -1;
+    }
+
+    private String takeRequest() throws IOException
+    {
+      byte[] bytes = input.array();
+      int length = input.position();
+      int end = indexOfHeaderEnd(bytes, length);
+
+      String request = new String(bytes, 0, end, HEADER_CHARSET);
+
+      // Keep the bytes of pipelined requests.
+      int next = end + HEADER_END.length;
+      System.arraycopy(bytes, next, bytes, 0, length - next);
+      input.position(length - next);
+
+      return request;
+    }
+
+    /**
+     * Handles the given request and returns whether the connection is kept alive.
+     */
+    private boolean handleRequest(String request) throws IOException
+    {
+      if (DEBUG_REQUEST)
+      {
+        System.out.println();
+        System.out.println(request);
+      }
+
+      String[] lines = request.split("\r\n");
+      String[] tokens = lines[0].split(" ");
+
+      Map<String, String> headers = new HashMap<String, String>();
+      for (int i = 1; i < lines.length; i++)
+      {
+        String line = lines[i];
+        int colon = line.indexOf(':');
+        if (colon != -1)
+        {
+          headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+      }
+
+      String method = tokens[0];
+      boolean head = "HEAD".equalsIgnoreCase(method);
+
+      String connectionHeader = headers.get("connection");
+      boolean keepAlive = tokens.length >= 3 && "HTTP/1.1".equals(tokens[2]) ? !"close".equalsIgnoreCase(connectionHeader)
+          : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+      Exchange exchange = new Exchange(channel, headers, !head, keepAlive);
+
+      try
+      {
+        if (tokens.length < 2)
+        {
+          exchange.setKeepAlive(false);
+          exchange.sendStatus(STATUS_BAD_REQUEST);
+        }
+        else if (!head && !"GET".equalsIgnoreCase(method))
+        {
+          // The body of the request isn't read, so it would be taken as the next request if the connection were kept alive.
+          exchange.setKeepAlive(false);
+          exchange.sendStatus(STATUS_NOT_IMPLEMENTED);
+        }
+        else
+        {
+          handleRequest(tokens[1], exchange);
+        }
+      }
+      catch (IOException ex)
+      {
+        throw ex;
+      }
+      catch (Exception ex)
+      {
+        UtilPlugin.INSTANCE.log(ex);
+        if (exchange.isCommitted())
+        {
+          return false;
+        }
+
+        exchange.setKeepAlive(false);
+        exchange.sendStatus(STATUS_INTERNAL_SERVER_ERROR);
+      }
+
+      return exchange.isKeepAlive();
+    }
+
+    private void handleRequest(String target, Exchange exchange) throws Exception
+    {
+      URI uri = new URI("xxx:" + target);
+      String path = Context.decodePath(uri.getPath());
+
+      Context context = getContext(path);
+      if (context == null)
+      {
+        if (PATH_SEPARATOR.equals(path))
+        {
+          StringBuilder builder = new StringBuilder();
+          for (Context c : getContexts())
+          {
+            if (c != IMAGE_CONTEXT)
+            {
+              String href = c.getPath();
+              builder.append("<img src=\"" + ImageContext.CONTEXT_PATH + ImageContext.NAME_CONTEXT + "\" valign=\"middle\"/> <a href=\"" + href
+                  + PATH_SEPARATOR + "\">" + href + "</a><br>\r\n");
+            }
+          }
+
+          exchange.sendHTML(builder);
+          return;
+        }
+
+        exchange.sendStatus(STATUS_NOT_FOUND);
+        return;
+      }
+
+      path = path.substring(context.getPath().length());
+      if (!path.startsWith(PATH_SEPARATOR))
+      {
+        path = PATH_SEPARATOR + path;
+      }
+
+      if (DEBUG)
+      {
+        System.out.println(context + " " + path);
+      }
+
+      context.handleRequest(path, exchange);
+    }
+  }
+
+  /**
+   * The response to a single request.
+   *
+   * @author Eike Stepper
+   */
+  public static final class Exchange
+  {
+    private final SocketChannel channel;
+
+    private final Map<String, String> headers;
+
+    private final boolean responseBody;
+
+    private boolean keepAlive;
+
+    private boolean committed;
+
+    private Exchange(SocketChannel channel, Map<String, String> headers, boolean responseBody, boolean keepAlive)
+    {
+      this.channel = channel;
+      this.headers = headers;
+      this.responseBody = responseBody;
+      this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Returns the value of the request header with the given case-insensitive name, or <code>null</code> if there's no such header.
+     */
+    public String getHeader(String name)
+    {
+      return headers.get(name.toLowerCase());
+    }
+
+    /**
+     * Returns <code>false</code> if the request is a HEAD request, <code>true</code> otherwise.
+     */
+    public boolean isResponseBody()
+    {
+      return responseBody;
+    }
+
+    public boolean isKeepAlive()
+    {
+      return keepAlive;
+    }
+
+    private void setKeepAlive(boolean keepAlive)
+    {
+      this.keepAlive = keepAlive;
+    }
+
+    public boolean isCommitted()
+    {
+      return committed;
+    }
+
+    /**
+     * Sends a response with the given status and a plain text body with that status.
+     */
+    public void sendStatus(String status) throws IOException
+    {
+      byte[] body = (status + "\r\n").getBytes(HEADER_CHARSET);
+      sendHeader(status, null, 0, null, body.length, null, null);
+      sendBody(body);
+    }
+
+    /**
+     * Sends a redirection to the given location.
+     */
+    public void sendRedirect(String location) throws IOException
+    {
+      byte[] body = (STATUS_SEE_OTHER + "\r\n").getBytes(HEADER_CHARSET);
+      sendHeader(STATUS_SEE_OTHER, null, 0, null, body.length, null, location);
+      sendBody(body);
+    }
+
+    /**
+     * Sends the given HTML body.
+     */
+    public void sendHTML(CharSequence html) throws IOException
+    {
+      byte[] body = html.toString().getBytes("UTF-8");
+      sendHeader(STATUS_OK, "index.html", 0, null, body.length, null, null);
+      sendBody(body);
     }
 
-    @Override
-    public void run()
+    /**
+     * Sends the contents of the given path of the given context,
+     * or only the requested range of them, or only a header if they haven't been modified since they were last requested.
+     */
+    public void sendContents(Context context, String path) throws IOException
     {
-      started.countDown();
+      long lastModified = context.getLastModified(path);
+      long length = context.getLength(path);
+      String etag = length >= 0 ? "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"" : null;
 
-      while (true)
+      if (isNotModified(etag, lastModified))
       {
-        try
+        sendHeader(STATUS_NOT_MODIFIED, path, lastModified, etag, -1, null, null);
+        return;
+      }
+
+      String status = STATUS_OK;
+      String contentRange = null;
+      long start = 0;
+      long count = length;
+
+      String range = getHeader("Range");
+      if (range != null && etag != null && isIfRangeSatisfied(etag, lastModified))
+      {
+        long[] bounds = parseRange(range, length);
+        if (bounds != null)
         {
-          Socket socket = serverSocket.accept();
-          RequestHandler requestHandler = new RequestHandler(socket);
-          threadPool.execute(requestHandler);
+          if (bounds.length == 0)
+          {
+            sendHeader(STATUS_RANGE_NOT_SATISFIABLE, null, 0, null, 0, "bytes */" + length, null);
+            return;
+          }
+
+          status = STATUS_PARTIAL_CONTENT;
+          start = bounds[0];
+          count = bounds[1] - start + 1;
+          contentRange = "bytes " + start + "-" + bounds[1] + "/" + length;
         }
-        catch (Exception ex)
+      }
+
+      sendHeader(status, path, lastModified, etag, count, contentRange, null);
+
+      if (responseBody && count != 0)
+      {
+        FileChannel fileChannel = context.getChannel(path);
+        if (fileChannel != null)
         {
-          if (interrupted())
+          try
           {
-            return;
+            transfer(fileChannel, start, count);
           }
+          finally
+          {
+            IOUtil.close(fileChannel);
+          }
+        }
+        else
+        {
+          InputStream stream = null;
 
-          UtilPlugin.INSTANCE.log(ex);
+          try
+          {
+            stream = context.getContents(path);
+            transfer(stream, start, count);
+          }
+          finally
+          {
+            IOUtil.close(stream);
+          }
         }
       }
     }
 
-    @Override
-    public void interrupt()
+    private boolean isNotModified(String etag, long lastModified)
     {
-      try
+      String ifNoneMatch = getHeader("If-None-Match");
+      if (ifNoneMatch != null)
       {
-        super.interrupt();
+        if (etag == null)
+        {
+          return false;
+        }
+
+        for (String tag : ifNoneMatch.split(","))
+        {
+          tag = tag.trim();
+          if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag))
+          {
+            return true;
+          }
+        }
+
+        return false;
       }
-      finally
+
+      String ifModifiedSince = getHeader("If-Modified-Since");
+      if (ifModifiedSince != null && lastModified != 0)
       {
-        IOUtil.closeSilent(serverSocket);
+        long date = parseDate(ifModifiedSince);
+        return date != -1 && lastModified / 1000 <= date / 1000;
       }
-    }
-  }
 
-  /**
-   * @author Eike Stepper
-   */
-  private final class RequestHandler implements Runnable
-  {
-    private final Socket socket;
+      return false;
+    }
 
-    public RequestHandler(Socket socket)
+    private boolean isIfRangeSatisfied(String etag, long lastModified)
     {
-      this.socket = socket;
+      String ifRange = getHeader("If-Range");
+      if (ifRange == null)
+      {
+        return true;
+      }
+
+      if (ifRange.startsWith("\""))
+      {
+        return ifRange.equals(etag);
+      }
+
+      long date = parseDate(ifRange);
+      return date != -1 && lastModified / 1000 == date / 1000;
     }
 
-    public void run()
+    /**
+     * Returns the first and last position of the given single byte range,
+     * an empty array if the range can't be satisfied,
+     * or <code>null</code> if the range is malformed or consists of multiple ranges, in which case the entire contents are sent.
+     */
+    private static long[] parseRange(String range, long length)
     {
-      InputStream inputStream = null;
-      OutputStream outputStream = null;
+      if (!range.startsWith("bytes=") || range.indexOf(',') != -1)
+      {
+        return null;
+      }
+
+      String spec = range.substring("bytes=".length()).trim();
+      int dash = spec.indexOf('-');
+      if (dash == -1)
+      {
+        return null;
+      }
 
       try
       {
-        try
-        {
-          inputStream = socket.getInputStream();
-          outputStream = socket.getOutputStream();
-        }
-        catch (Exception ex)
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        if (first.length() == 0)
         {
-          if (isBadState())
+          // A suffix range with the given number of last bytes.
+          long suffix = Long.parseLong(last);
+          if (suffix <= 0 || length == 0)
           {
-            return;
+            return new long[0];
           }
 
-          UtilPlugin.INSTANCE.log(ex);
+          return new long[] { Math.max(0, length - suffix), length - 1 };
         }
 
-        if (inputStream != null && outputStream != null)
+        long start = Long.parseLong(first);
+        long end = last.length() == 0 ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+        if (start >= length)
         {
-          BufferedReader input = new BufferedReader(new InputStreamReader(inputStream));
-          DataOutputStream output = new DataOutputStream(outputStream);
-
-          try
-          {
-            handleRequest(input, output);
-          }
-          catch (Exception ex)
-          {
-            if (isBadState())
-            {
-              return;
-            }
+          return new long[0];
+        }
 
-            if (DEBUG || !(ex instanceof SocketException))
-            {
-              UtilPlugin.INSTANCE.log(ex);
-            }
+        if (end < start)
+        {
+          return null;
+        }
 
-            Context.sendResponse(output, STATUS_INTERNAL_SERVER_ERROR, null, 0, true);
-          }
+        return new long[] { start, end };
+      }
+      catch (NumberFormatException ex)
+      {
+        return null;
+      }
+    }
 
-          try
-          {
-            output.flush();
-          }
-          catch (IOException ex)
-          {
-            if (DEBUG)
-            {
-              UtilPlugin.INSTANCE.log(ex);
-            }
-          }
-        }
+    @SuppressWarnings("all")
+    private static long parseDate(String date)
+    {
+      try
+      {
+        return org.apache.http.impl.cookie.DateUtils.parseDate(date).getTime();
       }
-      finally
+      catch (Exception ex)
       {
-        IOUtil.closeSilent(outputStream);
-        IOUtil.closeSilent(inputStream);
-        IOUtil.closeSilent(socket);
+        return -1;
       }
     }
 
-    private void handleRequest(BufferedReader input, DataOutputStream output) throws Exception
+    /**
+     * Sends the header of the response.
+     * If the length of the body isn't known, the connection is closed after the body.
+     */
+    private void sendHeader(String status, String fileName, long lastModified, String etag, long contentLength, String contentRange, String location)
+        throws IOException
     {
-      String line = input.readLine();
-      if (line == null)
+      StringBuilder builder = new StringBuilder();
+      builder.append("HTTP/1.1 ").append(status).append("\r\n");
+      builder.append("Server: ").append(HTTPServer.class.getName()).append("\r\n");
+      builder.append("Content-Type: ").append(getContentType(fileName)).append("\r\n");
+
+      if (lastModified != 0)
       {
-        return;
+        builder.append("Last-Modified: ").append(Context.formatDate(lastModified)).append("\r\n");
       }
 
-      if (DEBUG_REQUEST)
+      if (etag != null)
       {
-        System.out.println();
-        String l = line;
-        while (!StringUtil.isEmpty(l))
-        {
-          System.out.println(l);
-          l = input.readLine();
-        }
+        builder.append("ETag: ").append(etag).append("\r\n");
+        builder.append("Accept-Ranges: bytes\r\n");
       }
 
-      line = line.replace(" ", " ");
-      String[] tokens = line.split(" ");
-      if (tokens.length < 2)
+      if (location != null)
       {
-        Context.sendResponse(output, STATUS_BAD_REQUEST, null, 0, false);
-        return;
+        builder.append("Location: ").append(location).append("\r\n");
       }
 
-      String method = tokens[0];
-      boolean head = "HEAD".equalsIgnoreCase(method);
+      if (contentRange != null)
+      {
+        builder.append("Content-Range: ").append(contentRange).append("\r\n");
+      }
 
-      if (!head && !"GET".equalsIgnoreCase(method))
+      if (contentLength >= 0)
       {
-        Context.sendResponse(output, STATUS_NOT_IMPLEMENTED, null, 0, false);
-        return;
+        builder.append("Content-Length: ").append(contentLength).append("\r\n");
+      }
+      else if (status != STATUS_NOT_MODIFIED)
+      {
+        keepAlive = false;
       }
 
-      URI uri = new URI("xxx:" + tokens[1]);
-      String path = Context.decodePath(uri.getPath());
+      builder.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+      builder.append("\r\n");
 
-      Context context = getContext(path);
-      if (context == null)
+      committed = true;
+      write(ByteBuffer.wrap(builder.toString().getBytes(HEADER_CHARSET)));
+    }
+
+    private void sendBody(byte[] body) throws IOException
+    {
+      if (responseBody)
       {
-        if (PATH_SEPARATOR.equals(path))
+        write(ByteBuffer.wrap(body));
+      }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException
+    {
+      while (buffer.hasRemaining())
+      {
+        channel.write(buffer);
+      }
+    }
+
+    private void transfer(FileChannel fileChannel, long position, long count) throws IOException
+    {
+      while (count > 0)
+      {
+        long transferred = fileChannel.transferTo(position, count, channel);
+        if (transferred <= 0)
         {
-          Context.sendResponse(output, STATUS_OK, "index.html", 0, false);
+          if (position >= fileChannel.size())
+          {
+            // The file has been truncated since its length was sent.
+            throw new EOFException();
+          }
 
-          for (Context c : contexts)
+          if (!channel.isOpen())
           {
-            if (c != IMAGE_CONTEXT)
-            {
-              String href = c.getPath();
-              output.writeBytes("<img src=\"" + ImageContext.CONTEXT_PATH + ImageContext.NAME_CONTEXT + "\" valign=\"middle\"/> <a href=\"" + href
-                  + PATH_SEPARATOR + "\">" + href + "</a><br>\r\n");
-            }
+            throw new ClosedChannelException();
           }
 
-          return;
+          continue;
         }
 
-        Context.sendResponse(output, STATUS_NOT_FOUND, null, 0, false);
-        return;
+        position += transferred;
+        count -= transferred;
       }
+    }
 
-      path = path.substring(context.getPath().length());
-      if (!path.startsWith(PATH_SEPARATOR))
+    private void transfer(InputStream stream, long position, long count) throws IOException
+    {
+      while (position > 0)
       {
-        path = PATH_SEPARATOR + path;
+        long skipped = stream.skip(position);
+        if (skipped <= 0)
+        {
+          throw new EOFException();
+        }
+
+        position -= skipped;
       }
 
-      if (DEBUG)
+      byte[] buffer = new byte[BUFFER_SIZE];
+      while (count != 0)
       {
-        System.out.println(context + " " + path);
-      }
+        int n = stream.read(buffer, 0, count < 0 ? buffer.length : (int)Math.min(buffer.length, count));
+        if (n == -1)
+        {
+          if (count > 0)
+          {
+            throw new EOFException();
+          }
 
-      context.handleRequest(path, output, !head);
-    }
+          break;
+        }
 
-    private boolean isBadState()
-    {
-      return socket.isClosed() || !socket.isConnected() || socket.isInputShutdown() || socket.isOutputShutdown();
+        write(ByteBuffer.wrap(buffer, 0, n));
+        if (count > 0)
+        {
+          count -= n;
+        }
+      }
     }
   }
 
@@ -513,30 +1254,24 @@ public final class HTTPServer
       return string + "]";
     }
 
-    protected void handleRequest(String path, DataOutputStream output, boolean responseBody) throws IOException
+    protected void handleRequest(String path, Exchange exchange) throws IOException
     {
       if (isDirectory(path))
       {
         if (!allowDirectory)
         {
-          Context.sendResponse(output, STATUS_FORBIDDEN, null, 0, false);
+          exchange.sendStatus(STATUS_FORBIDDEN);
+        }
+        else if (!path.endsWith(PATH_SEPARATOR))
+        {
+          exchange.sendRedirect(this.path + PATH_SEPARATOR + encodePath(path) + PATH_SEPARATOR);
         }
         else
         {
-          if (!path.endsWith(PATH_SEPARATOR))
-          {
-            path += PATH_SEPARATOR;
-            Context.sendResponse(output, STATUS_SEE_OTHER, path, 0, false);
-          }
-          else
-          {
-            Context.sendResponse(output, STATUS_OK, "index.html", 0, false);
-          }
-
+          StringBuilder builder = new StringBuilder();
           if (path.length() > 1)
           {
-            output
-                .writeBytes("<img src=\"" + ImageContext.CONTEXT_PATH + ImageContext.NAME_FOLDER_UP + "\" valign=\"middle\"/> <a href=\"../\">..</a><br>\r\n");
+            builder.append("<img src=\"" + ImageContext.CONTEXT_PATH + ImageContext.NAME_FOLDER_UP + "\" valign=\"middle\"/> <a href=\"../\">..</a><br>\r\n");
           }
 
           String[] children = getChildren(path);
@@ -568,13 +1303,14 @@ public final class HTTPServer
             for (String child : children)
             {
               boolean directory = isDirectory(path + child);
-              output.writeBytes(
-                  "<img src=\"" + ImageContext.CONTEXT_PATH + (directory ? ImageContext.NAME_FOLDER : ImageContext.NAME_FILE) + "\" valign=\"middle\"/> ");
+              builder.append("<img src=\"" + ImageContext.CONTEXT_PATH + (directory ? ImageContext.NAME_FOLDER : ImageContext.NAME_FILE) + "\" valign=\"middle\"/> ");
 
               String trailingSlash = directory ? PATH_SEPARATOR : "";
-              output.writeBytes("<a href=\"" + encodePath(child) + trailingSlash + "\">" + child + trailingSlash + "</a><br>\r\n");
+              builder.append("<a href=\"" + encodePath(child) + trailingSlash + "\">" + child + trailingSlash + "</a><br>\r\n");
             }
           }
+
+          exchange.sendHTML(builder);
         }
 
         return;
@@ -582,27 +1318,11 @@ public final class HTTPServer
 
       if (!isFile(path))
       {
-        Context.sendResponse(output, STATUS_NOT_FOUND, null, 0, false);
+        exchange.sendStatus(STATUS_NOT_FOUND);
         return;
       }
 
-      long lastModified = getLastModified(path);
-      Context.sendResponse(output, STATUS_OK, path, lastModified, false);
-
-      if (responseBody)
-      {
-        InputStream stream = null;
-
-        try
-        {
-          stream = getContents(path);
-          IOUtil.copy(stream, output);
-        }
-        finally
-        {
-          IOUtil.close(stream);
-        }
-      }
+      exchange.sendContents(this, path);
     }
 
     protected abstract boolean isDirectory(String path);
@@ -613,6 +1333,24 @@ public final class HTTPServer
 
     protected abstract InputStream getContents(String path) throws IOException;
 
+    /**
+     * Returns a channel of the contents of the given file path, or <code>null</code> if the contents must be read from the {@link #getContents(String) stream}.
+     * The channel allows the contents to be transferred directly to the connection.
+     */
+    protected FileChannel getChannel(String path) throws IOException
+    {
+      return null;
+    }
+
+    /**
+     * Returns the length of the contents of the given file path, or <code>-1</code> if the length isn't known.
+     * Only contents of known length are served with an ETag, in ranges, and over connections that are kept alive.
+     */
+    protected long getLength(String path) throws IOException
+    {
+      return -1;
+    }
+
     protected long getLastModified(String path) throws IOException
     {
       return System.currentTimeMillis();
@@ -646,78 +1384,6 @@ public final class HTTPServer
     {
       return org.apache.http.impl.cookie.DateUtils.formatDate(new Date(lastModified));
     }
-
-    protected static void sendResponse(DataOutputStream output, String status, String fileName, long lastModified, boolean ignoreExceptions)
-    {
-      try
-      {
-        output.writeBytes("HTTP/1.0 ");
-        output.writeBytes(status);
-        output.writeBytes("\r\nConnection: close\r\nServer: ");
-        output.writeBytes(HTTPServer.class.getName());
-        output.writeBytes("\r\n");
-
-        String location = null;
-        if (status == STATUS_SEE_OTHER)
-        {
-          location = fileName;
-          fileName = "index.html";
-        }
-
-        int lastDot = fileName == null ? -1 : fileName.lastIndexOf('.');
-        String extension = lastDot == -1 ? "txt" : fileName.substring(lastDot + 1);
-
-        String contentType = CONTENT_TYPES.get(extension);
-        if (contentType == null)
-        {
-          contentType = CONTENT_TYPES.get("txt");
-        }
-
-        output.writeBytes("Content-Type: ");
-        output.writeBytes(contentType);
-        output.writeBytes("\r\n");
-
-        if (lastModified != 0)
-        {
-          output.writeBytes("Last-Modified: ");
-          output.writeBytes(formatDate(lastModified));
-          output.writeBytes("\r\n");
-        }
-
-        if (location != null)
-        {
-          output.writeBytes("Location: /file/c");
-          output.writeBytes(location);
-          output.writeBytes("\r\n");
-          output.writeBytes("\r\n");
-          return;
-        }
-
-        output.writeBytes("\r\n");
-
-        if (status == STATUS_OK)
-        {
-          return;
-        }
-
-        output.writeBytes(status);
-        output.writeBytes("\r\n");
-      }
-      catch (IOException ex)
-      {
-        if (ignoreExceptions)
-        {
-          return;
-        }
-
-        if (ex instanceof SocketException && ex.getMessage().equals("Software caused connection abort: socket write error"))
-        {
-          return;
-        }
-
-        UtilPlugin.INSTANCE.log(ex);
-      }
-    }
   }
 
   /**
@@ -780,6 +1446,12 @@ public final class HTTPServer
       return new ByteArrayInputStream(bytes);
     }
 
+    @Override
+    protected long getLength(String path) throws IOException
+    {
+      return getImage(path).length;
+    }
+
     private byte[] getImage(String path)
     {
       if (NAME_CONTEXT.equals(path))
@@ -881,6 +1553,24 @@ public final class HTTPServer
       return new FileInputStream(file);
     }
 
+    @Override
+    protected FileChannel getChannel(String path) throws IOException
+    {
+      if (DEBUG_RESPONSE)
+      {
+        return null;
+      }
+
+      return new FileInputStream(getFile(path)).getChannel();
+    }
+
+    @Override
+    protected long getLength(String path) throws IOException
+    {
+      File file = getFile(path);
+      return file.length();
+    }
+
     @Override
     protected long getLastModified(String path) throws IOException
     {
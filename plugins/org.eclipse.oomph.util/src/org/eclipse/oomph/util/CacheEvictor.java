@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.util;
+
+import org.eclipse.oomph.internal.util.UtilPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the size and the age of a folder of cached files by evicting the least recently used files.
+ * <p>
+ * The last access time of each cached file is maintained explicitly by {@link #hit(File) hits} and {@link #miss(File) misses},
+ * so that eviction does not depend on whether the file system records access times and does not disturb the last modified time,
+ * which the caches use to validate their contents.
+ * Eviction runs on a background daemon thread and is guarded by a lock file in the cache folder,
+ * so concurrent processes that share the same cache folder never evict at the same time.
+ * Files that are being deleted while another process reads them are simply treated as cache misses by the caches themselves.
+ * <p>
+ * The size cap and the age cap are configured with the <code>&lt;prefix>.max.size</code> system property, in megabytes,
+ * and with the <code>&lt;prefix>.max.age</code> system property, in days.
+ * A cap that is not specified or not positive is not applied.
+ * <p>
+ * Hit, miss and byte counts are accumulated across processes in a statistics file in the cache folder;
+ * they can be read back with {@link #getStatistics()}.
+ *
+ * @author Eike Stepper
+ */
+public class CacheEvictor
+{
+  public static final String STATISTIC_HITS = "hits"; //$NON-NLS-1$
+
+  public static final String STATISTIC_MISSES = "misses"; //$NON-NLS-1$
+
+  public static final String STATISTIC_HIT_BYTES = "hit.bytes"; //$NON-NLS-1$
+
+  public static final String STATISTIC_MISS_BYTES = "miss.bytes"; //$NON-NLS-1$
+
+  public static final String STATISTIC_EVICTIONS = "evictions"; //$NON-NLS-1$
+
+  public static final String STATISTIC_EVICTED_BYTES = "evicted.bytes"; //$NON-NLS-1$
+
+  public static final String STATISTIC_SIZE = "size"; //$NON-NLS-1$
+
+  private static final String[] STATISTICS = { STATISTIC_HITS, STATISTIC_MISSES, STATISTIC_HIT_BYTES, STATISTIC_MISS_BYTES, STATISTIC_EVICTIONS,
+      STATISTIC_EVICTED_BYTES };
+
+  private static final String LOCK_FILE_NAME = ".eviction.lock"; //$NON-NLS-1$
+
+  private static final String STATISTICS_FILE_NAME = ".statistics.properties"; //$NON-NLS-1$
+
+  private static final String TEMP_FILE_EXTENSION = ".downloading"; //$NON-NLS-1$
+
+  private static final long MEGABYTE = 1024L * 1024L;
+
+  private static final long DAY = 24L * 60L * 60L * 1000L;
+
+  /**
+   * Temporary files that haven't been modified for this long are considered to be abandoned by a crashed process.
+   */
+  private static final long ABANDONED_TEMP_FILE_AGE = 60L * 60L * 1000L;
+
+  /**
+   * The minimum time between two eviction runs of the same process.
+   */
+  private static final long MIN_EVICTION_INTERVAL = 60L * 1000L;
+
+  /**
+   * When the size cap is exceeded, evict down to this fraction of it, so that evictions don't happen on every miss.
+   */
+  private static final double LOW_WATER_MARK = 0.9;
+
+  private final File folder;
+
+  private final long maxSize;
+
+  private final long maxAge;
+
+  private final String[] companionExtensions;
+
+  private final Map<String, AtomicLong> counters = new LinkedHashMap<String, AtomicLong>();
+
+  private long bytesSinceEviction;
+
+  private long lastEviction;
+
+  private Thread evictionThread;
+
+  /**
+   * Creates an evictor for the given cache folder.
+   *
+   * @param propertyPrefix the prefix of the system properties that configure the caps.
+   * @param companionExtensions the file extensions, e.g., <code>.etag</code>, of files that belong to the cached file with the same name without that extension.
+   *  Such files are evicted together with that cached file.
+   */
+  public CacheEvictor(File folder, String propertyPrefix, String... companionExtensions)
+  {
+    this(folder, PropertiesUtil.getProperty(propertyPrefix + ".max.size", 0) * MEGABYTE, PropertiesUtil.getProperty(propertyPrefix + ".max.age", 0) * DAY, //$NON-NLS-1$ //$NON-NLS-2$
+        companionExtensions);
+  }
+
+  public CacheEvictor(File folder, long maxSize, long maxAge, String... companionExtensions)
+  {
+    this.folder = folder;
+    this.maxSize = maxSize;
+    this.maxAge = maxAge;
+    this.companionExtensions = companionExtensions;
+
+    for (String statistic : STATISTICS)
+    {
+      counters.put(statistic, new AtomicLong());
+    }
+  }
+
+  public File getFolder()
+  {
+    return folder;
+  }
+
+  public long getMaxSize()
+  {
+    return maxSize;
+  }
+
+  public long getMaxAge()
+  {
+    return maxAge;
+  }
+
+  public boolean isBounded()
+  {
+    return maxSize > 0 || maxAge > 0;
+  }
+
+  /**
+   * Records that the given cached file was used instead of downloading its contents.
+   */
+  public void hit(File file)
+  {
+    counters.get(STATISTIC_HITS).incrementAndGet();
+    counters.get(STATISTIC_HIT_BYTES).addAndGet(file.length());
+    touch(file);
+  }
+
+  /**
+   * Records that the contents of the given cached file had to be downloaded.
+   * If the cache has grown enough since the last eviction, a new eviction is scheduled in the background.
+   */
+  public void miss(File file)
+  {
+    long length = file.length();
+    counters.get(STATISTIC_MISSES).incrementAndGet();
+    counters.get(STATISTIC_MISS_BYTES).addAndGet(length);
+    touch(file);
+
+    boolean schedule;
+    synchronized (this)
+    {
+      bytesSinceEviction += length;
+      schedule = maxSize > 0 && bytesSinceEviction > maxSize * (1 - LOW_WATER_MARK);
+    }
+
+    if (schedule)
+    {
+      scheduleEviction();
+    }
+  }
+
+  /**
+   * Returns the statistics of this cache accumulated across all processes that share the cache folder,
+   * including the ones of this process that have not yet been saved.
+   */
+  public Map<String, Long> getStatistics()
+  {
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    Map<String, String> properties = PropertiesUtil.getProperties(new File(folder, STATISTICS_FILE_NAME));
+    for (Map.Entry<String, AtomicLong> entry : counters.entrySet())
+    {
+      String statistic = entry.getKey();
+      result.put(statistic, parseLong(properties.get(statistic)) + entry.getValue().get());
+    }
+
+    result.put(STATISTIC_SIZE, parseLong(properties.get(STATISTIC_SIZE)));
+    return result;
+  }
+
+  /**
+   * Schedules an eviction on a background daemon thread, unless one is already running or the last one ran very recently.
+   */
+  public void scheduleEviction()
+  {
+    synchronized (this)
+    {
+      long now = System.currentTimeMillis();
+      if (evictionThread != null || now - lastEviction < MIN_EVICTION_INTERVAL)
+      {
+        return;
+      }
+
+      lastEviction = now;
+      bytesSinceEviction = 0;
+
+      evictionThread = new Thread("Cache Evictor: " + folder) //$NON-NLS-1$
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            evict();
+          }
+          catch (Throwable ex)
+          {
+            UtilPlugin.INSTANCE.log(ex);
+          }
+          finally
+          {
+            synchronized (CacheEvictor.this)
+            {
+              evictionThread = null;
+            }
+          }
+        }
+      };
+
+      evictionThread.setDaemon(true);
+      evictionThread.setPriority(Thread.MIN_PRIORITY);
+      evictionThread.start();
+    }
+  }
+
+  /**
+   * Evicts the files that exceed the age cap and then the least recently used files until the size cap is respected.
+   * Does nothing and returns <code>false</code> if another process is evicting the same cache folder.
+   */
+  public boolean evict()
+  {
+    if (!folder.isDirectory())
+    {
+      return false;
+    }
+
+    LockFile lockFile = new LockFile(new File(folder, LOCK_FILE_NAME));
+
+    try
+    {
+      lockFile.lock();
+    }
+    catch (IOException ex)
+    {
+      // Another process is evicting right now.
+      return false;
+    }
+
+    try
+    {
+      List<Entry> entries = new ArrayList<Entry>();
+      Map<String, Entry> entriesByPath = new LinkedHashMap<String, Entry>();
+      List<File> companions = new ArrayList<File>();
+      collect(folder, entries, entriesByPath, companions);
+
+      // Attribute the companion files to the entries to which they belong; orphaned companions are evicted right away.
+      long evictions = 0;
+      long evictedBytes = 0;
+      for (File companion : companions)
+      {
+        Entry entry = entriesByPath.get(getCompanionBasePath(companion));
+        if (entry != null)
+        {
+          entry.addCompanion(companion);
+        }
+        else
+        {
+          long length = companion.length();
+          if (companion.delete())
+          {
+            evictedBytes += length;
+          }
+        }
+      }
+
+      long now = System.currentTimeMillis();
+      long size = 0;
+      for (Entry entry : entries)
+      {
+        size += entry.getSize();
+      }
+
+      // Process the least recently used entries first.
+      Collections.sort(entries, new Comparator<Entry>()
+      {
+        public int compare(Entry entry1, Entry entry2)
+        {
+          long accessTime1 = entry1.getAccessTime();
+          long accessTime2 = entry2.getAccessTime();
+          return accessTime1 < accessTime2 ? -1 : accessTime1 == accessTime2 ? 0 : 1;
+        }
+      });
+
+      long targetSize = maxSize > 0 ? (long)(maxSize * LOW_WATER_MARK) : Long.MAX_VALUE;
+      boolean overSize = maxSize > 0 && size > maxSize;
+      for (Entry entry : entries)
+      {
+        boolean tooOld = maxAge > 0 && now - entry.getAccessTime() > maxAge;
+        boolean tooBig = overSize && size > targetSize;
+        if (!tooOld && !tooBig)
+        {
+          // The entries are sorted by access time, so no later entry can be too old either.
+          break;
+        }
+
+        if (entry.delete())
+        {
+          ++evictions;
+          evictedBytes += entry.getSize();
+          size -= entry.getSize();
+        }
+      }
+
+      counters.get(STATISTIC_EVICTIONS).addAndGet(evictions);
+      counters.get(STATISTIC_EVICTED_BYTES).addAndGet(evictedBytes);
+      saveStatistics(size);
+      return true;
+    }
+    finally
+    {
+      lockFile.unlock();
+    }
+  }
+
+  private void collect(File folder, List<Entry> entries, Map<String, Entry> entriesByPath, List<File> companions)
+  {
+    File[] files = folder.listFiles();
+    if (files == null)
+    {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    for (File file : files)
+    {
+      String name = file.getName();
+      if (name.startsWith(".")) //$NON-NLS-1$
+      {
+        // Ignore the lock file, the statistics file, and any other hidden file.
+        continue;
+      }
+
+      if (file.isDirectory())
+      {
+        collect(file, entries, entriesByPath, companions);
+        continue;
+      }
+
+      if (name.endsWith(TEMP_FILE_EXTENSION) && now - file.lastModified() < ABANDONED_TEMP_FILE_AGE)
+      {
+        // Some process is still downloading into this file.
+        continue;
+      }
+
+      if (isCompanion(name))
+      {
+        companions.add(file);
+        continue;
+      }
+
+      try
+      {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        long accessTime = Math.max(attributes.lastAccessTime().toMillis(), attributes.lastModifiedTime().toMillis());
+        Entry entry = new Entry(file, attributes.size(), accessTime);
+        entries.add(entry);
+        entriesByPath.put(file.getPath(), entry);
+      }
+      catch (IOException ex)
+      {
+        // The file has been deleted concurrently.
+      }
+    }
+  }
+
+  private boolean isCompanion(String name)
+  {
+    for (String extension : companionExtensions)
+    {
+      if (name.endsWith(extension))
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private String getCompanionBasePath(File companion)
+  {
+    String path = companion.getPath();
+    for (String extension : companionExtensions)
+    {
+      if (path.endsWith(extension))
+      {
+        return path.substring(0, path.length() - extension.length());
+      }
+    }
+
+    return path;
+  }
+
+  /**
+   * Adds the statistics of this process that have not yet been saved to the shared statistics file and resets them.
+   * Must only be called while holding the eviction lock.
+   */
+  private void saveStatistics(long size)
+  {
+    File file = new File(folder, STATISTICS_FILE_NAME);
+    Map<String, String> properties = PropertiesUtil.getProperties(file);
+    for (Map.Entry<String, AtomicLong> entry : counters.entrySet())
+    {
+      String statistic = entry.getKey();
+      long delta = entry.getValue().getAndSet(0);
+      properties.put(statistic, Long.toString(parseLong(properties.get(statistic)) + delta));
+    }
+
+    properties.put(STATISTIC_SIZE, Long.toString(size));
+
+    try
+    {
+      PropertiesUtil.saveProperties(file, properties, true);
+    }
+    catch (IORuntimeException ex)
+    {
+      // The statistics are informational only.
+    }
+  }
+
+  private static long parseLong(String value)
+  {
+    if (value != null)
+    {
+      try
+      {
+        return Long.parseLong(value);
+      }
+      catch (NumberFormatException ex)
+      {
+        //$FALL-THROUGH$
+      }
+    }
+
+    return 0;
+  }
+
+  /**
+   * Sets the last access time of the given file to now, without changing its last modified time.
+   */
+  public static void touch(File file)
+  {
+    try
+    {
+      BasicFileAttributeView view = Files.getFileAttributeView(file.toPath(), BasicFileAttributeView.class);
+      view.setTimes(null, FileTime.fromMillis(System.currentTimeMillis()), null);
+    }
+    catch (Exception ex)
+    {
+      // The file may have been evicted or may not support access times; either way eviction falls back to the last modified time.
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class Entry
+  {
+    private final File file;
+
+    private final long accessTime;
+
+    private long size;
+
+    private List<File> companions;
+
+    public Entry(File file, long size, long accessTime)
+    {
+      this.file = file;
+      this.size = size;
+      this.accessTime = accessTime;
+    }
+
+    public long getSize()
+    {
+      return size;
+    }
+
+    public long getAccessTime()
+    {
+      return accessTime;
+    }
+
+    public void addCompanion(File companion)
+    {
+      if (companions == null)
+      {
+        companions = new ArrayList<File>();
+      }
+
+      companions.add(companion);
+      size += companion.length();
+    }
+
+    public boolean delete()
+    {
+      if (!file.delete())
+      {
+        // Most likely another process has the file open on a file system that doesn't permit deleting open files.
+        return false;
+      }
+
+      if (companions != null)
+      {
+        for (File companion : companions)
+        {
+          companion.delete();
+        }
+      }
+
+      return true;
+    }
+  }
+}
@@ -52,11 +52,26 @@ import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Eike Stepper
@@ -71,6 +86,31 @@ public final class IOUtil
 
   private static final String IMAGE_DATA_PREFIX = "imagedata:"; //$NON-NLS-1$
 
+  /**
+   * The strategy with which {@link #materializeFile(File, File)} and {@link #materializeTree(File, File, boolean)} create files,
+   * specified by the <code>oomph.io.materialization</code> system property as <code>copy</code>, <code>clone</code>, or <code>link</code>.
+   * By default, files are copied.
+   * With <code>clone</code>, trees are cloned by the file system where that's supported.
+   * With <code>link</code>, files are additionally created as hard links, which share their content with their source,
+   * so that a modification of either file in place modifies the other as well.
+   */
+  public static final String PROP_MATERIALIZATION = "oomph.io.materialization"; //$NON-NLS-1$
+
+  private static final String MATERIALIZATION_LINK = "link"; //$NON-NLS-1$
+
+  private static final String MATERIALIZATION_CLONE = "clone"; //$NON-NLS-1$
+
+  /**
+   * The pairs of source and target file stores between which trees can't be cloned, so that no further clones are attempted between them.
+   */
+  private static final Set<List<FileStore>> UNCLONABLE_FILE_STORES = Collections.synchronizedSet(new HashSet<List<FileStore>>());
+
+  public static final String PROP_COPY_THREADS = "oomph.io.copy.threads"; //$NON-NLS-1$
+
+  public static final String PROP_COPY_TRACE = "oomph.io.copy.trace"; //$NON-NLS-1$
+
+  private static final boolean COPY_TRACE = PropertiesUtil.isProperty(PROP_COPY_TRACE);
+
   private IOUtil()
   {
   }
@@ -627,48 +667,177 @@ public final class IOUtil
     return copy(input, output, new byte[bufferSize]);
   }
 
+  /**
+   * Copies the given input stream to the given output stream.
+   * If both are plain file streams, the bytes are transferred by the file system, rather than through the heap.
+   * Subclasses of the file streams are copied through their own read and write methods, which they may override.
+   */
   public static long copy(InputStream input, OutputStream output) throws IORuntimeException
   {
+    if (input.getClass() == FileInputStream.class && output.getClass() == FileOutputStream.class)
+    {
+      return transfer(((FileInputStream)input).getChannel(), ((FileOutputStream)output).getChannel());
+    }
+
     return copy(input, output, DEFAULT_BUFFER_SIZE);
   }
 
+  /**
+   * Copies the given source tree to the given target, preserving the modification times of the files and folders.
+   * The files of a tree are copied by tasks of the {@link TaskScheduler.Lane#IO IO lane} of the {@link TaskScheduler}.
+   * The number of files that are copied concurrently is specified by the <code>oomph.io.copy.threads</code> system property,
+   * which defaults to the number of threads of that lane.
+   * A value of 1 disables the concurrency.
+   * If the <code>oomph.io.copy.trace</code> system property is set, the throughput is reported in the log.
+   *
+   * @param bestEffort whether files that can't be copied are skipped.
+   * Folders that can't be created or listed are reported in any case.
+   */
   public static void copyTree(File source, File target, boolean bestEffort) throws IORuntimeException
   {
-    if (source.isDirectory())
+    long start = System.nanoTime();
+    TreeCopier copier = new TreeCopier(bestEffort, PropertiesUtil.getProperty(PROP_COPY_THREADS, TaskScheduler.getThreadCount(TaskScheduler.Lane.IO)));
+    copier.copy(source, target);
+
+    if (COPY_TRACE)
     {
-      mkdirs(target);
-      File[] files = source.listFiles();
-      for (File file : files)
-      {
-        String name = file.getName();
-        copyTree(new File(source, name), new File(target, name), bestEffort);
-      }
+      long nanos = Math.max(1, System.nanoTime() - start);
+      long files = copier.files.get();
+      long bytes = copier.bytes.get();
+      UtilPlugin.INSTANCE.log(String.format(Locale.ENGLISH, "Copied %d files with %d bytes from %s in %d ms (%.1f MB/s)", files, bytes, source, //$NON-NLS-1$
+          nanos / 1000000L, bytes * 1000d / nanos), IStatus.INFO);
     }
-    else
+  }
+
+  public static void copyTree(File source, File target) throws IORuntimeException
+  {
+    copyTree(source, target, false);
+  }
+
+  public static void copyFile(File source, File target) throws IORuntimeException
+  {
+    mkdirs(target.getParentFile());
+    transferFile(source, target);
+  }
+
+  /**
+   * Creates the given target file with the content of the given source file.
+   * The source is copied by the file system, rather than through the heap.
+   * If {@link #PROP_MATERIALIZATION linking} is enabled, the target is instead created as a hard link to the source,
+   * if the file system supports that and both are on the same device, so that it costs neither disk space nor time.
+   * Neither file must then be modified in place, such as an artifact of a bundle pool.
+   *
+   * @see #PROP_MATERIALIZATION
+   */
+  public static void materializeFile(File source, File target) throws IORuntimeException
+  {
+    mkdirs(target.getParentFile());
+
+    if (MATERIALIZATION_LINK.equals(getMaterialization()))
     {
       try
       {
-        copyFile(source, target);
+        target.delete();
+        Files.createLink(target.toPath(), source.toPath());
+        return;
       }
-      catch (RuntimeException ex)
+      catch (Exception ex)
       {
-        if (!bestEffort)
-        {
-          throw ex;
-        }
+        // The file system doesn't support hard links or the source and target are on different devices.
       }
     }
+
+    transferFile(source, target);
   }
 
-  public static void copyTree(File source, File target) throws IORuntimeException
+  /**
+   * Creates the given target folder with the content of the given source folder, preserving the modification times.
+   * If {@link #PROP_MATERIALIZATION cloning} is enabled and the target doesn't exist yet, the tree is cloned by the file system where that's supported,
+   * i.e., with copy-on-write clones that cost neither disk space nor time until either side is modified.
+   * Otherwise, the tree is {@link #copyTree(File, File, boolean) copied}.
+   * In contrast to linked {@link #materializeFile(File, File) files}, the source and target may be modified independently afterwards.
+   *
+   * @see #PROP_MATERIALIZATION
+   */
+  public static void materializeTree(File source, File target, boolean bestEffort) throws IORuntimeException
   {
-    copyTree(source, target, false);
+    String materialization = getMaterialization();
+    if ((MATERIALIZATION_CLONE.equals(materialization) || MATERIALIZATION_LINK.equals(materialization)) && source.isDirectory() && !target.exists()
+        && cloneTree(source, target))
+    {
+      return;
+    }
+
+    copyTree(source, target, bestEffort);
   }
 
-  public static void copyFile(File source, File target) throws IORuntimeException
+  private static String getMaterialization()
   {
-    mkdirs(target.getParentFile());
+    return PropertiesUtil.getProperty(PROP_MATERIALIZATION, "copy"); //$NON-NLS-1$
+  }
+
+  private static boolean cloneTree(File source, File target)
+  {
+    List<String> command = new ArrayList<String>();
+    command.add("cp"); //$NON-NLS-1$
+    command.add("-R"); //$NON-NLS-1$
 
+    if (OS.INSTANCE.isLinux())
+    {
+      command.add("--reflink=always"); //$NON-NLS-1$
+      command.add("--preserve=timestamps"); //$NON-NLS-1$
+    }
+    else if (OS.INSTANCE.isMac())
+    {
+      command.add("-c"); //$NON-NLS-1$
+      command.add("-p"); //$NON-NLS-1$
+    }
+    else
+    {
+      return false;
+    }
+
+    command.add(source.getAbsolutePath());
+    command.add(target.getAbsolutePath());
+
+    List<FileStore> fileStores = null;
+
+    try
+    {
+      File parentFolder = target.getAbsoluteFile().getParentFile();
+      mkdirs(parentFolder);
+
+      fileStores = Arrays.asList(Files.getFileStore(source.toPath()), Files.getFileStore(parentFolder.toPath()));
+      if (UNCLONABLE_FILE_STORES.contains(fileStores))
+      {
+        return false;
+      }
+
+      Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      process.getOutputStream().close();
+      copy(process.getInputStream(), new ByteArrayOutputStream());
+      if (process.waitFor() == 0)
+      {
+        return true;
+      }
+    }
+    catch (Exception ex)
+    {
+      // The file system doesn't support clones.
+    }
+
+    // Don't start another process for clones between these file stores.
+    if (fileStores != null)
+    {
+      UNCLONABLE_FILE_STORES.add(fileStores);
+    }
+
+    deleteBestEffort(target, false);
+    return false;
+  }
+
+  private static long transferFile(File source, File target) throws IORuntimeException
+  {
     FileInputStream input = null;
     FileOutputStream output = null;
 
@@ -676,7 +845,7 @@ public final class IOUtil
     {
       input = openInputStream(source);
       output = openOutputStream(target);
-      copy(input, output);
+      return transfer(input.getChannel(), output.getChannel());
     }
     finally
     {
@@ -685,6 +854,44 @@ public final class IOUtil
     }
   }
 
+  /**
+   * Transfers the remaining bytes of the given input channel to the given output channel, advancing the positions of both.
+   * Files that report a size of zero, such as those of <code>/proc</code>, pipes, and devices, are copied through the heap up to their end,
+   * because the file system would transfer nothing for them.
+   */
+  private static long transfer(FileChannel input, FileChannel output) throws IORuntimeException
+  {
+    try
+    {
+      long start = input.position();
+      long size = input.size();
+      if (size == 0)
+      {
+        return copy(Channels.newInputStream(input), Channels.newOutputStream(output), DEFAULT_BUFFER_SIZE);
+      }
+
+      long position = start;
+      while (position < size)
+      {
+        long transferred = input.transferTo(position, size - position, output);
+        if (transferred <= 0)
+        {
+          // The file has been truncated meanwhile.
+          break;
+        }
+
+        position += transferred;
+      }
+
+      input.position(position);
+      return position - start;
+    }
+    catch (IOException ex)
+    {
+      throw new IORuntimeException(ex);
+    }
+  }
+
   public static byte[] readFile(File file) throws IORuntimeException
   {
     if (file.length() > Integer.MAX_VALUE)
@@ -1159,4 +1366,209 @@ public final class IOUtil
       return true;
     }
   }
+
+  /**
+   * Copies the files of a tree concurrently and sets the modification times of its folders once all files are copied,
+   * because creating the files modifies their folders.
+   *
+   * @author Eike Stepper
+   */
+  private static final class TreeCopier
+  {
+    private final boolean bestEffort;
+
+    private final int threads;
+
+    private final LinkedList<SharedTask<Void>> window = new LinkedList<SharedTask<Void>>();
+
+    private final List<File[]> folders = new ArrayList<File[]>();
+
+    private final AtomicLong files = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    public TreeCopier(boolean bestEffort, int threads)
+    {
+      this.bestEffort = bestEffort;
+      this.threads = threads;
+    }
+
+    public void copy(File source, File target) throws IORuntimeException
+    {
+      try
+      {
+        copyTree(source, target);
+
+        while (!window.isEmpty())
+        {
+          window.removeFirst().get();
+        }
+      }
+      finally
+      {
+        SharedTask.cancel(window);
+      }
+
+      for (File[] folder : folders)
+      {
+        folder[1].setLastModified(folder[0].lastModified());
+      }
+    }
+
+    private void copyTree(File source, File target) throws IORuntimeException
+    {
+      if (source.isDirectory())
+      {
+        mkdirs(target);
+        if (!target.isDirectory())
+        {
+          throw new IORuntimeException("Unable to create directory " + target.getAbsolutePath()); //$NON-NLS-1$
+        }
+
+        File[] children = source.listFiles();
+        if (children == null)
+        {
+          throw new IORuntimeException("Folder can't be listed: " + source); //$NON-NLS-1$
+        }
+
+        for (File child : children)
+        {
+          copyTree(child, new File(target, child.getName()));
+        }
+
+        folders.add(new File[] { source, target });
+      }
+      else if (threads > 1)
+      {
+        if (window.size() >= threads)
+        {
+          window.removeFirst().get();
+        }
+
+        final File finalSource = source;
+        final File finalTarget = target;
+        window.add(SharedTask.submit(new Callable<Void>()
+        {
+          public Void call() throws Exception
+          {
+            copyFile(finalSource, finalTarget);
+            return null;
+          }
+        }));
+      }
+      else
+      {
+        copyFile(source, target);
+      }
+    }
+
+    private void copyFile(File source, File target) throws IORuntimeException
+    {
+      try
+      {
+        IOUtil.copyFile(source, target);
+        target.setLastModified(source.lastModified());
+
+        files.incrementAndGet();
+        bytes.addAndGet(target.length());
+      }
+      catch (RuntimeException ex)
+      {
+        if (!bestEffort)
+        {
+          throw ex;
+        }
+      }
+    }
+  }
+
+  /**
+   * A task that's submitted to the {@link TaskScheduler.Lane#IO IO lane} and that's executed by the thread that needs its result if it hasn't been started yet.
+   * The calling thread can't starve, even if it's a thread of that lane itself and all the other threads of the lane are busy.
+   *
+   * @author Eike Stepper
+   */
+  static final class SharedTask<T> implements Callable<T>
+  {
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final Callable<T> callable;
+
+    private Future<T> future;
+
+    private SharedTask(Callable<T> callable)
+    {
+      this.callable = callable;
+    }
+
+    public T call() throws Exception
+    {
+      if (started.compareAndSet(false, true))
+      {
+        return callable.call();
+      }
+
+      return null;
+    }
+
+    public T get() throws IORuntimeException
+    {
+      if (started.compareAndSet(false, true))
+      {
+        future.cancel(false);
+
+        try
+        {
+          return callable.call();
+        }
+        catch (RuntimeException ex)
+        {
+          throw ex;
+        }
+        catch (Exception ex)
+        {
+          throw new IORuntimeException(ex);
+        }
+      }
+
+      try
+      {
+        return future.get();
+      }
+      catch (InterruptedException ex)
+      {
+        throw new IORuntimeException(ex);
+      }
+      catch (ExecutionException ex)
+      {
+        Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException)
+        {
+          throw (RuntimeException)cause;
+        }
+
+        if (cause instanceof Error)
+        {
+          throw (Error)cause;
+        }
+
+        throw new IORuntimeException(cause);
+      }
+    }
+
+    public static <T> SharedTask<T> submit(Callable<T> callable)
+    {
+      SharedTask<T> task = new SharedTask<T>(callable);
+      task.future = TaskScheduler.submit(TaskScheduler.Lane.IO, TaskScheduler.PRIORITY_DEFAULT, null, task);
+      return task;
+    }
+
+    public static void cancel(List<? extends SharedTask<?>> tasks)
+    {
+      for (SharedTask<?> task : tasks)
+      {
+        task.future.cancel(true);
+      }
+    }
+  }
 }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.util;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent requests for the same key into a single execution whose result is handed to every requester.
+ * <p>
+ * The first requester of a key becomes the leader and executes the request on its own thread.
+ * All other requesters of that key wait for the leader's result without holding any monitor,
+ * checking their own progress monitor for cancelation while they wait and giving up waiting after a timeout,
+ * which defaults to {@link #DEFAULT_TIMEOUT}, in which case they execute the request themselves, unshared.
+ * If the leader's execution was canceled, a waiter that wasn't canceled itself tries again, possibly becoming the new leader.
+ * A request that the leader makes for the same key while executing, for example when following a redirect or looking up a mirror,
+ * is executed directly, because the leader can't wait for its own result.
+ *
+ * @author Eike Stepper
+ */
+public final class SingleFlight<K, V>
+{
+  /**
+   * The number of milliseconds that a request waits for a concurrent execution by default.
+   */
+  public static final int DEFAULT_TIMEOUT = 60000;
+
+  private static final long POLL_INTERVAL = 100;
+
+  private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<K, Flight<V>>();
+
+  public SingleFlight()
+  {
+  }
+
+  /**
+   * Returns whether a request for the given key is currently being executed.
+   */
+  public boolean isInFlight(K key)
+  {
+    return flights.containsKey(key);
+  }
+
+  /**
+   * Executes the given request, or waits at most {@link #DEFAULT_TIMEOUT} for the result of a concurrent execution of a request with the same key.
+   *
+   * @see #execute(Object, Request, IProgressMonitor, long)
+   */
+  public V execute(K key, Request<V> request, IProgressMonitor monitor) throws Exception
+  {
+    return execute(key, request, monitor, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Executes the given request, or waits for the result of a concurrent execution of a request with the same key.
+   *
+   * @param monitor the monitor that is checked for cancelation while waiting, or <code>null</code>.
+   * @param timeout the maximum number of milliseconds to wait for a concurrent execution, or <code>0</code> to wait as long as it takes.
+   * @throws OperationCanceledException if the monitor is canceled while waiting.
+   * @throws Exception if the execution, shared or unshared, throws an exception.
+   */
+  public V execute(K key, Request<V> request, IProgressMonitor monitor, long timeout) throws Exception
+  {
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+    for (;;)
+    {
+      Flight<V> flight = new Flight<V>();
+      Flight<V> existingFlight = flights.putIfAbsent(key, flight);
+      if (existingFlight == null)
+      {
+        return fly(key, flight, request);
+      }
+
+      if (existingFlight.isOwnedByCurrentThread())
+      {
+        // We're the leader, so waiting would never end.
+        return request.execute();
+      }
+
+      if (!existingFlight.await(monitor, deadline))
+      {
+        // We've waited long enough, so execute the request ourselves.
+        return request.execute();
+      }
+
+      Throwable exception = existingFlight.getException();
+      if (exception == null)
+      {
+        return existingFlight.getValue();
+      }
+
+      if (exception instanceof OperationCanceledException)
+      {
+        // The leader was canceled but we weren't, so try again.
+        continue;
+      }
+
+      if (exception instanceof Error)
+      {
+        throw (Error)exception;
+      }
+
+      throw (Exception)exception;
+    }
+  }
+
+  /**
+   * Executes the given request once no other request with the same key is being executed, waiting at most {@link #DEFAULT_TIMEOUT}.
+   *
+   * @see #executeExclusively(Object, Request, IProgressMonitor, long)
+   */
+  public <T extends V> T executeExclusively(K key, Request<T> request, IProgressMonitor monitor) throws Exception
+  {
+    return executeExclusively(key, request, monitor, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Executes the given request once no other request with the same key is being executed, ignoring the result of any such concurrent execution.
+   * This is useful when the result of a request depends on the requester's own context, such that it can't be shared,
+   * but where a concurrent execution populates a cache that makes the subsequent execution cheap.
+   *
+   * @param monitor the monitor that is checked for cancelation while waiting, or <code>null</code>.
+   * @param timeout the maximum number of milliseconds to wait for concurrent executions, or <code>0</code> to wait as long as it takes.
+   * @throws OperationCanceledException if the monitor is canceled while waiting.
+   * @throws Exception if the execution throws an exception.
+   */
+  public <T extends V> T executeExclusively(K key, Request<T> request, IProgressMonitor monitor, long timeout) throws Exception
+  {
+    long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+    for (;;)
+    {
+      Flight<V> flight = new Flight<V>();
+      Flight<V> existingFlight = flights.putIfAbsent(key, flight);
+      if (existingFlight == null)
+      {
+        return fly(key, flight, request);
+      }
+
+      if (existingFlight.isOwnedByCurrentThread())
+      {
+        // We're the leader, so waiting would never end.
+        return request.execute();
+      }
+
+      if (!existingFlight.await(monitor, deadline))
+      {
+        // We've waited long enough, so execute the request concurrently.
+        return request.execute();
+      }
+    }
+  }
+
+  private <T extends V> T fly(K key, Flight<V> flight, Request<T> request) throws Exception
+  {
+    try
+    {
+      T value = request.execute();
+      flight.succeed(value);
+      return value;
+    }
+    catch (Exception ex)
+    {
+      flight.fail(ex);
+      throw ex;
+    }
+    catch (Error ex)
+    {
+      flight.fail(ex);
+      throw ex;
+    }
+    finally
+    {
+      flights.remove(key, flight);
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  public interface Request<V>
+  {
+    public V execute() throws Exception;
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class Flight<V>
+  {
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private final Thread owner = Thread.currentThread();
+
+    private volatile V value;
+
+    private volatile Throwable exception;
+
+    public void succeed(V value)
+    {
+      this.value = value;
+      latch.countDown();
+    }
+
+    public void fail(Throwable exception)
+    {
+      this.exception = exception;
+      latch.countDown();
+    }
+
+    public boolean isOwnedByCurrentThread()
+    {
+      return owner == Thread.currentThread();
+    }
+
+    public V getValue()
+    {
+      return value;
+    }
+
+    public Throwable getException()
+    {
+      return exception;
+    }
+
+    /**
+     * Returns <code>true</code> if the flight has completed, or <code>false</code> if the deadline has passed.
+     */
+    public boolean await(IProgressMonitor monitor, long deadline)
+    {
+      for (;;)
+      {
+        if (monitor != null && monitor.isCanceled())
+        {
+          throw new OperationCanceledException();
+        }
+
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0)
+        {
+          return false;
+        }
+
+        try
+        {
+          if (latch.await(Math.min(remaining, POLL_INTERVAL), TimeUnit.MILLISECONDS))
+          {
+            return true;
+          }
+        }
+        catch (InterruptedException ex)
+        {
+          throw new OperationCanceledException();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.util;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes message digests of the bytes that pass through {@link #filter(InputStream) filtered input streams} or {@link #filter(OutputStream) filtered output streams},
+ * so that the digests of downloaded or copied content are available without reading the bytes a second time.
+ * <p>
+ * The digests of a file can be stored in a {@link #writeSidecar(File) sidecar file} next to it.
+ * A sidecar records the size and the modification time of the file that it describes and is ignored as soon as either of them changes.
+ * <p>
+ * The algorithms are specified as a comma-separated list by the <code>oomph.digest.algorithms</code> system property,
+ * which defaults to <code>SHA-256</code>.
+ * Algorithms that aren't supported by the platform are silently skipped.
+ * <p>
+ * Instances of this class are not thread-safe.
+ *
+ * @author Eike Stepper
+ */
+public final class StreamDigester
+{
+  public static final String PROP_ALGORITHMS = "oomph.digest.algorithms"; //$NON-NLS-1$
+
+  public static final String SIDECAR_EXTENSION = ".digests"; //$NON-NLS-1$
+
+  private static final String PROPERTY_SIZE = "size"; //$NON-NLS-1$
+
+  private static final String PROPERTY_LAST_MODIFIED = "last.modified"; //$NON-NLS-1$
+
+  private static final String[] ALGORITHMS = PropertiesUtil.getProperty(PROP_ALGORITHMS, "SHA-256").split("\\s*,\\s*"); //$NON-NLS-1$ //$NON-NLS-2$
+
+  private final Map<String, MessageDigest> messageDigests = new LinkedHashMap<String, MessageDigest>();
+
+  private Map<String, byte[]> digests;
+
+  private long length;
+
+  /**
+   * Creates a digester for the configured algorithms.
+   */
+  public StreamDigester()
+  {
+    this(new String[0]);
+  }
+
+  /**
+   * Creates a digester for the configured algorithms and the given additional algorithms.
+   */
+  public StreamDigester(String... additionalAlgorithms)
+  {
+    addAlgorithms(ALGORITHMS);
+    addAlgorithms(additionalAlgorithms);
+  }
+
+  private void addAlgorithms(String[] algorithms)
+  {
+    for (String algorithm : algorithms)
+    {
+      if (algorithm.length() != 0 && !messageDigests.containsKey(algorithm))
+      {
+        try
+        {
+          messageDigests.put(algorithm, MessageDigest.getInstance(algorithm));
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+          //$FALL-THROUGH$
+        }
+      }
+    }
+  }
+
+  public void update(int b)
+  {
+    checkNotFinished();
+    for (MessageDigest messageDigest : messageDigests.values())
+    {
+      messageDigest.update((byte)b);
+    }
+
+    ++length;
+  }
+
+  public void update(byte[] bytes, int offset, int count)
+  {
+    checkNotFinished();
+    for (MessageDigest messageDigest : messageDigests.values())
+    {
+      messageDigest.update(bytes, offset, count);
+    }
+
+    length += count;
+  }
+
+  /**
+   * Returns the number of bytes that have been digested so far.
+   */
+  public long getLength()
+  {
+    return length;
+  }
+
+  /**
+   * Returns the digest for the given algorithm, or <code>null</code> if that algorithm isn't computed by this digester.
+   * Once any digest has been returned, this digester can't be updated anymore.
+   */
+  public byte[] getDigest(String algorithm)
+  {
+    return finish().get(algorithm);
+  }
+
+  /**
+   * Returns an unmodifiable map from algorithm to the hex-encoded digest for that algorithm.
+   * Once the digests have been returned, this digester can't be updated anymore.
+   */
+  public Map<String, String> getHexDigests()
+  {
+    Map<String, String> result = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, byte[]> entry : finish().entrySet())
+    {
+      result.put(entry.getKey(), HexUtil.bytesToHex(entry.getValue()));
+    }
+
+    return Collections.unmodifiableMap(result);
+  }
+
+  private Map<String, byte[]> finish()
+  {
+    if (digests == null)
+    {
+      digests = new LinkedHashMap<String, byte[]>();
+      for (Map.Entry<String, MessageDigest> entry : messageDigests.entrySet())
+      {
+        digests.put(entry.getKey(), entry.getValue().digest());
+      }
+    }
+
+    return digests;
+  }
+
+  private void checkNotFinished()
+  {
+    if (digests != null)
+    {
+      throw new IllegalStateException("Digests have already been computed"); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * Returns an input stream that updates this digester with all bytes read from the given input stream.
+   */
+  public InputStream filter(InputStream in)
+  {
+    return new DigestingInputStream(in);
+  }
+
+  /**
+   * Returns an output stream that updates this digester with all bytes written to the given output stream.
+   */
+  public OutputStream filter(OutputStream out)
+  {
+    return new DigestingOutputStream(out);
+  }
+
+  /**
+   * Stores the digests of this digester in the sidecar file of the given file, if the number of digested bytes is the size of that file.
+   * The file must not be modified after the sidecar has been written.
+   * Failures are ignored because the sidecar only spares reading the file again.
+   */
+  public void writeSidecar(File file)
+  {
+    if (file.length() == length)
+    {
+      writeSidecar(file, getHexDigests());
+    }
+  }
+
+  private static void writeSidecar(File file, Map<String, String> hexDigests)
+  {
+    Map<String, String> properties = new LinkedHashMap<String, String>();
+    properties.put(PROPERTY_SIZE, Long.toString(file.length()));
+    properties.put(PROPERTY_LAST_MODIFIED, Long.toString(file.lastModified()));
+    properties.putAll(hexDigests);
+
+    File sidecar = getSidecar(file);
+    File tempSidecar = new File(sidecar.getPath() + "." + Thread.currentThread().getId() + ".tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+
+    try
+    {
+      PropertiesUtil.saveProperties(tempSidecar, properties, false);
+      if (!tempSidecar.renameTo(sidecar))
+      {
+        sidecar.delete();
+        tempSidecar.renameTo(sidecar);
+      }
+    }
+    catch (RuntimeException ex)
+    {
+      //$FALL-THROUGH$
+    }
+    finally
+    {
+      tempSidecar.delete();
+    }
+  }
+
+  /**
+   * Returns a map from algorithm to hex-encoded digest as stored in the sidecar file of the given file,
+   * or <code>null</code> if there is no sidecar or if the file has changed since the sidecar was written.
+   */
+  public static Map<String, String> readSidecar(File file)
+  {
+    File sidecar = getSidecar(file);
+    if (sidecar.isFile())
+    {
+      try
+      {
+        Map<String, String> properties = PropertiesUtil.loadProperties(sidecar);
+        if (Long.toString(file.length()).equals(properties.remove(PROPERTY_SIZE))
+            && Long.toString(file.lastModified()).equals(properties.remove(PROPERTY_LAST_MODIFIED)))
+        {
+          return Collections.unmodifiableMap(properties);
+        }
+      }
+      catch (RuntimeException ex)
+      {
+        //$FALL-THROUGH$
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the hex-encoded digest of the given file for the given algorithm.
+   * The digest is taken from the sidecar file, if that's up-to-date and contains the algorithm.
+   * Otherwise the digests are computed by reading the file and are stored in its sidecar.
+   */
+  public static String getDigest(File file, String algorithm) throws IORuntimeException
+  {
+    Map<String, String> hexDigests = readSidecar(file);
+    if (hexDigests != null)
+    {
+      String hexDigest = hexDigests.get(algorithm);
+      if (hexDigest != null)
+      {
+        return hexDigest;
+      }
+    }
+
+    StreamDigester digester = new StreamDigester(algorithm);
+    InputStream in = null;
+
+    try
+    {
+      in = digester.filter(IOUtil.openInputStream(file));
+      byte[] buffer = new byte[8192];
+      while (in.read(buffer) != -1)
+      {
+        // Just digest.
+      }
+    }
+    catch (IOException ex)
+    {
+      throw new IORuntimeException(ex);
+    }
+    finally
+    {
+      IOUtil.closeSilent(in);
+    }
+
+    digester.writeSidecar(file);
+    return digester.getHexDigests().get(algorithm);
+  }
+
+  public static File getSidecar(File file)
+  {
+    return new File(file.getPath() + SIDECAR_EXTENSION);
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private final class DigestingInputStream extends FilterInputStream
+  {
+    public DigestingInputStream(InputStream in)
+    {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      int b = super.read();
+      if (b != -1)
+      {
+        update(b);
+      }
+
+      return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int count) throws IOException
+    {
+      int n = in.read(bytes, offset, count);
+      if (n > 0)
+      {
+        update(bytes, offset, n);
+      }
+
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+      // Skipped bytes must be digested too.
+      byte[] buffer = new byte[(int)Math.min(n, 8192)];
+      long skipped = 0;
+      while (skipped < n)
+      {
+        int count = read(buffer, 0, (int)Math.min(n - skipped, buffer.length));
+        if (count == -1)
+        {
+          break;
+        }
+
+        skipped += count;
+      }
+
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+      return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit)
+    {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException
+    {
+      throw new IOException("Mark/reset not supported"); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private final class DigestingOutputStream extends FilterOutputStream
+  {
+    public DigestingOutputStream(OutputStream out)
+    {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      out.write(b);
+      update(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException
+    {
+      out.write(bytes, offset, count);
+      update(bytes, offset, count);
+    }
+  }
+}
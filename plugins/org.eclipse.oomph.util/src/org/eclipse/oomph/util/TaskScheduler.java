@@ -0,0 +1,576 @@
+/*
+ * Copyright (c) 2026 Eike Stepper (Loehne, Germany) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v20.html
+ *
+ * Contributors:
+ *    Eike Stepper - initial API and implementation
+ */
+package org.eclipse.oomph.util;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules tasks on two lanes of threads that are shared by all clients.
+ * <p>
+ * The {@link Lane#CPU CPU lane} is a work-stealing pool with one thread per available processor, or as many threads as specified by the <code>oomph.scheduler.cpu.threads</code> system property.
+ * Tasks that are submitted by the threads of this lane are queued locally and stolen by idle threads.
+ * <p>
+ * The {@link Lane#IO I/O lane} is a pool with four threads per available processor, or as many threads as specified by the <code>oomph.scheduler.io.threads</code> system property.
+ * Its queued tasks are executed in the order of their priorities, and in the order of their submission for equal priorities.
+ * <p>
+ * Tasks that are submitted for a host are executed on their lane,
+ * but not more than the number of tasks specified by the <code>oomph.scheduler.host.max.tasks</code> system property, which defaults to 6, are executed for the same host at the same time.
+ * The other tasks wait for the host and are {@link #getWaitingTaskCount(String) counted} separately from the tasks that are {@link #getQueuedTaskCount(Lane) queued} for a lane.
+ *
+ * @author Eike Stepper
+ */
+public final class TaskScheduler
+{
+  public static final String PROP_CPU_THREADS = "oomph.scheduler.cpu.threads"; //$NON-NLS-1$
+
+  public static final String PROP_IO_THREADS = "oomph.scheduler.io.threads"; //$NON-NLS-1$
+
+  public static final String PROP_MAX_TASKS_PER_HOST = "oomph.scheduler.host.max.tasks"; //$NON-NLS-1$
+
+  /**
+   * The priority of tasks whose results the user is waiting for.
+   */
+  public static final int PRIORITY_INTERACTIVE = 10;
+
+  /**
+   * The default priority of tasks.
+   */
+  public static final int PRIORITY_DEFAULT = 20;
+
+  /**
+   * The priority of tasks whose results are needed only later, if at all.
+   */
+  public static final int PRIORITY_BACKGROUND = 30;
+
+  private static final int CPU_THREADS = Math.max(1, PropertiesUtil.getProperty(PROP_CPU_THREADS, Runtime.getRuntime().availableProcessors()));
+
+  private static final int IO_THREADS = Math.max(1, PropertiesUtil.getProperty(PROP_IO_THREADS, Runtime.getRuntime().availableProcessors() * 4));
+
+  private static final int MAX_TASKS_PER_HOST = Math.max(1, PropertiesUtil.getProperty(PROP_MAX_TASKS_PER_HOST, 6));
+
+  private static final long POLL_INTERVAL = 100;
+
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  /**
+   * The gates of the hosts that have running or waiting tasks, guarded by the map itself.
+   */
+  private static final Map<String, HostGate> HOST_GATES = new HashMap<String, HostGate>();
+
+  private static ForkJoinPool cpuPool;
+
+  private static ThreadPoolExecutor ioPool;
+
+  private TaskScheduler()
+  {
+  }
+
+  /**
+   * Submits the given callable to the given lane with the given priority, for the given host or <code>null</code>.
+   */
+  public static <T> Future<T> submit(Lane lane, int priority, String host, Callable<T> callable)
+  {
+    ScheduledTask<T> task = new ScheduledTask<T>(callable, lane, priority, host, null);
+    schedule(task);
+    return task;
+  }
+
+  /**
+   * Submits the given runnable to the given lane with the given priority, for the given host or <code>null</code>.
+   */
+  public static Future<?> submit(Lane lane, int priority, String host, Runnable runnable)
+  {
+    return submit(lane, priority, host, Executors.callable(runnable));
+  }
+
+  /**
+   * Returns an executor that submits its commands to the given lane with the given priority, for the given host or <code>null</code>.
+   */
+  public static Executor getExecutor(final Lane lane, final int priority, final String host)
+  {
+    return new Executor()
+    {
+      public void execute(Runnable command)
+      {
+        submit(lane, priority, host, command);
+      }
+    };
+  }
+
+  /**
+   * Waits for the given future, checking the given monitor for cancelation periodically, and returns its result.
+   * A runtime exception or error of the task is rethrown as is, any other exception is rethrown wrapped in a runtime exception.
+   *
+   * @throws OperationCanceledException if the given monitor is canceled or the calling thread is interrupted.
+   */
+  public static <T> T get(Future<T> future, IProgressMonitor monitor)
+  {
+    for (;;)
+    {
+      if (monitor != null && monitor.isCanceled())
+      {
+        throw new OperationCanceledException();
+      }
+
+      try
+      {
+        return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException ex)
+      {
+        //$FALL-THROUGH$
+      }
+      catch (InterruptedException ex)
+      {
+        throw new OperationCanceledException();
+      }
+      catch (ExecutionException ex)
+      {
+        Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException)
+        {
+          throw (RuntimeException)cause;
+        }
+
+        if (cause instanceof Error)
+        {
+          throw (Error)cause;
+        }
+
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of threads of the given lane.
+   * Clients that wait on a thread of a lane for other tasks of the same lane must leave enough of its threads to these other tasks.
+   */
+  public static int getThreadCount(Lane lane)
+  {
+    return lane == Lane.CPU ? CPU_THREADS : IO_THREADS;
+  }
+
+  /**
+   * Returns the maximum number of tasks that are executed for the same host at the same time.
+   */
+  public static int getMaxTasksPerHost()
+  {
+    return MAX_TASKS_PER_HOST;
+  }
+
+  /**
+   * Returns the number of tasks that are queued for the given lane and not yet executing.
+   */
+  public static int getQueuedTaskCount(Lane lane)
+  {
+    if (lane == Lane.CPU)
+    {
+      ForkJoinPool pool = getCPUPool();
+      return (int)Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+    }
+
+    return getIOPool().getQueue().size();
+  }
+
+  /**
+   * Returns the approximate number of tasks that are currently executing on the given lane.
+   */
+  public static int getActiveTaskCount(Lane lane)
+  {
+    if (lane == Lane.CPU)
+    {
+      return getCPUPool().getActiveThreadCount();
+    }
+
+    return getIOPool().getActiveCount();
+  }
+
+  /**
+   * Returns the number of tasks for the given host that are queued or executing on their lanes.
+   */
+  public static int getRunningTaskCount(String host)
+  {
+    synchronized (HOST_GATES)
+    {
+      HostGate gate = HOST_GATES.get(host);
+      return gate == null ? 0 : gate.running;
+    }
+  }
+
+  /**
+   * Returns the number of tasks for the given host that wait for other tasks of that host to finish before they're queued on their lanes.
+   */
+  public static int getWaitingTaskCount(String host)
+  {
+    synchronized (HOST_GATES)
+    {
+      HostGate gate = HOST_GATES.get(host);
+      return gate == null ? 0 : gate.waiting.size();
+    }
+  }
+
+  private static void schedule(ScheduledTask<?> task)
+  {
+    if (task.host != null)
+    {
+      synchronized (HOST_GATES)
+      {
+        HostGate gate = HOST_GATES.get(task.host);
+        if (gate == null)
+        {
+          gate = new HostGate();
+          HOST_GATES.put(task.host, gate);
+        }
+
+        if (gate.running >= MAX_TASKS_PER_HOST)
+        {
+          gate.waiting.add(task);
+          return;
+        }
+
+        ++gate.running;
+        task.dispatched = true;
+      }
+    }
+
+    dispatch(task);
+  }
+
+  private static void dispatch(ScheduledTask<?> task)
+  {
+    if (task.lane == Lane.CPU)
+    {
+      ForkJoinPool pool = getCPUPool();
+
+      Thread thread = Thread.currentThread();
+      if (thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)thread).getPool() == pool)
+      {
+        // Push the task onto the local queue of this worker, from where idle workers can steal it.
+        ForkJoinTask.adapt(task).fork();
+      }
+      else
+      {
+        pool.execute(task);
+      }
+    }
+    else
+    {
+      getIOPool().execute(task);
+    }
+  }
+
+  private static void finished(ScheduledTask<?> task)
+  {
+    if (task.host != null)
+    {
+      ScheduledTask<?> next = null;
+
+      synchronized (HOST_GATES)
+      {
+        HostGate gate = HOST_GATES.get(task.host);
+        --gate.running;
+
+        next = gate.waiting.poll();
+        if (next != null)
+        {
+          ++gate.running;
+          next.dispatched = true;
+        }
+
+        if (gate.running == 0 && gate.waiting.isEmpty())
+        {
+          HOST_GATES.remove(task.host);
+        }
+      }
+
+      if (next != null)
+      {
+        dispatch(next);
+      }
+    }
+
+    if (task.group != null)
+    {
+      task.group.finished();
+    }
+  }
+
+  private static void canceled(ScheduledTask<?> task)
+  {
+    if (task.host != null)
+    {
+      synchronized (HOST_GATES)
+      {
+        if (task.dispatched)
+        {
+          // The task occupies a slot of its host until its lane has executed it, which releases that slot.
+          return;
+        }
+
+        // The task was canceled while it was waiting for the host, so it will never be executed.
+        HostGate gate = HOST_GATES.get(task.host);
+        gate.waiting.remove(task);
+
+        if (gate.running == 0 && gate.waiting.isEmpty())
+        {
+          HOST_GATES.remove(task.host);
+        }
+      }
+
+      if (task.group != null)
+      {
+        task.group.finished();
+      }
+    }
+  }
+
+  private static synchronized ForkJoinPool getCPUPool()
+  {
+    if (cpuPool == null)
+    {
+      cpuPool = new ForkJoinPool(CPU_THREADS, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    return cpuPool;
+  }
+
+  private static synchronized ThreadPoolExecutor getIOPool()
+  {
+    if (ioPool == null)
+    {
+      ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+          new ThreadFactory()
+          {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable)
+            {
+              Thread thread = new Thread(runnable, "Oomph I/O Worker " + counter.incrementAndGet()); //$NON-NLS-1$
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+      threadPoolExecutor.allowCoreThreadTimeOut(true);
+      ioPool = threadPoolExecutor;
+    }
+
+    return ioPool;
+  }
+
+  /**
+   * The lanes of threads on which tasks are executed.
+   *
+   * @author Eike Stepper
+   */
+  public enum Lane
+  {
+    /**
+     * The lane for tasks that are mostly computing.
+     */
+    CPU,
+
+    /**
+     * The lane for tasks that mostly wait for the network or the file system.
+     */
+    IO
+  }
+
+  /**
+   * A group of tasks that are submitted to the same lane and whose completion can be {@link #awaitFinished() awaited}.
+   * Tasks that are submitted by other tasks of the group are awaited as well.
+   *
+   * @author Eike Stepper
+   */
+  public static final class TaskGroup
+  {
+    private final Lane lane;
+
+    private final int priority;
+
+    private final String host;
+
+    private final AtomicInteger unfinishedTasks = new AtomicInteger();
+
+    private final Object lock = new Object();
+
+    public TaskGroup(Lane lane)
+    {
+      this(lane, PRIORITY_DEFAULT, null);
+    }
+
+    /**
+     * Creates a group whose tasks are submitted to the given lane with the given priority, for the given host or <code>null</code>.
+     */
+    public TaskGroup(Lane lane, int priority, String host)
+    {
+      this.lane = lane;
+      this.priority = priority;
+      this.host = host;
+    }
+
+    public Lane getLane()
+    {
+      return lane;
+    }
+
+    public Future<?> submit(Runnable runnable)
+    {
+      return submit(priority, Executors.callable(runnable));
+    }
+
+    public <T> Future<T> submit(Callable<T> callable)
+    {
+      return submit(priority, callable);
+    }
+
+    public <T> Future<T> submit(int priority, Callable<T> callable)
+    {
+      ScheduledTask<T> task = new ScheduledTask<T>(callable, lane, priority, host, this);
+      unfinishedTasks.incrementAndGet();
+      schedule(task);
+      return task;
+    }
+
+    /**
+     * Returns the number of tasks of this group that are queued, waiting, or executing.
+     */
+    public int getUnfinishedTaskCount()
+    {
+      return unfinishedTasks.get();
+    }
+
+    /**
+     * Blocks until all tasks of this group have finished.
+     * Must not be called by a task of this group.
+     */
+    public void awaitFinished() throws InterruptedException
+    {
+      synchronized (lock)
+      {
+        while (unfinishedTasks.get() != 0)
+        {
+          lock.wait();
+        }
+      }
+    }
+
+    private void finished()
+    {
+      if (unfinishedTasks.decrementAndGet() == 0)
+      {
+        synchronized (lock)
+        {
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class HostGate
+  {
+    /**
+     * The number of tasks for this host that are queued or executing on their lanes.
+     */
+    private int running;
+
+    private final PriorityQueue<ScheduledTask<?>> waiting = new PriorityQueue<ScheduledTask<?>>();
+  }
+
+  /**
+   * @author Eike Stepper
+   */
+  private static final class ScheduledTask<T> extends FutureTask<T> implements Comparable<ScheduledTask<?>>
+  {
+    private final Lane lane;
+
+    private final int priority;
+
+    private final long sequence = SEQUENCE.incrementAndGet();
+
+    private final String host;
+
+    private final TaskGroup group;
+
+    /**
+     * Whether this task occupies one of the slots of its host, guarded by the {@link TaskScheduler#HOST_GATES host gates}.
+     */
+    private boolean dispatched;
+
+    public ScheduledTask(Callable<T> callable, Lane lane, int priority, String host, TaskGroup group)
+    {
+      super(callable);
+      this.lane = lane;
+      this.priority = priority;
+      this.host = host;
+      this.group = group;
+    }
+
+    public int compareTo(ScheduledTask<?> other)
+    {
+      if (priority != other.priority)
+      {
+        return priority < other.priority ? -1 : 1;
+      }
+
+      return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        super.run();
+      }
+      finally
+      {
+        // A task that is canceled while it's executing is done before it has stopped using the resources of its host,
+        // so its slot is released only here, once the lane has returned from it.
+        finished(this);
+      }
+    }
+
+    @Override
+    protected void done()
+    {
+      if (isCancelled())
+      {
+        canceled(this);
+      }
+    }
+  }
+}
@@ -17,7 +17,9 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * @author Eike Stepper
+ * @deprecated As of 1.17 use a {@link TaskScheduler.TaskGroup} on one of the shared lanes of the {@link TaskScheduler}.
  */
+@Deprecated
 public class ThreadPool extends ThreadPoolExecutor
 {
   private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors() * 4;
@@ -22,12 +22,16 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An abstract class to maintain a pool of {@link Worker workers}.
+ * <p>
+ * Not more than {@link TaskScheduler#getMaxTasksPerHost()} workers perform their work for the same {@link #getHost(Object) host} at the same time.
+ *
  * @param <P> the type of the pool itself.
  * @param <K> the type of the key identifying the work that needs to be performed.
  * @param <W> the type of the worker.
@@ -67,9 +71,19 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
   private final Map<K, W> workers = new HashMap<K, W>();
 
   /**
-   * The workers waiting to perform their work.
+   * The workers waiting to perform their work, ordered such that the head is the next to be scheduled.
    */
-  private final List<W> pendingWorkers = new ArrayList<W>();
+  private final PriorityQueue<Worker<K, ?>> pendingWorkers = new PriorityQueue<Worker<K, ?>>(11, COMPARATOR);
+
+  /**
+   * The number of workers that are scheduled and not yet descheduled.
+   */
+  private int runningWorkers;
+
+  /**
+   * The map of each {@link #getHost(Object) host} to the number of its {@link #runningWorkers running workers}.
+   */
+  private final Map<String, Integer> runningWorkersPerHost = new HashMap<String, Integer>();
 
   /**
    * Whether the workers have been canceled.
@@ -163,6 +177,8 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
 
     workers.clear();
     pendingWorkers.clear();
+    runningWorkers = 0;
+    runningWorkersPerHost.clear();
   }
 
   /**
@@ -291,26 +307,17 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
     W worker = workers.get(key);
     if (worker != null)
     {
-      if (!secondary && worker.secondary && pendingWorkers.contains(worker))
+      if (!secondary && worker.secondary && pendingWorkers.remove(worker))
       {
         worker.secondary = false;
-        Collections.sort(pendingWorkers, COMPARATOR);
+        pendingWorkers.add(worker);
       }
     }
     else
     {
       worker = createWorker(key, ++nextWorkerID, secondary);
       workers.put(key, worker);
-
-      if (isWorkPossible())
-      {
-        worker.schedule();
-      }
-      else
-      {
-        pendingWorkers.add(worker);
-        Collections.sort(pendingWorkers, COMPARATOR);
-      }
+      enqueue(worker);
     }
 
     return true;
@@ -319,18 +326,56 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
   /**
    * Deschedules the work for the given key when that work has been completed.
    * If there are {@link #pendingWorkers pending workings},
-   * the next one is {@link Worker#schedule() scheduled} to perform its work.
+   * the next one whose host is available is {@link Worker#schedule() scheduled} to perform its work.
    * If there are no remaining {@link #workers},
    * the {@link #latch latch} is unlatched.
    */
-  private synchronized void deschedule(K key)
+  private synchronized void deschedule(Worker<K, ?> worker)
   {
-    workers.remove(key);
+    if (workers.remove(worker.getKey()) == worker)
+    {
+      --runningWorkers;
+
+      if (worker.host != null)
+      {
+        int count = runningWorkersPerHost.remove(worker.host) - 1;
+        if (count != 0)
+        {
+          runningWorkersPerHost.put(worker.host, count);
+        }
+      }
+    }
 
     if (!isCanceled() && !pendingWorkers.isEmpty())
     {
-      W worker = pendingWorkers.remove(0);
-      worker.schedule();
+      List<Worker<K, ?>> skippedWorkers = null;
+      while (runningWorkers < maxWorker)
+      {
+        Worker<K, ?> pendingWorker = pendingWorkers.poll();
+        if (pendingWorker == null)
+        {
+          break;
+        }
+
+        if (isHostAvailable(pendingWorker.host))
+        {
+          start(pendingWorker);
+        }
+        else
+        {
+          if (skippedWorkers == null)
+          {
+            skippedWorkers = new ArrayList<Worker<K, ?>>();
+          }
+
+          skippedWorkers.add(pendingWorker);
+        }
+      }
+
+      if (skippedWorkers != null)
+      {
+        pendingWorkers.addAll(skippedWorkers);
+      }
     }
 
     if (latch != null && workers.isEmpty())
@@ -340,14 +385,74 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
   }
 
   /**
-   * Returns whether another worker can be {@link Worker#schedule() scheduled} without exceeding the {@link #maxWorker maximum} number of currently performing workers.
+   * {@link #start(Worker) Starts} the given worker if neither the {@link #maxWorker maximum} number of currently performing workers nor the maximum number of workers for its host is reached,
+   * and adds it to the {@link #pendingWorkers pending workers} otherwise.
    */
-  private boolean isWorkPossible()
+  private void enqueue(Worker<K, ?> worker)
   {
-    int all = workers.size() - 1;
-    int pending = pendingWorkers.size();
-    int running = all - pending;
-    return running < maxWorker;
+    if (runningWorkers < maxWorker && isHostAvailable(worker.host))
+    {
+      start(worker);
+    }
+    else
+    {
+      pendingWorkers.add(worker);
+    }
+  }
+
+  /**
+   * {@link Worker#schedule() Schedules} the given worker and counts it as running for its host.
+   */
+  private void start(Worker<K, ?> worker)
+  {
+    ++runningWorkers;
+
+    if (worker.host != null)
+    {
+      Integer count = runningWorkersPerHost.get(worker.host);
+      runningWorkersPerHost.put(worker.host, count == null ? 1 : count + 1);
+    }
+
+    worker.schedule();
+  }
+
+  /**
+   * Returns whether another worker can be {@link Worker#schedule() scheduled} for the given host without exceeding the {@link TaskScheduler#getMaxTasksPerHost() maximum} number of workers per host.
+   */
+  private boolean isHostAvailable(String host)
+  {
+    if (host == null)
+    {
+      return true;
+    }
+
+    Integer count = runningWorkersPerHost.get(host);
+    return count == null || count < TaskScheduler.getMaxTasksPerHost();
+  }
+
+  /**
+   * Returns the number of workers that wait for other workers to complete before they perform their work.
+   */
+  public synchronized int getPendingWorkerCount()
+  {
+    return pendingWorkers.size();
+  }
+
+  /**
+   * Returns the number of workers that are scheduled to perform their work or are performing it.
+   */
+  public synchronized int getRunningWorkerCount()
+  {
+    return runningWorkers;
+  }
+
+  /**
+   * Returns the host that's accessed by the work for the given key, or <code>null</code> if the number of workers for that work isn't limited per host.
+   * It returns <code>null</code> by default.
+   */
+  protected String getHost(K key)
+  {
+    return null;
   }
 
   /**
@@ -387,6 +492,11 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
      */
     private boolean secondary;
 
+    /**
+     * The {@link WorkerPool#getHost(Object) host} accessed by this worker.
+     */
+    private final String host;
+
     /**
      * Creates an instance with the given Job name,
      * managed by the given work pool,
@@ -400,6 +510,7 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
       this.key = key;
       this.id = id;
       this.secondary = secondary;
+      host = workPool.getHost(key);
     }
 
     /**
@@ -424,7 +535,7 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
     }
 
     /**
-     * {@link #perform(IProgressMonitor) performs the work} and {@link WorkerPool#deschedule(Object) deschedules} the worker upon completion.
+     * {@link #perform(IProgressMonitor) performs the work} and {@link WorkerPool#deschedule(Worker) deschedules} the worker upon completion.
      */
     @Override
     protected IStatus run(IProgressMonitor monitor)
@@ -435,7 +546,7 @@ public abstract class WorkerPool<P extends WorkerPool<P, K, W>, K, W extends Wor
       }
       finally
       {
-        workPool.deschedule(key);
+        ((WorkerPool<?, K, ?>)workPool).deschedule(this);
       }
     }
 
@@ -10,22 +10,45 @@
  */
 package org.eclipse.oomph.util;
 
+import org.eclipse.oomph.util.IOUtil.SharedTask;
+
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 /**
+ * Zips and unzips files.
+ * <p>
+ * Folders are zipped and zip files are unzipped into folders by tasks of the {@link TaskScheduler.Lane#IO IO lane} of the {@link TaskScheduler}.
+ * The number of entries that are processed concurrently is specified by the <code>oomph.zip.threads</code> system property,
+ * which defaults to the number of threads of that lane.
+ * A value of 1 disables the concurrency.
+ *
  * @author Eike Stepper
  */
 public final class ZIPUtil
@@ -42,6 +65,10 @@ public final class ZIPUtil
 
   private static final int ORDER_SWAP = 1;
 
+  public static final String PROP_THREADS = "oomph.zip.threads"; //$NON-NLS-1$
+
+  private static final int PARALLEL_BUFFER_SIZE = 65536;
+
   private ZIPUtil()
   {
   }
@@ -109,17 +136,50 @@ public final class ZIPUtil
 
   public static void zip(File sourceFolder, boolean excludeRoot, File zipFile)
   {
-    zip(new FileSystemZipHandler(sourceFolder, excludeRoot), zipFile);
+    FileSystemZipHandler handler = new FileSystemZipHandler(sourceFolder, excludeRoot);
+    int threads = getThreads();
+    if (threads > 1 && ParallelZipWriter.canWrite(handler))
+    {
+      new ParallelZipWriter(handler, threads).write(zipFile);
+    }
+    else
+    {
+      zip(handler, zipFile);
+    }
   }
 
   public static void unzip(File zipFile, UnzipHandler handler) throws IORuntimeException
   {
     FileInputStream fis = IOUtil.openInputStream(zipFile);
-    ZipInputStream zis = null;
 
     try
     {
-      zis = new ZipInputStream(new BufferedInputStream(fis, DEFAULT_BUFFER_SIZE));
+      unzip(fis, handler);
+    }
+    finally
+    {
+      IOUtil.closeSilent(fis);
+    }
+  }
+
+  /**
+   * Unzips the zip file that's read from the given stream, without the need to store it in a file first.
+   * The stream is not closed, not even if the handler closes the stream of an entry.
+   */
+  public static void unzip(InputStream stream, UnzipHandler handler) throws IORuntimeException
+  {
+    try
+    {
+      final ZipInputStream zis = new ZipInputStream(new BufferedInputStream(stream, DEFAULT_BUFFER_SIZE));
+      InputStream entryStream = new FilterInputStream(zis)
+      {
+        @Override
+        public void close() throws IOException
+        {
+          // Only close the current entry, so that the next entry can be read.
+          zis.closeEntry();
+        }
+      };
 
       ZipEntry entry;
       while ((entry = zis.getNextEntry()) != null)
@@ -130,8 +190,7 @@ public final class ZIPUtil
         }
         else
         {
-          // TODO Provide delegating InputStream that ignores close()
-          handler.unzipFile(entry.getName(), zis);
+          handler.unzipFile(entry.getName(), entryStream);
         }
       }
     }
@@ -139,16 +198,122 @@ public final class ZIPUtil
     {
       throw new IORuntimeException(ex);
     }
+  }
+
+  /**
+   * Unzips the given zip file into the given folder.
+   * The entries are listed from the central directory of the zip file and inflated concurrently.
+   */
+  public static void unzip(File zipFile, File targetFolder) throws IORuntimeException
+  {
+    int threads = getThreads();
+    if (threads > 1)
+    {
+      ZipFile zip = null;
+
+      try
+      {
+        zip = new ZipFile(zipFile);
+      }
+      catch (IOException ex)
+      {
+        // Let the sequential unzip report the problem.
+      }
+
+      if (zip != null)
+      {
+        try
+        {
+          unzipParallel(zip, targetFolder, threads);
+          return;
+        }
+        finally
+        {
+          IOUtil.closeSilent(zip);
+        }
+      }
+    }
+
+    unzip(zipFile, new FileSystemUnzipHandler(targetFolder, DEFAULT_BUFFER_SIZE));
+  }
+
+  private static void unzipParallel(final ZipFile zip, final File targetFolder, int threads) throws IORuntimeException
+  {
+    LinkedList<SharedTask<Void>> window = new LinkedList<SharedTask<Void>>();
+
+    try
+    {
+      for (final ZipEntry entry : Collections.list(zip.entries()))
+      {
+        if (entry.isDirectory())
+        {
+          File directory = new File(targetFolder, entry.getName());
+          if (!directory.exists())
+          {
+            directory.mkdirs();
+          }
+        }
+        else
+        {
+          if (window.size() >= threads)
+          {
+            window.removeFirst().get();
+          }
+
+          window.add(SharedTask.submit(new Callable<Void>()
+          {
+            public Void call() throws Exception
+            {
+              File targetFile = new File(targetFolder, entry.getName());
+              File parent = targetFile.getParentFile();
+              if (!parent.exists())
+              {
+                // Another thread might create the parent concurrently.
+                parent.mkdirs();
+              }
+
+              RandomAccessFile file = new RandomAccessFile(targetFile, "rw"); //$NON-NLS-1$
+              InputStream input = null;
+
+              try
+              {
+                // Preallocate the file, so that the file system can allocate contiguous space, and truncate a longer existing file.
+                long size = entry.getSize();
+                file.setLength(size == -1 ? 0 : size);
+
+                input = zip.getInputStream(entry);
+                long length = IOUtil.copy(input, Channels.newOutputStream(file.getChannel()), new byte[PARALLEL_BUFFER_SIZE]);
+                if (length != size)
+                {
+                  file.setLength(length);
+                }
+              }
+              finally
+              {
+                IOUtil.closeSilent(input);
+                IOUtil.closeSilent(file);
+              }
+
+              return null;
+            }
+          }));
+        }
+      }
+
+      while (!window.isEmpty())
+      {
+        window.removeFirst().get();
+      }
+    }
     finally
     {
-      IOUtil.closeSilent(zis);
-      IOUtil.closeSilent(fis);
+      SharedTask.cancel(window);
     }
   }
 
-  public static void unzip(File zipFile, File targetFolder) throws IORuntimeException
+  private static int getThreads()
   {
-    unzip(zipFile, new FileSystemUnzipHandler(targetFolder, DEFAULT_BUFFER_SIZE));
+    return PropertiesUtil.getProperty(PROP_THREADS, TaskScheduler.getThreadCount(TaskScheduler.Lane.IO));
   }
 
   /**
@@ -231,6 +396,8 @@ public final class ZIPUtil
   {
     private int sourceFolderLength;
 
+    private final List<File> fileList;
+
     private transient Iterator<File> files;
 
     public FileSystemZipHandler(File sourceFolder, boolean excludeRoot)
@@ -331,11 +498,16 @@ public final class ZIPUtil
         }
       });
 
-      files = list.iterator();
-      if (excludeRoot)
-      {
-        files.next();
-      }
+      fileList = excludeRoot ? list.subList(1, list.size()) : list;
+      files = fileList.iterator();
+    }
+
+    /**
+     * Returns the files and folders to be zipped, in the order in which they're zipped.
+     */
+    List<File> getFiles()
+    {
+      return fileList;
     }
 
     public void handleEntry(EntryContext context) throws IOException
@@ -416,4 +588,350 @@ public final class ZIPUtil
       }
     }
   }
+
+  /**
+   * Writes the files and folders of a {@link FileSystemZipHandler} to a zip file, deflating the files concurrently and writing them in order.
+   * Small files are deflated into memory by the worker threads, large files are deflated by the writing thread,
+   * and at most a few deflated files are held in memory at a time.
+   * The zip file is written without ZIP64 extensions, so the total size and the number of entries are limited.
+   *
+   * @author Eike Stepper
+   */
+  private static final class ParallelZipWriter
+  {
+    private static final long MAX_TOTAL_SIZE = 0xF0000000L;
+
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final long MAX_PARALLEL_SIZE = 8 * 1024 * 1024;
+
+    private static final int VERSION = 20;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private static final int EXTERNAL_ATTRIBUTE_DIRECTORY = 0x10;
+
+    private final FileSystemZipHandler handler;
+
+    private final int threads;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    public ParallelZipWriter(FileSystemZipHandler handler, int threads)
+    {
+      this.handler = handler;
+      this.threads = threads;
+    }
+
+    public void write(File zipFile) throws IORuntimeException
+    {
+      LinkedList<SharedTask<Entry>> window = new LinkedList<SharedTask<Entry>>();
+      CountingOutputStream out = null;
+
+      try
+      {
+        out = new CountingOutputStream(new BufferedOutputStream(IOUtil.openOutputStream(zipFile), PARALLEL_BUFFER_SIZE));
+
+        Iterator<File> files = handler.getFiles().iterator();
+
+        for (;;)
+        {
+          while (window.size() <= threads && files.hasNext())
+          {
+            File file = files.next();
+            String name = handler.getName(file).replace(File.separatorChar, '/');
+            if (name.length() != 0)
+            {
+              window.add(SharedTask.submit(new Entry(file, name)));
+            }
+          }
+
+          if (window.isEmpty())
+          {
+            break;
+          }
+
+          Entry entry = window.removeFirst().get();
+          entry.write(out);
+          entries.add(entry);
+        }
+
+        long centralDirectoryOffset = out.getCount();
+        for (Entry entry : entries)
+        {
+          entry.writeCentralDirectoryHeader(out);
+        }
+
+        long centralDirectorySize = out.getCount() - centralDirectoryOffset;
+
+        writeInt(out, 0x06054b50);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, entries.size());
+        writeShort(out, entries.size());
+        writeInt(out, centralDirectorySize);
+        writeInt(out, centralDirectoryOffset);
+        writeShort(out, 0);
+
+        out.close();
+        out = null;
+      }
+      catch (IOException ex)
+      {
+        throw new IORuntimeException(ex);
+      }
+      finally
+      {
+        IOUtil.closeSilent(out);
+        SharedTask.cancel(window);
+      }
+    }
+
+    /**
+     * Returns whether the files and folders of the given handler can be zipped without ZIP64 extensions.
+     */
+    public static boolean canWrite(FileSystemZipHandler handler)
+    {
+      List<File> files = handler.getFiles();
+      if (files.size() >= MAX_ENTRIES)
+      {
+        return false;
+      }
+
+      long totalSize = 0;
+      for (File file : files)
+      {
+        totalSize += file.length();
+        if (totalSize >= MAX_TOTAL_SIZE)
+        {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException
+    {
+      out.write(value & 0xFF);
+      out.write(value >>> 8 & 0xFF);
+    }
+
+    private static void writeInt(OutputStream out, long value) throws IOException
+    {
+      writeShort(out, (int)(value & 0xFFFF));
+      writeShort(out, (int)(value >>> 16 & 0xFFFF));
+    }
+
+    private static long getDOSTime(long time)
+    {
+      Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(time);
+
+      int year = calendar.get(Calendar.YEAR);
+      if (year < 1980)
+      {
+        return 1 << 21 | 1 << 16;
+      }
+
+      return (long)(year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+          | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * @author Eike Stepper
+     */
+    private static final class Entry implements Callable<Entry>
+    {
+      private final File file;
+
+      private final byte[] name;
+
+      private final boolean directory;
+
+      private final long time;
+
+      private int flags = FLAG_UTF8;
+
+      private long crc;
+
+      private long compressedSize;
+
+      private long size;
+
+      private long offset;
+
+      /**
+       * The deflated content of a small file, or <code>null</code> if this is a directory or a large file.
+       */
+      private byte[] data;
+
+      public Entry(File file, String name) throws IOException
+      {
+        this.file = file;
+        directory = file.isDirectory();
+        this.name = (directory ? name + "/" : name).getBytes("UTF-8"); //$NON-NLS-1$ //$NON-NLS-2$
+        time = getDOSTime(file.lastModified());
+      }
+
+      public Entry call() throws Exception
+      {
+        if (!directory && file.length() <= MAX_PARALLEL_SIZE)
+        {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream((int)file.length() / 2 + 64);
+          deflate(bytes);
+          data = bytes.toByteArray();
+        }
+
+        return this;
+      }
+
+      public void write(CountingOutputStream out) throws IOException
+      {
+        offset = out.getCount();
+
+        if (directory || data != null)
+        {
+          writeLocalHeader(out);
+          if (data != null)
+          {
+            out.write(data);
+          }
+        }
+        else
+        {
+          // Large files are deflated while they're written, so the sizes and checksum follow in a data descriptor.
+          flags |= FLAG_DATA_DESCRIPTOR;
+          writeLocalHeader(out);
+          deflate(new FilterOutputStream(out)
+          {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException
+            {
+              out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+              // Don't close the zip file.
+            }
+          });
+
+          writeInt(out, 0x08074b50);
+          writeInt(out, crc);
+          writeInt(out, compressedSize);
+          writeInt(out, size);
+        }
+      }
+
+      private void deflate(OutputStream out) throws IOException
+      {
+        CRC32 checksum = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        InputStream input = IOUtil.openInputStream(file);
+
+        try
+        {
+          DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(out, deflater, PARALLEL_BUFFER_SIZE);
+          byte[] buffer = new byte[PARALLEL_BUFFER_SIZE];
+          int n;
+          while ((n = input.read(buffer)) != -1)
+          {
+            checksum.update(buffer, 0, n);
+            deflaterOutputStream.write(buffer, 0, n);
+          }
+
+          deflaterOutputStream.finish();
+          deflaterOutputStream.flush();
+
+          crc = checksum.getValue();
+          size = deflater.getBytesRead();
+          compressedSize = deflater.getBytesWritten();
+        }
+        finally
+        {
+          deflater.end();
+          IOUtil.closeSilent(input);
+        }
+      }
+
+      private int getMethod()
+      {
+        return directory ? ZipEntry.STORED : ZipEntry.DEFLATED;
+      }
+
+      private void writeLocalHeader(OutputStream out) throws IOException
+      {
+        boolean dataDescriptor = (flags & FLAG_DATA_DESCRIPTOR) != 0;
+
+        writeInt(out, 0x04034b50);
+        writeShort(out, VERSION);
+        writeShort(out, flags);
+        writeShort(out, getMethod());
+        writeInt(out, time);
+        writeInt(out, dataDescriptor ? 0 : crc);
+        writeInt(out, dataDescriptor ? 0 : compressedSize);
+        writeInt(out, dataDescriptor ? 0 : size);
+        writeShort(out, name.length);
+        writeShort(out, 0);
+        out.write(name);
+      }
+
+      public void writeCentralDirectoryHeader(OutputStream out) throws IOException
+      {
+        writeInt(out, 0x02014b50);
+        writeShort(out, VERSION);
+        writeShort(out, VERSION);
+        writeShort(out, flags);
+        writeShort(out, getMethod());
+        writeInt(out, time);
+        writeInt(out, crc);
+        writeInt(out, compressedSize);
+        writeInt(out, size);
+        writeShort(out, name.length);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeInt(out, directory ? EXTERNAL_ATTRIBUTE_DIRECTORY : 0);
+        writeInt(out, offset);
+        out.write(name);
+      }
+    }
+
+    /**
+     * @author Eike Stepper
+     */
+    private static final class CountingOutputStream extends FilterOutputStream
+    {
+      private long count;
+
+      public CountingOutputStream(OutputStream out)
+      {
+        super(out);
+      }
+
+      public long getCount()
+      {
+        return count;
+      }
+
+      @Override
+      public void write(int b) throws IOException
+      {
+        out.write(b);
+        ++count;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+        out.write(b, off, len);
+        count += len;
+      }
+    }
+  }
 }